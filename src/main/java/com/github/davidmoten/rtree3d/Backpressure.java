@@ -1,10 +1,8 @@
 package com.github.davidmoten.rtree3d;
 
 import rx.Subscriber;
-import rx.functions.Func1;
 
 import com.github.davidmoten.rtree3d.geometry.Geometry;
-import com.github.davidmoten.util.ImmutableStack;
 
 /**
  * Utility methods for controlling backpressure of the tree search.
@@ -15,91 +13,83 @@ final class Backpressure {
         // prevent instantiation
     }
 
-    static <T, S extends Geometry> ImmutableStack<NodePosition<T, S>> search(
-            final Func1<? super Geometry, Boolean> condition,
-            final Subscriber<? super Entry<T, S>> subscriber,
-            final ImmutableStack<NodePosition<T, S>> stack, final long request) {
-        StackAndRequest<NodePosition<T, S>> state = StackAndRequest.create(stack, request);
-        return searchAndReturnStack(condition, subscriber, state);
-    }
-
-    private static <S extends Geometry, T> ImmutableStack<NodePosition<T, S>> searchAndReturnStack(
-            final Func1<? super Geometry, Boolean> condition,
-            final Subscriber<? super Entry<T, S>> subscriber,
-            StackAndRequest<NodePosition<T, S>> state) {
-
-        while (!state.stack.isEmpty()) {
-            NodePosition<T, S> np = state.stack.peek();
-            if (subscriber.isUnsubscribed())
-                return ImmutableStack.empty();
-            else if (state.request <= 0)
-                return state.stack;
-            else if (np.position() == np.node().count()) {
+    /**
+     * Advances the search from the cursor until <code>request</code> entries
+     * have been emitted, the search is complete (the cursor is empty) or the
+     * subscriber unsubscribes (the cursor is cleared).
+     * 
+     * @param <T>
+     *            value type
+     * @param <S>
+     *            geometry type
+     * @param condition
+     *            the search condition
+     * @param subscriber
+     *            receives matching entries
+     * @param cursor
+     *            position of the search, updated in place
+     * @param request
+     *            maximum number of entries to emit
+     * @param stats
+     *            records what is visited, null if not required
+     */
+    static <T, S extends Geometry> void search(final SearchCondition condition,
+            final Subscriber<? super Entry<T, S>> subscriber, final SearchCursor<T, S> cursor,
+            long request, SearchStats stats) {
+        while (!cursor.isEmpty()) {
+            if (subscriber.isUnsubscribed()) {
+                cursor.clear();
+                return;
+            } else if (request <= 0)
+                return;
+            Node<T, S> node = cursor.node();
+            int position = cursor.position();
+            if (position == node.count()) {
                 // handle after last in node
-                state = StackAndRequest.create(searchAfterLastInNode(state.stack), state.request);
-            } else if (np.node() instanceof NonLeaf) {
+                cursor.pop();
+            } else if (node instanceof NonLeaf) {
                 // handle non-leaf
-                state = StackAndRequest.create(searchNonLeaf(condition, state.stack, np),
-                        state.request);
+                Node<T, S> child = ((NonLeaf<T, S>) node).children().get(position);
+                if (stats != null)
+                    stats.mbrTested();
+                if (condition.test(child.geometry())) {
+                    cursor.push(child);
+                    if (stats != null)
+                        stats.nodeVisited(cursor.level());
+                } else
+                    cursor.next();
             } else {
                 // handle leaf
-                state = searchLeaf(condition, subscriber, state, np);
+                if (stats != null)
+                    stats.entryTested();
+                if (searchLeaf(condition, subscriber, (Leaf<T, S>) node, position)) {
+                    request--;
+                    if (stats != null)
+                        stats.entryEmitted();
+                }
+                cursor.next();
             }
         }
-        return state.stack;
-    }
-
-    private static class StackAndRequest<T> {
-        private final ImmutableStack<T> stack;
-        private final long request;
-
-        StackAndRequest(ImmutableStack<T> stack, long request) {
-            this.stack = stack;
-            this.request = request;
-        }
-
-        static <T> StackAndRequest<T> create(ImmutableStack<T> stack, long request) {
-            return new StackAndRequest<T>(stack, request);
-        }
-
-    }
-
-    private static <T, S extends Geometry> StackAndRequest<NodePosition<T, S>> searchLeaf(
-            final Func1<? super Geometry, Boolean> condition,
-            final Subscriber<? super Entry<T, S>> subscriber,
-            StackAndRequest<NodePosition<T, S>> state, NodePosition<T, S> np) {
-        final long nextRequest;
-        Entry<T, S> entry = ((Leaf<T, S>) np.node()).entries().get(np.position());
-        if (condition.call(entry.geometry())) {
-            subscriber.onNext(entry);
-            nextRequest = state.request - 1;
-        } else
-            nextRequest = state.request;
-        return StackAndRequest.create(state.stack.pop().push(np.nextPosition()), nextRequest);
-    }
-
-    private static <S extends Geometry, T> ImmutableStack<NodePosition<T, S>> searchAfterLastInNode(
-            ImmutableStack<NodePosition<T, S>> stack) {
-        ImmutableStack<NodePosition<T, S>> stack2 = stack.pop();
-        if (stack2.isEmpty())
-            stack = stack2;
-        else {
-            NodePosition<T, S> previous = stack2.peek();
-            stack = stack2.pop().push(previous.nextPosition());
-        }
-        return stack;
     }
 
-    private static <S extends Geometry, T> ImmutableStack<NodePosition<T, S>> searchNonLeaf(
-            final Func1<? super Geometry, Boolean> condition,
-            ImmutableStack<NodePosition<T, S>> stack, NodePosition<T, S> np) {
-        Node<T, S> child = ((NonLeaf<T, S>) np.node()).children().get(np.position());
-        if (condition.call(child.geometry())) {
-            stack = stack.push(new NodePosition<T, S>(child, 0));
+    private static <T, S extends Geometry> boolean searchLeaf(final SearchCondition condition,
+            final Subscriber<? super Entry<T, S>> subscriber, Leaf<T, S> leaf, int position) {
+        if (leaf.entries() instanceof PackedEntries) {
+            // avoid creating an entry unless it is emitted
+            PackedEntries<T, S> entries = (PackedEntries<T, S>) leaf.entries();
+            if (entries.test(position, condition)) {
+                subscriber.onNext(entries.get(position));
+                return true;
+            } else
+                return false;
         } else {
-            stack = stack.pop().push(np.nextPosition());
+            Entry<T, S> entry = leaf.entries().get(position);
+            if (condition.test(entry.geometry())) {
+                subscriber.onNext(entry);
+                return true;
+            } else
+                return false;
         }
-        return stack;
     }
 
 }
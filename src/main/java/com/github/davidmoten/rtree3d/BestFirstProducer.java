@@ -0,0 +1,114 @@
+package com.github.davidmoten.rtree3d;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+import com.github.davidmoten.rtree3d.geometry.Geometry;
+
+import rx.Subscriber;
+
+/**
+ * Best-first (Hjaltason and Samet) traversal of a tree emitting entries in
+ * ascending order of a distance. Nodes and entries are held in a priority
+ * queue ordered by distance. An item that is ready is emitted when it reaches
+ * the head of the queue because at that point nothing still in the queue can
+ * come before it. Any other item at the head is passed to
+ * {@link #expand(Object, double)} which offers its children (or, for an entry,
+ * a refined version of it). Only as much of the tree is visited as is needed
+ * to satisfy the emissions requested.
+ *
+ * @param <T>
+ *            the entry value type
+ * @param <S>
+ *            the entry geometry type
+ */
+abstract class BestFirstProducer<T, S extends Geometry> extends IteratingProducer<Entry<T, S>> {
+
+    // only accessed by the thread that is draining
+    private final PriorityQueue<Candidate> queue = new PriorityQueue<Candidate>(16,
+            CANDIDATE_COMPARATOR);
+    private long sequence;
+
+    BestFirstProducer(Subscriber<? super Entry<T, S>> subscriber) {
+        super(subscriber);
+    }
+
+    /**
+     * Offers the children of a node (or a refinement of an entry) that has
+     * reached the head of the queue without being ready.
+     *
+     * @param item
+     *            node or entry
+     * @param distance
+     *            distance the item was offered at
+     */
+    abstract void expand(Object item, double distance);
+
+    /**
+     * Adds the item to the queue.
+     *
+     * @param item
+     *            node or entry
+     * @param distance
+     *            distance the item is ordered by
+     * @param ready
+     *            true if the item is an entry that can be emitted at that
+     *            distance
+     */
+    final void offer(Object item, double distance, boolean ready) {
+        queue.offer(new Candidate(item, distance, ready, sequence++));
+    }
+
+    /**
+     * Expands items from the head of the queue until the head is ready to
+     * emit. Returns false if the queue is exhausted.
+     */
+    @Override
+    boolean hasNext() {
+        Candidate c;
+        while ((c = queue.peek()) != null && !c.ready) {
+            queue.poll();
+            expand(c.item, c.distance);
+        }
+        return c != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    Entry<T, S> next() {
+        return (Entry<T, S>) queue.poll().item;
+    }
+
+    private static final class Candidate {
+        final Object item;
+        final double distance;
+        final boolean ready;
+        final long sequence;
+
+        Candidate(Object item, double distance, boolean ready, long sequence) {
+            this.item = item;
+            this.distance = distance;
+            this.ready = ready;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Orders by ascending distance. At equal distance ready items come first
+     * (so they can be emitted without expanding anything else) and otherwise
+     * the earliest offered comes first.
+     */
+    private static final Comparator<Candidate> CANDIDATE_COMPARATOR = new Comparator<Candidate>() {
+        @Override
+        public int compare(Candidate a, Candidate b) {
+            int c = Double.compare(a.distance, b.distance);
+            if (c != 0)
+                return c;
+            else if (a.ready != b.ready)
+                return a.ready ? -1 : 1;
+            else
+                return a.sequence < b.sequence ? -1 : (a.sequence == b.sequence ? 0 : 1);
+        }
+    };
+
+}
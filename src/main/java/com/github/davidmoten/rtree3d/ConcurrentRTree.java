@@ -0,0 +1,262 @@
+package com.github.davidmoten.rtree3d;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.github.davidmoten.rtree3d.geometry.Geometry;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import rx.Scheduler;
+import rx.Scheduler.Worker;
+import rx.functions.Action0;
+import rx.schedulers.Schedulers;
+
+/**
+ * A thread-safe holder of an {@link RTree} for many concurrent writers.
+ * Instead of each writer path-copying the tree and racing to publish it with a
+ * compare-and-set (where most attempts fail and redo the copy under
+ * contention), writers enqueue their changes and a single committer applies
+ * everything queued as one batch to a {@link TransientRTree} and publishes the
+ * resulting immutable snapshot (group commit).
+ *
+ * <p>
+ * Readers call {@link #snapshot()} which never blocks and returns a
+ * consistent immutable tree. Each change returns a future that completes with
+ * the first snapshot in which the change is visible. Changes from one thread
+ * are applied in the order they were made.
+ * </p>
+ *
+ * <p>
+ * The committer runs on a {@link Scheduler} only while there are changes to
+ * apply so the holder owns no threads and needs no closing.
+ * </p>
+ *
+ * @param <T>
+ *            the entry value type
+ * @param <S>
+ *            the entry geometry type
+ */
+public final class ConcurrentRTree<T, S extends Geometry> {
+
+    private final Scheduler scheduler;
+    private final ConcurrentLinkedQueue<Change<T, S>> queue = new ConcurrentLinkedQueue<Change<T, S>>();
+    // number of changes enqueued that the committer has not yet accounted for
+    private final AtomicInteger wip = new AtomicInteger();
+    private volatile RTree<T, S> tree;
+
+    private ConcurrentRTree(RTree<T, S> tree, Scheduler scheduler) {
+        this.tree = tree;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Returns a holder of the given tree that commits changes on
+     * <code>Schedulers.computation()</code>.
+     *
+     * @param <T>
+     *            the entry value type
+     * @param <S>
+     *            the entry geometry type
+     * @param tree
+     *            initial snapshot
+     * @return holder of the tree
+     */
+    public static <T, S extends Geometry> ConcurrentRTree<T, S> create(RTree<T, S> tree) {
+        return create(tree, Schedulers.computation());
+    }
+
+    /**
+     * Returns a holder of the given tree that commits changes on the given
+     * scheduler.
+     *
+     * @param <T>
+     *            the entry value type
+     * @param <S>
+     *            the entry geometry type
+     * @param tree
+     *            initial snapshot
+     * @param scheduler
+     *            scheduler to run the committer on
+     * @return holder of the tree
+     */
+    public static <T, S extends Geometry> ConcurrentRTree<T, S> create(RTree<T, S> tree,
+            Scheduler scheduler) {
+        Preconditions.checkNotNull(tree);
+        Preconditions.checkNotNull(scheduler);
+        return new ConcurrentRTree<T, S>(tree, scheduler);
+    }
+
+    /**
+     * Returns the latest committed tree.
+     *
+     * @return immutable snapshot
+     */
+    public RTree<T, S> snapshot() {
+        return tree;
+    }
+
+    /**
+     * Queues the addition of the entry.
+     *
+     * @param entry
+     *            item to add
+     * @return future completing with the first snapshot containing the entry
+     */
+    public ListenableFuture<RTree<T, S>> add(Entry<? extends T, ? extends S> entry) {
+        Preconditions.checkNotNull(entry);
+        return submit(new Change<T, S>(entry, true, false));
+    }
+
+    /**
+     * Queues the addition of an entry with the given value and geometry.
+     *
+     * @param value
+     *            value of the entry
+     * @param geometry
+     *            geometry of the entry
+     * @return future completing with the first snapshot containing the entry
+     */
+    public ListenableFuture<RTree<T, S>> add(T value, S geometry) {
+        return add(Entry.entry(value, geometry));
+    }
+
+    /**
+     * Queues the deletion of one or all matching entries depending on the
+     * value of <code>all</code>.
+     *
+     * @param entry
+     *            the entry to delete
+     * @param all
+     *            if true deletes all matches otherwise deletes the first found
+     * @return future completing with the first snapshot without the entry
+     */
+    public ListenableFuture<RTree<T, S>> delete(Entry<? extends T, ? extends S> entry,
+            boolean all) {
+        Preconditions.checkNotNull(entry);
+        return submit(new Change<T, S>(entry, false, all));
+    }
+
+    /**
+     * Queues the deletion of one entry if it exists.
+     *
+     * @param entry
+     *            the entry to delete
+     * @return future completing with the first snapshot without the entry
+     */
+    public ListenableFuture<RTree<T, S>> delete(Entry<? extends T, ? extends S> entry) {
+        return delete(entry, false);
+    }
+
+    private ListenableFuture<RTree<T, S>> submit(Change<T, S> change) {
+        queue.offer(change);
+        if (wip.getAndIncrement() == 0) {
+            final Worker worker = scheduler.createWorker();
+            worker.schedule(new Action0() {
+                @Override
+                public void call() {
+                    try {
+                        commit();
+                    } finally {
+                        worker.unsubscribe();
+                    }
+                }
+            });
+        }
+        return change.future;
+    }
+
+    /**
+     * Applies everything queued in batches until the queue is empty. Only one
+     * thread runs this at a time (guarded by wip).
+     */
+    private void commit() {
+        int missed = wip.get();
+        while (true) {
+            // each change is offered before wip is incremented for it so at
+            // least missed changes are in the queue
+            List<Change<T, S>> batch = new ArrayList<Change<T, S>>(missed);
+            Change<T, S> change;
+            while (batch.size() < missed && (change = queue.poll()) != null)
+                batch.add(change);
+            try {
+                apply(batch);
+            } catch (Throwable e) {
+                // an Error must not leave wip above zero otherwise no
+                // committer is ever scheduled again and later writers hang
+                for (Change<T, S> c : batch)
+                    c.future.setException(e);
+            }
+            missed = wip.addAndGet(-batch.size());
+            if (missed == 0)
+                return;
+        }
+    }
+
+    private void apply(List<Change<T, S>> batch) {
+        RTree<T, S> t;
+        try {
+            TransientRTree<T, S> tr = tree.asTransient();
+            for (Change<T, S> change : batch)
+                change.applyTo(tr);
+            t = tr.persistent();
+        } catch (RuntimeException e) {
+            if (batch.size() == 1)
+                batch.get(0).future.setException(e);
+            else
+                applyOneByOne(batch);
+            return;
+        }
+        tree = t;
+        for (Change<T, S> change : batch)
+            change.future.set(t);
+    }
+
+    /**
+     * Applies the changes of a batch that failed as a whole one at a time so
+     * that only the changes that fail themselves complete exceptionally.
+     */
+    private void applyOneByOne(List<Change<T, S>> batch) {
+        RTree<T, S> t = tree;
+        List<Change<T, S>> applied = new ArrayList<Change<T, S>>(batch.size());
+        for (Change<T, S> change : batch) {
+            try {
+                // a fresh transient each time as a failed change may have
+                // left its transient partially modified
+                TransientRTree<T, S> tr = t.asTransient();
+                change.applyTo(tr);
+                t = tr.persistent();
+                applied.add(change);
+            } catch (RuntimeException e) {
+                change.future.setException(e);
+            }
+        }
+        tree = t;
+        for (Change<T, S> change : applied)
+            change.future.set(t);
+    }
+
+    private static final class Change<T, S extends Geometry> {
+        final Entry<? extends T, ? extends S> entry;
+        final boolean add;
+        final boolean all;
+        final SettableFuture<RTree<T, S>> future = SettableFuture.create();
+
+        Change(Entry<? extends T, ? extends S> entry, boolean add, boolean all) {
+            this.entry = entry;
+            this.add = add;
+            this.all = all;
+        }
+
+        void applyTo(TransientRTree<T, S> tr) {
+            if (add)
+                tr.add(entry);
+            else
+                tr.delete(entry, all);
+        }
+    }
+
+}
@@ -1,6 +1,7 @@
 package com.github.davidmoten.rtree3d;
 
 import com.github.davidmoten.rtree3d.geometry.Box;
+import com.github.davidmoten.rtree3d.geometry.MovingBox;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 
@@ -14,6 +15,11 @@ public final class Context {
     private final Splitter splitter;
     private final Selector selector;
     private final Optional<Box> bounds;
+    private final boolean packedLeaves;
+    private final Optional<Monoid<?, ?>> monoid;
+    // present if the tree is a Hilbert R-tree
+    private final Optional<Hilbert> hilbert;
+    private final Optional<Double> referenceTime;
 
     /**
      * Constructor.
@@ -26,20 +32,56 @@ public final class Context {
      *            algorithm to select search path
      * @param splitter
      *            algorithm to split the children across two new nodes
+     * @param bounds
+     *            bounds used to normalize coordinates if present
+     * @param packedLeaves
+     *            if true leaves hold their entries as {@link PackedEntries}
+     * @param monoid
+     *            aggregate stored in each node if present
+     * @param referenceTime
+     *            if present the tree is a time-parameterized R-tree with
+     *            {@link MovingBox} geometries referenced to this time
      */
     public Context(int minChildren, int maxChildren, Selector selector, Splitter splitter,
-            Optional<Box> bounds) {
+            Optional<Box> bounds, boolean packedLeaves, Optional<Monoid<?, ?>> monoid,
+            Optional<Double> referenceTime) {
         Preconditions.checkNotNull(splitter);
         Preconditions.checkNotNull(selector);
         Preconditions.checkArgument(maxChildren > 2);
         Preconditions.checkArgument(minChildren >= 1);
         Preconditions.checkArgument(minChildren < maxChildren);
         Preconditions.checkNotNull(bounds);
+        Preconditions.checkNotNull(monoid);
+        Preconditions.checkNotNull(referenceTime);
         this.selector = selector;
         this.maxChildren = maxChildren;
         this.minChildren = minChildren;
         this.splitter = splitter;
         this.bounds = bounds;
+        this.packedLeaves = packedLeaves;
+        this.monoid = monoid;
+        this.referenceTime = referenceTime;
+        if (selector instanceof SelectorHilbert)
+            this.hilbert = Optional.of(((SelectorHilbert) selector).hilbert());
+        else
+            this.hilbert = Optional.absent();
+    }
+
+    public Context(int minChildren, int maxChildren, Selector selector, Splitter splitter,
+            Optional<Box> bounds, boolean packedLeaves, Optional<Monoid<?, ?>> monoid) {
+        this(minChildren, maxChildren, selector, splitter, bounds, packedLeaves, monoid,
+                Optional.<Double> absent());
+    }
+
+    public Context(int minChildren, int maxChildren, Selector selector, Splitter splitter,
+            Optional<Box> bounds, boolean packedLeaves) {
+        this(minChildren, maxChildren, selector, splitter, bounds, packedLeaves,
+                Optional.<Monoid<?, ?>> absent());
+    }
+
+    public Context(int minChildren, int maxChildren, Selector selector, Splitter splitter,
+            Optional<Box> bounds) {
+        this(minChildren, maxChildren, selector, splitter, bounds, false);
     }
 
     public Context(int minChildren, int maxChildren, Selector selector, Splitter splitter) {
@@ -66,4 +108,33 @@ public final class Context {
         return bounds;
     }
 
+    public boolean packedLeaves() {
+        return packedLeaves;
+    }
+
+    public Optional<Monoid<?, ?>> monoid() {
+        return monoid;
+    }
+
+    /**
+     * Returns the reference time of a time-parameterized R-tree (TPR-tree).
+     * Entries with {@link MovingBox} geometries are stored referenced to this
+     * time and the bounds of each node are a {@link MovingBox} referenced to
+     * this time that expands to contain its children at every later time.
+     * 
+     * @return reference time if the tree is time-parameterized
+     */
+    public Optional<Double> referenceTime() {
+        return referenceTime;
+    }
+
+    /**
+     * Returns the Hilbert ordering if the selector is a
+     * {@link SelectorHilbert}, in which case entries and children are kept in
+     * Hilbert order and nodes are split 2-to-3.
+     */
+    Optional<Hilbert> hilbert() {
+        return hilbert;
+    }
+
 }
@@ -0,0 +1,87 @@
+package com.github.davidmoten.rtree3d;
+
+import com.github.davidmoten.rtree3d.geometry.Geometry;
+import com.github.davidmoten.util.ObjectsHelper;
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+
+/**
+ * A pair of entries emitted by a spatial join, see
+ * {@link RTree#join(RTree, double)}.
+ *
+ * @param <T>
+ *            value type of the left entry
+ * @param <S>
+ *            geometry type of the left entry
+ * @param <U>
+ *            value type of the right entry
+ * @param <R>
+ *            geometry type of the right entry
+ */
+public final class EntryPair<T, S extends Geometry, U, R extends Geometry> {
+
+    private final Entry<T, S> left;
+    private final Entry<U, R> right;
+
+    /**
+     * Constructor.
+     *
+     * @param left
+     *            entry from the tree that join was called on
+     * @param right
+     *            entry from the other tree
+     */
+    public EntryPair(Entry<T, S> left, Entry<U, R> right) {
+        Preconditions.checkNotNull(left);
+        Preconditions.checkNotNull(right);
+        this.left = left;
+        this.right = right;
+    }
+
+    /**
+     * Returns the entry from the tree that join was called on.
+     *
+     * @return left entry
+     */
+    public Entry<T, S> left() {
+        return left;
+    }
+
+    /**
+     * Returns the entry from the other tree.
+     *
+     * @return right entry
+     */
+    public Entry<U, R> right() {
+        return right;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("EntryPair [left=");
+        builder.append(left);
+        builder.append(", right=");
+        builder.append(right);
+        builder.append("]");
+        return builder.toString();
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(left, right);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        @SuppressWarnings("rawtypes")
+        Optional<EntryPair> other = ObjectsHelper.asClass(obj, EntryPair.class);
+        if (other.isPresent()) {
+            return Objects.equal(left, other.get().left)
+                    && Objects.equal(right, other.get().right);
+        } else
+            return false;
+    }
+
+}
@@ -0,0 +1,314 @@
+package com.github.davidmoten.rtree3d;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * An immutable hash map implemented as a hash array mapped trie (Bagwell).
+ * Each level of the trie consumes 5 bits of the hash of a key and holds only
+ * the slots in use (indexed by a population count of a bitmap) so a put or
+ * remove copies just the nodes on the path to the key (at most 7) and shares
+ * every other node with the previous version.
+ *
+ * @param <K>
+ *            key type
+ * @param <V>
+ *            value type
+ */
+final class HashTrie<K, V> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private static final HashTrie<Object, Object> EMPTY = new HashTrie<Object, Object>(
+            new BitmapNode(0, new Object[0]), 0);
+
+    private final TrieNode root;
+    private final int size;
+
+    private HashTrie(TrieNode root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> HashTrie<K, V> empty() {
+        return (HashTrie<K, V>) EMPTY;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the value for the key or null if the key is not present.
+     */
+    @SuppressWarnings("unchecked")
+    V get(K key) {
+        return (V) root.get(key, hash(key), 0);
+    }
+
+    /**
+     * Returns a trie with the key mapped to the value (replacing any existing
+     * mapping of the key).
+     */
+    HashTrie<K, V> put(K key, V value) {
+        Preconditions.checkNotNull(key);
+        Preconditions.checkNotNull(value);
+        boolean[] added = new boolean[1];
+        TrieNode root2 = root.put(new KeyValue(key, value, hash(key)), 0, added);
+        if (root2 == root)
+            return this;
+        else
+            return new HashTrie<K, V>(root2, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * Returns a trie without a mapping for the key.
+     */
+    HashTrie<K, V> remove(K key) {
+        TrieNode root2 = root.remove(key, hash(key), 0);
+        if (root2 == root)
+            return this;
+        else if (root2 == null)
+            return empty();
+        else
+            return new HashTrie<K, V>(root2, size - 1);
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        // spread the high bits so that they affect the first levels
+        return h ^ (h >>> 16);
+    }
+
+    private static final class KeyValue {
+        final Object key;
+        final Object value;
+        final int hash;
+
+        KeyValue(Object key, Object value, int hash) {
+            this.key = key;
+            this.value = value;
+            this.hash = hash;
+        }
+
+        boolean matches(Object key, int hash) {
+            return this.hash == hash && this.key.equals(key);
+        }
+    }
+
+    private abstract static class TrieNode {
+
+        abstract Object get(Object key, int hash, int shift);
+
+        /**
+         * Returns this node if nothing changed. Sets added[0] if the key was
+         * not already present.
+         */
+        abstract TrieNode put(KeyValue kv, int shift, boolean[] added);
+
+        /**
+         * Returns this node if the key is not present and null if the node
+         * becomes empty.
+         */
+        abstract TrieNode remove(Object key, int hash, int shift);
+
+        /**
+         * Returns the only mapping of this node if it has exactly one mapping
+         * and no child nodes otherwise returns null.
+         */
+        abstract KeyValue single();
+    }
+
+    private static final class BitmapNode extends TrieNode {
+
+        private final int bitmap;
+        // each slot is a KeyValue or a TrieNode
+        private final Object[] slots;
+
+        BitmapNode(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        Object get(Object key, int hash, int shift) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0)
+                return null;
+            Object slot = slots[index(bit)];
+            if (slot instanceof TrieNode)
+                return ((TrieNode) slot).get(key, hash, shift + BITS);
+            KeyValue kv = (KeyValue) slot;
+            return kv.matches(key, hash) ? kv.value : null;
+        }
+
+        @Override
+        TrieNode put(KeyValue kv, int shift, boolean[] added) {
+            int bit = 1 << ((kv.hash >>> shift) & MASK);
+            int index = index(bit);
+            if ((bitmap & bit) == 0) {
+                added[0] = true;
+                Object[] slots2 = new Object[slots.length + 1];
+                System.arraycopy(slots, 0, slots2, 0, index);
+                slots2[index] = kv;
+                System.arraycopy(slots, index, slots2, index + 1, slots.length - index);
+                return new BitmapNode(bitmap | bit, slots2);
+            }
+            Object slot = slots[index];
+            final Object slot2;
+            if (slot instanceof TrieNode) {
+                slot2 = ((TrieNode) slot).put(kv, shift + BITS, added);
+            } else {
+                KeyValue existing = (KeyValue) slot;
+                if (existing.matches(kv.key, kv.hash)) {
+                    if (existing.value == kv.value)
+                        return this;
+                    slot2 = kv;
+                } else {
+                    added[0] = true;
+                    slot2 = merge(existing, kv, shift + BITS);
+                }
+            }
+            if (slot2 == slot)
+                return this;
+            return new BitmapNode(bitmap, replace(index, slot2));
+        }
+
+        @Override
+        TrieNode remove(Object key, int hash, int shift) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0)
+                return this;
+            int index = index(bit);
+            Object slot = slots[index];
+            final Object slot2;
+            if (slot instanceof TrieNode) {
+                TrieNode child = ((TrieNode) slot).remove(key, hash, shift + BITS);
+                if (child == slot)
+                    return this;
+                else if (child != null && child.single() != null)
+                    // keep the trie as shallow as possible
+                    slot2 = child.single();
+                else
+                    slot2 = child;
+            } else if (((KeyValue) slot).matches(key, hash))
+                slot2 = null;
+            else
+                return this;
+            if (slot2 != null)
+                return new BitmapNode(bitmap, replace(index, slot2));
+            else if (slots.length == 1)
+                return null;
+            else {
+                Object[] slots2 = new Object[slots.length - 1];
+                System.arraycopy(slots, 0, slots2, 0, index);
+                System.arraycopy(slots, index + 1, slots2, index, slots.length - index - 1);
+                return new BitmapNode(bitmap & ~bit, slots2);
+            }
+        }
+
+        @Override
+        KeyValue single() {
+            if (slots.length == 1 && slots[0] instanceof KeyValue)
+                return (KeyValue) slots[0];
+            else
+                return null;
+        }
+
+        private Object[] replace(int index, Object slot) {
+            Object[] slots2 = slots.clone();
+            slots2[index] = slot;
+            return slots2;
+        }
+
+        private static TrieNode merge(KeyValue a, KeyValue b, int shift) {
+            if (a.hash == b.hash)
+                return new CollisionNode(a.hash, new KeyValue[] { a, b });
+            int chunkA = (a.hash >>> shift) & MASK;
+            int chunkB = (b.hash >>> shift) & MASK;
+            if (chunkA == chunkB)
+                return new BitmapNode(1 << chunkA, new Object[] { merge(a, b, shift + BITS) });
+            else if (chunkA < chunkB)
+                return new BitmapNode((1 << chunkA) | (1 << chunkB), new Object[] { a, b });
+            else
+                return new BitmapNode((1 << chunkA) | (1 << chunkB), new Object[] { b, a });
+        }
+    }
+
+    /**
+     * Holds the mappings of keys with the same full hash.
+     */
+    private static final class CollisionNode extends TrieNode {
+
+        private final int hash;
+        private final KeyValue[] kvs;
+
+        CollisionNode(int hash, KeyValue[] kvs) {
+            this.hash = hash;
+            this.kvs = kvs;
+        }
+
+        private int indexOf(Object key, int hash) {
+            for (int i = 0; i < kvs.length; i++)
+                if (kvs[i].matches(key, hash))
+                    return i;
+            return -1;
+        }
+
+        @Override
+        Object get(Object key, int hash, int shift) {
+            int i = indexOf(key, hash);
+            return i == -1 ? null : kvs[i].value;
+        }
+
+        @Override
+        TrieNode put(KeyValue kv, int shift, boolean[] added) {
+            if (kv.hash != hash)
+                // a key that shares only a prefix of the hash
+                return new BitmapNode(1 << ((hash >>> shift) & MASK), new Object[] { this })
+                        .put(kv, shift, added);
+            int i = indexOf(kv.key, kv.hash);
+            if (i == -1) {
+                added[0] = true;
+                KeyValue[] kvs2 = new KeyValue[kvs.length + 1];
+                System.arraycopy(kvs, 0, kvs2, 0, kvs.length);
+                kvs2[kvs.length] = kv;
+                return new CollisionNode(hash, kvs2);
+            } else if (kvs[i].value == kv.value)
+                return this;
+            else {
+                KeyValue[] kvs2 = kvs.clone();
+                kvs2[i] = kv;
+                return new CollisionNode(hash, kvs2);
+            }
+        }
+
+        @Override
+        TrieNode remove(Object key, int hash, int shift) {
+            int i = indexOf(key, hash);
+            if (i == -1)
+                return this;
+            else if (kvs.length == 1)
+                return null;
+            KeyValue[] kvs2 = new KeyValue[kvs.length - 1];
+            System.arraycopy(kvs, 0, kvs2, 0, i);
+            System.arraycopy(kvs, i + 1, kvs2, i, kvs.length - i - 1);
+            return new CollisionNode(this.hash, kvs2);
+        }
+
+        @Override
+        KeyValue single() {
+            return kvs.length == 1 ? kvs[0] : null;
+        }
+    }
+
+}
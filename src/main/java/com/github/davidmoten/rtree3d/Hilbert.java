@@ -0,0 +1,283 @@
+package com.github.davidmoten.rtree3d;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.github.davidmoten.rtree3d.geometry.Box;
+import com.github.davidmoten.rtree3d.geometry.Geometry;
+import com.github.davidmoten.rtree3d.geometry.HasGeometry;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+/**
+ * Orders entries and nodes of a Hilbert R-tree (Kamel and Faloutsos). The key
+ * of an entry is the position along a 3D Hilbert curve of the centre of its
+ * bounding box normalised to the bounds of the tree. The key of a node is its
+ * largest Hilbert value (LHV), the largest key of the entries below it. In a
+ * Hilbert R-tree the entries of each leaf and the children of each non-leaf
+ * are kept in key order so the LHV of a node is the key of its last entry.
+ */
+final class Hilbert {
+
+    /**
+     * Bits of the curve per dimension (3 * 21 bits fit in a long).
+     */
+    static final int BITS = 21;
+
+    private static final int MAX_ORDINATE = (1 << BITS) - 1;
+
+    private final Box bounds;
+
+    Hilbert(Box bounds) {
+        Preconditions.checkNotNull(bounds);
+        this.bounds = bounds;
+    }
+
+    Box bounds() {
+        return bounds;
+    }
+
+    /**
+     * Returns the key of an entry or the largest Hilbert value of a node.
+     *
+     * @param item
+     *            entry or node
+     * @return key
+     */
+    long key(HasGeometry item) {
+        if (item instanceof NonLeaf) {
+            List<? extends Node<?, ?>> children = ((NonLeaf<?, ?>) item).children();
+            return key(children.get(children.size() - 1));
+        } else if (item instanceof Leaf) {
+            List<? extends Entry<?, ?>> entries = ((Leaf<?, ?>) item).entries();
+            return key(entries.get(entries.size() - 1));
+        } else
+            return index(item.geometry().mbb());
+    }
+
+    /**
+     * Returns the Hilbert index of the centre of the box.
+     *
+     * @param b
+     *            box
+     * @return Hilbert index
+     */
+    long index(Box b) {
+        return index(ordinate(b.x1(), b.x2(), bounds.x1(), bounds.x2()),
+                ordinate(b.y1(), b.y2(), bounds.y1(), bounds.y2()),
+                ordinate(b.z1(), b.z2(), bounds.z1(), bounds.z2()), BITS);
+    }
+
+    private static int ordinate(float a1, float a2, float min, float max) {
+        if (max <= min)
+            return 0;
+        double d = ((a1 + (double) a2) / 2 - min) / (max - min);
+        return (int) Math.round(Math.max(0, Math.min(1, d)) * MAX_ORDINATE);
+    }
+
+    /**
+     * Returns the index along the 3D Hilbert curve of the given cell using the
+     * transpose algorithm of Skilling ("Programming the Hilbert curve", 2004).
+     *
+     * @param x
+     *            x ordinate in [0, 2^bits)
+     * @param y
+     *            y ordinate in [0, 2^bits)
+     * @param z
+     *            z ordinate in [0, 2^bits)
+     * @param bits
+     *            bits per ordinate
+     * @return index in [0, 2^(3 * bits))
+     */
+    @VisibleForTesting
+    static long index(int x, int y, int z, int bits) {
+        int m = 1 << (bits - 1);
+        // inverse undo
+        for (int q = m; q > 1; q >>>= 1) {
+            int p = q - 1;
+            if ((x & q) != 0)
+                x ^= p;
+            if ((y & q) != 0)
+                x ^= p;
+            else {
+                int t = (x ^ y) & p;
+                x ^= t;
+                y ^= t;
+            }
+            if ((z & q) != 0)
+                x ^= p;
+            else {
+                int t = (x ^ z) & p;
+                x ^= t;
+                z ^= t;
+            }
+        }
+        // gray encode
+        y ^= x;
+        z ^= y;
+        int t = 0;
+        for (int q = m; q > 1; q >>>= 1)
+            if ((z & q) != 0)
+                t ^= q - 1;
+        x ^= t;
+        y ^= t;
+        z ^= t;
+        // interleave the transposed bits
+        long h = 0;
+        for (int j = bits - 1; j >= 0; j--)
+            h = (h << 3) | (((x >>> j) & 1) << 2) | (((y >>> j) & 1) << 1) | ((z >>> j) & 1);
+        return h;
+    }
+
+    /**
+     * Returns a comparator of entries or nodes by key.
+     *
+     * @return comparator
+     */
+    Comparator<HasGeometry> comparator() {
+        return new Comparator<HasGeometry>() {
+            @Override
+            public int compare(HasGeometry a, HasGeometry b) {
+                long ka = key(a);
+                long kb = key(b);
+                return ka < kb ? -1 : (ka == kb ? 0 : 1);
+            }
+        };
+    }
+
+    /**
+     * Returns a copy of the items sorted by key.
+     */
+    <T extends HasGeometry> List<T> sort(List<T> items) {
+        List<T> list = new ArrayList<T>(items);
+        Collections.sort(list, comparator());
+        return list;
+    }
+
+    /**
+     * Returns a copy of the sorted list with the item inserted after the items
+     * with a key less than or equal to its key.
+     */
+    <T extends HasGeometry> List<T> insert(List<T> sorted, T item) {
+        List<T> list = new ArrayList<T>(sorted.size() + 1);
+        list.addAll(sorted);
+        list.add(position(sorted, item), item);
+        return list;
+    }
+
+    /**
+     * Returns the index at which the item should be inserted into the sorted
+     * list to keep it sorted (after any items with the same key).
+     */
+    <T extends HasGeometry> int position(List<T> sorted, T item) {
+        long k = key(item);
+        int lo = 0;
+        int hi = sorted.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key(sorted.get(mid)) <= k)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Returns the node a geometry should be inserted into: the first node
+     * (children are in key order) whose largest Hilbert value is at least the
+     * key of the geometry, or the last node if there is none.
+     */
+    <T, S extends Geometry> Node<T, S> select(Geometry g, List<? extends Node<T, S>> nodes) {
+        long k = index(g.mbb());
+        for (Node<T, S> node : nodes)
+            if (key(node) >= k)
+                return node;
+        return nodes.get(nodes.size() - 1);
+    }
+
+    /**
+     * Returns the items (in order) divided into <code>groups</code>
+     * consecutive groups whose sizes differ by at most one.
+     */
+    static <T> List<List<T>> divide(List<T> items, int groups) {
+        List<List<T>> list = new ArrayList<List<T>>(groups);
+        int n = items.size();
+        for (int i = 0; i < groups; i++)
+            list.add(new ArrayList<T>(items.subList(i * n / groups, (i + 1) * n / groups)));
+        return list;
+    }
+
+    /**
+     * Returns the contents of adjacent nodes (all leaves or all non-leaves
+     * given in key order) shared evenly in order between as few nodes as can
+     * hold them. Used for deferred splitting: an overflowing node and its
+     * cooperating sibling are redistributed into two nodes and only split
+     * into three when both are full.
+     *
+     * @param nodes
+     *            adjacent nodes in key order
+     * @param context
+     *            tree configuration
+     * @param edit
+     *            edit token of the transient owning the new nodes or null
+     * @return new nodes in key order
+     */
+    @SuppressWarnings("unchecked")
+    static <T, S extends Geometry> List<Node<T, S>> redistribute(List<? extends Node<T, S>> nodes,
+            Context context, Object edit) {
+        List<Node<T, S>> list = new ArrayList<Node<T, S>>(3);
+        if (nodes.get(0) instanceof Leaf) {
+            List<Entry<T, S>> items = new ArrayList<Entry<T, S>>();
+            for (Node<T, S> node : nodes)
+                items.addAll(((Leaf<T, S>) node).entries());
+            for (List<Entry<T, S>> group : divide(items, groups(items.size(), context)))
+                list.add(new Leaf<T, S>(group, Util.mbr(group), context, edit));
+        } else {
+            List<Node<T, S>> items = new ArrayList<Node<T, S>>();
+            for (Node<T, S> node : nodes)
+                items.addAll(((NonLeaf<T, S>) node).children());
+            for (List<Node<T, S>> group : divide(items, groups(items.size(), context)))
+                list.add(new NonLeaf<T, S>(group, Util.mbr(group), context, edit));
+        }
+        return list;
+    }
+
+    private static int groups(int n, Context context) {
+        return (n + context.maxChildren() - 1) / context.maxChildren();
+    }
+
+    /**
+     * Returns the items in key order divided into as few groups of at most
+     * <code>maxChildren</code> as possible.
+     */
+    <T extends HasGeometry> List<List<T>> split(List<T> items, Context context) {
+        return divide(sort(items), groups(items.size(), context));
+    }
+
+    /**
+     * Returns the root of a tree containing the entries packed in Hilbert
+     * order into full leaves and non-leaves.
+     */
+    static <T, S extends Geometry> Node<T, S> createRoot(List<Entry<T, S>> entries,
+            Context context) {
+        Preconditions.checkArgument(!entries.isEmpty());
+        Hilbert hilbert = context.hilbert().get();
+        List<Node<T, S>> nodes = new ArrayList<Node<T, S>>();
+        for (List<Entry<T, S>> group : SortTileRecursive.chunk(hilbert.sort(entries),
+                context.maxChildren(), context.minChildren()))
+            nodes.add(new Leaf<T, S>(group, context));
+        // the nodes of each level are already in key order
+        while (nodes.size() > 1) {
+            List<Node<T, S>> parents = new ArrayList<Node<T, S>>();
+            for (List<Node<T, S>> group : SortTileRecursive.chunk(nodes, context.maxChildren(),
+                    context.minChildren()))
+                parents.add(new NonLeaf<T, S>(group, context));
+            nodes = parents;
+        }
+        return nodes.get(0);
+    }
+
+}
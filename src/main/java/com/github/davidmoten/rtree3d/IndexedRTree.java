@@ -0,0 +1,173 @@
+package com.github.davidmoten.rtree3d;
+
+import com.github.davidmoten.rtree3d.geometry.Geometry;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+
+import rx.functions.Func1;
+
+/**
+ * An immutable {@link RTree} together with an index from a key of each entry
+ * value (for example the id of the object) to the entry so that entries can be
+ * deleted or moved by key. The index is a persistent hash trie so, like the
+ * tree, each change shares almost all of its structure with the previous
+ * version and older versions remain valid.
+ *
+ * <p>
+ * Looking up the entry gives its exact geometry so a delete descends only the
+ * nodes whose bounds contain that geometry, instead of every node it
+ * intersects, and never needs the caller to know the current geometry. Keys
+ * are unique: adding an entry whose key is already present replaces the
+ * existing entry.
+ * </p>
+ *
+ * @param <K>
+ *            the key type (must implement <code>equals</code> and
+ *            <code>hashCode</code>)
+ * @param <T>
+ *            the entry value type
+ * @param <S>
+ *            the entry geometry type
+ */
+public final class IndexedRTree<K, T, S extends Geometry> {
+
+    private final RTree<T, S> tree;
+    private final HashTrie<K, Entry<T, S>> index;
+    private final Func1<? super T, ? extends K> key;
+
+    private IndexedRTree(RTree<T, S> tree, HashTrie<K, Entry<T, S>> index,
+            Func1<? super T, ? extends K> key) {
+        this.tree = tree;
+        this.index = index;
+        this.key = key;
+    }
+
+    /**
+     * Returns the tree indexed by the given key of its entry values.
+     *
+     * @param <K>
+     *            the key type
+     * @param <T>
+     *            the entry value type
+     * @param <S>
+     *            the entry geometry type
+     * @param tree
+     *            the tree to index
+     * @param key
+     *            returns the key of an entry value
+     * @return indexed tree
+     * @throws RuntimeException
+     *             if two entries of the tree have the same key
+     */
+    public static <K, T, S extends Geometry> IndexedRTree<K, T, S> create(RTree<T, S> tree,
+            Func1<? super T, ? extends K> key) {
+        Preconditions.checkNotNull(tree);
+        Preconditions.checkNotNull(key);
+        HashTrie<K, Entry<T, S>> index = HashTrie.empty();
+        for (Entry<T, S> entry : tree.entries().toBlocking().toIterable()) {
+            K k = key.call(entry.value());
+            if (index.get(k) != null)
+                throw new RuntimeException("duplicate key: " + k);
+            index = index.put(k, entry);
+        }
+        return new IndexedRTree<K, T, S>(tree, index, key);
+    }
+
+    /**
+     * Returns the indexed tree.
+     *
+     * @return immutable tree
+     */
+    public RTree<T, S> tree() {
+        return tree;
+    }
+
+    /**
+     * Returns the number of entries.
+     *
+     * @return number of entries
+     */
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * Returns the entry with the given key if present.
+     *
+     * @param key
+     *            key of the entry value
+     * @return entry
+     */
+    public Optional<Entry<T, S>> get(K key) {
+        return Optional.fromNullable(index.get(key));
+    }
+
+    /**
+     * Returns a copy with the entry added, replacing any entry with the same
+     * key.
+     *
+     * @param entry
+     *            item to add
+     * @return a new indexed tree containing the entry
+     */
+    @SuppressWarnings("unchecked")
+    public IndexedRTree<K, T, S> add(Entry<? extends T, ? extends S> entry) {
+        K k = key.call(entry.value());
+        Entry<T, S> existing = index.get(k);
+        RTree<T, S> tree2 = existing == null ? tree : tree.delete(existing);
+        return new IndexedRTree<K, T, S>(tree2.add(entry), index.put(k, (Entry<T, S>) entry),
+                key);
+    }
+
+    /**
+     * Returns a copy with an entry of the given value and geometry added,
+     * replacing any entry with the same key.
+     *
+     * @param value
+     *            value of the entry
+     * @param geometry
+     *            geometry of the entry
+     * @return a new indexed tree containing the entry
+     */
+    public IndexedRTree<K, T, S> add(T value, S geometry) {
+        return add(Entry.entry(value, geometry));
+    }
+
+    /**
+     * Returns a copy without the entry with the given key (or this if there is
+     * no such entry).
+     *
+     * @param key
+     *            key of the entry value
+     * @return a new indexed tree without the entry
+     */
+    public IndexedRTree<K, T, S> delete(K key) {
+        Entry<T, S> existing = index.get(key);
+        if (existing == null)
+            return this;
+        else
+            return new IndexedRTree<K, T, S>(tree.delete(existing), index.remove(key), this.key);
+    }
+
+    /**
+     * Returns a copy with the value of the entry with the given key moved to
+     * the given geometry (or this if there is no such entry).
+     *
+     * @param key
+     *            key of the entry value
+     * @param geometry
+     *            new geometry of the entry
+     * @return a new indexed tree with the entry moved
+     */
+    public IndexedRTree<K, T, S> update(K key, S geometry) {
+        Entry<T, S> existing = index.get(key);
+        if (existing == null)
+            return this;
+        else {
+            Entry<T, S> entry = Entry.entry(existing.value(), geometry);
+            return new IndexedRTree<K, T, S>(tree.move(existing, geometry),
+                    index.put(key, entry), this.key);
+        }
+    }
+
+}
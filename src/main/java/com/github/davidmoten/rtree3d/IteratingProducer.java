@@ -0,0 +1,91 @@
+package com.github.davidmoten.rtree3d;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.davidmoten.rx.util.BackpressureUtils;
+
+import rx.Producer;
+import rx.Subscriber;
+
+/**
+ * A {@link Producer} emitting the items of an iteration (given by
+ * {@link #hasNext()} and {@link #next()}) as they are requested. The
+ * subscriber is completed as soon as the last item is emitted rather than
+ * when a further request arrives so that a subscriber requesting exactly the
+ * number of items available still completes.
+ *
+ * @param <E>
+ *            item type
+ */
+abstract class IteratingProducer<E> implements Producer {
+
+    private final Subscriber<? super E> subscriber;
+    private final AtomicLong requested = new AtomicLong(0);
+    // only accessed by the thread that is draining (guarded by requested)
+    private boolean done;
+
+    IteratingProducer(Subscriber<? super E> subscriber) {
+        this.subscriber = subscriber;
+    }
+
+    /**
+     * Returns true if there is another item to emit. Only called by the
+     * thread that is draining.
+     *
+     * @return true if there is another item
+     */
+    abstract boolean hasNext();
+
+    /**
+     * Returns the next item. Only called after {@link #hasNext()} has returned
+     * true.
+     *
+     * @return next item
+     */
+    abstract E next();
+
+    @Override
+    public void request(long n) {
+        try {
+            if (n > 0 && BackpressureUtils.getAndAddRequest(requested, n) == 0 && !complete())
+                drain();
+        } catch (RuntimeException e) {
+            subscriber.onError(e);
+        }
+    }
+
+    private void drain() {
+        long n = requested.get();
+        while (true) {
+            long count = 0;
+            while (count != n) {
+                if (subscriber.isUnsubscribed())
+                    return;
+                subscriber.onNext(next());
+                count++;
+                if (complete())
+                    return;
+            }
+            n = requested.addAndGet(-count);
+            if (n == 0)
+                return;
+        }
+    }
+
+    /**
+     * Completes the subscriber if there are no more items to emit.
+     *
+     * @return true if finished
+     */
+    private boolean complete() {
+        if (done)
+            return true;
+        else if (hasNext())
+            return false;
+        done = true;
+        if (!subscriber.isUnsubscribed())
+            subscriber.onCompleted();
+        return true;
+    }
+
+}
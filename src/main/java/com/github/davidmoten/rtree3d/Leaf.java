@@ -12,27 +12,92 @@ import rx.functions.Func1;
 import com.github.davidmoten.rtree3d.geometry.Box;
 import com.github.davidmoten.rtree3d.geometry.Geometry;
 import com.github.davidmoten.rtree3d.geometry.ListPair;
+import com.github.davidmoten.rtree3d.geometry.MovingBox;
 import com.google.common.base.Optional;
 
 final class Leaf<T, S extends Geometry> implements Node<T, S> {
 
+    // the entries list is only modified while the leaf is owned by a
+    // TransientRTree (edit is not null), the leaf is then replaced by a new
+    // leaf holding the same list
     private final List<Entry<T, S>> entries;
     private final Box mbr;
+    // aggregate of the entry values using the monoid of the context (null if
+    // none)
+    private final Object aggregate;
     private final Context context;
+    private final Object edit;
+    // time-parameterized bounds of a TPR-tree node (null until needed), a
+    // MovingBox is immutable so a racy lazy initialization is benign
+    private MovingBox moving;
 
     Leaf(List<Entry<T, S>> entries, Context context) {
         this(entries, Util.mbr(entries), context);
     }
     
     Leaf(List<Entry<T, S>> entries, Box mbr, Context context) {
-        this.entries = entries;
+        this(entries, mbr, context, null);
+    }
+
+    /**
+     * Constructor. If <code>edit</code> is not null the leaf is owned by the
+     * transient with that edit token and <code>entries</code> must be a
+     * mutable list that is not shared.
+     */
+    Leaf(List<Entry<T, S>> entries, Box mbr, Context context, Object edit) {
+        if (edit == null && context != null && context.packedLeaves())
+            this.entries = PackedEntries.pack(entries);
+        else
+            this.entries = entries;
         this.context = context;
         this.mbr = mbr;
+        this.edit = edit;
+        this.aggregate = aggregate(this.entries, context);
+    }
+
+    private Leaf(List<Entry<T, S>> entries, Box mbr, Object aggregate, Context context,
+            Object edit) {
+        this.entries = entries;
+        this.mbr = mbr;
+        this.aggregate = aggregate;
+        this.context = context;
+        this.edit = edit;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static <T, S extends Geometry> Object aggregate(List<Entry<T, S>> entries,
+            Context context) {
+        if (context == null || !context.monoid().isPresent())
+            return null;
+        Monoid monoid = context.monoid().get();
+        Object a = monoid.identity();
+        if (entries instanceof PackedEntries) {
+            PackedEntries<T, S> packed = (PackedEntries<T, S>) entries;
+            for (int i = 0; i < packed.size(); i++)
+                a = monoid.combine(a, monoid.lift(packed.value(i)));
+        } else {
+            for (Entry<T, S> entry : entries)
+                a = monoid.combine(a, monoid.lift(entry.value()));
+        }
+        return a;
     }
 
     @Override
     public Geometry geometry() {
-        return mbr;
+        if (context != null && context.referenceTime().isPresent())
+            return movingBounds();
+        else
+            return mbr;
+    }
+
+    private MovingBox movingBounds() {
+        // computed when first needed
+        MovingBox m = moving;
+        if (m == null) {
+            m = Util.movingBounds(mbr, context.referenceTime().get(), entries);
+            moving = m;
+        }
+        return m;
     }
 
     List<Entry<T, S>> entries() {
@@ -40,31 +105,105 @@ final class Leaf<T, S extends Geometry> implements Node<T, S> {
     }
 
     @Override
-    public void search(Func1<? super Geometry, Boolean> condition,
-            Subscriber<? super Entry<T, S>> subscriber) {
+    public void search(SearchCondition condition, Subscriber<? super Entry<T, S>> subscriber) {
+
+        if (!condition.test(geometry()))
+            return;
 
-        if (!condition.call(this.geometry().mbb()))
+        if (entries instanceof PackedEntries) {
+            search((PackedEntries<T, S>) entries, condition, subscriber);
             return;
+        }
 
         for (final Entry<T, S> entry : entries) {
             if (subscriber.isUnsubscribed())
                 return;
             else {
-                if (condition.call(entry.geometry()))
+                if (condition.test(entry.geometry()))
                     subscriber.onNext(entry);
             }
         }
     }
 
+    private static <T, S extends Geometry> void search(PackedEntries<T, S> entries,
+            SearchCondition condition, Subscriber<? super Entry<T, S>> subscriber) {
+        // only create an entry when it is emitted
+        for (int i = 0; i < entries.size(); i++) {
+            if (subscriber.isUnsubscribed())
+                return;
+            else if (entries.test(i, condition))
+                subscriber.onNext(entries.get(i));
+        }
+    }
+
     @Override
     public int count() {
         return entries.size();
     }
 
+    @Override
+    public int countEntries() {
+        return entries.size();
+    }
+
+    @Override
+    public int countEntries(Box region) {
+        if (!region.intersects(mbr))
+            return 0;
+        else if (region.contains(mbr))
+            return entries.size();
+        int count = 0;
+        if (entries instanceof PackedEntries) {
+            PackedEntries<T, S> packed = (PackedEntries<T, S>) entries;
+            SearchCondition condition = SearchCondition.intersects(region);
+            for (int i = 0; i < packed.size(); i++)
+                if (packed.test(i, condition))
+                    count++;
+        } else {
+            for (Entry<T, S> entry : entries)
+                if (entry.geometry().intersects(region))
+                    count++;
+        }
+        return count;
+    }
+
+    @Override
+    public Object aggregate() {
+        return aggregate;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    @Override
+    public Object aggregate(Box region) {
+        Monoid monoid = context.monoid().get();
+        if (!region.intersects(mbr))
+            return monoid.identity();
+        else if (region.contains(mbr))
+            return aggregate;
+        Object a = monoid.identity();
+        if (entries instanceof PackedEntries) {
+            PackedEntries<T, S> packed = (PackedEntries<T, S>) entries;
+            SearchCondition condition = SearchCondition.intersects(region);
+            for (int i = 0; i < packed.size(); i++)
+                if (packed.test(i, condition))
+                    a = monoid.combine(a, monoid.lift(packed.value(i)));
+        } else {
+            for (Entry<T, S> entry : entries)
+                if (entry.geometry().intersects(region))
+                    a = monoid.combine(a, monoid.lift(entry.value()));
+        }
+        return a;
+    }
+
     @Override
     public List<Node<T, S>> add(Entry<? extends T, ? extends S> entry) {
         @SuppressWarnings("unchecked")
-        final List<Entry<T, S>> entries2 = Util.add(entries, (Entry<T, S>) entry);
+        Entry<T, S> e = (Entry<T, S>) entry;
+        final List<Entry<T, S>> entries2;
+        if (context.hilbert().isPresent())
+            entries2 = context.hilbert().get().insert(entries, e);
+        else
+            entries2 = Util.add(entries, e);
         if (entries2.size() <= context.maxChildren())
             return Collections.singletonList((Node<T, S>) new Leaf<T, S>(entries2, context));
         else {
@@ -73,6 +212,34 @@ final class Leaf<T, S extends Geometry> implements Node<T, S> {
         }
     }
 
+    @Override
+    public List<Node<T, S>> addAll(List<Entry<T, S>> entries) {
+        if (context.hilbert().isPresent()
+                || this.entries.size() + entries.size() <= 2 * context.maxChildren()) {
+            List<Entry<T, S>> entries2 = new ArrayList<Entry<T, S>>(this.entries.size()
+                    + entries.size());
+            entries2.addAll(this.entries);
+            entries2.addAll(entries);
+            List<Node<T, S>> list = new ArrayList<Node<T, S>>();
+            for (List<Entry<T, S>> group : Util.split(entries2, context))
+                list.add(new Leaf<T, S>(group, context));
+            return list;
+        }
+        // splitting a large overflow in one go is quadratic or worse in the
+        // number of entries for the splitters so instead the entries are
+        // added one at a time to this leaf and the leaves split off from it
+        List<Node<T, S>> leaves = new ArrayList<Node<T, S>>();
+        leaves.add(this);
+        for (Entry<T, S> entry : entries) {
+            Node<T, S> leaf = context.selector().select(entry.geometry().mbb(), leaves);
+            List<Node<T, S>> list = leaf.add(entry);
+            leaves.set(leaves.indexOf(leaf), list.get(0));
+            if (list.size() > 1)
+                leaves.add(list.get(1));
+        }
+        return leaves;
+    }
+
     private List<Node<T, S>> makeLeaves(ListPair<Entry<T, S>> pair) {
         List<Node<T, S>> list = new ArrayList<Node<T, S>>();
         list.add(new Leaf<T, S>(pair.group1().list(), context));
@@ -81,7 +248,70 @@ final class Leaf<T, S extends Geometry> implements Node<T, S> {
     }
 
     @Override
-    public NodeAndEntries<T, S> delete(Entry<? extends T, ? extends S> entry, boolean all) {
+    public Node<T, S> editable(Object edit) {
+        if (this.edit == edit)
+            return this;
+        else
+            return new Leaf<T, S>(new ArrayList<Entry<T, S>>(entries), mbr, context, edit);
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    @Override
+    public List<Node<T, S>> insert(Entry<T, S> entry, Object edit) {
+        // same result as add but adds to the entries list of this leaf in place
+        if (context.hilbert().isPresent())
+            entries.add(context.hilbert().get().position(entries, entry), entry);
+        else
+            entries.add(entry);
+        if (entries.size() <= context.maxChildren()) {
+            Object aggregate2 = aggregate;
+            if (context.monoid().isPresent()) {
+                Monoid monoid = context.monoid().get();
+                aggregate2 = monoid.combine(aggregate, monoid.lift(entry.value()));
+            }
+            return Collections.singletonList((Node<T, S>) new Leaf<T, S>(entries,
+                    mbr.add(entry.geometry().mbb()), aggregate2, context, edit));
+        } else {
+            ListPair<Entry<T, S>> pair = context.splitter().split(entries, context.minChildren());
+            List<Entry<T, S>> entries1 = new ArrayList<Entry<T, S>>(pair.group1().list());
+            List<Entry<T, S>> entries2 = new ArrayList<Entry<T, S>>(pair.group2().list());
+            List<Node<T, S>> list = new ArrayList<Node<T, S>>(2);
+            list.add(new Leaf<T, S>(entries1, Util.mbr(entries1), context, edit));
+            list.add(new Leaf<T, S>(entries2, Util.mbr(entries2), context, edit));
+            return list;
+        }
+    }
+
+    @Override
+    public Node<T, S> move(Entry<? extends T, ? extends S> entry, Entry<T, S> entry2,
+            Box enclosing, Object edit) {
+        int index = entries.indexOf(entry);
+        if (index == -1)
+            return null;
+        Box b = entry2.geometry().mbb();
+        if (!mbr.contains(b) && (enclosing == null || !enclosing.contains(b)))
+            return null;
+        final List<Entry<T, S>> entries2;
+        if (edit != null && this.edit == edit)
+            entries2 = entries;
+        else
+            entries2 = new ArrayList<Entry<T, S>>(entries);
+        entries2.set(index, entry2);
+        return new Leaf<T, S>(entries2, Util.mbr(entries2), context, edit);
+    }
+
+    @Override
+    public Node<T, S> persistent(Object edit) {
+        if (edit != null && this.edit == edit)
+            // packs the entries if the context has packed leaves
+            return new Leaf<T, S>(entries, mbr, context);
+        else
+            return this;
+    }
+
+    @Override
+    public NodeAndEntries<T, S> delete(Entry<? extends T, ? extends S> entry, boolean all,
+            Object edit) {
         if (!entries.contains(entry)) {
             return new NodeAndEntries<T, S>(of(this), Collections.<Entry<T, S>> emptyList(), 0);
         } else {
@@ -93,7 +323,7 @@ final class Leaf<T, S extends Geometry> implements Node<T, S> {
                 numDeleted += 1;
 
             if (entries2.size() >= context.minChildren()) {
-                Leaf<T, S> node = new Leaf<T, S>(entries2, context);
+                Leaf<T, S> node = new Leaf<T, S>(entries2, Util.mbr(entries2), context, edit);
                 return new NodeAndEntries<T, S>(of(node), Collections.<Entry<T, S>> emptyList(),
                         numDeleted);
             } else {
@@ -103,4 +333,23 @@ final class Leaf<T, S extends Geometry> implements Node<T, S> {
         }
     }
 
+    @Override
+    public NodeAndEntries<T, S> delete(Box region,
+            Func1<? super Entry<T, S>, Boolean> predicate) {
+        List<Entry<T, S>> entries2 = new ArrayList<Entry<T, S>>(entries.size());
+        for (Entry<T, S> entry : entries)
+            if (!entry.geometry().intersects(region)
+                    || (predicate != null && !predicate.call(entry)))
+                entries2.add(entry);
+        int numDeleted = entries.size() - entries2.size();
+        if (numDeleted == 0)
+            return new NodeAndEntries<T, S>(of(this), Collections.<Entry<T, S>> emptyList(), 0);
+        else if (entries2.size() >= context.minChildren())
+            return new NodeAndEntries<T, S>(of(new Leaf<T, S>(entries2, context)),
+                    Collections.<Entry<T, S>> emptyList(), numDeleted);
+        else
+            return new NodeAndEntries<T, S>(Optional.<Node<T, S>> absent(), entries2,
+                    numDeleted);
+    }
+
 }
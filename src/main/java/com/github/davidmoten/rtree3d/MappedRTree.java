@@ -0,0 +1,676 @@
+package com.github.davidmoten.rtree3d;
+
+import static com.github.davidmoten.rtree3d.Serializer.BOX;
+import static com.github.davidmoten.rtree3d.Serializer.LEAF;
+import static com.github.davidmoten.rtree3d.Serializer.MOVING_BOX;
+import static com.github.davidmoten.rtree3d.Serializer.NODE_HEADER_BYTES;
+import static com.github.davidmoten.rtree3d.Serializer.POINT;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import com.github.davidmoten.rtree3d.geometry.Box;
+import com.github.davidmoten.rtree3d.geometry.Geometry;
+import com.github.davidmoten.rtree3d.geometry.MovingBox;
+import com.github.davidmoten.rtree3d.geometry.Point;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+
+import rx.Observable;
+import rx.functions.Func1;
+
+/**
+ * A read-only R-tree that is searched in place in a buffer holding a tree
+ * written by {@link Serializer} (typically a memory mapped file). No nodes,
+ * boxes or entries are created while traversing, an {@link Entry} (and its
+ * value) is only created when it is emitted. Opening a tree only reads the
+ * header so startup is near instant regardless of the size of the tree and
+ * several processes mapping the same file share the operating system page
+ * cache.
+ *
+ * <p>
+ * A single {@link ByteBuffer} is limited to {@link Integer#MAX_VALUE} bytes so
+ * the tree is held as consecutive 1GB regions (each mapped separately) and
+ * positions in the tree are longs. Each region overlaps the next by a few
+ * bytes so that a number never straddles two regions.
+ * </p>
+ *
+ * <p>
+ * A time-parameterized tree is searched at its reference time, as with
+ * {@link RTree#search(Box)}.
+ * </p>
+ *
+ * @param <T>
+ *            the entry value type
+ * @param <S>
+ *            the entry geometry type
+ */
+public final class MappedRTree<T, S extends Geometry> {
+
+    static final int REGION_BITS = 30;
+    static final long REGION_SIZE = 1L << REGION_BITS;
+
+    /**
+     * Bytes each region extends into the next, enough for the widest number
+     * read (a node length).
+     */
+    private static final int OVERLAP = 8;
+
+    private final ByteBuffer[] regions;
+    private final int regionBits;
+    private final long regionMask;
+    private final Func1<InputStream, T> objectDeserializer;
+    private final Context context;
+    private final int size;
+    private final Optional<Long> root;
+
+    private MappedRTree(ByteBuffer[] regions, int regionBits,
+            Func1<InputStream, T> objectDeserializer) {
+        this.regions = regions;
+        this.regionBits = regionBits;
+        this.regionMask = (1L << regionBits) - 1;
+        this.objectDeserializer = objectDeserializer;
+        if (getInt(0) != Serializer.MAGIC)
+            throw new RuntimeException("buffer does not contain a serialized RTree");
+        int version = getInt(4);
+        if (version != Serializer.VERSION)
+            throw new RuntimeException("unsupported serialization version: " + version);
+        int minChildren = getInt(8);
+        int maxChildren = getInt(12);
+        byte strategy = get(16);
+        boolean packedLeaves = get(17) != 0;
+        long p = 18;
+        Optional<Box> bounds;
+        if (get(p++) != 0) {
+            bounds = Optional.of(box(p));
+            p += 24;
+        } else
+            bounds = Optional.absent();
+        Optional<Double> referenceTime;
+        if (get(p++) != 0) {
+            referenceTime = Optional.of(getDouble(p));
+            p += 8;
+        } else
+            referenceTime = Optional.absent();
+        this.context = Serializer.context(minChildren, maxChildren, strategy, packedLeaves,
+                bounds, referenceTime);
+        this.size = getInt(p);
+        p += 4;
+        if (get(p++) != 0)
+            this.root = Optional.of(p);
+        else
+            this.root = Optional.absent();
+    }
+
+    /**
+     * Memory maps the given file (written by {@link Serializer}) read-only and
+     * returns a tree that searches it in place.
+     *
+     * @param <T>
+     *            the entry value type
+     * @param <S>
+     *            the entry geometry type
+     * @param file
+     *            file written by {@link Serializer}
+     * @param objectDeserializer
+     *            reads an entry value from a stream containing only the bytes
+     *            written for that value
+     * @return read-only tree
+     */
+    public static <T, S extends Geometry> MappedRTree<T, S> open(File file,
+            Func1<InputStream, T> objectDeserializer) {
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            FileChannel channel = raf.getChannel();
+            long length = channel.size();
+            ByteBuffer[] regions = new ByteBuffer[regionCount(length, REGION_BITS)];
+            for (int i = 0; i < regions.length; i++) {
+                long start = (long) i << REGION_BITS;
+                // the mapping stays valid after the channel is closed
+                regions[i] = channel.map(MapMode.READ_ONLY, start,
+                        Math.min(REGION_SIZE + OVERLAP, length - start));
+            }
+            return new MappedRTree<T, S>(regions, REGION_BITS, objectDeserializer);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            if (raf != null)
+                try {
+                    raf.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+        }
+    }
+
+    /**
+     * Returns a tree that searches in place the tree written by
+     * {@link Serializer} starting at the current position of the given buffer.
+     * The buffer must not be modified while the tree is in use.
+     *
+     * @param <T>
+     *            the entry value type
+     * @param <S>
+     *            the entry geometry type
+     * @param bb
+     *            buffer holding a serialized tree
+     * @param objectDeserializer
+     *            reads an entry value from a stream containing only the bytes
+     *            written for that value
+     * @return read-only tree
+     */
+    public static <T, S extends Geometry> MappedRTree<T, S> create(ByteBuffer bb,
+            Func1<InputStream, T> objectDeserializer) {
+        return create(bb, REGION_BITS, objectDeserializer);
+    }
+
+    /**
+     * As {@link #create(ByteBuffer, Func1)} but splits the buffer into regions
+     * of <code>2^regionBits</code> bytes, the same as a file of more than one
+     * region is mapped.
+     */
+    static <T, S extends Geometry> MappedRTree<T, S> create(ByteBuffer bb, int regionBits,
+            Func1<InputStream, T> objectDeserializer) {
+        Preconditions.checkArgument(regionBits > 3 && regionBits <= REGION_BITS);
+        int start = bb.position();
+        int length = bb.limit() - start;
+        ByteBuffer[] regions = new ByteBuffer[regionCount(length, regionBits)];
+        for (int i = 0; i < regions.length; i++) {
+            int regionStart = start + (i << regionBits);
+            ByteBuffer region = bb.duplicate();
+            region.position(regionStart);
+            region.limit((int) Math.min((long) regionStart + (1L << regionBits) + OVERLAP,
+                    bb.limit()));
+            regions[i] = region.slice();
+        }
+        return new MappedRTree<T, S>(regions, regionBits, objectDeserializer);
+    }
+
+    private static int regionCount(long length, int regionBits) {
+        return (int) Math.max(1, (length + (1L << regionBits) - 1) >>> regionBits);
+    }
+
+    /**
+     * Returns an {@link Observable} sequence of all {@link Entry}s in the
+     * R-tree whose minimum bounding rectangle intersects with the given
+     * rectangle.
+     *
+     * @param r
+     *            rectangle to check intersection with the entry mbr
+     * @return entries that intersect with the rectangle r
+     */
+    public Observable<Entry<T, S>> search(final Box r) {
+        return search(SearchCondition.intersects(r));
+    }
+
+    /**
+     * Returns an {@link Observable} sequence of all {@link Entry}s in the
+     * R-tree whose minimum bounding rectangle intersects with the given point.
+     *
+     * @param p
+     *            point to check intersection with the entry mbr
+     * @return entries that intersect with the point p
+     */
+    public Observable<Entry<T, S>> search(final Point p) {
+        return search(p.mbb());
+    }
+
+    /**
+     * Returns an {@link Observable} sequence of all {@link Entry}s in the
+     * R-tree whose minimum bounding rectangles are strictly less than
+     * maxDistance from the given rectangle.
+     *
+     * @param r
+     *            rectangle to measure distance from
+     * @param maxDistance
+     *            entries returned must be within this distance from rectangle r
+     * @return the sequence of matching entries
+     */
+    public Observable<Entry<T, S>> search(final Box r, final double maxDistance) {
+        return search(SearchCondition.distanceLessThan(r, maxDistance));
+    }
+
+    /**
+     * Returns an {@link Observable} sequence of all {@link Entry}s in the
+     * R-tree whose minimum bounding rectangles are within maxDistance from the
+     * given point.
+     *
+     * @param p
+     *            point to measure distance from
+     * @param maxDistance
+     *            entries returned must be within this distance from point p
+     * @return the sequence of matching entries
+     */
+    public Observable<Entry<T, S>> search(final Point p, final double maxDistance) {
+        return search(p.mbb(), maxDistance);
+    }
+
+    /**
+     * Returns the nearest k entries (k=maxCount) to the given rectangle where
+     * the entries are strictly less than a given maximum distance from the
+     * rectangle. The tree is traversed best-first.
+     *
+     * @param r
+     *            rectangle
+     * @param maxDistance
+     *            max distance of returned entries from the rectangle
+     * @param maxCount
+     *            max number of entries to return
+     * @return nearest entries to maxCount, in ascending order of distance
+     */
+    public Observable<Entry<T, S>> nearest(final Box r, final double maxDistance,
+            final int maxCount) {
+        Preconditions.checkArgument(maxCount >= 0);
+        if (!root.isPresent())
+            return Observable.empty();
+        else
+            return Observable.from(new Iterable<Entry<T, S>>() {
+                @Override
+                public Iterator<Entry<T, S>> iterator() {
+                    return new NearestIterator(r, maxDistance, maxCount);
+                }
+            });
+    }
+
+    /**
+     * Returns the nearest k entries (k=maxCount) to the given point where the
+     * entries are strictly less than a given maximum distance from the point.
+     *
+     * @param p
+     *            point
+     * @param maxDistance
+     *            max distance of returned entries from the point
+     * @param maxCount
+     *            max number of entries to return
+     * @return nearest entries to maxCount, in ascending order of distance
+     */
+    public Observable<Entry<T, S>> nearest(final Point p, final double maxDistance,
+            int maxCount) {
+        return nearest(p.mbb(), maxDistance, maxCount);
+    }
+
+    /**
+     * Returns all entries in the tree as an {@link Observable} sequence.
+     *
+     * @return all entries in the R-tree
+     */
+    public Observable<Entry<T, S>> entries() {
+        return search(SearchCondition.ALWAYS_TRUE);
+    }
+
+    /**
+     * Returns the number of entries in the tree.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns true if and only if the R-tree is empty of entries.
+     *
+     * @return is R-tree empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the configuration the tree was written with.
+     *
+     * @return configuration of the tree
+     */
+    public Context context() {
+        return context;
+    }
+
+    /**
+     * If the RTree has no entries returns {@link Optional#absent} otherwise
+     * returns the minimum bounding rectangle of all entries in the RTree.
+     *
+     * @return minimum bounding rectangle of all entries in RTree
+     */
+    public Optional<Box> mbr() {
+        if (!root.isPresent())
+            return Optional.absent();
+        else
+            return Optional.of(box(root.get() + 9));
+    }
+
+    private Observable<Entry<T, S>> search(final SearchCondition condition) {
+        if (!root.isPresent())
+            return Observable.empty();
+        else
+            return Observable.from(new Iterable<Entry<T, S>>() {
+                @Override
+                public Iterator<Entry<T, S>> iterator() {
+                    return new SearchIterator(condition);
+                }
+            });
+    }
+
+    /**
+     * Depth-first traversal of the buffer. For each level of the current path
+     * the position of the next child and the number of children remaining are
+     * held. Subtrees that fail the condition are skipped using the node
+     * length.
+     */
+    private final class SearchIterator implements Iterator<Entry<T, S>> {
+
+        private final SearchCondition condition;
+        private long[] positions = new long[8];
+        private int[] remaining = new int[8];
+        private boolean[] leaf = new boolean[8];
+        private int depth = -1;
+        private Entry<T, S> next;
+
+        SearchIterator(SearchCondition condition) {
+            this.condition = condition;
+            if (testBox(condition, root.get() + 9))
+                push(root.get());
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null)
+                next = computeNext();
+            return next != null;
+        }
+
+        @Override
+        public Entry<T, S> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            Entry<T, S> result = next;
+            next = null;
+            return result;
+        }
+
+        @Override
+        public void remove() {
+            throw new RuntimeException("not supported");
+        }
+
+        private Entry<T, S> computeNext() {
+            while (depth >= 0) {
+                if (remaining[depth] == 0) {
+                    depth--;
+                    continue;
+                }
+                long p = positions[depth];
+                remaining[depth]--;
+                if (leaf[depth]) {
+                    positions[depth] = nextEntryPosition(p);
+                    if (testEntry(condition, p))
+                        return entry(p);
+                } else {
+                    positions[depth] = p + getLong(p + 1);
+                    if (testBox(condition, p + 9))
+                        push(p);
+                }
+            }
+            return null;
+        }
+
+        private void push(long node) {
+            depth++;
+            if (depth == positions.length) {
+                positions = Arrays.copyOf(positions, depth * 2);
+                remaining = Arrays.copyOf(remaining, depth * 2);
+                leaf = Arrays.copyOf(leaf, depth * 2);
+            }
+            positions[depth] = node + NODE_HEADER_BYTES;
+            remaining[depth] = getInt(node + NODE_HEADER_BYTES - 4);
+            leaf[depth] = get(node) == LEAF;
+        }
+
+    }
+
+    /**
+     * Best-first traversal of the buffer using a priority queue of node and
+     * entry positions ordered by distance from the query rectangle.
+     */
+    private final class NearestIterator implements Iterator<Entry<T, S>> {
+
+        private final Box r;
+        private final double maxDistance;
+        private final int maxCount;
+        private final PriorityQueue<Candidate> queue = new PriorityQueue<Candidate>(16,
+                CANDIDATE_COMPARATOR);
+        private int emitted;
+        private Entry<T, S> next;
+
+        NearestIterator(Box r, double maxDistance, int maxCount) {
+            this.r = r;
+            this.maxDistance = maxDistance;
+            this.maxCount = maxCount;
+            offer(root.get(), false, distance(root.get() + 9, 6));
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null)
+                next = computeNext();
+            return next != null;
+        }
+
+        @Override
+        public Entry<T, S> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            Entry<T, S> result = next;
+            next = null;
+            return result;
+        }
+
+        @Override
+        public void remove() {
+            throw new RuntimeException("not supported");
+        }
+
+        private Entry<T, S> computeNext() {
+            if (emitted == maxCount)
+                return null;
+            Candidate c;
+            while ((c = queue.poll()) != null) {
+                if (c.isEntry) {
+                    emitted++;
+                    return entry(c.position);
+                }
+                int count = getInt(c.position + NODE_HEADER_BYTES - 4);
+                long p = c.position + NODE_HEADER_BYTES;
+                if (get(c.position) == LEAF) {
+                    for (int i = 0; i < count; i++) {
+                        offer(p, true, distance(p + 1, get(p) == POINT ? 3 : 6));
+                        p = nextEntryPosition(p);
+                    }
+                } else {
+                    for (int i = 0; i < count; i++) {
+                        offer(p, false, distance(p + 9, 6));
+                        p += getLong(p + 1);
+                    }
+                }
+            }
+            return null;
+        }
+
+        private double distance(long p, int numFloats) {
+            float x1 = getFloat(p);
+            float y1 = getFloat(p + 4);
+            float z1 = getFloat(p + 8);
+            if (numFloats == 3)
+                return Box.distance(x1, y1, z1, x1, y1, z1, r);
+            else
+                return Box.distance(x1, y1, z1, getFloat(p + 12), getFloat(p + 16),
+                        getFloat(p + 20), r);
+        }
+
+        private void offer(long position, boolean isEntry, double distance) {
+            if (distance < maxDistance)
+                queue.offer(new Candidate(position, isEntry, distance));
+        }
+    }
+
+    private static final class Candidate {
+        final long position;
+        final boolean isEntry;
+        final double distance;
+
+        Candidate(long position, boolean isEntry, double distance) {
+            this.position = position;
+            this.isEntry = isEntry;
+            this.distance = distance;
+        }
+    }
+
+    /**
+     * Orders by ascending distance. At equal distance entries come before
+     * nodes and otherwise buffer order is used.
+     */
+    private static final Comparator<Candidate> CANDIDATE_COMPARATOR = new Comparator<Candidate>() {
+        @Override
+        public int compare(Candidate a, Candidate b) {
+            int c = Double.compare(a.distance, b.distance);
+            if (c != 0)
+                return c;
+            else if (a.isEntry != b.isEntry)
+                return a.isEntry ? -1 : 1;
+            else
+                return a.position < b.position ? -1 : (a.position == b.position ? 0 : 1);
+        }
+    };
+
+    private boolean testBox(SearchCondition condition, long p) {
+        return condition.test(getFloat(p), getFloat(p + 4), getFloat(p + 8), getFloat(p + 12),
+                getFloat(p + 16), getFloat(p + 20));
+    }
+
+    private boolean testEntry(SearchCondition condition, long p) {
+        if (get(p) == POINT) {
+            float x = getFloat(p + 1);
+            float y = getFloat(p + 5);
+            float z = getFloat(p + 9);
+            return condition.test(x, y, z, x, y, z);
+        } else
+            return testBox(condition, p + 1);
+    }
+
+    private long nextEntryPosition(long p) {
+        long lengthPosition = p + 1 + geometryBytes(get(p));
+        return lengthPosition + 4 + getInt(lengthPosition);
+    }
+
+    private static int geometryBytes(byte type) {
+        if (type == POINT)
+            return 12;
+        else if (type == BOX)
+            return 24;
+        else if (type == MOVING_BOX)
+            return 24 + 8 + 24;
+        else
+            throw new RuntimeException("unexpected geometry type: " + type);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Entry<T, S> entry(long p) {
+        byte type = get(p);
+        final Geometry g;
+        if (type == POINT)
+            g = Point.create(getFloat(p + 1), getFloat(p + 5), getFloat(p + 9));
+        else if (type == BOX)
+            g = box(p + 1);
+        else if (type == MOVING_BOX)
+            g = MovingBox.create(box(p + 1), getDouble(p + 25), box(p + 33));
+        else
+            throw new RuntimeException("unexpected geometry type: " + type);
+        long lengthPosition = p + 1 + geometryBytes(type);
+        long start = lengthPosition + 4;
+        InputStream value = new RegionInputStream(start, start + getInt(lengthPosition));
+        return Entry.entry(objectDeserializer.call(value), (S) g);
+    }
+
+    private Box box(long p) {
+        return Box.create(getFloat(p), getFloat(p + 4), getFloat(p + 8), getFloat(p + 12),
+                getFloat(p + 16), getFloat(p + 20));
+    }
+
+    private ByteBuffer region(long p) {
+        return regions[(int) (p >>> regionBits)];
+    }
+
+    private int offset(long p) {
+        return (int) (p & regionMask);
+    }
+
+    private byte get(long p) {
+        return region(p).get(offset(p));
+    }
+
+    private int getInt(long p) {
+        return region(p).getInt(offset(p));
+    }
+
+    private long getLong(long p) {
+        return region(p).getLong(offset(p));
+    }
+
+    private double getDouble(long p) {
+        return region(p).getDouble(offset(p));
+    }
+
+    private float getFloat(long p) {
+        return region(p).getFloat(offset(p));
+    }
+
+    /**
+     * Reads the bytes between two positions which may span regions.
+     */
+    private final class RegionInputStream extends InputStream {
+
+        private long position;
+        private final long end;
+
+        RegionInputStream(long position, long end) {
+            this.position = position;
+            this.end = end;
+        }
+
+        @Override
+        public int read() {
+            if (position == end)
+                return -1;
+            else
+                return get(position++) & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (position == end)
+                return -1;
+            ByteBuffer region = region(position).duplicate();
+            region.position(offset(position));
+            int n = (int) Math.min(Math.min(length, end - position), region.remaining());
+            region.get(bytes, offset, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(end - position, Integer.MAX_VALUE);
+        }
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.github.davidmoten.rtree3d;
+
+/**
+ * An aggregate of entry values that an {@link RTree} maintains in each of its
+ * nodes so that the aggregate of the entries in a region can be calculated
+ * without visiting every entry, see {@link RTree.Builder#monoid(Monoid)} and
+ * {@link RTree#aggregate(com.github.davidmoten.rtree3d.geometry.Box, Class)}.
+ * 
+ * <p>
+ * <code>combine</code> must be associative and commutative (nodes combine
+ * their children in no particular order) and <code>identity()</code> must be
+ * its identity. Implementations must be stateless. See {@link Monoids} for
+ * sum, minimum and maximum.
+ * </p>
+ * 
+ * @param <T>
+ *            value type of the entries
+ * @param <A>
+ *            aggregate type
+ */
+public interface Monoid<T, A> {
+
+    /**
+     * Returns the aggregate of no entries.
+     * 
+     * @return identity
+     */
+    A identity();
+
+    /**
+     * Returns the aggregate of a single entry with the given value.
+     * 
+     * @param value
+     *            entry value
+     * @return aggregate of the value
+     */
+    A lift(T value);
+
+    /**
+     * Returns the aggregate of two aggregates.
+     * 
+     * @param a
+     *            an aggregate
+     * @param b
+     *            another aggregate
+     * @return combined aggregate
+     */
+    A combine(A a, A b);
+
+}
@@ -0,0 +1,103 @@
+package com.github.davidmoten.rtree3d;
+
+import rx.functions.Func1;
+
+/**
+ * Commonly used {@link Monoid}s over a numeric attribute of the entry values.
+ */
+public final class Monoids {
+
+    private Monoids() {
+        // prevent instantiation
+    }
+
+    /**
+     * Returns the sum of an attribute of the values (0 for no entries).
+     * 
+     * @param <T>
+     *            value type
+     * @param attribute
+     *            numeric attribute of a value
+     * @return sum monoid
+     */
+    public static <T> Monoid<T, Double> sum(final Func1<? super T, Double> attribute) {
+        return new Monoid<T, Double>() {
+
+            @Override
+            public Double identity() {
+                return 0.0;
+            }
+
+            @Override
+            public Double lift(T value) {
+                return attribute.call(value);
+            }
+
+            @Override
+            public Double combine(Double a, Double b) {
+                return a + b;
+            }
+        };
+    }
+
+    /**
+     * Returns the minimum of an attribute of the values
+     * (<code>Double.POSITIVE_INFINITY</code> for no entries).
+     * 
+     * @param <T>
+     *            value type
+     * @param attribute
+     *            numeric attribute of a value
+     * @return minimum monoid
+     */
+    public static <T> Monoid<T, Double> min(final Func1<? super T, Double> attribute) {
+        return new Monoid<T, Double>() {
+
+            @Override
+            public Double identity() {
+                return Double.POSITIVE_INFINITY;
+            }
+
+            @Override
+            public Double lift(T value) {
+                return attribute.call(value);
+            }
+
+            @Override
+            public Double combine(Double a, Double b) {
+                return Math.min(a, b);
+            }
+        };
+    }
+
+    /**
+     * Returns the maximum of an attribute of the values
+     * (<code>Double.NEGATIVE_INFINITY</code> for no entries).
+     * 
+     * @param <T>
+     *            value type
+     * @param attribute
+     *            numeric attribute of a value
+     * @return maximum monoid
+     */
+    public static <T> Monoid<T, Double> max(final Func1<? super T, Double> attribute) {
+        return new Monoid<T, Double>() {
+
+            @Override
+            public Double identity() {
+                return Double.NEGATIVE_INFINITY;
+            }
+
+            @Override
+            public Double lift(T value) {
+                return attribute.call(value);
+            }
+
+            @Override
+            public Double combine(Double a, Double b) {
+                return Math.max(a, b);
+            }
+        };
+    }
+
+}
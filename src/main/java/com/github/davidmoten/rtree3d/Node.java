@@ -2,6 +2,7 @@ package com.github.davidmoten.rtree3d;
 
 import java.util.List;
 
+import com.github.davidmoten.rtree3d.geometry.Box;
 import com.github.davidmoten.rtree3d.geometry.Geometry;
 import com.github.davidmoten.rtree3d.geometry.HasGeometry;
 
@@ -12,11 +13,150 @@ interface Node<T, S extends Geometry> extends HasGeometry {
 
     List<Node<T, S>> add(Entry<? extends T, ? extends S> entry);
 
-    NodeAndEntries<T, S> delete(Entry<? extends T, ? extends S> entry, boolean all);
+    /**
+     * Adds all the entries to this node in one pass. Each node below this one
+     * is rebuilt at most once. Returns the nodes replacing this node, all at
+     * the same depth as this node.
+     * 
+     * @param entries
+     *            entries to add
+     * @return nodes replacing this node
+     */
+    List<Node<T, S>> addAll(List<Entry<T, S>> entries);
 
-    void search(Func1<? super Geometry, Boolean> condition,
-            Subscriber<? super Entry<T, S>> subscriber);
+    /**
+     * Deletes one or all matches of the entry from this node. Nodes on the
+     * path to deleted entries are copied, the copies are owned by
+     * <code>edit</code> (which is null for a persistent delete).
+     * 
+     * @param entry
+     *            entry to delete
+     * @param all
+     *            if true deletes all matches otherwise deletes first found
+     * @param edit
+     *            edit token of a {@link TransientRTree} or null
+     * @return the replacement node and entries to add back to the tree
+     */
+    NodeAndEntries<T, S> delete(Entry<? extends T, ? extends S> entry, boolean all, Object edit);
+
+    /**
+     * Deletes every entry below this node whose geometry intersects
+     * <code>region</code> and that satisfies <code>predicate</code> in one
+     * traversal. If <code>predicate</code> is null every entry intersecting the
+     * region is deleted and subtrees lying wholly inside the region are dropped
+     * without visiting their entries. A node left with fewer than minChildren
+     * children is dissolved. The entries of a dissolved leaf are returned to be
+     * added back to the tree and the remaining children of a dissolved
+     * non-leaf are returned to be reinserted at their own level.
+     * 
+     * @param region
+     *            region to delete from
+     * @param predicate
+     *            further condition on the entries to delete or null
+     * @return the replacement node and the entries and nodes to add back to
+     *         the tree
+     */
+    NodeAndEntries<T, S> delete(Box region, Func1<? super Entry<T, S>, Boolean> predicate);
+
+    void search(SearchCondition condition, Subscriber<? super Entry<T, S>> subscriber);
 
     int count();
 
+    /**
+     * Returns the number of entries in the subtree rooted at this node.
+     * 
+     * @return number of entries below this node
+     */
+    int countEntries();
+
+    /**
+     * Returns the number of entries below this node whose geometry intersects
+     * <code>region</code>. Subtrees lying wholly inside the region contribute
+     * their stored entry counts without being visited.
+     * 
+     * @param region
+     *            region to count in
+     * @return number of entries intersecting the region
+     */
+    int countEntries(Box region);
+
+    /**
+     * Returns the aggregate of the values of the entries below this node
+     * using the monoid of the context, or null if the context has no monoid.
+     * 
+     * @return stored aggregate or null
+     */
+    Object aggregate();
+
+    /**
+     * Returns the aggregate of the values of the entries below this node whose
+     * geometry intersects <code>region</code>. Subtrees lying wholly inside
+     * the region contribute their stored aggregates without being visited. The
+     * context must have a monoid.
+     * 
+     * @param region
+     *            region to aggregate in
+     * @return aggregate of the entries intersecting the region
+     */
+    Object aggregate(Box region);
+
+    /**
+     * Returns this node if it is owned by the given edit token otherwise
+     * returns a shallow copy of this node owned by the edit token. Only a
+     * {@link TransientRTree} modifies nodes that it owns.
+     * 
+     * @param edit
+     *            edit token of a {@link TransientRTree}
+     * @return node owned by edit
+     */
+    Node<T, S> editable(Object edit);
+
+    /**
+     * Adds the entry to the list of entries or children of this node in place
+     * (without copying it). This node must be owned by the given edit token
+     * and is replaced by the returned nodes (all owned by the edit token), as
+     * for {@link #add(Entry)} one node or two if this node split.
+     * 
+     * @param entry
+     *            entry to add
+     * @param edit
+     *            edit token that owns this node
+     * @return nodes replacing this node
+     */
+    List<Node<T, S>> insert(Entry<T, S> entry, Object edit);
+
+    /**
+     * Replaces the entry with <code>entry2</code> in the leaf holding it
+     * without restructuring the tree (a bottom-up update) if the bounds of
+     * <code>entry2</code> lie within the bounds of that leaf or of its parent
+     * (<code>enclosing</code>, null for the root). Only the nodes on the path
+     * to the leaf are replaced (or, if owned by <code>edit</code>, updated in
+     * place and replaced).
+     * 
+     * @param entry
+     *            entry to replace
+     * @param entry2
+     *            replacement entry
+     * @param enclosing
+     *            bounds of the parent of this node or null
+     * @param edit
+     *            edit token of a {@link TransientRTree} or null
+     * @return the updated node or null if the entry was not found or the
+     *         replacement does not fit
+     */
+    Node<T, S> move(Entry<? extends T, ? extends S> entry, Entry<T, S> entry2, Box enclosing,
+            Object edit);
+
+    /**
+     * Returns this node if it is not owned by the given edit token otherwise
+     * returns a copy not owned by any transient in which the descendants owned
+     * by the edit token are likewise replaced. Subtrees not owned by the edit
+     * token are shared.
+     * 
+     * @param edit
+     *            edit token of a {@link TransientRTree}
+     * @return node that is never modified
+     */
+    Node<T, S> persistent(Object edit);
+
 }
@@ -1,5 +1,6 @@
 package com.github.davidmoten.rtree3d;
 
+import java.util.Collections;
 import java.util.List;
 
 import com.github.davidmoten.rtree3d.geometry.Geometry;
@@ -15,6 +16,7 @@ class NodeAndEntries<T, S extends Geometry> {
 
     private final Optional<? extends Node<T, S>> node;
     private final List<Entry<T, S>> entries;
+    private final List<Node<T, S>> nodes;
     private final int count;
 
     /**
@@ -27,16 +29,25 @@ class NodeAndEntries<T, S extends Geometry> {
      * @param entries
      *            from nodes that dropped below minChildren in size and thus
      *            their entries are to be redistributed (readded to the tree)
+     * @param nodes
+     *            children of non-leaf nodes that dropped below minChildren in
+     *            size, to be reinserted at their own level
      * @param countDeleted
      *            count of the number of entries removed
      */
     NodeAndEntries(Optional<? extends Node<T, S>> node, List<Entry<T, S>> entries,
-            int countDeleted) {
+            List<Node<T, S>> nodes, int countDeleted) {
         this.node = node;
         this.entries = entries;
+        this.nodes = nodes;
         this.count = countDeleted;
     }
 
+    NodeAndEntries(Optional<? extends Node<T, S>> node, List<Entry<T, S>> entries,
+            int countDeleted) {
+        this(node, entries, Collections.<Node<T, S>> emptyList(), countDeleted);
+    }
+
     Optional<? extends Node<T, S>> node() {
         return node;
     }
@@ -45,6 +56,10 @@ class NodeAndEntries<T, S extends Geometry> {
         return entries;
     }
 
+    List<Node<T, S>> nodesToAdd() {
+        return nodes;
+    }
+
     int countDeleted() {
         return count;
     }
@@ -12,36 +12,103 @@ import rx.functions.Func1;
 import com.github.davidmoten.rtree3d.geometry.Box;
 import com.github.davidmoten.rtree3d.geometry.Geometry;
 import com.github.davidmoten.rtree3d.geometry.ListPair;
+import com.github.davidmoten.rtree3d.geometry.MovingBox;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 
 final class NonLeaf<T, S extends Geometry> implements Node<T, S> {
 
+    // the children list is only modified while the node is owned by a
+    // TransientRTree (edit is not null), the node is then replaced by a new
+    // node holding the same list
     private final List<? extends Node<T, S>> children;
     private final Box mbr;
+    // number of entries in the subtree
+    private final int entryCount;
+    // aggregate of the children's aggregates using the monoid of the context
+    // (null if none)
+    private final Object aggregate;
     private final Context context;
+    private final Object edit;
+    // time-parameterized bounds of a TPR-tree node (null until needed), a
+    // MovingBox is immutable so a racy lazy initialization is benign
+    private MovingBox moving;
 
     NonLeaf(List<? extends Node<T, S>> children, Context context) {
         this(children, Util.mbr(children), context);
     }
     
     NonLeaf(List<? extends Node<T, S>> children, Box mbr, Context context) {
+        this(children, mbr, context, null);
+    }
+
+    /**
+     * Constructor. If <code>edit</code> is not null the node is owned by the
+     * transient with that edit token and <code>children</code> must be a
+     * mutable list that is not shared.
+     */
+    NonLeaf(List<? extends Node<T, S>> children, Box mbr, Context context, Object edit) {
         Preconditions.checkArgument(!children.isEmpty());
         this.context = context;
         this.children = children;
         this.mbr = mbr;
+        this.edit = edit;
+        this.entryCount = countEntries(children);
+        this.aggregate = aggregate(children, context);
+    }
+
+    private NonLeaf(List<? extends Node<T, S>> children, Box mbr, int entryCount,
+            Object aggregate, Context context, Object edit) {
+        this.children = children;
+        this.mbr = mbr;
+        this.entryCount = entryCount;
+        this.aggregate = aggregate;
+        this.context = context;
+        this.edit = edit;
+    }
+
+    private static <T, S extends Geometry> int countEntries(List<? extends Node<T, S>> nodes) {
+        int count = 0;
+        for (Node<T, S> node : nodes)
+            count += node.countEntries();
+        return count;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static <T, S extends Geometry> Object aggregate(List<? extends Node<T, S>> nodes,
+            Context context) {
+        if (context == null || !context.monoid().isPresent())
+            return null;
+        Monoid monoid = context.monoid().get();
+        Object a = monoid.identity();
+        for (Node<T, S> node : nodes)
+            a = monoid.combine(a, node.aggregate());
+        return a;
     }
 
     @Override
     public Geometry geometry() {
-        return mbr;
+        if (context != null && context.referenceTime().isPresent())
+            return movingBounds();
+        else
+            return mbr;
+    }
+
+    private MovingBox movingBounds() {
+        // computed when first needed
+        MovingBox m = moving;
+        if (m == null) {
+            m = Util.movingBounds(mbr, context.referenceTime().get(), children);
+            moving = m;
+        }
+        return m;
     }
 
     @Override
-    public void search(Func1<? super Geometry, Boolean> criterion,
-            Subscriber<? super Entry<T, S>> subscriber) {
+    public void search(SearchCondition criterion, Subscriber<? super Entry<T, S>> subscriber) {
 
-        if (!criterion.call(this.geometry().mbb()))
+        if (!criterion.test(geometry()))
             return;
 
         for (final Node<T, S> child : children) {
@@ -61,11 +128,51 @@ final class NonLeaf<T, S extends Geometry> implements Node<T, S> {
         return children;
     }
 
+    @Override
+    public int countEntries() {
+        return entryCount;
+    }
+
+    @Override
+    public int countEntries(Box region) {
+        if (!region.intersects(mbr))
+            return 0;
+        else if (region.contains(mbr))
+            return entryCount;
+        int count = 0;
+        for (Node<T, S> child : children)
+            count += child.countEntries(region);
+        return count;
+    }
+
+    @Override
+    public Object aggregate() {
+        return aggregate;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    @Override
+    public Object aggregate(Box region) {
+        Monoid monoid = context.monoid().get();
+        if (!region.intersects(mbr))
+            return monoid.identity();
+        else if (region.contains(mbr))
+            return aggregate;
+        Object a = monoid.identity();
+        for (Node<T, S> child : children)
+            a = monoid.combine(a, child.aggregate(region));
+        return a;
+    }
+
     @Override
     public List<Node<T, S>> add(Entry<? extends T, ? extends S> entry) {
         final Node<T, S> child = context.selector().select(entry.geometry().mbb(), children);
         List<Node<T, S>> list = child.add(entry);
-        List<? extends Node<T, S>> children2 = Util.replace(children, child, list);
+        final List<? extends Node<T, S>> children2;
+        if (context.hilbert().isPresent())
+            children2 = replaceInOrder(children, children.indexOf(child), list, null);
+        else
+            children2 = Util.replace(children, child, list);
         if (children2.size() <= context.maxChildren())
             return Collections.singletonList((Node<T, S>) new NonLeaf<T, S>(children2, context));
         else {
@@ -75,6 +182,119 @@ final class NonLeaf<T, S extends Geometry> implements Node<T, S> {
         }
     }
 
+    /**
+     * Returns a copy of the children (in Hilbert order) with the child at
+     * <code>index</code> replaced by <code>list</code>. If the child split then
+     * it and a cooperating sibling are redistributed into two nodes or, if both
+     * are full, three nodes (deferred splitting).
+     */
+    private List<Node<T, S>> replaceInOrder(List<? extends Node<T, S>> children, int index,
+            List<Node<T, S>> list, Object edit) {
+        List<Node<T, S>> children2 = new ArrayList<Node<T, S>>(children.size() + 2);
+        if (list.size() == 1 || children.size() == 1) {
+            children2.addAll(children.subList(0, index));
+            children2.addAll(list);
+            children2.addAll(children.subList(index + 1, children.size()));
+        } else {
+            List<Node<T, S>> nodes = new ArrayList<Node<T, S>>(3);
+            final int first;
+            if (index + 1 < children.size()) {
+                first = index;
+                nodes.addAll(list);
+                nodes.add(children.get(index + 1));
+            } else {
+                first = index - 1;
+                nodes.add(children.get(index - 1));
+                nodes.addAll(list);
+            }
+            children2.addAll(children.subList(0, first));
+            children2.addAll(Hilbert.redistribute(nodes, context, edit));
+            children2.addAll(children.subList(first + 2, children.size()));
+        }
+        return children2;
+    }
+
+    @Override
+    public List<Node<T, S>> addAll(List<Entry<T, S>> entries) {
+        // partition the entries by the child that would be selected for them
+        List<List<Entry<T, S>>> groups = new ArrayList<List<Entry<T, S>>>(children.size());
+        for (int i = 0; i < children.size(); i++)
+            groups.add(null);
+        for (Entry<T, S> entry : entries) {
+            Node<T, S> child = context.selector().select(entry.geometry().mbb(), children);
+            int index = children.indexOf(child);
+            if (groups.get(index) == null)
+                groups.set(index, new ArrayList<Entry<T, S>>());
+            groups.get(index).add(entry);
+        }
+        // as for add, replaced children go to the end
+        List<Node<T, S>> children2 = new ArrayList<Node<T, S>>(children.size() + 2);
+        List<Node<T, S>> added = new ArrayList<Node<T, S>>();
+        for (int i = 0; i < children.size(); i++) {
+            if (groups.get(i) == null)
+                children2.add(children.get(i));
+            else
+                added.addAll(children.get(i).addAll(groups.get(i)));
+        }
+        return parents(children2, added, context);
+    }
+
+    /**
+     * Returns the nodes (at most maxChildren children each) that are the
+     * parents of <code>unchanged</code> followed by <code>added</code>. A
+     * small overflow is split with the context's {@link Splitter}. A large
+     * overflow is grouped as adding the nodes of <code>added</code> one at a
+     * time to a node holding <code>unchanged</code> would group them.
+     * 
+     * @param unchanged
+     *            nodes that fit in one parent
+     * @param added
+     *            nodes to add
+     * @param context
+     *            tree configuration
+     * @return parent nodes
+     */
+    static <T, S extends Geometry> List<Node<T, S>> parents(List<Node<T, S>> unchanged,
+            List<Node<T, S>> added, Context context) {
+        List<Node<T, S>> parents = new ArrayList<Node<T, S>>();
+        if (context.hilbert().isPresent()
+                || unchanged.size() + added.size() <= 2 * context.maxChildren()) {
+            List<Node<T, S>> children = new ArrayList<Node<T, S>>(unchanged.size()
+                    + added.size());
+            children.addAll(unchanged);
+            children.addAll(added);
+            for (List<Node<T, S>> group : Util.split(children, context))
+                parents.add(new NonLeaf<T, S>(group, context));
+            return parents;
+        }
+        // as for a leaf, splitting a large overflow in one go is quadratic or
+        // worse for the splitters
+        List<Node<T, S>> remaining = added;
+        if (!unchanged.isEmpty())
+            parents.add(new NonLeaf<T, S>(unchanged, context));
+        else {
+            parents.add(new NonLeaf<T, S>(Lists.newArrayList(added.get(0)), context));
+            remaining = added.subList(1, added.size());
+        }
+        for (Node<T, S> node : remaining) {
+            NonLeaf<T, S> parent = (NonLeaf<T, S>) context.selector()
+                    .select(node.geometry().mbb(), parents);
+            List<Node<T, S>> children = new ArrayList<Node<T, S>>(parent.count() + 1);
+            children.addAll(parent.children());
+            children.add(node);
+            int index = parents.indexOf(parent);
+            if (children.size() <= context.maxChildren())
+                parents.set(index, new NonLeaf<T, S>(children, context));
+            else {
+                ListPair<Node<T, S>> pair = context.splitter().split(children,
+                        context.minChildren());
+                parents.set(index, new NonLeaf<T, S>(pair.group1().list(), context));
+                parents.add(new NonLeaf<T, S>(pair.group2().list(), context));
+            }
+        }
+        return parents;
+    }
+
     private List<Node<T, S>> makeNonLeaves(ListPair<? extends Node<T, S>> pair) {
         List<Node<T, S>> list = new ArrayList<Node<T, S>>();
         list.add(new NonLeaf<T, S>(pair.group1().list(), context));
@@ -83,7 +303,81 @@ final class NonLeaf<T, S extends Geometry> implements Node<T, S> {
     }
 
     @Override
-    public NodeAndEntries<T, S> delete(Entry<? extends T, ? extends S> entry, boolean all) {
+    public Node<T, S> editable(Object edit) {
+        if (this.edit == edit)
+            return this;
+        else
+            return new NonLeaf<T, S>(new ArrayList<Node<T, S>>(children), mbr, context, edit);
+    }
+
+    @Override
+    public List<Node<T, S>> insert(Entry<T, S> entry, Object edit) {
+        // same result as add (including child order) but updates the children
+        // list of this node in place
+        @SuppressWarnings("unchecked")
+        List<Node<T, S>> children = (List<Node<T, S>>) this.children;
+        final Node<T, S> child = context.selector().select(entry.geometry().mbb(), children);
+        List<Node<T, S>> list = child.editable(edit).insert(entry, edit);
+        if (context.hilbert().isPresent())
+            children = replaceInOrder(children, children.indexOf(child), list, edit);
+        else {
+            children.remove(child);
+            children.addAll(list);
+        }
+        if (children.size() <= context.maxChildren())
+            return Collections.singletonList((Node<T, S>) new NonLeaf<T, S>(children,
+                    mbr.add(entry.geometry().mbb()), entryCount + 1,
+                    aggregate(children, context), context, edit));
+        else {
+            ListPair<Node<T, S>> pair = context.splitter().split(children,
+                    context.minChildren());
+            List<Node<T, S>> children1 = new ArrayList<Node<T, S>>(pair.group1().list());
+            List<Node<T, S>> children2 = new ArrayList<Node<T, S>>(pair.group2().list());
+            List<Node<T, S>> nodes = new ArrayList<Node<T, S>>(2);
+            nodes.add(new NonLeaf<T, S>(children1, Util.mbr(children1), context, edit));
+            nodes.add(new NonLeaf<T, S>(children2, Util.mbr(children2), context, edit));
+            return nodes;
+        }
+    }
+
+    @Override
+    public Node<T, S> move(Entry<? extends T, ? extends S> entry, Entry<T, S> entry2,
+            Box enclosing, Object edit) {
+        final Box b = entry.geometry().mbb();
+        for (int i = 0; i < children.size(); i++) {
+            final Node<T, S> child = children.get(i);
+            if (child.geometry().mbb().contains(b)) {
+                // a leaf may grow within the bounds of this node
+                Node<T, S> child2 = child.move(entry, entry2, mbr, edit);
+                if (child2 != null) {
+                    final List<Node<T, S>> children2;
+                    if (edit != null && this.edit == edit) {
+                        @SuppressWarnings("unchecked")
+                        List<Node<T, S>> list = (List<Node<T, S>>) children;
+                        children2 = list;
+                    } else
+                        children2 = new ArrayList<Node<T, S>>(children);
+                    children2.set(i, child2);
+                    return new NonLeaf<T, S>(children2, Util.mbr(children2), context, edit);
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Node<T, S> persistent(Object edit) {
+        if (edit == null || this.edit != edit)
+            return this;
+        List<Node<T, S>> children2 = new ArrayList<Node<T, S>>(children.size());
+        for (Node<T, S> child : children)
+            children2.add(child.persistent(edit));
+        return new NonLeaf<T, S>(children2, mbr, entryCount, aggregate, context, null);
+    }
+
+    @Override
+    public NodeAndEntries<T, S> delete(Entry<? extends T, ? extends S> entry, boolean all,
+            Object edit) {
         // the result of performing a delete of the given entry from this node
         // will be that zero or more entries will be needed to be added back to
         // the root of the tree (because num entries of their node fell below
@@ -97,9 +391,11 @@ final class NonLeaf<T, S extends Geometry> implements Node<T, S> {
         List<Node<T, S>> addTheseNodes = new ArrayList<Node<T, S>>();
         int countDeleted = 0;
 
+        final Box b = entry.geometry().mbb();
         for (final Node<T, S> child : children) {
-            if (entry.geometry().intersects(child.geometry().mbb())) {
-                final NodeAndEntries<T, S> result = child.delete(entry, all);
+            // the bounds of every node above an entry contain the entry
+            if (child.geometry().mbb().contains(b)) {
+                final NodeAndEntries<T, S> result = child.delete(entry, all, edit);
                 if (result.node().isPresent()) {
                     if (result.node().get() != child) {
                         // deletion occurred and child is above minChildren so
@@ -128,13 +424,96 @@ final class NonLeaf<T, S extends Geometry> implements Node<T, S> {
         else {
             List<Node<T, S>> nodes = Util.remove(children, removeTheseNodes);
             nodes.addAll(addTheseNodes);
+            if (context.hilbert().isPresent())
+                nodes = context.hilbert().get().sort(nodes);
             if (nodes.size() == 0)
                 return new NodeAndEntries<T, S>(Optional.<Node<T, S>> absent(), addTheseEntries,
                         countDeleted);
             else {
-                NonLeaf<T, S> node = new NonLeaf<T, S>(nodes, context);
+                NonLeaf<T, S> node = new NonLeaf<T, S>(nodes, Util.mbr(nodes), context, edit);
                 return new NodeAndEntries<T, S>(of(node), addTheseEntries, countDeleted);
             }
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public NodeAndEntries<T, S> delete(Box region,
+            Func1<? super Entry<T, S>, Boolean> predicate) {
+        return delete(region, predicate, context.minChildren());
+    }
+
+    /**
+     * As {@link #delete(Box, Func1)} but this node is only dissolved if fewer
+     * than <code>minChildren</code> children remain (the root passes 1).
+     */
+    NodeAndEntries<T, S> delete(Box region, Func1<? super Entry<T, S>, Boolean> predicate,
+            int minChildren) {
+        // unlike delete of a single entry, nodes that fall below minChildren
+        // contribute their remaining children (or entries for a leaf) to lists
+        // that the caller adds back to the tree once (condense tree)
+        List<Entry<T, S>> addTheseEntries = new ArrayList<Entry<T, S>>();
+        List<Node<T, S>> addTheseNodes = new ArrayList<Node<T, S>>();
+        List<Node<T, S>> nodes = new ArrayList<Node<T, S>>(children.size());
+        int countDeleted = 0;
+        for (final Node<T, S> child : children) {
+            Box b = child.geometry().mbb();
+            if (predicate == null && region.contains(b))
+                // every entry below the child intersects the region
+                countDeleted += child.countEntries();
+            else if (region.intersects(b)) {
+                final NodeAndEntries<T, S> result = child.delete(region, predicate);
+                if (result.node().isPresent())
+                    nodes.add(result.node().get());
+                addTheseEntries.addAll(result.entriesToAdd());
+                addTheseNodes.addAll(result.nodesToAdd());
+                countDeleted += result.countDeleted();
+            } else
+                nodes.add(child);
+        }
+        if (countDeleted == 0)
+            return new NodeAndEntries<T, S>(of(this), Collections.<Entry<T, S>> emptyList(), 0);
+        else if (nodes.size() < minChildren) {
+            // the remaining children are reinserted whole at their own level
+            addTheseNodes.addAll(nodes);
+            return new NodeAndEntries<T, S>(Optional.<Node<T, S>> absent(), addTheseEntries,
+                    addTheseNodes, countDeleted);
+        } else
+            return new NodeAndEntries<T, S>(of(new NonLeaf<T, S>(nodes, context)),
+                    addTheseEntries, addTheseNodes, countDeleted);
+    }
+
+    /**
+     * Adds <code>subtree</code> as a child of the node at the level above it
+     * on the path chosen by the selector. Returns the nodes replacing this
+     * node (as for {@link #add(Entry)} one node or two if this node split).
+     * Heights are counted from the leaves which have height 1.
+     * 
+     * @param subtree
+     *            node to add
+     * @param subtreeHeight
+     *            height of <code>subtree</code>
+     * @param height
+     *            height of this node (greater than <code>subtreeHeight</code>)
+     * @return nodes replacing this node
+     */
+    List<Node<T, S>> add(Node<T, S> subtree, int subtreeHeight, int height) {
+        final List<Node<T, S>> children2;
+        if (height == subtreeHeight + 1) {
+            children2 = new ArrayList<Node<T, S>>(children.size() + 1);
+            children2.addAll(children);
+            children2.add(subtree);
+        } else {
+            final Node<T, S> child = context.selector().select(subtree.geometry().mbb(),
+                    children);
+            List<Node<T, S>> list = ((NonLeaf<T, S>) child).add(subtree, subtreeHeight,
+                    height - 1);
+            children2 = new ArrayList<Node<T, S>>(Util.replace(children, child, list));
+        }
+        // keeps Hilbert order if the tree is a Hilbert R-tree
+        List<Node<T, S>> nodes = new ArrayList<Node<T, S>>(2);
+        for (List<Node<T, S>> group : Util.split(children2, context))
+            nodes.add(new NonLeaf<T, S>(group, context));
+        return nodes;
+    }
+
+}
@@ -0,0 +1,265 @@
+package com.github.davidmoten.rtree3d;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.github.davidmoten.rtree3d.geometry.Box;
+import com.github.davidmoten.rtree3d.geometry.Geometry;
+import com.github.davidmoten.rtree3d.geometry.HasGeometry;
+import com.google.common.annotations.VisibleForTesting;
+
+import rx.Observable.OnSubscribe;
+import rx.Subscriber;
+
+/**
+ * Spatial join of two R-trees by synchronized traversal (Brinkhoff, Kriegel
+ * and Seeger). Pairs of nodes, one from each tree, are held on a stack and a
+ * pair is only expanded into pairs of children that also qualify. Pairs of
+ * leaves are joined with a plane sweep along x. Only as much of the trees is
+ * visited as is needed to satisfy the emissions requested.
+ *
+ * <p>
+ * A pair qualifies if the geometries intersect or, if a maximum distance is
+ * given, if the distance between them is less than the maximum distance.
+ * </p>
+ */
+final class OnSubscribeJoin<T, S extends Geometry, U, R extends Geometry>
+        implements OnSubscribe<EntryPair<T, S, U, R>> {
+
+    private final Node<T, S> left;
+    private final Node<U, R> right;
+    private final boolean intersects;
+    private final double maxDistance;
+    private final boolean self;
+
+    private OnSubscribeJoin(Node<T, S> left, Node<U, R> right, boolean intersects,
+            double maxDistance, boolean self) {
+        this.left = left;
+        this.right = right;
+        this.intersects = intersects;
+        this.maxDistance = maxDistance;
+        this.self = self;
+    }
+
+    static <T, S extends Geometry, U, R extends Geometry> OnSubscribeJoin<T, S, U, R> intersects(
+            Node<T, S> left, Node<U, R> right) {
+        return new OnSubscribeJoin<T, S, U, R>(left, right, true, 0, false);
+    }
+
+    static <T, S extends Geometry, U, R extends Geometry> OnSubscribeJoin<T, S, U, R> withinDistance(
+            Node<T, S> left, Node<U, R> right, double maxDistance) {
+        return new OnSubscribeJoin<T, S, U, R>(left, right, false, maxDistance, false);
+    }
+
+    /**
+     * Returns a self-join of the tree with the given root emitting each
+     * unordered pair of distinct entries that intersect exactly once.
+     */
+    static <T, S extends Geometry> OnSubscribeJoin<T, S, T, S> selfIntersects(Node<T, S> root) {
+        return new OnSubscribeJoin<T, S, T, S>(root, root, true, 0, true);
+    }
+
+    /**
+     * Returns a self-join of the tree with the given root emitting each
+     * unordered pair of distinct entries closer than maxDistance exactly once.
+     */
+    static <T, S extends Geometry> OnSubscribeJoin<T, S, T, S> selfWithinDistance(
+            Node<T, S> root, double maxDistance) {
+        return new OnSubscribeJoin<T, S, T, S>(root, root, false, maxDistance, true);
+    }
+
+    @Override
+    public void call(Subscriber<? super EntryPair<T, S, U, R>> subscriber) {
+        subscriber.setProducer(new JoinProducer<T, S, U, R>(left, right, intersects,
+                maxDistance, self, subscriber));
+    }
+
+    @VisibleForTesting
+    static class JoinProducer<T, S extends Geometry, U, R extends Geometry>
+            extends IteratingProducer<EntryPair<T, S, U, R>> {
+
+        private final boolean intersects;
+        private final double maxDistance;
+        // if true left and right are the same tree and a pair of the same node
+        // is joined with itself emitting each unordered pair once
+        private final boolean self;
+        // the distance along x within which a plane sweep must compare entries
+        private final double slack;
+        // only accessed by the thread that is draining
+        private final List<Node<T, S>> lefts = new ArrayList<Node<T, S>>();
+        private final List<Node<U, R>> rights = new ArrayList<Node<U, R>>();
+        private final ArrayDeque<EntryPair<T, S, U, R>> pairs = new ArrayDeque<EntryPair<T, S, U, R>>();
+
+        JoinProducer(Node<T, S> left, Node<U, R> right, boolean intersects, double maxDistance,
+                boolean self, Subscriber<? super EntryPair<T, S, U, R>> subscriber) {
+            super(subscriber);
+            this.intersects = intersects;
+            this.maxDistance = maxDistance;
+            this.self = self;
+            this.slack = intersects ? 0 : maxDistance;
+            if (matches(left.geometry(), right.geometry()))
+                push(left, right);
+        }
+
+        /**
+         * Expands pairs of nodes until a qualifying pair of entries is found.
+         * Returns false if there are no more pairs.
+         *
+         * @return true if there is another pair to emit
+         */
+        @Override
+        boolean hasNext() {
+            while (pairs.isEmpty()) {
+                int last = lefts.size() - 1;
+                if (last < 0)
+                    return false;
+                Node<T, S> a = lefts.remove(last);
+                Node<U, R> b = rights.remove(last);
+                expand(a, b);
+            }
+            return true;
+        }
+
+        @Override
+        EntryPair<T, S, U, R> next() {
+            return pairs.poll();
+        }
+
+        private void expand(Node<T, S> a, Node<U, R> b) {
+            if (self && a == b)
+                expandSelf(a);
+            else if (a instanceof Leaf && b instanceof Leaf) {
+                // only entries that qualify against the other leaf can be in a
+                // pair
+                List<Entry<T, S>> as = new ArrayList<Entry<T, S>>();
+                for (Entry<T, S> entry : ((Leaf<T, S>) a).entries())
+                    if (matches(entry.geometry(), b.geometry()))
+                        as.add(entry);
+                if (as.isEmpty())
+                    return;
+                List<Entry<U, R>> bs = new ArrayList<Entry<U, R>>();
+                for (Entry<U, R> entry : ((Leaf<U, R>) b).entries())
+                    if (matches(a.geometry(), entry.geometry()))
+                        bs.add(entry);
+                sweep(as, bs);
+            } else if (b instanceof Leaf) {
+                // the trees can have different depths
+                for (Node<T, S> child : ((NonLeaf<T, S>) a).children())
+                    if (matches(child.geometry(), b.geometry()))
+                        push(child, b);
+            } else if (a instanceof Leaf) {
+                for (Node<U, R> child : ((NonLeaf<U, R>) b).children())
+                    if (matches(a.geometry(), child.geometry()))
+                        push(a, child);
+            } else {
+                // only children that qualify against the other node can
+                // qualify against its children
+                List<Node<T, S>> as = new ArrayList<Node<T, S>>();
+                for (Node<T, S> child : ((NonLeaf<T, S>) a).children())
+                    if (matches(child.geometry(), b.geometry()))
+                        as.add(child);
+                List<Node<U, R>> bs = new ArrayList<Node<U, R>>();
+                for (Node<U, R> child : ((NonLeaf<U, R>) b).children())
+                    if (matches(a.geometry(), child.geometry()))
+                        bs.add(child);
+                for (Node<T, S> ca : as)
+                    for (Node<U, R> cb : bs)
+                        if (matches(ca.geometry(), cb.geometry()))
+                            push(ca, cb);
+            }
+        }
+
+        /**
+         * Expands the pair of a node with itself. Each child is paired with
+         * itself and with each later sibling so that no pair of subtrees (and
+         * so no pair of entries) is visited twice.
+         */
+        @SuppressWarnings("unchecked")
+        private void expandSelf(Node<T, S> node) {
+            if (node instanceof Leaf) {
+                List<Entry<T, S>> list = new ArrayList<Entry<T, S>>(
+                        ((Leaf<T, S>) node).entries());
+                float[] x = sortByX1(list);
+                for (int i = 0; i < list.size(); i++)
+                    for (int k = i + 1; k < list.size() && x[2 * k] <= x[2 * i + 1] + slack; k++)
+                        test(list.get(i), (Entry<U, R>) list.get(k));
+            } else {
+                List<? extends Node<T, S>> children = ((NonLeaf<T, S>) node).children();
+                for (int i = 0; i < children.size(); i++) {
+                    Node<T, S> child = children.get(i);
+                    push(child, (Node<U, R>) child);
+                    for (int j = i + 1; j < children.size(); j++)
+                        if (matches(child.geometry(), children.get(j).geometry()))
+                            push(child, (Node<U, R>) children.get(j));
+                }
+            }
+        }
+
+        private void sweep(List<Entry<T, S>> a, List<Entry<U, R>> b) {
+            float[] ax = sortByX1(a);
+            float[] bx = sortByX1(b);
+            int i = 0;
+            int j = 0;
+            while (i < a.size() && j < b.size()) {
+                if (ax[2 * i] <= bx[2 * j]) {
+                    for (int k = j; k < b.size() && bx[2 * k] <= ax[2 * i + 1] + slack; k++)
+                        test(a.get(i), b.get(k));
+                    i++;
+                } else {
+                    for (int k = i; k < a.size() && ax[2 * k] <= bx[2 * j + 1] + slack; k++)
+                        test(a.get(k), b.get(j));
+                    j++;
+                }
+            }
+        }
+
+        private void test(Entry<T, S> a, Entry<U, R> b) {
+            if (matches(a.geometry(), b.geometry()))
+                pairs.offer(new EntryPair<T, S, U, R>(a, b));
+        }
+
+        private boolean matches(Geometry a, Geometry b) {
+            if (intersects)
+                return a.intersects(b.mbb());
+            else
+                return a.distance(b.mbb()) < maxDistance;
+        }
+
+        private void push(Node<T, S> a, Node<U, R> b) {
+            lefts.add(a);
+            rights.add(b);
+        }
+
+    }
+
+    /**
+     * Sorts the list in place by the minimum x of each item and returns the
+     * minimum and maximum x of each item in the new order (two floats per
+     * item).
+     *
+     * @param list
+     *            items to sort
+     * @return x1,x2 of each item in sorted order
+     */
+    static <E extends HasGeometry> float[] sortByX1(List<E> list) {
+        Collections.sort(list, X1_COMPARATOR);
+        float[] x = new float[list.size() * 2];
+        for (int i = 0; i < list.size(); i++) {
+            Box b = list.get(i).geometry().mbb();
+            x[2 * i] = b.x1();
+            x[2 * i + 1] = b.x2();
+        }
+        return x;
+    }
+
+    private static final Comparator<HasGeometry> X1_COMPARATOR = new Comparator<HasGeometry>() {
+        @Override
+        public int compare(HasGeometry a, HasGeometry b) {
+            return Float.compare(a.geometry().mbb().x1(), b.geometry().mbb().x1());
+        }
+    };
+
+}
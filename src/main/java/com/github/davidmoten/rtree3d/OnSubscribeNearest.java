@@ -0,0 +1,104 @@
+package com.github.davidmoten.rtree3d;
+
+import com.github.davidmoten.rtree3d.geometry.Box;
+import com.github.davidmoten.rtree3d.geometry.Geometry;
+import com.github.davidmoten.rtree3d.geometry.HasGeometry;
+import com.github.davidmoten.rtree3d.geometry.MovingBox;
+import com.google.common.annotations.VisibleForTesting;
+
+import rx.Observable.OnSubscribe;
+import rx.Subscriber;
+
+/**
+ * Best-first (Hjaltason and Samet) k-nearest-neighbour search, see
+ * {@link BestFirstProducer}. Nodes and entries are ordered by distance from
+ * the query rectangle and an entry is emitted when it reaches the head of the
+ * queue because at that point nothing still in the queue can be closer.
+ */
+final class OnSubscribeNearest<T, S extends Geometry> implements OnSubscribe<Entry<T, S>> {
+
+    private final Node<T, S> node;
+    private final Box r;
+    private final double maxDistance;
+    private final int maxCount;
+    // NaN unless distances to moving boxes are measured at a given time
+    private final double time;
+
+    OnSubscribeNearest(Node<T, S> node, Box r, double maxDistance, int maxCount) {
+        this(node, r, maxDistance, maxCount, Double.NaN);
+    }
+
+    OnSubscribeNearest(Node<T, S> node, Box r, double maxDistance, int maxCount,
+            double time) {
+        this.node = node;
+        this.r = r;
+        this.maxDistance = maxDistance;
+        this.maxCount = maxCount;
+        this.time = time;
+    }
+
+    @Override
+    public void call(Subscriber<? super Entry<T, S>> subscriber) {
+        subscriber.setProducer(
+                new NearestProducer<T, S>(node, r, maxDistance, maxCount, time, subscriber));
+    }
+
+    @VisibleForTesting
+    static class NearestProducer<T, S extends Geometry> extends BestFirstProducer<T, S> {
+
+        private final Box r;
+        private final double maxDistance;
+        private final int maxCount;
+        private final double time;
+        // only accessed by the thread that is draining
+        private int emitted;
+
+        NearestProducer(Node<T, S> node, Box r, double maxDistance, int maxCount,
+                double time, Subscriber<? super Entry<T, S>> subscriber) {
+            super(subscriber);
+            this.r = r;
+            this.maxDistance = maxDistance;
+            this.maxCount = maxCount;
+            this.time = time;
+            offer(node);
+        }
+
+        @Override
+        boolean hasNext() {
+            return emitted != maxCount && super.hasNext();
+        }
+
+        @Override
+        Entry<T, S> next() {
+            emitted++;
+            return super.next();
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        void expand(Object item, double distance) {
+            if (item instanceof Leaf) {
+                for (Entry<T, S> entry : ((Leaf<T, S>) item).entries())
+                    offer(entry);
+            } else {
+                for (Node<T, S> child : ((NonLeaf<T, S>) item).children())
+                    offer(child);
+            }
+        }
+
+        private double distance(Geometry g) {
+            if (!Double.isNaN(time) && g instanceof MovingBox)
+                return ((MovingBox) g).distance(r, time);
+            else
+                return g.distance(r);
+        }
+
+        private void offer(HasGeometry item) {
+            double distance = distance(item.geometry());
+            if (distance < maxDistance)
+                offer(item, distance, item instanceof Entry);
+        }
+
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.github.davidmoten.rtree3d;
+
+import com.github.davidmoten.rtree3d.geometry.Geometry;
+import com.google.common.base.Optional;
+
+import rx.Observable.OnSubscribe;
+import rx.Subscriber;
+import rx.functions.Func1;
+
+/**
+ * Emits the entries hit by a ray in order of distance along the ray. Nodes and
+ * entries are held in a priority queue ordered by the distance at which the
+ * ray enters their bounds (slab test) so only nodes the ray passes through are
+ * visited, nearest first. If a refinement is given an entry at the head of the
+ * queue is replaced by its exact hit distance (or dropped if missed) and is
+ * emitted only when that distance reaches the head of the queue. As with
+ * {@link OnSubscribeNearest} (both are a {@link BestFirstProducer}) nothing
+ * more of the tree is visited than is needed for the emissions requested, so
+ * taking the first hit stops early.
+ */
+final class OnSubscribeRaycast<T, S extends Geometry> implements OnSubscribe<Entry<T, S>> {
+
+    private final Node<T, S> node;
+    private final Ray ray;
+    private final Optional<Func1<? super Entry<T, S>, Double>> refine;
+
+    OnSubscribeRaycast(Node<T, S> node, Ray ray,
+            Optional<Func1<? super Entry<T, S>, Double>> refine) {
+        this.node = node;
+        this.ray = ray;
+        this.refine = refine;
+    }
+
+    @Override
+    public void call(Subscriber<? super Entry<T, S>> subscriber) {
+        subscriber.setProducer(new RaycastProducer<T, S>(node, ray, refine, subscriber));
+    }
+
+    private static final class RaycastProducer<T, S extends Geometry>
+            extends BestFirstProducer<T, S> {
+
+        private final Ray ray;
+        private final Optional<Func1<? super Entry<T, S>, Double>> refine;
+
+        RaycastProducer(Node<T, S> node, Ray ray,
+                Optional<Func1<? super Entry<T, S>, Double>> refine,
+                Subscriber<? super Entry<T, S>> subscriber) {
+            super(subscriber);
+            this.ray = ray;
+            this.refine = refine;
+            offerIfHit(node, ray.hit(node.geometry().mbb()), false);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        void expand(Object item, double distance) {
+            if (item instanceof Entry) {
+                // an entry awaiting refinement
+                Entry<T, S> entry = (Entry<T, S>) item;
+                Double d = refine.get().call(entry);
+                if (d != null)
+                    // never before the bounds of the entry
+                    offerIfHit(entry, Math.max(d, distance), true);
+            } else if (item instanceof Leaf) {
+                for (Entry<T, S> entry : ((Leaf<T, S>) item).entries())
+                    offerIfHit(entry, ray.hit(entry.geometry().mbb()), !refine.isPresent());
+            } else {
+                for (Node<T, S> child : ((NonLeaf<T, S>) item).children())
+                    offerIfHit(child, ray.hit(child.geometry().mbb()), false);
+            }
+        }
+
+        private void offerIfHit(Object item, double distance, boolean exact) {
+            if (distance >= 0 && distance <= ray.maxLength())
+                offer(item, distance, exact);
+        }
+
+    }
+
+}
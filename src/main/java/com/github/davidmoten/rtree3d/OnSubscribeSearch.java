@@ -1,30 +1,50 @@
 package com.github.davidmoten.rtree3d;
 
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
 import com.github.davidmoten.rtree3d.geometry.Geometry;
 import com.github.davidmoten.rx.util.BackpressureUtils;
-import com.github.davidmoten.util.ImmutableStack;
 import com.google.common.annotations.VisibleForTesting;
 
 import rx.Observable.OnSubscribe;
 import rx.Producer;
 import rx.Subscriber;
-import rx.functions.Func1;
+import rx.functions.Action0;
+import rx.subscriptions.Subscriptions;
 
 final class OnSubscribeSearch<T, S extends Geometry> implements OnSubscribe<Entry<T, S>> {
 
     private final Node<T, S> node;
-    private final Func1<? super Geometry, Boolean> condition;
+    private final SearchCondition condition;
+    // null unless statistics are collected
+    private final SearchStats stats;
 
-    OnSubscribeSearch(Node<T, S> node, Func1<? super Geometry, Boolean> condition) {
+    OnSubscribeSearch(Node<T, S> node, SearchCondition condition) {
+        this(node, condition, null);
+    }
+
+    OnSubscribeSearch(Node<T, S> node, SearchCondition condition, SearchStats stats) {
         this.node = node;
         this.condition = condition;
+        this.stats = stats;
     }
 
     @Override
     public void call(Subscriber<? super Entry<T, S>> subscriber) {
-        subscriber.setProducer(new SearchProducer<T, S>(node, condition, subscriber));
+        final SearchProducer<T, S> producer = new SearchProducer<T, S>(node, condition, stats,
+                subscriber);
+        if (stats != null)
+            // a search that is unsubscribed before it is exhausted must still
+            // record its wall time and release the stats for reuse
+            subscriber.add(Subscriptions.create(new Action0() {
+                @Override
+                public void call() {
+                    producer.finishStats();
+                }
+            }));
+        subscriber.setProducer(producer);
     }
 
     @VisibleForTesting
@@ -32,16 +52,22 @@ final class OnSubscribeSearch<T, S extends Geometry> implements OnSubscribe<Entr
 
         private final Subscriber<? super Entry<T, S>> subscriber;
         private final Node<T, S> node;
-        private final Func1<? super Geometry, Boolean> condition;
-        private volatile ImmutableStack<NodePosition<T, S>> stack;
+        private final SearchCondition condition;
+        private final SearchStats stats;
         private final AtomicLong requested = new AtomicLong(0);
-
-        SearchProducer(Node<T, S> node, Func1<? super Geometry, Boolean> condition,
+        // true while this search holds stats started so that finishing on
+        // completion and again on unsubscription only stops the clock once
+        private final AtomicBoolean statsRunning = new AtomicBoolean(false);
+        // created on the first backpressured request and only accessed by the
+        // thread that is emitting (guarded by requested)
+        private SearchCursor<T, S> cursor;
+
+        SearchProducer(Node<T, S> node, SearchCondition condition, SearchStats stats,
                 Subscriber<? super Entry<T, S>> subscriber) {
             this.node = node;
             this.condition = condition;
+            this.stats = stats;
             this.subscriber = subscriber;
-            stack = ImmutableStack.create(new NodePosition<T, S>(node, 0));
         }
 
         @Override
@@ -61,7 +87,13 @@ final class OnSubscribeSearch<T, S extends Geometry> implements OnSubscribe<Entr
         }
 
         private void requestAll() {
-            node.search(condition, subscriber);
+            if (stats == null)
+                node.search(condition, subscriber);
+            else {
+                startStats();
+                search(node, condition, subscriber, stats, 0);
+                finishStats();
+            }
             if (!subscriber.isUnsubscribed())
                 subscriber.onCompleted();
         }
@@ -75,16 +107,24 @@ final class OnSubscribeSearch<T, S extends Geometry> implements OnSubscribe<Entr
             // but benchmarks showed no benefit here so reverted to AtomicLong
             long previousCount = BackpressureUtils.getAndAddRequest(requested, n);
             if (previousCount == 0) {
-                // don't touch stack every time during the loop because
-                // is a volatile and every write forces a thread memory
-                // cache flush
-                ImmutableStack<NodePosition<T, S>> st = stack;
+                if (cursor == null) {
+                    cursor = new SearchCursor<T, S>(node);
+                    if (stats != null) {
+                        startStats();
+                        stats.mbrTested();
+                    }
+                    if (!condition.test(node.geometry()))
+                        cursor.clear();
+                    else if (stats != null)
+                        stats.nodeVisited(0);
+                }
                 while (true) {
                     long r = requested.get();
-                    long numToEmit = r;
 
-                    st = Backpressure.search(condition, subscriber, st, numToEmit);
-                    if (st.isEmpty()) {
+                    Backpressure.search(condition, subscriber, cursor, r, stats);
+                    if (cursor.isEmpty()) {
+                        if (stats != null)
+                            finishStats();
                         if (!subscriber.isUnsubscribed()) {
                             subscriber.onCompleted();
                             break;
@@ -95,7 +135,61 @@ final class OnSubscribeSearch<T, S extends Geometry> implements OnSubscribe<Entr
                         break;
                     }
                 }
-                stack = st;
+            }
+        }
+
+        private void startStats() {
+            if (statsRunning.compareAndSet(false, true))
+                stats.start();
+        }
+
+        void finishStats() {
+            if (statsRunning.compareAndSet(true, false))
+                stats.finish();
+        }
+    }
+
+    /**
+     * As {@link Node#search(SearchCondition, Subscriber)} but records what is
+     * visited in <code>stats</code>. Kept separate so that searches without
+     * statistics pay nothing for them.
+     */
+    private static <T, S extends Geometry> void search(Node<T, S> node,
+            SearchCondition condition, Subscriber<? super Entry<T, S>> subscriber,
+            SearchStats stats, int level) {
+        stats.mbrTested();
+        if (!condition.test(node.geometry()))
+            return;
+        stats.nodeVisited(level);
+        if (node instanceof NonLeaf) {
+            for (Node<T, S> child : ((NonLeaf<T, S>) node).children()) {
+                if (subscriber.isUnsubscribed())
+                    return;
+                search(child, condition, subscriber, stats, level + 1);
+            }
+        } else {
+            List<Entry<T, S>> entries = ((Leaf<T, S>) node).entries();
+            if (entries instanceof PackedEntries) {
+                PackedEntries<T, S> packed = (PackedEntries<T, S>) entries;
+                for (int i = 0; i < packed.size(); i++) {
+                    if (subscriber.isUnsubscribed())
+                        return;
+                    stats.entryTested();
+                    if (packed.test(i, condition)) {
+                        stats.entryEmitted();
+                        subscriber.onNext(packed.get(i));
+                    }
+                }
+            } else {
+                for (Entry<T, S> entry : entries) {
+                    if (subscriber.isUnsubscribed())
+                        return;
+                    stats.entryTested();
+                    if (condition.test(entry.geometry())) {
+                        stats.entryEmitted();
+                        subscriber.onNext(entry);
+                    }
+                }
             }
         }
     }
@@ -0,0 +1,159 @@
+package com.github.davidmoten.rtree3d;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+import com.github.davidmoten.rtree3d.geometry.Box;
+import com.github.davidmoten.rtree3d.geometry.Geometry;
+import com.github.davidmoten.rtree3d.geometry.Point;
+import com.google.common.base.Objects;
+
+/**
+ * Structure-of-arrays storage for the entries of a leaf. The bounds of the
+ * entries are held contiguously in one <code>float[]</code> (x1,y1,z1,x2,y2,z2
+ * per slot) next to an array of values so that a leaf scan reads sequential
+ * memory rather than following pointers through {@link Entry}, {@link Point}
+ * and {@link Box} objects. An {@link Entry} is created each time one is read
+ * from the list.
+ *
+ * <p>
+ * Only {@link Point} and {@link Box} geometries can be packed, see
+ * {@link #pack(List)}.
+ * </p>
+ *
+ * @param <T>
+ *            value type
+ * @param <S>
+ *            geometry type
+ */
+final class PackedEntries<T, S extends Geometry> extends AbstractList<Entry<T, S>>
+        implements RandomAccess {
+
+    private final float[] bounds;
+    private final Object[] values;
+    private final boolean[] points;
+
+    private PackedEntries(float[] bounds, Object[] values, boolean[] points) {
+        this.bounds = bounds;
+        this.values = values;
+        this.points = points;
+    }
+
+    /**
+     * Returns the entries packed into a {@link PackedEntries} or returns the
+     * given list unchanged if any of the geometries is neither a {@link Point}
+     * nor a {@link Box}.
+     *
+     * @param <T>
+     *            value type
+     * @param <S>
+     *            geometry type
+     * @param entries
+     *            entries to pack
+     * @return packed entries or <code>entries</code> if they cannot be packed
+     */
+    static <T, S extends Geometry> List<Entry<T, S>> pack(List<Entry<T, S>> entries) {
+        if (entries instanceof PackedEntries)
+            return entries;
+        final int n = entries.size();
+        float[] bounds = new float[n * 6];
+        Object[] values = new Object[n];
+        boolean[] points = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            Entry<T, S> entry = entries.get(i);
+            Geometry g = entry.geometry();
+            if (g instanceof Point)
+                points[i] = true;
+            else if (!(g instanceof Box))
+                return entries;
+            Box b = g.mbb();
+            int j = i * 6;
+            bounds[j] = b.x1();
+            bounds[j + 1] = b.y1();
+            bounds[j + 2] = b.z1();
+            bounds[j + 3] = b.x2();
+            bounds[j + 4] = b.y2();
+            bounds[j + 5] = b.z2();
+            values[i] = entry.value();
+        }
+        return new PackedEntries<T, S>(bounds, values, points);
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Entry<T, S> get(int index) {
+        return Entry.entry((T) values[index], (S) geometry(index));
+    }
+
+    private Geometry geometry(int index) {
+        int j = index * 6;
+        if (points[index])
+            return Point.create(bounds[j], bounds[j + 1], bounds[j + 2]);
+        else
+            return Box.create(bounds[j], bounds[j + 1], bounds[j + 2], bounds[j + 3],
+                    bounds[j + 4], bounds[j + 5]);
+    }
+
+    /**
+     * Returns the value of the entry at the given index without creating the
+     * entry.
+     *
+     * @param index
+     *            slot index
+     * @return value
+     */
+    @SuppressWarnings("unchecked")
+    T value(int index) {
+        return (T) values[index];
+    }
+
+    /**
+     * Tests the bounds of the entry at the given index against the condition
+     * without creating the entry. A condition adapted from a
+     * <code>Func1</code> is passed the geometry of the entry instead so that
+     * it sees a {@link Point} as it would in an unpacked leaf.
+     *
+     * @param index
+     *            slot index
+     * @param condition
+     *            condition to test
+     * @return true if the entry at index satisfies the condition
+     */
+    boolean test(int index, SearchCondition condition) {
+        if (condition instanceof SearchCondition.FromFunc)
+            return condition.test(geometry(index));
+        int j = index * 6;
+        return condition.test(bounds[j], bounds[j + 1], bounds[j + 2], bounds[j + 3],
+                bounds[j + 4], bounds[j + 5]);
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        // compare slots in place so that contains() and remove() do not create
+        // an entry per slot
+        if (!(o instanceof Entry))
+            return -1;
+        Entry<?, ?> entry = (Entry<?, ?>) o;
+        Geometry g = entry.geometry();
+        boolean isPoint = g instanceof Point;
+        if (!isPoint && !(g instanceof Box))
+            return -1;
+        Box b = g.mbb();
+        for (int i = 0; i < values.length; i++) {
+            int j = i * 6;
+            if (points[i] == isPoint && bounds[j] == b.x1() && bounds[j + 1] == b.y1()
+                    && bounds[j + 2] == b.z1() && bounds[j + 3] == b.x2()
+                    && bounds[j + 4] == b.y2() && bounds[j + 5] == b.z2()
+                    && Objects.equal(values[i], entry.value()))
+                return i;
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.github.davidmoten.rtree3d;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.davidmoten.rtree3d.geometry.Geometry;
+
+import rx.Observable;
+import rx.Scheduler;
+
+/**
+ * Searches disjoint subtrees of an R-tree concurrently. The upper levels of
+ * the tree are expanded (pruning subtrees that fail the condition) until there
+ * are enough subtrees to occupy the workers of a {@link Scheduler}, then each
+ * subtree is searched with {@link OnSubscribeSearch} on the scheduler and the
+ * results are merged. The merge honours backpressure so at most a bounded
+ * number of entries from each subtree are buffered.
+ */
+final class ParallelSearch {
+
+    /**
+     * Trees with fewer entries than this are searched sequentially because
+     * scheduling the subtree searches costs more than it saves.
+     */
+    static final int MIN_ENTRIES = 10000;
+
+    private ParallelSearch() {
+        // prevent instantiation
+    }
+
+    static <T, S extends Geometry> Observable<Entry<T, S>> search(Node<T, S> root, int size,
+            SearchCondition condition, Scheduler scheduler, int subtrees) {
+        if (size < MIN_ENTRIES)
+            return Observable.create(new OnSubscribeSearch<T, S>(root, condition));
+        List<Observable<Entry<T, S>>> sources = new ArrayList<Observable<Entry<T, S>>>();
+        for (Node<T, S> node : partition(root, condition, subtrees))
+            sources.add(Observable.create(new OnSubscribeSearch<T, S>(node, condition))
+                    .subscribeOn(scheduler));
+        return Observable.merge(sources);
+    }
+
+    /**
+     * Returns the subtrees (satisfying the condition) to search, expanding the
+     * tree a level at a time until there are at least <code>subtrees</code>
+     * of them or only leaves remain.
+     *
+     * @param root
+     *            root of the tree
+     * @param condition
+     *            search condition
+     * @param subtrees
+     *            number of subtrees wanted
+     * @return disjoint subtrees covering all entries that may satisfy the
+     *         condition
+     */
+    static <T, S extends Geometry> List<Node<T, S>> partition(Node<T, S> root,
+            SearchCondition condition, int subtrees) {
+        List<Node<T, S>> nodes = new ArrayList<Node<T, S>>();
+        if (condition.test(root.geometry()))
+            nodes.add(root);
+        while (nodes.size() < subtrees) {
+            List<Node<T, S>> next = new ArrayList<Node<T, S>>();
+            boolean expanded = false;
+            for (Node<T, S> node : nodes) {
+                if (node instanceof NonLeaf) {
+                    expanded = true;
+                    for (Node<T, S> child : ((NonLeaf<T, S>) node).children())
+                        if (condition.test(child.geometry()))
+                            next.add(child);
+                } else
+                    next.add(node);
+            }
+            if (!expanded)
+                break;
+            nodes = next;
+        }
+        return nodes;
+    }
+
+}
@@ -4,17 +4,21 @@ import static com.github.davidmoten.rtree3d.geometry.Geometries.box;
 import static com.google.common.base.Optional.absent;
 import static com.google.common.base.Optional.of;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import com.github.davidmoten.rtree3d.geometry.Box;
 import com.github.davidmoten.rtree3d.geometry.Geometry;
+import com.github.davidmoten.rtree3d.geometry.MovingBox;
 import com.github.davidmoten.rtree3d.geometry.Point;
-import com.github.davidmoten.rx.operators.OperatorBoundedPriorityQueue;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 
 import rx.Observable;
+import rx.Scheduler;
 import rx.functions.Func1;
 import rx.functions.Func2;
 
@@ -123,25 +127,131 @@ public final class RTree<T, S extends Geometry> {
             return calculateDepth(((NonLeaf<T, S>) node).children().get(0), depth + 1);
     }
 
-    private static <T, S extends Geometry> int countEntries(Node<T, S> node) {
-        if (node instanceof Leaf)
-            return ((Leaf<T, S>) node).count();
-        else {
-            int count = 0;
-            for (Node<T, S> child : ((NonLeaf<T, S>) node).children()) {
-                count += countEntries(child);
-            }
-            return count;
-        }
+    /**
+     * Returns measures of the quality of the structure of the tree (for each
+     * level the number of nodes, their fill factors, sibling overlap, dead
+     * space and surface area) computed in one traversal of the tree.
+     * 
+     * @return tree quality report
+     */
+    public TreeStats stats() {
+        if (root.isPresent())
+            return TreeStats.create(root.get(), context);
+        else
+            return TreeStats.empty(context);
     }
 
+    /**
+     * Returns the same report as {@link #stats()} but measures disjoint
+     * subtrees concurrently on the given {@link Scheduler} (for example
+     * <code>Schedulers.computation()</code>) and blocks until they are all
+     * measured. Small trees are measured sequentially on the calling thread.
+     * 
+     * @param scheduler
+     *            scheduler to measure subtrees on
+     * @return tree quality report
+     */
+    public TreeStats stats(Scheduler scheduler) {
+        if (root.isPresent())
+            return TreeStats.create(root.get(), context, scheduler,
+                    4 * Runtime.getRuntime().availableProcessors());
+        else
+            return TreeStats.empty(context);
+    }
+
+    /**
+     * Returns the number of entries in the tree as recorded by the nodes of
+     * the tree (which is always the same as {@link #size()}).
+     * 
+     * @return number of entries
+     */
     public int countEntries() {
         if (root.isPresent())
-            return countEntries(root.get());
+            return root.get().countEntries();
+        else
+            return 0;
+    }
+
+    /**
+     * Returns the number of entries whose geometry intersects the given
+     * rectangle, that is the number of entries {@link #search(Box)} would
+     * return. Each node stores the number of entries below it so subtrees
+     * lying wholly inside the rectangle are counted without being visited and
+     * only the entries of leaves partially overlapping the rectangle are
+     * tested.
+     * 
+     * @param r
+     *            rectangle to count entries in
+     * @return number of entries intersecting the rectangle
+     */
+    public int count(Box r) {
+        if (root.isPresent())
+            return root.get().countEntries(r);
         else
             return 0;
     }
 
+    /**
+     * Returns the aggregate (using the {@link Monoid} the tree was built with)
+     * of the values of the entries whose geometry intersects the given
+     * rectangle. The stored aggregates of subtrees lying wholly inside the
+     * rectangle are combined without visiting their entries.
+     * 
+     * @param <A>
+     *            aggregate type of the monoid
+     * @param r
+     *            rectangle to aggregate entries in
+     * @param type
+     *            aggregate type of the monoid
+     * @return aggregate of the entries intersecting the rectangle
+     * @throws RuntimeException
+     *             if the tree was not built with a monoid
+     * @throws IllegalArgumentException
+     *             if the aggregate is not an instance of <code>type</code>
+     */
+    public <A> A aggregate(Box r, Class<A> type) {
+        checkMonoid();
+        if (root.isPresent())
+            return aggregateAs(root.get().aggregate(r), type);
+        else
+            return aggregateAs(context.monoid().get().identity(), type);
+    }
+
+    /**
+     * Returns the aggregate (using the {@link Monoid} the tree was built with)
+     * of the values of all entries in the tree. Takes constant time.
+     * 
+     * @param <A>
+     *            aggregate type of the monoid
+     * @param type
+     *            aggregate type of the monoid
+     * @return aggregate of all entries
+     * @throws RuntimeException
+     *             if the tree was not built with a monoid
+     * @throws IllegalArgumentException
+     *             if the aggregate is not an instance of <code>type</code>
+     */
+    public <A> A aggregate(Class<A> type) {
+        checkMonoid();
+        if (root.isPresent())
+            return aggregateAs(root.get().aggregate(), type);
+        else
+            return aggregateAs(context.monoid().get().identity(), type);
+    }
+
+    private void checkMonoid() {
+        if (!context.monoid().isPresent())
+            throw new RuntimeException("tree has no monoid, see RTree.Builder.monoid");
+    }
+
+    private static <A> A aggregateAs(Object aggregate, Class<A> type) {
+        Preconditions.checkNotNull(type);
+        if (aggregate != null && !type.isInstance(aggregate))
+            throw new IllegalArgumentException("aggregate of the monoid is a "
+                    + aggregate.getClass().getName() + " not a " + type.getName());
+        return type.cast(aggregate);
+    }
+
     /**
      * When the number of children in an R-tree node drops below this number the
      * node is deleted and the children are added on to the R-tree again.
@@ -190,6 +300,28 @@ public final class RTree<T, S extends Geometry> {
         return new Builder().selector(selector);
     }
 
+    /**
+     * Stores the entries of each leaf as contiguous arrays of coordinates and
+     * values, see {@link Builder#packedLeaves()}.
+     * 
+     * @return builder
+     */
+    public static Builder packedLeaves() {
+        return new Builder().packedLeaves();
+    }
+
+    /**
+     * Stores the aggregate of the entries below each node, see
+     * {@link Builder#monoid(Monoid)}.
+     * 
+     * @param monoid
+     *            the aggregate to maintain
+     * @return builder
+     */
+    public static Builder monoid(Monoid<?, ?> monoid) {
+        return new Builder().monoid(monoid);
+    }
+
     /**
      * Sets the splitter to {@link SplitterRStar} and selector to
      * {@link SelectorRStar} and defaults to minChildren=10.
@@ -200,6 +332,28 @@ public final class RTree<T, S extends Geometry> {
         return new Builder().star();
     }
 
+    /**
+     * Builds a Hilbert R-tree, see {@link Builder#hilbert()}. The bounds must
+     * also be set.
+     * 
+     * @return builder
+     */
+    public static Builder hilbert() {
+        return new Builder().hilbert();
+    }
+
+    /**
+     * Builds a time-parameterized R-tree, see
+     * {@link Builder#timeParameterized(double)}.
+     * 
+     * @param referenceTime
+     *            the time the motion of the entries is referenced to
+     * @return builder
+     */
+    public static Builder timeParameterized(double referenceTime) {
+        return new Builder().timeParameterized(referenceTime);
+    }
+
     /**
      * RTree Builder.
      */
@@ -217,7 +371,11 @@ public final class RTree<T, S extends Geometry> {
         private Splitter splitter = new SplitterQuadratic();
         private Selector selector = new SelectorMinimalVolumeIncrease();
         private boolean star = false;
+        private boolean hilbert = false;
         private Optional<Box> bounds = Optional.absent();
+        private boolean packedLeaves = false;
+        private Optional<Monoid<?, ?>> monoid = Optional.absent();
+        private Optional<Double> referenceTime = Optional.absent();
 
         private Builder() {
         }
@@ -292,6 +450,62 @@ public final class RTree<T, S extends Geometry> {
             return this;
         }
 
+        /**
+         * Builds a Hilbert R-tree (Kamel and Faloutsos): entries and children
+         * are kept in order of the Hilbert value of their centres (normalised
+         * to the {@link #bounds(Box) bounds} which must be set), an entry is
+         * inserted into the first node whose largest Hilbert value is at
+         * least its own and an overflowing node shares its items with a
+         * sibling, only splitting two nodes into three when both are full.
+         * This gives fuller nodes than the quadratic and R* heuristics,
+         * especially when entries arrive in spatial or time order, and
+         * {@link #create(List)} packs the entries in Hilbert order. Replaces
+         * any selector and splitter set with {@link SelectorHilbert} and
+         * {@link SplitterHilbert}. As a split divides a node at the midpoint of
+         * its Hilbert order minChildren must be at most half of maxChildren.
+         * 
+         * @return builder
+         */
+        public Builder hilbert() {
+            this.hilbert = true;
+            return this;
+        }
+
+        /**
+         * Stores the entries of each leaf as contiguous arrays of coordinates
+         * and values rather than as a list of {@link Entry} objects. This
+         * reduces memory use and speeds up leaf scans during searches at the
+         * cost of creating an {@link Entry} for each entry emitted and of
+         * repacking a leaf when it is modified. Only {@link Point} and
+         * {@link Box} geometries are packed.
+         * 
+         * @return builder
+         */
+        public Builder packedLeaves() {
+            this.packedLeaves = true;
+            return this;
+        }
+
+        /**
+         * Stores the aggregate of the entries below each node using the given
+         * {@link Monoid} so that {@link RTree#aggregate(Box, Class)} can
+         * combine the stored aggregates of subtrees lying wholly inside the
+         * query box. The aggregates are maintained by every add and delete
+         * (each of which creates new nodes) so older versions of the tree stay
+         * correct. The monoid must accept the value type of the tree it is
+         * used with and its aggregate type is checked against the type passed
+         * to <code>aggregate</code>. The monoid is not written by
+         * {@link Serializer}.
+         * 
+         * @param monoid
+         *            the aggregate to maintain
+         * @return builder
+         */
+        public Builder monoid(Monoid<?, ?> monoid) {
+            this.monoid = Optional.<Monoid<?, ?>> of(monoid);
+            return this;
+        }
+
         /**
          * Builds the {@link RTree}.
          * 
@@ -302,6 +516,94 @@ public final class RTree<T, S extends Geometry> {
          * @return RTree
          */
         public <T, S extends Geometry> RTree<T, S> create() {
+            return new RTree<T, S>(context());
+        }
+
+        /**
+         * Builds the {@link RTree} containing the given entries. The entries
+         * are packed directly into full nodes using Sort-Tile-Recursive (STR)
+         * bulk loading (or in Hilbert order for a Hilbert R-tree) which is
+         * much faster than adding the entries one at a time and produces nodes
+         * with less overlap.
+         * 
+         * @param <T>
+         *            value type
+         * @param <S>
+         *            geometry type
+         * @param entries
+         *            the entries to load into the tree
+         * @return RTree
+         */
+        public <T, S extends Geometry> RTree<T, S> create(List<Entry<T, S>> entries) {
+            Context context = context();
+            if (context.referenceTime().isPresent())
+                entries = Util.rebase(entries, context);
+            if (entries.isEmpty())
+                return new RTree<T, S>(context);
+            else if (context.hilbert().isPresent())
+                return new RTree<T, S>(Hilbert.createRoot(entries, context), entries.size(),
+                        context);
+            else
+                return new RTree<T, S>(SortTileRecursive.createRoot(entries, context),
+                        entries.size(), context);
+        }
+
+        /**
+         * As {@link #create(List)} but the sorting and node creation of each
+         * level of the tree is shared between the workers of the given
+         * {@link Scheduler} (for example <code>Schedulers.computation()</code>
+         * ). The calling thread blocks until the tree is built and should not
+         * itself be a worker of the scheduler. The tree built is the same as
+         * that built by {@link #create(List)}. A Hilbert R-tree is built on
+         * the calling thread.
+         * 
+         * @param <T>
+         *            value type
+         * @param <S>
+         *            geometry type
+         * @param entries
+         *            the entries to load into the tree
+         * @param scheduler
+         *            scheduler to build the tree on
+         * @return RTree
+         */
+        public <T, S extends Geometry> RTree<T, S> create(List<Entry<T, S>> entries,
+                Scheduler scheduler) {
+            Context context = context();
+            if (context.referenceTime().isPresent())
+                entries = Util.rebase(entries, context);
+            if (entries.isEmpty())
+                return new RTree<T, S>(context);
+            else if (context.hilbert().isPresent())
+                return create(entries);
+            else
+                return new RTree<T, S>(
+                        SortTileRecursive.createRoot(entries, context, scheduler),
+                        entries.size(), context);
+        }
+
+        /**
+         * Builds a time-parameterized R-tree (TPR-tree) of entries whose
+         * geometries may be {@link MovingBox}es. Entries are stored with their
+         * motion referenced to the given time and the bounds of each node are
+         * a {@link MovingBox} whose faces move with the extreme velocities of
+         * its children, so a node contains its children at every time.
+         * Inserts and splits use the bounds at the reference time. Query with
+         * {@link RTree#searchAt(Box, double)} and
+         * {@link RTree#nearestAt(Point, double, double, int)}. As the bounds
+         * expand with time queries visit more nodes, so rebuild the tree with
+         * a later reference time periodically.
+         * 
+         * @param referenceTime
+         *            the time the motion of the entries is referenced to
+         * @return builder
+         */
+        public Builder timeParameterized(double referenceTime) {
+            this.referenceTime = of(referenceTime);
+            return this;
+        }
+
+        private Context context() {
             if (!maxChildren.isPresent())
                 if (star)
                     maxChildren = of(MAX_CHILDREN_DEFAULT_STAR);
@@ -309,14 +611,39 @@ public final class RTree<T, S extends Geometry> {
                     maxChildren = of(MAX_CHILDREN_DEFAULT_GUTTMAN);
             if (!minChildren.isPresent())
                 minChildren = of((int) Math.round(maxChildren.get() * DEFAULT_FILLING_FACTOR));
-            return new RTree<T, S>(
-                    new Context(minChildren.get(), maxChildren.get(), selector, splitter, bounds));
+            if (hilbert) {
+                if (!bounds.isPresent())
+                    throw new RuntimeException("bounds must be set for a Hilbert R-tree");
+                Preconditions.checkArgument(minChildren.get() <= maxChildren.get() / 2,
+                        "minChildren must be at most maxChildren / 2 for a Hilbert R-tree");
+                return new Context(minChildren.get(), maxChildren.get(),
+                        new SelectorHilbert(bounds.get()), new SplitterHilbert(bounds.get()),
+                        bounds, packedLeaves, monoid, referenceTime);
+            }
+            return new Context(minChildren.get(), maxChildren.get(), selector, splitter, bounds,
+                    packedLeaves, monoid, referenceTime);
         }
 
     }
 
     public static <T, S extends Geometry> RTree<T, S> create(Node<T, S> node, Context context) {
-        return new RTree<T, S>(node, countEntries(node), context);
+        return new RTree<T, S>(node, node.countEntries(), context);
+    }
+
+    static <T, S extends Geometry> RTree<T, S> create(Optional<? extends Node<T, S>> root,
+            int size, Context context) {
+        return new RTree<T, S>(root, size, context);
+    }
+
+    /**
+     * Returns a mutable editor of this tree that applies adds and deletes in
+     * place on the nodes it creates. Use {@link TransientRTree#persistent()}
+     * to obtain the resulting immutable tree. This tree is not changed.
+     * 
+     * @return mutable editor of this tree
+     */
+    public TransientRTree<T, S> asTransient() {
+        return new TransientRTree<T, S>(root, size, context);
     }
 
     /**
@@ -326,10 +653,10 @@ public final class RTree<T, S extends Geometry> {
      *            item to add to the R-tree.
      * @return a new immutable R-tree including the new entry
      */
-    @SuppressWarnings("unchecked")
     public RTree<T, S> add(Entry<? extends T, ? extends S> entry) {
+        Entry<T, S> e = Util.rebase(entry, context);
         if (root.isPresent()) {
-            List<Node<T, S>> nodes = root.get().add(entry);
+            List<Node<T, S>> nodes = root.get().add(e);
             Node<T, S> node;
             if (nodes.size() == 1)
                 node = nodes.get(0);
@@ -338,8 +665,8 @@ public final class RTree<T, S extends Geometry> {
             }
             return new RTree<T, S>(node, size + 1, context);
         } else
-            return new RTree<T, S>(new Leaf<T, S>(Lists.newArrayList((Entry<T, S>) entry), context),
-                    size + 1, context);
+            return new RTree<T, S>(new Leaf<T, S>(Lists.newArrayList(e), context), size + 1,
+                    context);
     }
 
     /**
@@ -358,17 +685,29 @@ public final class RTree<T, S extends Geometry> {
 
     /**
      * Returns an immutable RTree with the current entries and the additional
-     * entries supplied as a parameter.
+     * entries supplied as a parameter. The entries are routed down the tree
+     * together, partitioned by the child the {@link Selector} chooses for
+     * each, so that each node touched is rebuilt only once and overflowing
+     * nodes are split with the {@link Splitter}. A batch larger than the tree
+     * (in particular any batch added to an empty tree) is inserted one entry
+     * at a time as there is too little of the tree to route it through. Use
+     * {@link Builder#create(List)} to bulk load a tree.
      * 
      * @param entries
      *            entries to add
      * @return R-tree with entries added
      */
     public RTree<T, S> add(Iterable<Entry<T, S>> entries) {
-        RTree<T, S> tree = this;
-        for (Entry<T, S> entry : entries)
-            tree = tree.add(entry);
-        return tree;
+        List<Entry<T, S>> list = Util.rebase(entries, context);
+        if (list.isEmpty())
+            return this;
+        if (!root.isPresent() || list.size() > size)
+            return asTransient().add(list).persistent();
+        List<Node<T, S>> nodes = root.get().addAll(list);
+        // grow the tree until a single root remains
+        while (nodes.size() > 1)
+            nodes = NonLeaf.parents(Collections.<Node<T, S>> emptyList(), nodes, context);
+        return new RTree<T, S>(nodes.get(0), size + list.size(), context);
     }
 
     /**
@@ -495,8 +834,9 @@ public final class RTree<T, S extends Geometry> {
      *         entry
      */
     public RTree<T, S> delete(Entry<? extends T, ? extends S> entry, boolean all) {
+        entry = Util.rebase(entry, context);
         if (root.isPresent()) {
-            NodeAndEntries<T, S> nodeAndEntries = root.get().delete(entry, all);
+            NodeAndEntries<T, S> nodeAndEntries = root.get().delete(entry, all, null);
             if (nodeAndEntries.node().isPresent() && nodeAndEntries.node().get() == root.get())
                 return this;
             else
@@ -522,6 +862,129 @@ public final class RTree<T, S extends Geometry> {
         return delete(entry, false);
     }
 
+    /**
+     * Returns an immutable copy of the RTree with the entry moved to the given
+     * geometry (keeping its value). If the new geometry lies within the bounds
+     * of the leaf holding the entry or of that leaf's parent then the entry is
+     * replaced in its leaf and only the nodes on the path to the leaf are
+     * copied (a bottom-up update, as in LUR-trees). Otherwise the entry is
+     * deleted and an entry with the new geometry added. Small movements (for
+     * example the position of a vehicle each tick) usually take the first
+     * path which needs one descent and no selection, splitting or
+     * redistribution. A Hilbert R-tree (where moving changes the position of
+     * the entry in the Hilbert order) always deletes and adds.
+     * 
+     * @param entry
+     *            the {@link Entry} to be moved
+     * @param geometry
+     *            the new geometry of the entry
+     * @return a new immutable R-tree with the entry moved or this if the entry
+     *         is not in the tree
+     */
+    public RTree<T, S> move(Entry<? extends T, ? extends S> entry, S geometry) {
+        if (!root.isPresent())
+            return this;
+        entry = Util.rebase(entry, context);
+        Entry<T, S> entry2 = Util.rebase(Entry.<T, S> entry(entry.value(), geometry), context);
+        if (!context.hilbert().isPresent() && !context.referenceTime().isPresent()) {
+            Node<T, S> node = root.get().move(entry, entry2, null, null);
+            if (node != null)
+                return new RTree<T, S>(node, size, context);
+        }
+        RTree<T, S> tree = delete(entry);
+        if (tree == this)
+            return this;
+        else
+            return tree.add(entry2);
+    }
+
+    /**
+     * Deletes every entry whose geometry intersects the given region (the
+     * entries that {@link #search(Box)} would return) in a single traversal of
+     * the tree. Subtrees lying wholly inside the region are dropped without
+     * visiting their entries. Nodes that fall below minChildren are dissolved
+     * and their contents added back to the tree once at the end, entries of a
+     * leaf as entries and the children of a non-leaf as whole subtrees at their
+     * own level.
+     * 
+     * @param region
+     *            the region to clear
+     * @return a new immutable R-tree without the entries intersecting the
+     *         region, or this R-tree if there are none
+     */
+    public RTree<T, S> delete(Box region) {
+        return deleteFromRegion(region, null);
+    }
+
+    /**
+     * Deletes every entry whose geometry intersects the given region and that
+     * satisfies the given predicate in a single traversal of the tree. As for
+     * {@link #delete(Box)} the contents of nodes that fall below minChildren are
+     * added back to the tree once at the end.
+     * 
+     * @param region
+     *            the region to delete from
+     * @param predicate
+     *            entries in the region are deleted only if this returns true
+     * @return a new immutable R-tree without the matching entries, or this
+     *         R-tree if there are none
+     */
+    public RTree<T, S> delete(Box region, Func1<? super Entry<T, S>, Boolean> predicate) {
+        Preconditions.checkNotNull(predicate);
+        return deleteFromRegion(region, predicate);
+    }
+
+    private RTree<T, S> deleteFromRegion(Box region,
+            Func1<? super Entry<T, S>, Boolean> predicate) {
+        if (root.isPresent()) {
+            final NodeAndEntries<T, S> nodeAndEntries;
+            if (root.get() instanceof NonLeaf)
+                // the root may keep fewer than minChildren children
+                nodeAndEntries = ((NonLeaf<T, S>) root.get()).delete(region, predicate, 1);
+            else
+                nodeAndEntries = root.get().delete(region, predicate);
+            if (nodeAndEntries.countDeleted() == 0)
+                return this;
+            Optional<? extends Node<T, S>> node = nodeAndEntries.node();
+            // subtrees of dissolved nodes are reinserted at their own level
+            // before the root is shortened (Guttman's CondenseTree)
+            for (Node<T, S> subtree : nodeAndEntries.nodesToAdd())
+                node = addSubtree(node, subtree, context);
+            // shorten the tree while the root has a single child
+            while (node.isPresent() && node.get() instanceof NonLeaf
+                    && node.get().count() == 1)
+                node = of(((NonLeaf<T, S>) node.get()).children().get(0));
+            return new RTree<T, S>(node,
+                    size - nodeAndEntries.countDeleted() - nodeAndEntries.entriesToAdd().size(),
+                    context).add(nodeAndEntries.entriesToAdd());
+        } else
+            return this;
+    }
+
+    /**
+     * Returns the root of the tree with the given subtree added at its own
+     * level (the leaves of the subtree at the same depth as the other leaves).
+     */
+    private static <T, S extends Geometry> Optional<? extends Node<T, S>> addSubtree(
+            Optional<? extends Node<T, S>> root, Node<T, S> subtree, Context context) {
+        if (!root.isPresent())
+            return of(subtree);
+        int height = calculateDepth(root.get(), 0);
+        int subtreeHeight = calculateDepth(subtree, 0);
+        if (height < subtreeHeight)
+            // the root is added to the subtree instead
+            return addSubtree(of(subtree), root.get(), context);
+        List<Node<T, S>> nodes;
+        if (height == subtreeHeight)
+            nodes = Lists.<Node<T, S>> newArrayList(root.get(), subtree);
+        else
+            nodes = ((NonLeaf<T, S>) root.get()).add(subtree, subtreeHeight, height);
+        // grow the tree if the root split
+        while (nodes.size() > 1)
+            nodes = NonLeaf.parents(Collections.<Node<T, S>> emptyList(), nodes, context);
+        return of(nodes.get(0));
+    }
+
     /**
      * <p>
      * Returns an Observable sequence of {@link Entry} that satisfy the given
@@ -540,6 +1003,19 @@ public final class RTree<T, S extends Geometry> {
      */
     @VisibleForTesting
     Observable<Entry<T, S>> search(Func1<? super Geometry, Boolean> condition) {
+        return search(SearchCondition.from(condition));
+    }
+
+    /**
+     * Returns an Observable sequence of {@link Entry} that satisfy the given
+     * condition. The same restriction on the condition applies as for
+     * {@link #search(Func1)}.
+     * 
+     * @param condition
+     *            return Entries whose geometry satisfies the given condition
+     * @return sequence of matching entries
+     */
+    Observable<Entry<T, S>> search(SearchCondition condition) {
         if (root.isPresent())
             return Observable.create(new OnSubscribeSearch<T, S>(root.get(), condition));
         else
@@ -563,17 +1039,6 @@ public final class RTree<T, S extends Geometry> {
         };
     }
 
-    /**
-     * Returns the always true predicate. See {@link RTree#entries()} for
-     * example use.
-     */
-    private static final Func1<Geometry, Boolean> ALWAYS_TRUE = new Func1<Geometry, Boolean>() {
-        @Override
-        public Boolean call(Geometry rectangle) {
-            return true;
-        }
-    };
-
     /**
      * Returns an {@link Observable} sequence of all {@link Entry}s in the
      * R-tree whose minimum bounding rectangle intersects with the given
@@ -584,7 +1049,55 @@ public final class RTree<T, S extends Geometry> {
      * @return entries that intersect with the rectangle r
      */
     public Observable<Entry<T, S>> search(final Box r) {
-        return search(intersects(r));
+        return search(SearchCondition.intersects(r));
+    }
+
+    /**
+     * Returns the same entries as {@link #search(Box)} and records in
+     * <code>stats</code> the nodes visited at each level, the number of node
+     * bounds and entries tested, the number of entries emitted and the elapsed
+     * time of the search. Use this to tell whether a slow query is due to the
+     * shape of the tree (many nodes visited for few entries emitted) or to
+     * the query itself (many entries emitted). Searches without statistics do
+     * not pay for their collection.
+     * 
+     * @param r
+     *            rectangle to check intersection with the entry mbr
+     * @param stats
+     *            receives the statistics of the search, must not be shared by
+     *            concurrent searches
+     * @return entries that intersect with the rectangle r
+     */
+    public Observable<Entry<T, S>> search(final Box r, SearchStats stats) {
+        Preconditions.checkNotNull(stats);
+        if (root.isPresent())
+            return Observable.create(new OnSubscribeSearch<T, S>(root.get(),
+                    SearchCondition.intersects(r), stats));
+        else
+            return Observable.empty();
+    }
+
+    /**
+     * Returns the same entries as {@link #search(Box)} but searches disjoint
+     * subtrees concurrently on the given {@link Scheduler} (for example
+     * <code>Schedulers.computation()</code>). The upper levels of the tree are
+     * split into several subtrees per available processor and the results of
+     * searching them are merged, so entries are not emitted in the same order
+     * as {@link #search(Box)} and are emitted on the scheduler's threads. Small
+     * trees are searched sequentially on the subscribing thread.
+     * 
+     * @param r
+     *            rectangle to check intersection with the entry mbr
+     * @param scheduler
+     *            scheduler to run the subtree searches on
+     * @return entries that intersect with the rectangle r
+     */
+    public Observable<Entry<T, S>> searchParallel(Box r, Scheduler scheduler) {
+        if (root.isPresent())
+            return ParallelSearch.search(root.get(), size, SearchCondition.intersects(r),
+                    scheduler, 4 * Runtime.getRuntime().availableProcessors());
+        else
+            return Observable.empty();
     }
 
     /**
@@ -611,12 +1124,7 @@ public final class RTree<T, S extends Geometry> {
      * @return the sequence of matching entries
      */
     public Observable<Entry<T, S>> search(final Box r, final double maxDistance) {
-        return search(new Func1<Geometry, Boolean>() {
-            @Override
-            public Boolean call(Geometry g) {
-                return g.distance(r) < maxDistance;
-            }
-        });
+        return search(SearchCondition.distanceLessThan(r, maxDistance));
     }
 
     /**
@@ -660,13 +1168,8 @@ public final class RTree<T, S extends Geometry> {
      */
     public <R extends Geometry> Observable<Entry<T, S>> search(final R g, final double maxDistance,
             final Func2<? super S, ? super R, Double> distance) {
-        return search(new Func1<Geometry, Boolean>() {
-            @Override
-            public Boolean call(Geometry entry) {
-                // just use the mbr initially
-                return entry.distance(g.mbb()) < maxDistance;
-            }
-        })
+        // just use the mbr initially
+        return search(SearchCondition.distanceLessThan(g.mbb(), maxDistance))
                 // refine with distance function
                 .filter(new Func1<Entry<T, S>, Boolean>() {
                     @Override
@@ -691,10 +1194,91 @@ public final class RTree<T, S extends Geometry> {
         return search(p.mbb(), maxDistance);
     }
 
+    /**
+     * Returns every pair of entries (one from this tree and one from
+     * <code>other</code>) whose geometries intersect. The two trees are
+     * traversed together descending only into pairs of nodes whose bounding
+     * boxes intersect, so neither tree is searched from the root once per
+     * entry. Emissions honour backpressure.
+     * 
+     * @param <U>
+     *            value type of the other tree
+     * @param <R>
+     *            geometry type of the other tree
+     * @param other
+     *            tree to join with
+     * @return pairs of intersecting entries
+     */
+    public <U, R extends Geometry> Observable<EntryPair<T, S, U, R>> join(RTree<U, R> other) {
+        if (root.isPresent() && other.root.isPresent())
+            return Observable.create(OnSubscribeJoin.intersects(root.get(), other.root.get()));
+        else
+            return Observable.empty();
+    }
+
+    /**
+     * Returns every pair of entries (one from this tree and one from
+     * <code>other</code>) whose geometries are strictly less than
+     * <code>maxDistance</code> apart. The two trees are traversed together as
+     * for {@link #join(RTree)}.
+     * 
+     * @param <U>
+     *            value type of the other tree
+     * @param <R>
+     *            geometry type of the other tree
+     * @param other
+     *            tree to join with
+     * @param maxDistance
+     *            pairs are emitted if closer than this distance
+     * @return pairs of entries closer than maxDistance
+     */
+    public <U, R extends Geometry> Observable<EntryPair<T, S, U, R>> join(RTree<U, R> other,
+            double maxDistance) {
+        if (root.isPresent() && other.root.isPresent())
+            return Observable.create(OnSubscribeJoin.withinDistance(root.get(),
+                    other.root.get(), maxDistance));
+        else
+            return Observable.empty();
+    }
+
+    /**
+     * Returns every unordered pair of distinct entries of this tree whose
+     * geometries intersect, each pair exactly once (an entry is not paired
+     * with itself). The tree is traversed once comparing each subtree with
+     * itself and with its later siblings, which makes this suitable for
+     * broad-phase collision detection. Emissions honour backpressure.
+     * 
+     * @return pairs of intersecting entries
+     */
+    public Observable<EntryPair<T, S, T, S>> selfJoin() {
+        if (root.isPresent())
+            return Observable.create(OnSubscribeJoin.selfIntersects(root.get()));
+        else
+            return Observable.empty();
+    }
+
+    /**
+     * Returns every unordered pair of distinct entries of this tree whose
+     * geometries are strictly less than <code>maxDistance</code> apart, each
+     * pair exactly once. See {@link #selfJoin()}.
+     * 
+     * @param maxDistance
+     *            pairs are emitted if closer than this distance
+     * @return pairs of entries closer than maxDistance
+     */
+    public Observable<EntryPair<T, S, T, S>> selfJoin(double maxDistance) {
+        if (root.isPresent())
+            return Observable.create(OnSubscribeJoin.selfWithinDistance(root.get(), maxDistance));
+        else
+            return Observable.empty();
+    }
+
     /**
      * Returns the nearest k entries (k=maxCount) to the given rectangle where
      * the entries are strictly less than a given maximum distance from the
-     * rectangle.
+     * rectangle. The tree is traversed best-first so entries are emitted as
+     * soon as they are known to be the next nearest and only the nodes needed
+     * to establish that are visited.
      * 
      * @param r
      *            rectangle
@@ -705,8 +1289,12 @@ public final class RTree<T, S extends Geometry> {
      * @return nearest entries to maxCount, in ascending order of distance
      */
     public Observable<Entry<T, S>> nearest(final Box r, final double maxDistance, int maxCount) {
-        return search(r, maxDistance).lift(new OperatorBoundedPriorityQueue<Entry<T, S>>(maxCount,
-                Comparators.<T, S> ascendingDistance(r)));
+        Preconditions.checkArgument(maxCount >= 0);
+        if (root.isPresent())
+            return Observable.create(
+                    new OnSubscribeNearest<T, S>(root.get(), r, maxDistance, maxCount));
+        else
+            return Observable.empty();
     }
 
     /**
@@ -725,13 +1313,159 @@ public final class RTree<T, S extends Geometry> {
         return nearest(p.mbb(), maxDistance, maxCount);
     }
 
+    /**
+     * Returns the entries whose minimum bounding boxes are hit by the ray from
+     * <code>origin</code> in the given direction within
+     * <code>maxLength</code>, in order of the distance along the ray at which
+     * the ray enters them (zero for a box containing the origin). Each node
+     * is tested with a slab test and only nodes the ray passes through are
+     * visited, nearest first, so taking the first few hits (for example with
+     * <code>first()</code> or <code>take(n)</code>) visits only the nodes near
+     * the start of the ray.
+     * 
+     * @param origin
+     *            start of the ray
+     * @param direction
+     *            direction of the ray (need not be of unit length but must not
+     *            be zero)
+     * @param maxLength
+     *            length of the ray
+     * @return entries hit in order along the ray
+     */
+    public Observable<Entry<T, S>> raycast(Point origin, Point direction, double maxLength) {
+        return raycast(new Ray(origin, direction, maxLength),
+                Optional.<Func1<? super Entry<T, S>, Double>> absent());
+    }
+
+    /**
+     * As {@link #raycast(Point, Point, double)} but for entries whose
+     * geometry is only approximated by their minimum bounding box (for example
+     * triangles, spheres or the shape of a picked object). When an entry's box
+     * is the nearest thing along the ray <code>refine</code> is called with the
+     * entry and returns the exact distance along the ray (with direction
+     * normalized to unit length) at which the ray hits the entry or null if
+     * the ray misses it. Entries are emitted in order of these exact
+     * distances and <code>refine</code> is only called for an entry once the
+     * ray enters its box before the next hit to emit, so the first hit (for
+     * line of sight or picking) is found after refining only the entries near
+     * the start of the ray.
+     * 
+     * @param origin
+     *            start of the ray
+     * @param direction
+     *            direction of the ray (need not be of unit length but must not
+     *            be zero)
+     * @param maxLength
+     *            length of the ray
+     * @param refine
+     *            returns the exact distance along the ray to the entry or null
+     *            if the ray misses the entry, must not be less than the
+     *            distance to the entry's bounding box
+     * @return entries hit in order along the ray
+     */
+    public Observable<Entry<T, S>> raycast(Point origin, Point direction, double maxLength,
+            Func1<? super Entry<T, S>, Double> refine) {
+        Preconditions.checkNotNull(refine);
+        return raycast(new Ray(origin, direction, maxLength),
+                Optional.<Func1<? super Entry<T, S>, Double>> of(refine));
+    }
+
+    private Observable<Entry<T, S>> raycast(Ray ray,
+            Optional<Func1<? super Entry<T, S>, Double>> refine) {
+        if (root.isPresent())
+            return Observable.create(new OnSubscribeRaycast<T, S>(root.get(), ray, refine));
+        else
+            return Observable.empty();
+    }
+
+    /**
+     * Returns the entries of a time-parameterized tree (see
+     * {@link Builder#timeParameterized(double)}) that intersect the given
+     * rectangle at the given time. Entries with a {@link MovingBox} geometry
+     * are tested where they are at that time and other entries are treated as
+     * stationary. Nodes are tested against their bounds at that time which
+     * contain their children at every time after the reference time (and
+     * before it) so the search stays exact as the bounds grow looser.
+     * 
+     * @param r
+     *            rectangle to check intersection with
+     * @param time
+     *            time of the query
+     * @return entries that intersect with the rectangle r at the time
+     * @throws RuntimeException
+     *             if the tree is not time-parameterized
+     */
+    public Observable<Entry<T, S>> searchAt(final Box r, final double time) {
+        checkTimeParameterized();
+        return search(SearchCondition.intersectsAt(r, time));
+    }
+
+    /**
+     * Returns the nearest k entries (k=maxCount) to the given rectangle at the
+     * given time of a time-parameterized tree (see
+     * {@link Builder#timeParameterized(double)}) where the entries are
+     * strictly less than a given maximum distance from the rectangle at that
+     * time.
+     * 
+     * @param r
+     *            rectangle
+     * @param time
+     *            time of the query
+     * @param maxDistance
+     *            max distance of returned entries from the rectangle
+     * @param maxCount
+     *            max number of entries to return
+     * @return nearest entries to maxCount, in ascending order of distance at
+     *         the time
+     * @throws RuntimeException
+     *             if the tree is not time-parameterized
+     */
+    public Observable<Entry<T, S>> nearestAt(final Box r, final double time,
+            final double maxDistance, int maxCount) {
+        checkTimeParameterized();
+        Preconditions.checkArgument(maxCount >= 0);
+        if (root.isPresent())
+            return Observable.create(
+                    new OnSubscribeNearest<T, S>(root.get(), r, maxDistance, maxCount, time));
+        else
+            return Observable.empty();
+    }
+
+    /**
+     * Returns the nearest k entries (k=maxCount) to the given point at the
+     * given time, see {@link #nearestAt(Box, double, double, int)}.
+     * 
+     * @param p
+     *            point
+     * @param time
+     *            time of the query
+     * @param maxDistance
+     *            max distance of returned entries from the point
+     * @param maxCount
+     *            max number of entries to return
+     * @return nearest entries to maxCount, in ascending order of distance at
+     *         the time
+     * @throws RuntimeException
+     *             if the tree is not time-parameterized
+     */
+    public Observable<Entry<T, S>> nearestAt(final Point p, final double time,
+            final double maxDistance, int maxCount) {
+        return nearestAt(p.mbb(), time, maxDistance, maxCount);
+    }
+
+    private void checkTimeParameterized() {
+        if (!context.referenceTime().isPresent())
+            throw new RuntimeException(
+                    "tree is not time-parameterized, use RTree.timeParameterized(time)");
+    }
+
     /**
      * Returns all entries in the tree as an {@link Observable} sequence.
      * 
      * @return all entries in the R-tree
      */
     public Observable<Entry<T, S>> entries() {
-        return search(ALWAYS_TRUE);
+        return search(SearchCondition.ALWAYS_TRUE);
     }
 
     /**
@@ -0,0 +1,92 @@
+package com.github.davidmoten.rtree3d;
+
+import com.github.davidmoten.rtree3d.geometry.Box;
+import com.github.davidmoten.rtree3d.geometry.Point;
+import com.google.common.base.Preconditions;
+
+/**
+ * A ray segment from an origin along a direction up to a maximum length. The
+ * direction is normalized so that distances along the ray are in the units of
+ * the coordinates.
+ */
+final class Ray {
+
+    private final double ox, oy, oz;
+    private final double dx, dy, dz;
+    private final double maxLength;
+
+    Ray(Point origin, Point direction, double maxLength) {
+        Preconditions.checkNotNull(origin);
+        Preconditions.checkNotNull(direction);
+        Preconditions.checkArgument(maxLength >= 0, "maxLength must be non-negative");
+        double length = Math.sqrt((double) direction.x() * direction.x()
+                + (double) direction.y() * direction.y()
+                + (double) direction.z() * direction.z());
+        Preconditions.checkArgument(length > 0, "direction must not be zero");
+        this.ox = origin.x();
+        this.oy = origin.y();
+        this.oz = origin.z();
+        this.dx = direction.x() / length;
+        this.dy = direction.y() / length;
+        this.dz = direction.z() / length;
+        this.maxLength = maxLength;
+    }
+
+    double maxLength() {
+        return maxLength;
+    }
+
+    /**
+     * Returns the distance along the ray at which it enters the box (zero if
+     * the origin is in the box) or -1 if the ray misses the box within its
+     * maximum length. Uses the slab method: the ray is clipped in turn to the
+     * interval between each pair of parallel faces.
+     *
+     * @param b
+     *            box
+     * @return distance to the box along the ray or -1 if missed
+     */
+    double hit(Box b) {
+        double enter = 0;
+        double exit = maxLength;
+        for (int axis = 0; axis < 3; axis++) {
+            final double o, d;
+            final float min, max;
+            if (axis == 0) {
+                o = ox;
+                d = dx;
+                min = b.x1();
+                max = b.x2();
+            } else if (axis == 1) {
+                o = oy;
+                d = dy;
+                min = b.y1();
+                max = b.y2();
+            } else {
+                o = oz;
+                d = dz;
+                min = b.z1();
+                max = b.z2();
+            }
+            if (d == 0) {
+                // parallel to the slab
+                if (o < min || o > max)
+                    return -1;
+            } else {
+                double t1 = (min - o) / d;
+                double t2 = (max - o) / d;
+                if (t1 > t2) {
+                    double t = t1;
+                    t1 = t2;
+                    t2 = t;
+                }
+                enter = Math.max(enter, t1);
+                exit = Math.min(exit, t2);
+                if (enter > exit)
+                    return -1;
+            }
+        }
+        return enter;
+    }
+
+}
@@ -0,0 +1,161 @@
+package com.github.davidmoten.rtree3d;
+
+import com.github.davidmoten.rtree3d.geometry.Box;
+import com.github.davidmoten.rtree3d.geometry.Geometry;
+import com.github.davidmoten.rtree3d.geometry.MovingBox;
+import com.github.davidmoten.rtree3d.geometry.Point;
+
+import rx.functions.Func1;
+
+/**
+ * Selects the nodes and entries visited by a search. Unlike a
+ * <code>Func1&lt;Geometry, Boolean&gt;</code> the test takes the bounds as raw
+ * floats and returns a primitive <code>boolean</code> so that nothing is boxed
+ * or allocated per node or entry tested.
+ *
+ * <p>
+ * As for {@link RTree#search(Func1)} the condition must be true for the
+ * bounds of every ancestor node of an entry for which it is true.
+ * </p>
+ */
+abstract class SearchCondition {
+
+    /**
+     * Returns true if and only if the box with the given bounds satisfies the
+     * condition.
+     *
+     * @param x1
+     *            minimum x
+     * @param y1
+     *            minimum y
+     * @param z1
+     *            minimum z
+     * @param x2
+     *            maximum x
+     * @param y2
+     *            maximum y
+     * @param z2
+     *            maximum z
+     * @return true if the bounds satisfy the condition
+     */
+    abstract boolean test(float x1, float y1, float z1, float x2, float y2, float z2);
+
+    /**
+     * Returns true if and only if the geometry satisfies the condition. By
+     * default the minimum bounding box of the geometry is tested.
+     *
+     * @param g
+     *            geometry to test
+     * @return true if the geometry satisfies the condition
+     */
+    boolean test(Geometry g) {
+        Box b = g.mbb();
+        return test(b.x1(), b.y1(), b.z1(), b.x2(), b.y2(), b.z2());
+    }
+
+    static SearchCondition intersects(final Box r) {
+        return new SearchCondition() {
+            @Override
+            boolean test(float x1, float y1, float z1, float x2, float y2, float z2) {
+                return Box.intersects(x1, y1, z1, x2, y2, z2, r);
+            }
+
+            @Override
+            boolean test(Geometry g) {
+                return g.intersects(r);
+            }
+        };
+    }
+
+    /**
+     * Returns the condition that a geometry intersects r at the given time.
+     * A {@link MovingBox} is tested at that time and any other geometry is
+     * treated as stationary.
+     *
+     * @param r
+     *            box to test
+     * @param time
+     *            time of the test
+     * @return search condition
+     */
+    static SearchCondition intersectsAt(final Box r, final double time) {
+        return new SearchCondition() {
+            @Override
+            boolean test(float x1, float y1, float z1, float x2, float y2, float z2) {
+                return Box.intersects(x1, y1, z1, x2, y2, z2, r);
+            }
+
+            @Override
+            boolean test(Geometry g) {
+                if (g instanceof MovingBox)
+                    return ((MovingBox) g).intersects(r, time);
+                else
+                    return g.intersects(r);
+            }
+        };
+    }
+
+    static SearchCondition distanceLessThan(final Box r, final double maxDistance) {
+        return new SearchCondition() {
+            @Override
+            boolean test(float x1, float y1, float z1, float x2, float y2, float z2) {
+                return Box.distance(x1, y1, z1, x2, y2, z2, r) < maxDistance;
+            }
+
+            @Override
+            boolean test(Geometry g) {
+                return g.distance(r) < maxDistance;
+            }
+        };
+    }
+
+    static final SearchCondition ALWAYS_TRUE = new SearchCondition() {
+        @Override
+        boolean test(float x1, float y1, float z1, float x2, float y2, float z2) {
+            return true;
+        }
+
+        @Override
+        boolean test(Geometry g) {
+            return true;
+        }
+    };
+
+    /**
+     * Adapts a <code>Func1</code> condition. Geometries are passed to the
+     * function unchanged, raw bounds are passed as a new {@link Box}.
+     *
+     * @param condition
+     *            condition to adapt
+     * @return search condition delegating to <code>condition</code>
+     */
+    static SearchCondition from(final Func1<? super Geometry, Boolean> condition) {
+        return new FromFunc(condition);
+    }
+
+    /**
+     * Condition delegating to a <code>Func1</code>. As the function may depend
+     * on the type of the geometry (a {@link Point} rather than the
+     * {@link Box} of its bounds) packed leaves pass it the reconstructed
+     * geometry of an entry rather than raw bounds.
+     */
+    static final class FromFunc extends SearchCondition {
+
+        private final Func1<? super Geometry, Boolean> condition;
+
+        FromFunc(Func1<? super Geometry, Boolean> condition) {
+            this.condition = condition;
+        }
+
+        @Override
+        boolean test(float x1, float y1, float z1, float x2, float y2, float z2) {
+            return condition.call(Box.create(x1, y1, z1, x2, y2, z2));
+        }
+
+        @Override
+        boolean test(Geometry g) {
+            return condition.call(g);
+        }
+    }
+
+}
@@ -0,0 +1,100 @@
+package com.github.davidmoten.rtree3d;
+
+import java.util.Arrays;
+
+import com.github.davidmoten.rtree3d.geometry.Geometry;
+
+/**
+ * Mutable position of a resumable depth-first search. Holds the path from the
+ * root to the current node together with the index of the next child or entry
+ * to visit in each node of the path. The arrays are sized to the depth of the
+ * tree so that advancing the search does not allocate.
+ *
+ * <p>
+ * Not thread-safe, the owner must ensure that only one thread advances the
+ * cursor at a time.
+ * </p>
+ *
+ * @param <T>
+ *            value type
+ * @param <S>
+ *            geometry type
+ */
+final class SearchCursor<T, S extends Geometry> {
+
+    private Node<T, S>[] nodes;
+    private int[] positions;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    SearchCursor(Node<T, S> root) {
+        int depth = depth(root);
+        this.nodes = new Node[depth];
+        this.positions = new int[depth];
+        push(root);
+    }
+
+    private static <T, S extends Geometry> int depth(Node<T, S> node) {
+        // all leaves are at the same depth
+        int depth = 1;
+        while (node instanceof NonLeaf) {
+            node = ((NonLeaf<T, S>) node).children().get(0);
+            depth++;
+        }
+        return depth;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    Node<T, S> node() {
+        return nodes[size - 1];
+    }
+
+    int position() {
+        return positions[size - 1];
+    }
+
+    /**
+     * Returns the depth of the current node below the root (the root is at
+     * level 0).
+     */
+    int level() {
+        return size - 1;
+    }
+
+    /**
+     * Moves to the next child or entry of the current node.
+     */
+    void next() {
+        positions[size - 1]++;
+    }
+
+    void push(Node<T, S> node) {
+        if (size == nodes.length) {
+            nodes = Arrays.copyOf(nodes, size + 1);
+            positions = Arrays.copyOf(positions, size + 1);
+        }
+        nodes[size] = node;
+        positions[size] = 0;
+        size++;
+    }
+
+    /**
+     * Leaves the current node and moves the parent (if any) on to its next
+     * child.
+     */
+    void pop() {
+        size--;
+        nodes[size] = null;
+        if (size > 0)
+            next();
+    }
+
+    void clear() {
+        Arrays.fill(nodes, 0, size, null);
+        size = 0;
+    }
+
+}
@@ -0,0 +1,157 @@
+package com.github.davidmoten.rtree3d;
+
+import java.util.Arrays;
+
+/**
+ * Collects statistics about the execution of searches, see
+ * {@link RTree#search(com.github.davidmoten.rtree3d.geometry.Box, SearchStats)}.
+ * Counts accumulate over every search the instance is passed to so one
+ * instance can also be used to total a batch of queries.
+ *
+ * <p>
+ * Not thread-safe. Read the statistics once a search has completed (or been
+ * unsubscribed) and do not pass the same instance to searches that run
+ * concurrently.
+ * </p>
+ */
+public final class SearchStats {
+
+    // level 0 is the root
+    private long[] nodesVisited = new long[4];
+    private int levels;
+    private long mbrTests;
+    private long entriesTested;
+    private long entriesEmitted;
+    private long wallTimeNanos;
+    private long startNanos;
+    private boolean running;
+
+    /**
+     * Returns the number of levels of the tree that had a node visited.
+     *
+     * @return number of levels visited
+     */
+    public int levels() {
+        return levels;
+    }
+
+    /**
+     * Returns the number of nodes at the given level (the root is at level 0)
+     * whose children or entries were examined because the bounds of the node
+     * satisfied the search.
+     *
+     * @param level
+     *            depth below the root
+     * @return number of nodes visited at the level
+     */
+    public long nodesVisited(int level) {
+        if (level < levels)
+            return nodesVisited[level];
+        else
+            return 0;
+    }
+
+    /**
+     * Returns the number of nodes visited at all levels.
+     *
+     * @return total number of nodes visited
+     */
+    public long nodesVisited() {
+        long total = 0;
+        for (int i = 0; i < levels; i++)
+            total += nodesVisited[i];
+        return total;
+    }
+
+    /**
+     * Returns the number of times the bounds of a node were tested against the
+     * search.
+     *
+     * @return number of node bounds tested
+     */
+    public long mbrTests() {
+        return mbrTests;
+    }
+
+    /**
+     * Returns the number of entries tested against the search.
+     *
+     * @return number of entries tested
+     */
+    public long entriesTested() {
+        return entriesTested;
+    }
+
+    /**
+     * Returns the number of entries emitted.
+     *
+     * @return number of entries emitted
+     */
+    public long entriesEmitted() {
+        return entriesEmitted;
+    }
+
+    /**
+     * Returns the time in nanoseconds from the first request of a search until
+     * the search finished. When the subscriber applies backpressure this
+     * includes the time the subscriber spent processing emissions.
+     *
+     * @return elapsed wall time in nanoseconds
+     */
+    public long wallTimeNanos() {
+        return wallTimeNanos;
+    }
+
+    void nodeVisited(int level) {
+        if (level >= nodesVisited.length)
+            nodesVisited = Arrays.copyOf(nodesVisited, Math.max(level + 1,
+                    nodesVisited.length * 2));
+        nodesVisited[level]++;
+        if (level >= levels)
+            levels = level + 1;
+    }
+
+    void mbrTested() {
+        mbrTests++;
+    }
+
+    void entryTested() {
+        entriesTested++;
+    }
+
+    void entryEmitted() {
+        entriesEmitted++;
+    }
+
+    void start() {
+        if (!running) {
+            running = true;
+            startNanos = System.nanoTime();
+        }
+    }
+
+    void finish() {
+        if (running) {
+            running = false;
+            wallTimeNanos += System.nanoTime() - startNanos;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("SearchStats [nodesVisited=");
+        builder.append(Arrays.toString(Arrays.copyOf(nodesVisited, levels)));
+        builder.append(", mbrTests=");
+        builder.append(mbrTests);
+        builder.append(", entriesTested=");
+        builder.append(entriesTested);
+        builder.append(", entriesEmitted=");
+        builder.append(entriesEmitted);
+        builder.append(", wallTimeNanos=");
+        builder.append(wallTimeNanos);
+        builder.append("]");
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,39 @@
+package com.github.davidmoten.rtree3d;
+
+import java.util.List;
+
+import com.github.davidmoten.rtree3d.geometry.Box;
+import com.github.davidmoten.rtree3d.geometry.Geometry;
+
+/**
+ * Hilbert R-tree selector: selects the first node whose largest Hilbert value
+ * is at least the Hilbert value of the centre of the geometry (the children
+ * of a node are kept in Hilbert order), see {@link RTree.Builder#hilbert()}.
+ * A tree configured with this selector keeps its entries and children in
+ * Hilbert order and splits nodes 2-to-3 with a cooperating sibling.
+ */
+public final class SelectorHilbert implements Selector {
+
+    private final Hilbert hilbert;
+
+    /**
+     * Constructor.
+     * 
+     * @param bounds
+     *            the box the centres of entries are normalised to when
+     *            calculating Hilbert values
+     */
+    public SelectorHilbert(Box bounds) {
+        this.hilbert = new Hilbert(bounds);
+    }
+
+    Hilbert hilbert() {
+        return hilbert;
+    }
+
+    @Override
+    public <T, S extends Geometry> Node<T, S> select(Geometry g, List<? extends Node<T, S>> nodes) {
+        return hilbert.select(g, nodes);
+    }
+
+}
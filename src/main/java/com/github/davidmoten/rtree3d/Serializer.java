@@ -1,24 +1,343 @@
 package com.github.davidmoten.rtree3d;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 
+import com.github.davidmoten.rtree3d.geometry.Box;
 import com.github.davidmoten.rtree3d.geometry.Geometry;
+import com.github.davidmoten.rtree3d.geometry.MovingBox;
+import com.github.davidmoten.rtree3d.geometry.Point;
+import com.google.common.base.Optional;
 
 import rx.functions.Action2;
 import rx.functions.Func1;
 
-public class Serializer {
+/**
+ * Reads and writes an {@link RTree} in a compact versioned binary format. The
+ * node structure is written depth-first with the stored minimum bounding boxes
+ * as raw floats so that reading a tree back does not need to re-insert entries
+ * or recalculate bounding boxes.
+ *
+ * <pre>
+ * tree  := MAGIC version:int minChildren:int maxChildren:int strategy:byte
+ *          packedLeaves:boolean hasBounds:boolean [box] hasReferenceTime:boolean [time:double]
+ *          size:int hasRoot:boolean [node]
+ * node  := LEAF length:long box count:int entry*count
+ *        | NON_LEAF length:long box count:int node*count
+ * entry := geometry length:int value:byte*length
+ * geometry := POINT x:float y:float z:float | BOX box
+ *          | MOVING_BOX box time:double velocity:box
+ * box   := x1:float y1:float z1:float x2:float y2:float z2:float
+ * </pre>
+ *
+ * The length of a node is the number of bytes of the whole node (including
+ * its type and length) so that a reader can skip a subtree without parsing
+ * it, see {@link MappedRTree}. Lengths are longs so that a tree may be larger
+ * than 2GB.
+ *
+ * A tree with packed leaves (see {@link RTree#packedLeaves()}) is read back
+ * with packed leaves.
+ *
+ * The reference time of a time-parameterized tree is written so the tree is
+ * read back time-parameterized (node bounds are the boxes at the reference
+ * time and their velocities are recalculated from the entries).
+ *
+ * The selector and splitter are not written. A tree that used the R*-tree
+ * heuristics is read back with {@link SelectorRStar} and {@link SplitterRStar},
+ * a Hilbert R-tree with {@link SelectorHilbert} and {@link SplitterHilbert} and
+ * any other tree is read back with the Guttman quadratic heuristics.
+ */
+public final class Serializer {
 
+    static final int MAGIC = 0x52543344;
+    static final int VERSION = 2;
+
+    static final byte STRATEGY_QUADRATIC = 0;
+    static final byte STRATEGY_STAR = 1;
+    static final byte STRATEGY_HILBERT = 2;
+
+    static final byte LEAF = 0;
+    static final byte NON_LEAF = 1;
+
+    static final byte POINT = 0;
+    static final byte BOX = 1;
+    static final byte MOVING_BOX = 2;
+
+    /**
+     * Bytes in a node before its first child (type, length, box, count).
+     */
+    static final int NODE_HEADER_BYTES = 1 + 8 + 24 + 4;
+
+    private Serializer() {
+        // prevent instantiation
+    }
+
+    /**
+     * Writes the tree to the given {@link OutputStream}. The stream is flushed
+     * but not closed. Each value is passed to <code>objectSerializer</code>
+     * once. The encoded entries of every leaf are held in memory until the
+     * tree is written because the length of a node is written before its
+     * children.
+     *
+     * @param <T>
+     *            value type
+     * @param <S>
+     *            geometry type (must be {@link Point}, {@link Box} or
+     *            {@link MovingBox})
+     * @param tree
+     *            the tree to write
+     * @param objectSerializer
+     *            writes an entry value to the stream
+     * @param os
+     *            the stream to write to
+     */
     public static <T, S extends Geometry> void serialize(RTree<T, S> tree,
             Action2<T, OutputStream> objectSerializer, OutputStream os) {
-        // TODO
+        try {
+            DataOutputStream out = new DataOutputStream(os);
+            Context context = tree.context();
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(context.minChildren());
+            out.writeInt(context.maxChildren());
+            out.writeByte(strategy(context));
+            out.writeBoolean(context.packedLeaves());
+            out.writeBoolean(context.bounds().isPresent());
+            if (context.bounds().isPresent())
+                writeBox(out, context.bounds().get());
+            out.writeBoolean(context.referenceTime().isPresent());
+            if (context.referenceTime().isPresent())
+                out.writeDouble(context.referenceTime().get());
+            out.writeInt(tree.size());
+            out.writeBoolean(tree.root().isPresent());
+            if (tree.root().isPresent()) {
+                Map<Node<T, S>, Long> lengths = new IdentityHashMap<Node<T, S>, Long>();
+                Map<Node<T, S>, byte[]> leafEntries = new IdentityHashMap<Node<T, S>, byte[]>();
+                encode(tree.root().get(), objectSerializer, new ByteArrayOutputStream(),
+                        new ByteArrayOutputStream(), lengths, leafEntries);
+                writeNode(out, tree.root().get(), lengths, leafEntries);
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 
+    /**
+     * Reads a tree written by
+     * {@link #serialize(RTree, Action2, OutputStream)} from the given
+     * {@link InputStream}. The stream is not closed.
+     *
+     * @param <T>
+     *            value type
+     * @param <S>
+     *            geometry type
+     * @param is
+     *            the stream to read from
+     * @param objectDeserializer
+     *            reads an entry value from a stream containing only the bytes
+     *            written for that value
+     * @return the tree
+     */
     public static <T, S extends Geometry> RTree<T, S> deserialize(InputStream is,
             Func1<InputStream, T> objectDeserializer) {
-        // TODO
-        return null;
+        try {
+            DataInputStream in = new DataInputStream(is);
+            if (in.readInt() != MAGIC)
+                throw new RuntimeException("stream does not contain a serialized RTree");
+            int version = in.readInt();
+            if (version != VERSION)
+                throw new RuntimeException("unsupported serialization version: " + version);
+            int minChildren = in.readInt();
+            int maxChildren = in.readInt();
+            byte strategy = in.readByte();
+            boolean packedLeaves = in.readBoolean();
+            Optional<Box> bounds;
+            if (in.readBoolean())
+                bounds = Optional.of(readBox(in));
+            else
+                bounds = Optional.absent();
+            Optional<Double> referenceTime;
+            if (in.readBoolean())
+                referenceTime = Optional.of(in.readDouble());
+            else
+                referenceTime = Optional.absent();
+            Context context = context(minChildren, maxChildren, strategy, packedLeaves, bounds,
+                    referenceTime);
+            int size = in.readInt();
+            if (in.readBoolean()) {
+                Node<T, S> root = readNode(in, objectDeserializer, context);
+                return RTree.create(Optional.of(root), size, context);
+            } else
+                return RTree.create(Optional.<Node<T, S>> absent(), size, context);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static Context context(int minChildren, int maxChildren, byte strategy,
+            boolean packedLeaves, Optional<Box> bounds, Optional<Double> referenceTime) {
+        final Selector selector;
+        final Splitter splitter;
+        if (strategy == STRATEGY_HILBERT) {
+            if (!bounds.isPresent())
+                throw new RuntimeException("Hilbert R-tree has no bounds");
+            selector = new SelectorHilbert(bounds.get());
+            splitter = new SplitterHilbert(bounds.get());
+        } else if (strategy == STRATEGY_STAR) {
+            selector = new SelectorRStar();
+            splitter = new SplitterRStar();
+        } else {
+            selector = new SelectorMinimalVolumeIncrease();
+            splitter = new SplitterQuadratic();
+        }
+        return new Context(minChildren, maxChildren, selector, splitter, bounds, packedLeaves,
+                Optional.<Monoid<?, ?>> absent(), referenceTime);
+    }
+
+    private static byte strategy(Context context) {
+        if (context.hilbert().isPresent())
+            return STRATEGY_HILBERT;
+        else if (context.selector() instanceof SelectorRStar
+                && context.splitter() instanceof SplitterRStar)
+            return STRATEGY_STAR;
+        else
+            return STRATEGY_QUADRATIC;
+    }
+
+    /**
+     * Encodes the entries of each leaf under the given node (so each value is
+     * serialized once) and records the length of every node.
+     */
+    private static <T, S extends Geometry> long encode(Node<T, S> node,
+            Action2<T, OutputStream> objectSerializer, ByteArrayOutputStream entries,
+            ByteArrayOutputStream value, Map<Node<T, S>, Long> lengths,
+            Map<Node<T, S>, byte[]> leafEntries) throws IOException {
+        long length = NODE_HEADER_BYTES;
+        if (node instanceof Leaf) {
+            entries.reset();
+            DataOutputStream out = new DataOutputStream(entries);
+            for (Entry<T, S> entry : ((Leaf<T, S>) node).entries())
+                writeEntry(out, entry, objectSerializer, value);
+            out.flush();
+            byte[] bytes = entries.toByteArray();
+            leafEntries.put(node, bytes);
+            length += bytes.length;
+        } else {
+            for (Node<T, S> child : ((NonLeaf<T, S>) node).children())
+                length += encode(child, objectSerializer, entries, value, lengths, leafEntries);
+        }
+        lengths.put(node, length);
+        return length;
+    }
+
+    private static <T, S extends Geometry> void writeNode(DataOutputStream out, Node<T, S> node,
+            Map<Node<T, S>, Long> lengths, Map<Node<T, S>, byte[]> leafEntries)
+                    throws IOException {
+        out.writeByte(node instanceof Leaf ? LEAF : NON_LEAF);
+        out.writeLong(lengths.get(node));
+        writeBox(out, node.geometry().mbb());
+        out.writeInt(node.count());
+        if (node instanceof Leaf)
+            out.write(leafEntries.get(node));
+        else
+            for (Node<T, S> child : ((NonLeaf<T, S>) node).children())
+                writeNode(out, child, lengths, leafEntries);
+    }
+
+    private static <T, S extends Geometry> void writeEntry(DataOutputStream out,
+            Entry<T, S> entry, Action2<T, OutputStream> objectSerializer,
+            ByteArrayOutputStream value) throws IOException {
+        Geometry g = entry.geometry();
+        if (g instanceof Point) {
+            Point p = (Point) g;
+            out.writeByte(POINT);
+            out.writeFloat(p.x());
+            out.writeFloat(p.y());
+            out.writeFloat(p.z());
+        } else if (g instanceof Box) {
+            out.writeByte(BOX);
+            writeBox(out, (Box) g);
+        } else if (g instanceof MovingBox) {
+            MovingBox m = (MovingBox) g;
+            out.writeByte(MOVING_BOX);
+            writeBox(out, m.box());
+            out.writeDouble(m.time());
+            writeBox(out, m.velocity());
+        } else
+            throw new RuntimeException("unsupported geometry: " + g);
+        // values are length prefixed so that the deserializer cannot read past
+        // the end of the value
+        value.reset();
+        objectSerializer.call(entry.value(), value);
+        out.writeInt(value.size());
+        value.writeTo(out);
+    }
+
+    private static <T, S extends Geometry> Node<T, S> readNode(DataInputStream in,
+            Func1<InputStream, T> objectDeserializer, Context context) throws IOException {
+        byte type = in.readByte();
+        // length is only needed by readers that skip subtrees
+        in.readLong();
+        Box mbr = readBox(in);
+        int count = in.readInt();
+        if (type == LEAF) {
+            List<Entry<T, S>> entries = new ArrayList<Entry<T, S>>(count);
+            for (int i = 0; i < count; i++)
+                entries.add(Serializer.<T, S> readEntry(in, objectDeserializer));
+            return new Leaf<T, S>(entries, mbr, context);
+        } else if (type == NON_LEAF) {
+            List<Node<T, S>> children = new ArrayList<Node<T, S>>(count);
+            for (int i = 0; i < count; i++)
+                children.add(
+                        Serializer.<T, S> readNode(in, objectDeserializer, context));
+            return new NonLeaf<T, S>(children, mbr, context);
+        } else
+            throw new RuntimeException("unexpected node type: " + type);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T, S extends Geometry> Entry<T, S> readEntry(DataInputStream in,
+            Func1<InputStream, T> objectDeserializer) throws IOException {
+        byte type = in.readByte();
+        final Geometry g;
+        if (type == POINT)
+            g = Point.create(in.readFloat(), in.readFloat(), in.readFloat());
+        else if (type == BOX)
+            g = readBox(in);
+        else if (type == MOVING_BOX) {
+            Box box = readBox(in);
+            double time = in.readDouble();
+            g = MovingBox.create(box, time, readBox(in));
+        } else
+            throw new RuntimeException("unexpected geometry type: " + type);
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        T value = objectDeserializer.call(new ByteArrayInputStream(bytes));
+        return Entry.entry(value, (S) g);
+    }
+
+    private static void writeBox(DataOutputStream out, Box b) throws IOException {
+        out.writeFloat(b.x1());
+        out.writeFloat(b.y1());
+        out.writeFloat(b.z1());
+        out.writeFloat(b.x2());
+        out.writeFloat(b.y2());
+        out.writeFloat(b.z2());
+    }
+
+    private static Box readBox(DataInputStream in) throws IOException {
+        return Box.create(in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat(),
+                in.readFloat(), in.readFloat());
     }
 
 }
@@ -0,0 +1,346 @@
+package com.github.davidmoten.rtree3d;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.github.davidmoten.rtree3d.geometry.Box;
+import com.github.davidmoten.rtree3d.geometry.Geometry;
+import com.github.davidmoten.rtree3d.geometry.HasGeometry;
+import com.google.common.base.Preconditions;
+
+import rx.Scheduler;
+import rx.functions.Func1;
+
+/**
+ * Bulk loading of an R-tree using the Sort-Tile-Recursive (STR) packing
+ * algorithm of Leutenegger, Lopez and Edgington extended to three dimensions.
+ * Items are sorted on x and cut into slabs, each slab is sorted on y and cut
+ * into strips and each strip is sorted on z and cut into full nodes. The same
+ * packing is then applied to the nodes of each level until a single root
+ * remains.
+ */
+final class SortTileRecursive {
+
+    /**
+     * Levels with fewer items than this are packed on the calling thread.
+     */
+    static final int PARALLEL_MIN_ITEMS = 10000;
+
+    private SortTileRecursive() {
+        // prevent instantiation
+    }
+
+    /**
+     * Returns the root node of a tree containing the given entries packed into
+     * full leaves and non-leaves.
+     *
+     * @param <T>
+     *            value type
+     * @param <S>
+     *            geometry type
+     * @param entries
+     *            entries to pack (must not be empty)
+     * @param context
+     *            the tree configuration
+     * @return root node
+     */
+    static <T, S extends Geometry> Node<T, S> createRoot(List<Entry<T, S>> entries,
+            Context context) {
+        Preconditions.checkArgument(!entries.isEmpty());
+        List<Node<T, S>> nodes = new ArrayList<Node<T, S>>();
+        for (List<Entry<T, S>> group : pack(entries, context.maxChildren(),
+                context.minChildren())) {
+            nodes.add(new Leaf<T, S>(group, context));
+        }
+        while (nodes.size() > 1) {
+            List<Node<T, S>> parents = new ArrayList<Node<T, S>>();
+            for (List<Node<T, S>> group : pack(nodes, context.maxChildren(),
+                    context.minChildren())) {
+                parents.add(new NonLeaf<T, S>(group, context));
+            }
+            nodes = parents;
+        }
+        return nodes.get(0);
+    }
+
+    /**
+     * Partitions the items into groups of at most <code>maxChildren</code>
+     * items using STR ordering. Every group except possibly the only group has
+     * at least <code>minChildren</code> items provided that
+     * <code>minChildren &lt;= maxChildren/2</code>.
+     *
+     * @param <T>
+     *            item type
+     * @param items
+     *            items to partition
+     * @param maxChildren
+     *            maximum size of a group
+     * @param minChildren
+     *            minimum size of a group
+     * @return groups of items
+     */
+    static <T extends HasGeometry> List<List<T>> pack(List<T> items, int maxChildren,
+            int minChildren) {
+        final int n = items.size();
+        final List<T> list = new ArrayList<T>(items);
+        if (n > maxChildren) {
+            final int numNodes = (n + maxChildren - 1) / maxChildren;
+            final int numSlices = (int) Math.ceil(Math.cbrt(numNodes));
+            final int stripSize = numSlices * maxChildren;
+            final int slabSize = numSlices * stripSize;
+            Collections.sort(list, X_COMPARATOR);
+            for (int i = 0; i < n; i += slabSize)
+                sortSlab(list.subList(i, Math.min(n, i + slabSize)), stripSize);
+        }
+        return chunk(list, maxChildren, minChildren);
+    }
+
+    /**
+     * As {@link #createRoot(List, Context)} but the sorting of each level and
+     * the creation of its nodes is shared between workers of the given
+     * {@link Scheduler}. The calling thread blocks until the tree is built and
+     * the tree is the same as that built by
+     * {@link #createRoot(List, Context)}.
+     *
+     * @param <T>
+     *            value type
+     * @param <S>
+     *            geometry type
+     * @param entries
+     *            entries to pack (must not be empty)
+     * @param context
+     *            the tree configuration
+     * @param scheduler
+     *            scheduler to run the work on
+     * @return root node
+     */
+    static <T, S extends Geometry> Node<T, S> createRoot(List<Entry<T, S>> entries,
+            final Context context, Scheduler scheduler) {
+        Preconditions.checkArgument(!entries.isEmpty());
+        List<Node<T, S>> nodes = createNodes(
+                pack(entries, context.maxChildren(), context.minChildren(), scheduler),
+                new Func1<List<Entry<T, S>>, Node<T, S>>() {
+                    @Override
+                    public Node<T, S> call(List<Entry<T, S>> group) {
+                        return new Leaf<T, S>(group, context);
+                    }
+                }, scheduler);
+        while (nodes.size() > 1) {
+            nodes = createNodes(
+                    pack(nodes, context.maxChildren(), context.minChildren(), scheduler),
+                    new Func1<List<Node<T, S>>, Node<T, S>>() {
+                        @Override
+                        public Node<T, S> call(List<Node<T, S>> group) {
+                            return new NonLeaf<T, S>(group, context);
+                        }
+                    }, scheduler);
+        }
+        return nodes.get(0);
+    }
+
+    /**
+     * As {@link #pack(List, int, int)} but sorts on the given
+     * {@link Scheduler}. The x sort is a parallel merge sort and then each slab
+     * is sorted on y and z independently. Gives the same groups as
+     * {@link #pack(List, int, int)}.
+     *
+     * @param <T>
+     *            item type
+     * @param items
+     *            items to partition
+     * @param maxChildren
+     *            maximum size of a group
+     * @param minChildren
+     *            minimum size of a group
+     * @param scheduler
+     *            scheduler to run the sorts on
+     * @return groups of items
+     */
+    static <T extends HasGeometry> List<List<T>> pack(List<T> items, int maxChildren,
+            int minChildren, Scheduler scheduler) {
+        final int n = items.size();
+        if (n < PARALLEL_MIN_ITEMS)
+            return pack(items, maxChildren, minChildren);
+        final int numNodes = (n + maxChildren - 1) / maxChildren;
+        final int numSlices = (int) Math.ceil(Math.cbrt(numNodes));
+        final int stripSize = numSlices * maxChildren;
+        final int slabSize = numSlices * stripSize;
+        final List<T> list = sort(items, X_COMPARATOR, scheduler, parallelism());
+        List<Runnable> tasks = new ArrayList<Runnable>();
+        for (int i = 0; i < n; i += slabSize) {
+            final List<T> slab = list.subList(i, Math.min(n, i + slabSize));
+            tasks.add(new Runnable() {
+                @Override
+                public void run() {
+                    sortSlab(slab, stripSize);
+                }
+            });
+        }
+        Util.runAll(tasks, scheduler);
+        return chunk(list, maxChildren, minChildren);
+    }
+
+    private static <T extends HasGeometry> void sortSlab(List<T> slab, int stripSize) {
+        Collections.sort(slab, Y_COMPARATOR);
+        for (int j = 0; j < slab.size(); j += stripSize) {
+            Collections.sort(slab.subList(j, Math.min(slab.size(), j + stripSize)),
+                    Z_COMPARATOR);
+        }
+    }
+
+    /**
+     * Returns a sorted copy of the items. Runs of the items are sorted
+     * concurrently and then merged pairwise (each round of merges also
+     * concurrently). The sort is stable so the result is the same as
+     * {@link Collections#sort(List, Comparator)}.
+     *
+     * @param <T>
+     *            item type
+     * @param items
+     *            items to sort
+     * @param comparator
+     *            ordering
+     * @param scheduler
+     *            scheduler to sort on
+     * @param runs
+     *            number of runs to sort concurrently
+     * @return sorted copy of the items
+     */
+    @SuppressWarnings("unchecked")
+    static <T> List<T> sort(List<T> items, final Comparator<? super T> comparator,
+            Scheduler scheduler, int runs) {
+        final T[] a = (T[]) items.toArray();
+        final int n = a.length;
+        final int runSize = Math.max(1, (n + runs - 1) / runs);
+        List<Runnable> tasks = new ArrayList<Runnable>();
+        for (int i = 0; i < n; i += runSize) {
+            final int from = i;
+            final int to = Math.min(n, i + runSize);
+            tasks.add(new Runnable() {
+                @Override
+                public void run() {
+                    Arrays.sort(a, from, to, comparator);
+                }
+            });
+        }
+        Util.runAll(tasks, scheduler);
+        T[] src = a;
+        T[] dst = (T[]) new Object[n];
+        for (int width = runSize; width < n; width *= 2) {
+            tasks = new ArrayList<Runnable>();
+            for (int i = 0; i < n; i += 2 * width) {
+                final int lo = i;
+                final int mid = Math.min(n, i + width);
+                final int hi = Math.min(n, i + 2 * width);
+                final T[] from = src;
+                final T[] to = dst;
+                tasks.add(new Runnable() {
+                    @Override
+                    public void run() {
+                        merge(from, to, lo, mid, hi, comparator);
+                    }
+                });
+            }
+            Util.runAll(tasks, scheduler);
+            T[] temp = src;
+            src = dst;
+            dst = temp;
+        }
+        return new ArrayList<T>(Arrays.asList(src));
+    }
+
+    private static <T> void merge(T[] from, T[] to, int lo, int mid, int hi,
+            Comparator<? super T> comparator) {
+        int i = lo;
+        int j = mid;
+        for (int k = lo; k < hi; k++) {
+            // take from the left run on ties so that the merge is stable
+            if (j == hi || (i < mid && comparator.compare(from[i], from[j]) <= 0))
+                to[k] = from[i++];
+            else
+                to[k] = from[j++];
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T, S extends Geometry, R> List<Node<T, S>> createNodes(
+            final List<List<R>> groups, final Func1<List<R>, Node<T, S>> factory,
+            Scheduler scheduler) {
+        final Object[] nodes = new Object[groups.size()];
+        final int rangeSize = Math.max(1, (groups.size() + parallelism() - 1) / parallelism());
+        List<Runnable> tasks = new ArrayList<Runnable>();
+        for (int i = 0; i < groups.size(); i += rangeSize) {
+            final int from = i;
+            final int to = Math.min(groups.size(), i + rangeSize);
+            tasks.add(new Runnable() {
+                @Override
+                public void run() {
+                    for (int k = from; k < to; k++)
+                        nodes[k] = factory.call(groups.get(k));
+                }
+            });
+        }
+        Util.runAll(tasks, scheduler);
+        List<Node<T, S>> list = new ArrayList<Node<T, S>>(nodes.length);
+        for (Object node : nodes)
+            list.add((Node<T, S>) node);
+        return list;
+    }
+
+    private static int parallelism() {
+        return 4 * Runtime.getRuntime().availableProcessors();
+    }
+
+    static <T> List<List<T>> chunk(List<T> list, int maxChildren, int minChildren) {
+        final int n = list.size();
+        List<List<T>> groups = new ArrayList<List<T>>((n + maxChildren - 1) / maxChildren);
+        int start = 0;
+        while (start < n) {
+            int remaining = n - start;
+            final int size;
+            if (remaining <= maxChildren)
+                size = remaining;
+            else if (remaining < maxChildren + minChildren)
+                // share the last two groups evenly so that the last group is
+                // not under-filled
+                size = (remaining + 1) / 2;
+            else
+                size = maxChildren;
+            // copy so that a group does not retain a view of the whole list
+            groups.add(new ArrayList<T>(list.subList(start, start + size)));
+            start += size;
+        }
+        return groups;
+    }
+
+    private static final Comparator<HasGeometry> X_COMPARATOR = new Comparator<HasGeometry>() {
+        @Override
+        public int compare(HasGeometry g1, HasGeometry g2) {
+            Box a = g1.geometry().mbb();
+            Box b = g2.geometry().mbb();
+            return Float.compare(a.x1() + a.x2(), b.x1() + b.x2());
+        }
+    };
+
+    private static final Comparator<HasGeometry> Y_COMPARATOR = new Comparator<HasGeometry>() {
+        @Override
+        public int compare(HasGeometry g1, HasGeometry g2) {
+            Box a = g1.geometry().mbb();
+            Box b = g2.geometry().mbb();
+            return Float.compare(a.y1() + a.y2(), b.y1() + b.y2());
+        }
+    };
+
+    private static final Comparator<HasGeometry> Z_COMPARATOR = new Comparator<HasGeometry>() {
+        @Override
+        public int compare(HasGeometry g1, HasGeometry g2) {
+            Box a = g1.geometry().mbb();
+            Box b = g2.geometry().mbb();
+            return Float.compare(a.z1() + a.z2(), b.z1() + b.z2());
+        }
+    };
+
+}
@@ -0,0 +1,41 @@
+package com.github.davidmoten.rtree3d;
+
+import java.util.List;
+
+import com.github.davidmoten.rtree3d.geometry.Box;
+import com.github.davidmoten.rtree3d.geometry.HasGeometry;
+import com.github.davidmoten.rtree3d.geometry.ListPair;
+import com.google.common.base.Preconditions;
+
+/**
+ * Hilbert R-tree splitter: sorts the items by Hilbert value (the largest
+ * Hilbert value for nodes) and splits them into two halves, see
+ * {@link RTree.Builder#hilbert()}. Splitting at the midpoint gives each half
+ * at least <code>minSize</code> items whenever <code>minSize</code> is at most
+ * half the number of items, which {@link RTree.Builder#hilbert()} ensures by
+ * requiring <code>minChildren &lt;= maxChildren / 2</code>.
+ */
+public final class SplitterHilbert implements Splitter {
+
+    private final Hilbert hilbert;
+
+    /**
+     * Constructor.
+     * 
+     * @param bounds
+     *            the box the centres of entries are normalised to when
+     *            calculating Hilbert values
+     */
+    public SplitterHilbert(Box bounds) {
+        this.hilbert = new Hilbert(bounds);
+    }
+
+    @Override
+    public <T extends HasGeometry> ListPair<T> split(List<T> items, int minSize) {
+        Preconditions.checkArgument(items.size() >= 2);
+        Preconditions.checkArgument(minSize <= items.size() / 2);
+        List<List<T>> halves = Hilbert.divide(hilbert.sort(items), 2);
+        return new ListPair<T>(halves.get(0), halves.get(1));
+    }
+
+}
@@ -0,0 +1,199 @@
+package com.github.davidmoten.rtree3d;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.davidmoten.rtree3d.geometry.Geometry;
+import com.google.common.base.Optional;
+
+/**
+ * A mutable editor of an {@link RTree} for applying many changes before
+ * publishing the result, obtained from {@link RTree#asTransient()}. Nodes
+ * created by the transient are owned by it and are updated in place rather
+ * than path-copied. Nodes of the original tree are copied the first time they
+ * are changed so the original tree is never modified.
+ *
+ * <p>
+ * {@link #persistent()} returns an immutable {@link RTree} sharing the
+ * untouched subtrees of the original tree after which the transient can no
+ * longer be used. A transient is not thread-safe.
+ * </p>
+ *
+ * @param <T>
+ *            the entry value type
+ * @param <S>
+ *            the entry geometry type
+ */
+public final class TransientRTree<T, S extends Geometry> {
+
+    private final Context context;
+    // identifies the nodes owned by this transient
+    private final Object edit = new Object();
+    private Optional<Node<T, S>> root;
+    private int size;
+    private boolean persisted;
+
+    @SuppressWarnings("unchecked")
+    TransientRTree(Optional<? extends Node<T, S>> root, int size, Context context) {
+        this.root = (Optional<Node<T, S>>) root;
+        this.size = size;
+        this.context = context;
+    }
+
+    /**
+     * Adds the entry to the tree.
+     *
+     * @param entry
+     *            item to add to the R-tree.
+     * @return this
+     */
+    public TransientRTree<T, S> add(Entry<? extends T, ? extends S> entry) {
+        checkNotPersisted();
+        Entry<T, S> e = Util.rebase(entry, context);
+        if (root.isPresent()) {
+            List<Node<T, S>> nodes = root.get().editable(edit).insert(e, edit);
+            if (nodes.size() == 1)
+                root = Optional.of(nodes.get(0));
+            else {
+                List<Node<T, S>> children = new ArrayList<Node<T, S>>(nodes);
+                root = Optional.<Node<T, S>> of(
+                        new NonLeaf<T, S>(children, Util.mbr(children), context, edit));
+            }
+        } else {
+            List<Entry<T, S>> entries = new ArrayList<Entry<T, S>>();
+            entries.add(e);
+            root = Optional.<Node<T, S>> of(
+                    new Leaf<T, S>(entries, e.geometry().mbb(), context, edit));
+        }
+        size++;
+        return this;
+    }
+
+    /**
+     * Adds an entry comprised of the given value and Geometry.
+     *
+     * @param value
+     *            the value of the {@link Entry} to be added
+     * @param geometry
+     *            the geometry of the {@link Entry} to be added
+     * @return this
+     */
+    public TransientRTree<T, S> add(T value, S geometry) {
+        return add(Entry.entry(value, geometry));
+    }
+
+    /**
+     * Adds the given entries.
+     *
+     * @param entries
+     *            entries to add
+     * @return this
+     */
+    public TransientRTree<T, S> add(Iterable<Entry<T, S>> entries) {
+        for (Entry<T, S> entry : entries)
+            add(entry);
+        return this;
+    }
+
+    /**
+     * Deletes one or all matching entries depending on the value of
+     * <code>all</code>. Nodes on the path to the deleted entries are replaced by
+     * nodes owned by this transient and entries to be redistributed are added
+     * back in place.
+     *
+     * @param entry
+     *            the {@link Entry} to be deleted
+     * @param all
+     *            if true deletes all matches otherwise deletes first found
+     * @return this
+     */
+    public TransientRTree<T, S> delete(Entry<? extends T, ? extends S> entry, boolean all) {
+        checkNotPersisted();
+        entry = Util.rebase(entry, context);
+        if (root.isPresent()) {
+            NodeAndEntries<T, S> nodeAndEntries = root.get().delete(entry, all, edit);
+            if (!nodeAndEntries.node().isPresent() || nodeAndEntries.node().get() != root.get()) {
+                root = Optional.<Node<T, S>> fromNullable(nodeAndEntries.node().orNull());
+                size -= nodeAndEntries.countDeleted() + nodeAndEntries.entriesToAdd().size();
+                add(nodeAndEntries.entriesToAdd());
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Deletes one entry if it exists. The entry must match on both value and
+     * geometry to be deleted.
+     *
+     * @param entry
+     *            the {@link Entry} to be deleted
+     * @return this
+     */
+    public TransientRTree<T, S> delete(Entry<? extends T, ? extends S> entry) {
+        return delete(entry, false);
+    }
+
+    /**
+     * Moves the entry to the given geometry (keeping its value) replacing it
+     * in its leaf when the new geometry lies within the bounds of the leaf or
+     * of its parent otherwise deleting and adding, see
+     * {@link RTree#move(Entry, Geometry)}. Does nothing if the entry is not in
+     * the tree.
+     *
+     * @param entry
+     *            the {@link Entry} to be moved
+     * @param geometry
+     *            the new geometry of the entry
+     * @return this
+     */
+    public TransientRTree<T, S> move(Entry<? extends T, ? extends S> entry, S geometry) {
+        checkNotPersisted();
+        if (!root.isPresent())
+            return this;
+        entry = Util.rebase(entry, context);
+        Entry<T, S> entry2 = Util.rebase(Entry.<T, S> entry(entry.value(), geometry), context);
+        if (!context.hilbert().isPresent() && !context.referenceTime().isPresent()) {
+            Node<T, S> node = root.get().move(entry, entry2, null, edit);
+            if (node != null) {
+                root = Optional.of(node);
+                return this;
+            }
+        }
+        int size0 = size;
+        delete(entry);
+        if (size != size0)
+            add(entry2);
+        return this;
+    }
+
+    /**
+     * Returns the number of entries in the tree.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns an immutable {@link RTree} with the current entries. The
+     * transient cannot be used afterwards.
+     *
+     * @return immutable R-tree
+     */
+    public RTree<T, S> persistent() {
+        checkNotPersisted();
+        persisted = true;
+        if (root.isPresent())
+            // rebuilds the owned nodes so that the tree holds no node that was
+            // modified in place
+            root = Optional.of(root.get().persistent(edit));
+        return RTree.create(root, size, context);
+    }
+
+    private void checkNotPersisted() {
+        if (persisted)
+            throw new RuntimeException("transient used after persistent() was called");
+    }
+
+}
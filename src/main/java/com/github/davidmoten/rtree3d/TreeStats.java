@@ -0,0 +1,398 @@
+package com.github.davidmoten.rtree3d;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.github.davidmoten.rtree3d.geometry.Box;
+import com.github.davidmoten.rtree3d.geometry.Geometry;
+
+import rx.Scheduler;
+
+/**
+ * Measures of the quality of the structure of an R-tree, see
+ * {@link RTree#stats()}. Use these to compare the effect of
+ * <code>maxChildren</code>, <code>minChildren</code>, {@link Splitter} and
+ * {@link Selector} on a dataset or to decide when a tree that has had many
+ * updates should be rebuilt.
+ *
+ * <p>
+ * Lower overlap means fewer subtrees are visited per search, lower dead space
+ * means fewer subtrees are visited that contain nothing matching and lower
+ * surface area (the R* margin) means more cube-like nodes.
+ * </p>
+ */
+public final class TreeStats {
+
+    /**
+     * Trees with fewer entries than this are measured sequentially because
+     * scheduling the subtrees costs more than it saves.
+     */
+    static final int PARALLEL_MIN_ENTRIES = 10000;
+
+    private final int maxChildren;
+    private final List<Level> levels;
+
+    private TreeStats(int maxChildren, List<Level> levels) {
+        this.maxChildren = maxChildren;
+        this.levels = levels;
+    }
+
+    /**
+     * Statistics of the nodes at one level of the tree.
+     */
+    public static final class Level {
+
+        // histogram[k] is the number of nodes with k children or entries
+        private long[] histogram;
+        private long nodes;
+        private long children;
+        private double volume;
+        private double surfaceArea;
+        private double overlapVolume;
+        private double deadSpace;
+
+        private Level(int maxChildren) {
+            this.histogram = new long[maxChildren + 1];
+        }
+
+        /**
+         * Returns the number of nodes at this level.
+         *
+         * @return number of nodes
+         */
+        public long nodes() {
+            return nodes;
+        }
+
+        /**
+         * Returns the total number of children (or entries at the leaf level)
+         * of the nodes at this level.
+         *
+         * @return number of children
+         */
+        public long children() {
+            return children;
+        }
+
+        /**
+         * Returns the number of nodes at this level with each number of
+         * children, so that element k is the number of nodes with k children
+         * (or entries at the leaf level).
+         *
+         * @return fill histogram indexed by number of children
+         */
+        public long[] fillHistogram() {
+            return histogram.clone();
+        }
+
+        /**
+         * Returns the mean number of children of the nodes at this level as a
+         * fraction of <code>maxChildren</code>.
+         *
+         * @return mean fill factor
+         */
+        public double meanFill() {
+            return nodes == 0 ? 0 : (double) children / nodes / (histogram.length - 1);
+        }
+
+        /**
+         * Returns the smallest fill factor of a node at this level.
+         *
+         * @return minimum fill factor
+         */
+        public double minFill() {
+            for (int k = 0; k < histogram.length; k++)
+                if (histogram[k] > 0)
+                    return (double) k / (histogram.length - 1);
+            return 0;
+        }
+
+        /**
+         * Returns the largest fill factor of a node at this level.
+         *
+         * @return maximum fill factor
+         */
+        public double maxFill() {
+            for (int k = histogram.length - 1; k >= 0; k--)
+                if (histogram[k] > 0)
+                    return (double) k / (histogram.length - 1);
+            return 0;
+        }
+
+        /**
+         * Returns the total volume of the bounding boxes of the nodes at this
+         * level.
+         *
+         * @return total volume
+         */
+        public double volume() {
+            return volume;
+        }
+
+        /**
+         * Returns the total surface area of the bounding boxes of the nodes at
+         * this level.
+         *
+         * @return total surface area
+         */
+        public double surfaceArea() {
+            return surfaceArea;
+        }
+
+        /**
+         * Returns the sum over the nodes at this level of the volume of
+         * intersection of each pair of their children. Always zero at the
+         * leaf level (overlap between entries is a property of the data).
+         *
+         * @return total pairwise sibling overlap volume
+         */
+        public double overlapVolume() {
+            return overlapVolume;
+        }
+
+        /**
+         * Returns the sum over the nodes at this level of the volume of the
+         * node not covered by any of its children (or entries). The covered
+         * volume is estimated by inclusion-exclusion over pairs of children
+         * which is exact unless three or more children share a region.
+         *
+         * @return total dead space
+         */
+        public double deadSpace() {
+            return deadSpace;
+        }
+
+        private void add(Level other) {
+            for (int k = 0; k < other.histogram.length; k++)
+                count(k, other.histogram[k]);
+            nodes += other.nodes;
+            children += other.children;
+            volume += other.volume;
+            surfaceArea += other.surfaceArea;
+            overlapVolume += other.overlapVolume;
+            deadSpace += other.deadSpace;
+        }
+
+        private void count(int k, long n) {
+            if (k >= histogram.length)
+                histogram = Arrays.copyOf(histogram, k + 1);
+            histogram[k] += n;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "nodes=%d, fill(min/mean/max)=%.2f/%.2f/%.2f, volume=%.4g, "
+                            + "surfaceArea=%.4g, overlapVolume=%.4g, deadSpace=%.4g",
+                    nodes, minFill(), meanFill(), maxFill(), volume, surfaceArea,
+                    overlapVolume, deadSpace);
+        }
+    }
+
+    /**
+     * Returns the number of levels of the tree, the same as
+     * {@link RTree#calculateDepth()}.
+     *
+     * @return depth of the tree
+     */
+    public int depth() {
+        return levels.size();
+    }
+
+    /**
+     * Returns the statistics of a level of the tree. The root is at level 0
+     * and the leaves are at level <code>depth() - 1</code>.
+     *
+     * @param level
+     *            depth below the root
+     * @return statistics of the nodes at the level
+     */
+    public Level level(int level) {
+        return levels.get(level);
+    }
+
+    /**
+     * Returns the number of nodes in the tree.
+     *
+     * @return number of nodes
+     */
+    public long nodes() {
+        long total = 0;
+        for (Level level : levels)
+            total += level.nodes;
+        return total;
+    }
+
+    /**
+     * Returns the pairwise sibling overlap volume summed over all levels.
+     *
+     * @return total overlap volume
+     */
+    public double overlapVolume() {
+        double total = 0;
+        for (Level level : levels)
+            total += level.overlapVolume;
+        return total;
+    }
+
+    /**
+     * Returns the dead space summed over all levels.
+     *
+     * @return total dead space
+     */
+    public double deadSpace() {
+        double total = 0;
+        for (Level level : levels)
+            total += level.deadSpace;
+        return total;
+    }
+
+    /**
+     * Returns the surface area of the bounding boxes of all nodes.
+     *
+     * @return total surface area
+     */
+    public double surfaceArea() {
+        double total = 0;
+        for (Level level : levels)
+            total += level.surfaceArea;
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("TreeStats [depth=");
+        builder.append(depth());
+        builder.append(", maxChildren=");
+        builder.append(maxChildren);
+        builder.append(", nodes=");
+        builder.append(nodes());
+        builder.append(String.format(", overlapVolume=%.4g, deadSpace=%.4g, surfaceArea=%.4g",
+                overlapVolume(), deadSpace(), surfaceArea()));
+        builder.append("]");
+        for (int i = 0; i < levels.size(); i++) {
+            builder.append("\n  level ");
+            builder.append(i);
+            builder.append(": ");
+            builder.append(levels.get(i));
+        }
+        return builder.toString();
+    }
+
+    static TreeStats empty(Context context) {
+        return new TreeStats(context.maxChildren(), Collections.<Level> emptyList());
+    }
+
+    /**
+     * Measures the tree with the given root in one traversal.
+     */
+    static <T, S extends Geometry> TreeStats create(Node<T, S> root, Context context) {
+        Level[] levels = newLevels(depth(root), context.maxChildren());
+        visit(root, 0, levels);
+        return new TreeStats(context.maxChildren(), Arrays.asList(levels));
+    }
+
+    /**
+     * Measures the tree with the given root measuring disjoint subtrees
+     * concurrently on the scheduler.
+     */
+    static <T, S extends Geometry> TreeStats create(Node<T, S> root, Context context,
+            Scheduler scheduler, int subtrees) {
+        if (root.countEntries() < PARALLEL_MIN_ENTRIES)
+            return create(root, context);
+        final int maxChildren = context.maxChildren();
+        final int depth = depth(root);
+        Level[] levels = newLevels(depth, maxChildren);
+        // measure the upper levels here until there are enough subtrees
+        List<Node<T, S>> nodes = Collections.singletonList(root);
+        int level = 0;
+        while (nodes.size() < subtrees && nodes.get(0) instanceof NonLeaf) {
+            List<Node<T, S>> next = new ArrayList<Node<T, S>>();
+            for (Node<T, S> node : nodes) {
+                measure(node, levels[level]);
+                next.addAll(((NonLeaf<T, S>) node).children());
+            }
+            nodes = next;
+            level++;
+        }
+        final Level[][] results = new Level[nodes.size()][];
+        final int start = level;
+        List<Runnable> tasks = new ArrayList<Runnable>(nodes.size());
+        for (int i = 0; i < nodes.size(); i++) {
+            final int index = i;
+            final Node<T, S> node = nodes.get(i);
+            tasks.add(new Runnable() {
+                @Override
+                public void run() {
+                    Level[] result = newLevels(depth, maxChildren);
+                    visit(node, start, result);
+                    results[index] = result;
+                }
+            });
+        }
+        Util.runAll(tasks, scheduler);
+        for (Level[] result : results)
+            for (int i = start; i < depth; i++)
+                levels[i].add(result[i]);
+        return new TreeStats(maxChildren, Arrays.asList(levels));
+    }
+
+    private static Level[] newLevels(int depth, int maxChildren) {
+        Level[] levels = new Level[depth];
+        for (int i = 0; i < depth; i++)
+            levels[i] = new Level(maxChildren);
+        return levels;
+    }
+
+    private static <T, S extends Geometry> int depth(Node<T, S> node) {
+        // all leaves are at the same depth
+        int depth = 1;
+        while (node instanceof NonLeaf) {
+            node = ((NonLeaf<T, S>) node).children().get(0);
+            depth++;
+        }
+        return depth;
+    }
+
+    private static <T, S extends Geometry> void visit(Node<T, S> node, int level,
+            Level[] levels) {
+        measure(node, levels[level]);
+        if (node instanceof NonLeaf)
+            for (Node<T, S> child : ((NonLeaf<T, S>) node).children())
+                visit(child, level + 1, levels);
+    }
+
+    private static <T, S extends Geometry> void measure(Node<T, S> node, Level level) {
+        Box b = node.geometry().mbb();
+        int count = node.count();
+        level.nodes++;
+        level.children += count;
+        level.count(count, 1);
+        level.volume += b.volume();
+        level.surfaceArea += b.surfaceArea();
+        double covered = 0;
+        double overlap = 0;
+        Box[] boxes = new Box[count];
+        if (node instanceof NonLeaf) {
+            List<? extends Node<T, S>> list = ((NonLeaf<T, S>) node).children();
+            for (int i = 0; i < count; i++)
+                boxes[i] = list.get(i).geometry().mbb();
+        } else {
+            List<Entry<T, S>> list = ((Leaf<T, S>) node).entries();
+            for (int i = 0; i < count; i++)
+                boxes[i] = list.get(i).geometry().mbb();
+        }
+        for (int i = 0; i < count; i++) {
+            covered += boxes[i].volume();
+            for (int j = i + 1; j < count; j++)
+                overlap += boxes[i].intersectionVolume(boxes[j]);
+        }
+        if (node instanceof NonLeaf)
+            level.overlapVolume += overlap;
+        level.deadSpace += Math.min(b.volume(), Math.max(0, b.volume() - (covered - overlap)));
+    }
+
+}
@@ -5,9 +5,16 @@ import java.util.Collection;
 import java.util.List;
 
 import com.github.davidmoten.rtree3d.geometry.Box;
+import com.github.davidmoten.rtree3d.geometry.Geometry;
 import com.github.davidmoten.rtree3d.geometry.HasGeometry;
+import com.github.davidmoten.rtree3d.geometry.ListPair;
+import com.github.davidmoten.rtree3d.geometry.MovingBox;
 import com.google.common.base.Preconditions;
 
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Action1;
+
 /**
  * @author dxm
  *
@@ -65,6 +72,75 @@ public final class Util {
         return Box.create(minX1, minY1, minZ1, maxX2, maxY2, maxZ2);
     }
 
+    /**
+     * Returns the time-parameterized bounds of the items: the given bounds of
+     * the items at the reference time with each minimum face moving at the
+     * smallest and each maximum face moving at the largest velocity of the
+     * items (zero for items that are not a {@link MovingBox}).
+     * 
+     * @param mbr
+     *            bounds of the items at the reference time
+     * @param time
+     *            reference time
+     * @param items
+     *            entries or nodes
+     * @return moving bounds of the items
+     */
+    static MovingBox movingBounds(Box mbr, double time, Collection<? extends HasGeometry> items) {
+        float vx1 = Float.MAX_VALUE;
+        float vy1 = Float.MAX_VALUE;
+        float vz1 = Float.MAX_VALUE;
+        float vx2 = -Float.MAX_VALUE;
+        float vy2 = -Float.MAX_VALUE;
+        float vz2 = -Float.MAX_VALUE;
+        for (final HasGeometry item : items) {
+            Geometry g = item.geometry();
+            final Box v;
+            if (g instanceof MovingBox)
+                v = ((MovingBox) g).velocity();
+            else
+                v = ZERO_VELOCITY;
+            vx1 = Math.min(vx1, v.x1());
+            vy1 = Math.min(vy1, v.y1());
+            vz1 = Math.min(vz1, v.z1());
+            vx2 = Math.max(vx2, v.x2());
+            vy2 = Math.max(vy2, v.y2());
+            vz2 = Math.max(vz2, v.z2());
+        }
+        return MovingBox.create(mbr, time, Box.create(vx1, vy1, vz1, vx2, vy2, vz2));
+    }
+
+    private static final Box ZERO_VELOCITY = Box.create(0, 0, 0, 0, 0, 0);
+
+    /**
+     * Returns the entry with a {@link MovingBox} geometry referenced to the
+     * reference time of a time-parameterized tree so that the bounds of the
+     * nodes above it are correct. Other entries are returned unchanged.
+     */
+    @SuppressWarnings("unchecked")
+    static <T, S extends Geometry> Entry<T, S> rebase(Entry<? extends T, ? extends S> entry,
+            Context context) {
+        if (context.referenceTime().isPresent() && entry.geometry() instanceof MovingBox) {
+            MovingBox m = (MovingBox) entry.geometry();
+            double time = context.referenceTime().get();
+            if (m.time() != time)
+                return Entry.entry((T) entry.value(), (S) m.rebase(time));
+        }
+        return (Entry<T, S>) entry;
+    }
+
+    /**
+     * Returns a new list of the entries each rebased as by
+     * {@link #rebase(Entry, Context)}.
+     */
+    static <T, S extends Geometry> List<Entry<T, S>> rebase(Iterable<Entry<T, S>> entries,
+            Context context) {
+        List<Entry<T, S>> list = new ArrayList<Entry<T, S>>();
+        for (Entry<T, S> entry : entries)
+            list.add(Util.<T, S> rebase(entry, context));
+        return list;
+    }
+
     static <T> List<T> add(List<T> list, T element) {
         final ArrayList<T> result = new ArrayList<T>(list.size() + 2);
         result.addAll(list);
@@ -78,6 +154,33 @@ public final class Util {
         return result;
     }
 
+    /**
+     * Partitions items into groups of at most <code>maxChildren</code> items
+     * (and at least <code>minChildren</code> where there is more than one
+     * group) by splitting recursively with the context's {@link Splitter}.
+     * 
+     * @param <T>
+     *            item type
+     * @param items
+     *            items to partition
+     * @param context
+     *            tree configuration
+     * @return groups of items
+     */
+    static <T extends HasGeometry> List<List<T>> split(List<T> items, Context context) {
+        if (context.hilbert().isPresent())
+            return context.hilbert().get().split(items, context);
+        List<List<T>> groups = new ArrayList<List<T>>();
+        if (items.size() <= context.maxChildren())
+            groups.add(items);
+        else {
+            ListPair<T> pair = context.splitter().split(items, context.minChildren());
+            groups.addAll(split(pair.group1().list(), context));
+            groups.addAll(split(pair.group2().list(), context));
+        }
+        return groups;
+    }
+
     static <T> List<? extends T> replace(List<? extends T> list, T element, List<T> replacements) {
         List<T> list2 = new ArrayList<T>(list.size() + replacements.size());
         for (T node : list)
@@ -87,4 +190,26 @@ public final class Util {
         return list2;
     }
 
+    /**
+     * Runs the tasks on the scheduler and blocks until they have all
+     * finished. An exception thrown by a task is rethrown.
+     */
+    static void runAll(List<Runnable> tasks, Scheduler scheduler) {
+        if (tasks.size() == 1) {
+            tasks.get(0).run();
+            return;
+        }
+        List<Observable<Runnable>> list = new ArrayList<Observable<Runnable>>(tasks.size());
+        for (Runnable task : tasks)
+            list.add(Observable.just(task).doOnNext(RUN).subscribeOn(scheduler));
+        Observable.merge(list).toBlocking().lastOrDefault(null);
+    }
+
+    private static final Action1<Runnable> RUN = new Action1<Runnable>() {
+        @Override
+        public void call(Runnable task) {
+            task.run();
+        }
+    };
+
 }
@@ -69,12 +69,42 @@ public final class Box implements Geometry, HasGeometry {
 
     @Override
     public boolean intersects(Box r) {
-        return !(x1 > r.x2 || x2 < r.x1 || y1 > r.y2 || y2 < r.y1 || z1 > r.z2 || z2 < r.z1);
+        return intersects(x1, y1, z1, x2, y2, z2, r);
     }
 
     @Override
     public double distance(Box r) {
-        if (intersects(r))
+        return distance(x1, y1, z1, x2, y2, z2, r);
+    }
+
+    /**
+     * Returns true if and only if the given box lies entirely within this box
+     * (boundaries included).
+     * 
+     * @param r
+     *            box to test
+     * @return true if r is inside this box
+     */
+    public boolean contains(Box r) {
+        return x1 <= r.x1 && y1 <= r.y1 && z1 <= r.z1 && r.x2 <= x2 && r.y2 <= y2 && r.z2 <= z2;
+    }
+
+    /**
+     * As {@link #intersects(Box)} for a box held as raw floats (avoids
+     * allocating a {@link Box}).
+     */
+    public static boolean intersects(float x1, float y1, float z1, float x2, float y2, float z2,
+            Box r) {
+        return !(x1 > r.x2 || x2 < r.x1 || y1 > r.y2 || y2 < r.y1 || z1 > r.z2 || z2 < r.z1);
+    }
+
+    /**
+     * As {@link #distance(Box)} for a box held as raw floats (avoids allocating
+     * a {@link Box}).
+     */
+    public static double distance(float x1, float y1, float z1, float x2, float y2, float z2,
+            Box r) {
+        if (intersects(x1, y1, z1, x2, y2, z2, r))
             return 0;
 
         double dx = 0.0;
@@ -160,7 +190,7 @@ public final class Box implements Geometry, HasGeometry {
 
     @Override
     public int hashCode() {
-        return Objects.hashCode(x1, y1, x2, y2);
+        return Objects.hashCode(x1, y1, z1, x2, y2, z2);
     }
 
     @Override
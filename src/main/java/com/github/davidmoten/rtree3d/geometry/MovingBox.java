@@ -0,0 +1,218 @@
+package com.github.davidmoten.rtree3d.geometry;
+
+import com.github.davidmoten.util.ObjectsHelper;
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+
+/**
+ * A time-parameterized box: a reference {@link Box} at a reference time whose
+ * faces move with constant velocities. A moving object has the same velocity
+ * for its minimum and maximum faces (its box translates). The bounds of a node
+ * of a time-parameterized R-tree (TPR-tree) move their minimum faces with the
+ * minimum velocity and their maximum faces with the maximum velocity of their
+ * children so that the bounds expand over time and contain the children at
+ * every time after the reference time.
+ *
+ * <p>
+ * The {@link #mbb()} (and so {@link #intersects(Box)} and
+ * {@link #distance(Box)}) of a moving box is its box at the reference time,
+ * use {@link #at(double)}, {@link #intersects(Box, double)} and
+ * {@link #distance(Box, double)} for other times.
+ * </p>
+ */
+public final class MovingBox implements Geometry, HasGeometry {
+
+    private final Box box;
+    private final double time;
+    // velocities of the minimum faces (x1, y1, z1) and maximum faces (x2, y2,
+    // z2)
+    private final float vx1, vy1, vz1, vx2, vy2, vz2;
+
+    private MovingBox(Box box, double time, float vx1, float vy1, float vz1, float vx2,
+            float vy2, float vz2) {
+        Preconditions.checkNotNull(box);
+        Preconditions.checkArgument(vx2 >= vx1 && vy2 >= vy1 && vz2 >= vz1);
+        this.box = box;
+        this.time = time;
+        this.vx1 = vx1;
+        this.vy1 = vy1;
+        this.vz1 = vz1;
+        this.vx2 = vx2;
+        this.vy2 = vy2;
+        this.vz2 = vz2;
+    }
+
+    /**
+     * Returns the box moving with the given velocity that is at
+     * <code>box</code> at the given time.
+     *
+     * @param box
+     *            the box at time <code>time</code>
+     * @param time
+     *            time of observation of the box
+     * @param vx
+     *            velocity in the x direction
+     * @param vy
+     *            velocity in the y direction
+     * @param vz
+     *            velocity in the z direction
+     * @return moving box
+     */
+    public static MovingBox create(Box box, double time, double vx, double vy, double vz) {
+        return new MovingBox(box, time, (float) vx, (float) vy, (float) vz, (float) vx,
+                (float) vy, (float) vz);
+    }
+
+    /**
+     * Returns the box whose minimum faces move with the velocities
+     * <code>(velocity.x1(), velocity.y1(), velocity.z1())</code> and maximum
+     * faces move with the velocities
+     * <code>(velocity.x2(), velocity.y2(), velocity.z2())</code>.
+     *
+     * @param box
+     *            the box at time <code>time</code>
+     * @param time
+     *            reference time
+     * @param velocity
+     *            velocities of the minimum and maximum faces
+     * @return moving box
+     */
+    public static MovingBox create(Box box, double time, Box velocity) {
+        return new MovingBox(box, time, velocity.x1(), velocity.y1(), velocity.z1(),
+                velocity.x2(), velocity.y2(), velocity.z2());
+    }
+
+    /**
+     * Returns the box at the reference time.
+     *
+     * @return reference box
+     */
+    public Box box() {
+        return box;
+    }
+
+    /**
+     * Returns the reference time.
+     *
+     * @return reference time
+     */
+    public double time() {
+        return time;
+    }
+
+    /**
+     * Returns the velocities of the minimum faces as <code>(x1, y1, z1)</code>
+     * and of the maximum faces as <code>(x2, y2, z2)</code>.
+     *
+     * @return face velocities
+     */
+    public Box velocity() {
+        return Box.create(vx1, vy1, vz1, vx2, vy2, vz2);
+    }
+
+    /**
+     * Returns the box at the given time. Before the reference time the faces
+     * are moved back so that the box at any time contains the boxes of
+     * anything this box bounds.
+     *
+     * @param t
+     *            time
+     * @return box at time t
+     */
+    public Box at(double t) {
+        double dt = t - time;
+        if (dt == 0)
+            return box;
+        else if (dt > 0)
+            return Box.create(box.x1() + vx1 * dt, box.y1() + vy1 * dt, box.z1() + vz1 * dt,
+                    box.x2() + vx2 * dt, box.y2() + vy2 * dt, box.z2() + vz2 * dt);
+        else
+            return Box.create(box.x1() + vx2 * dt, box.y1() + vy2 * dt, box.z1() + vz2 * dt,
+                    box.x2() + vx1 * dt, box.y2() + vy1 * dt, box.z2() + vz1 * dt);
+    }
+
+    /**
+     * Returns the same motion referenced to the given time.
+     *
+     * @param t
+     *            new reference time
+     * @return moving box with reference time t
+     */
+    public MovingBox rebase(double t) {
+        if (t == time)
+            return this;
+        else
+            return new MovingBox(at(t), t, vx1, vy1, vz1, vx2, vy2, vz2);
+    }
+
+    /**
+     * Returns true if and only if the box at time t intersects r.
+     *
+     * @param r
+     *            box to test
+     * @param t
+     *            time
+     * @return true if intersects at time t
+     */
+    public boolean intersects(Box r, double t) {
+        return at(t).intersects(r);
+    }
+
+    /**
+     * Returns the distance to r of the box at time t.
+     *
+     * @param r
+     *            box to measure distance to
+     * @param t
+     *            time
+     * @return distance at time t
+     */
+    public double distance(Box r, double t) {
+        return at(t).distance(r);
+    }
+
+    @Override
+    public double distance(Box r) {
+        return box.distance(r);
+    }
+
+    @Override
+    public Box mbb() {
+        return box;
+    }
+
+    @Override
+    public boolean intersects(Box r) {
+        return box.intersects(r);
+    }
+
+    @Override
+    public Geometry geometry() {
+        return this;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(box, time, vx1, vy1, vz1, vx2, vy2, vz2);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        Optional<MovingBox> other = ObjectsHelper.asClass(obj, MovingBox.class);
+        if (other.isPresent()) {
+            MovingBox m = other.get();
+            return Objects.equal(box, m.box) && time == m.time && vx1 == m.vx1
+                    && vy1 == m.vy1 && vz1 == m.vz1 && vx2 == m.vx2 && vy2 == m.vy2
+                    && vz2 == m.vz2;
+        } else
+            return false;
+    }
+
+    @Override
+    public String toString() {
+        return "MovingBox [box=" + box + ", time=" + time + ", velocity=[" + vx1 + ", " + vy1
+                + ", " + vz1 + ", " + vx2 + ", " + vy2 + ", " + vz2 + "]]";
+    }
+
+}
@@ -18,11 +18,10 @@ import com.github.davidmoten.junit.Asserts;
 import com.github.davidmoten.rtree3d.Backpressure;
 import com.github.davidmoten.rtree3d.Entry;
 import com.github.davidmoten.rtree3d.Node;
-import com.github.davidmoten.rtree3d.NodePosition;
 import com.github.davidmoten.rtree3d.RTree;
 import com.github.davidmoten.rtree3d.geometry.Box;
+import com.github.davidmoten.rtree3d.geometry.Geometries;
 import com.github.davidmoten.rtree3d.geometry.Geometry;
-import com.github.davidmoten.util.ImmutableStack;
 
 import rx.Subscriber;
 import rx.Subscription;
@@ -39,10 +38,13 @@ public class BackpressureTest {
     @Test
     public void testBackpressureSearch() {
         Subscriber<Object> sub = Mockito.mock(Subscriber.class);
-        ImmutableStack<NodePosition<Object, Geometry>> stack = ImmutableStack.empty();
-        Func1<Geometry, Boolean> condition = Mockito.mock(Func1.class);
-        Backpressure.search(condition, sub, stack, 1);
+        Node<Object, Geometry> node = Mockito.mock(Node.class);
+        SearchCursor<Object, Geometry> cursor = new SearchCursor<Object, Geometry>(node);
+        cursor.clear();
+        SearchCondition condition = SearchCondition.from(Mockito.mock(Func1.class));
+        Backpressure.search(condition, sub, cursor, 1, null);
         Mockito.verify(sub, Mockito.never()).onNext(Mockito.any());
+        assertTrue(cursor.isEmpty());
     }
 
     @Test
@@ -87,13 +89,12 @@ public class BackpressureTest {
             }
         });
         Node<Object, Geometry> node = Mockito.mock(Node.class);
-        NodePosition<Object, Geometry> np = new NodePosition<Object, Geometry>(node, 1);
-        ImmutableStack<NodePosition<Object, Geometry>> stack = ImmutableStack
-                .<NodePosition<Object, Geometry>> empty().push(np);
-        Func1<Geometry, Boolean> condition = Mockito.mock(Func1.class);
-        ImmutableStack<NodePosition<Object, Geometry>> stack2 = Backpressure.search(condition, sub,
-                stack, 0);
-        assertTrue(stack2 == stack);
+        SearchCursor<Object, Geometry> cursor = new SearchCursor<Object, Geometry>(node);
+        cursor.next();
+        SearchCondition condition = SearchCondition.from(Mockito.mock(Func1.class));
+        Backpressure.search(condition, sub, cursor, 0, null);
+        assertTrue(cursor.node() == node);
+        assertEquals(1, cursor.position());
     }
 
     @SuppressWarnings("unchecked")
@@ -130,13 +131,11 @@ public class BackpressureTest {
         });
         sub.unsubscribe();
         Node<Object, Geometry> node = Mockito.mock(Node.class);
-        NodePosition<Object, Geometry> np = new NodePosition<Object, Geometry>(node, 1);
-        ImmutableStack<NodePosition<Object, Geometry>> stack = ImmutableStack
-                .<NodePosition<Object, Geometry>> empty().push(np);
-        Func1<Geometry, Boolean> condition = Mockito.mock(Func1.class);
-        ImmutableStack<NodePosition<Object, Geometry>> stack2 = Backpressure.search(condition, sub,
-                stack, 1);
-        assertTrue(stack2.isEmpty());
+        SearchCursor<Object, Geometry> cursor = new SearchCursor<Object, Geometry>(node);
+        cursor.next();
+        SearchCondition condition = SearchCondition.from(Mockito.mock(Func1.class));
+        Backpressure.search(condition, sub, cursor, 1, null);
+        assertTrue(cursor.isEmpty());
     }
 
     @Test
@@ -255,6 +254,42 @@ public class BackpressureTest {
         assertEquals(expected, found);
     }
 
+    @Test
+    public void testBackpressureSearchOfPackedLeavesMatchesFastPath() {
+        List<Entry<Object, Box>> list = new ArrayList<Entry<Object, Box>>();
+        for (int i = 1; i <= 100; i++)
+            list.add(e(i));
+        RTree<Object, Box> tree = RTree.packedLeaves().maxChildren(4).<Object, Box> create()
+                .add(list);
+        Box r = Geometries.box(10, 10, 0, 40, 40, 1);
+        HashSet<Entry<Object, Box>> expected = new HashSet<Entry<Object, Box>>(
+                tree.search(r).toList().toBlocking().single());
+        final HashSet<Entry<Object, Box>> found = new HashSet<Entry<Object, Box>>();
+        tree.search(r).subscribe(backpressureSubscriber(found));
+        assertEquals(expected, found);
+        assertTrue(found.size() > 0);
+    }
+
+    @Test
+    public void testSearchCursorIsSizedToTreeDepth() {
+        RTree<Object, Box> tree = RTree.maxChildren(4).<Object, Box> create();
+        for (int i = 1; i <= 100; i++)
+            tree = tree.add(e(i));
+        SearchCursor<Object, Box> cursor = new SearchCursor<Object, Box>(tree.root().get());
+        int depth = 1;
+        while (cursor.node() instanceof NonLeaf) {
+            cursor.push(((NonLeaf<Object, Box>) cursor.node()).children().get(0));
+            depth++;
+        }
+        assertEquals(tree.calculateDepth(), depth);
+        for (int i = 1; i < depth; i++)
+            cursor.pop();
+        assertEquals(tree.root().get(), cursor.node());
+        assertEquals(1, cursor.position());
+        cursor.pop();
+        assertTrue(cursor.isEmpty());
+    }
+
     private static Subscriber<Entry<Object, Box>> backpressureSubscriber(
             final Set<Entry<Object, Box>> found) {
         return new Subscriber<Entry<Object, Box>>() {
@@ -0,0 +1,238 @@
+package com.github.davidmoten.rtree3d;
+
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.github.davidmoten.rtree3d.SyntheticEntries.Distribution;
+import com.github.davidmoten.rtree3d.geometry.Box;
+import com.github.davidmoten.rtree3d.geometry.Geometries;
+import com.github.davidmoten.rtree3d.geometry.Point;
+
+import rx.Subscriber;
+
+/**
+ * Benchmarks of a tree of small 3D boxes (sides up to 1 in a cube of side
+ * 1000) generated by {@link SyntheticEntries} for every combination of the
+ * parameters. The full parameter space is large so restrict it on the
+ * command line, for example
+ * <code>-p size=100000 -p distribution=ZIPF,SLABS Benchmarks3D</code>. Trees of
+ * 10^7 entries need a heap of several GB (-jvmArgs -Xmx4g).
+ *
+ * <p>
+ * The tree is built by adding the entries to an empty tree (which inserts
+ * them one at a time) so that its structure reflects the splitter and
+ * selector. Queries cycle through precomputed arrays so that each invocation
+ * does the same work for a given parameter combination on every run.
+ * </p>
+ */
+@State(Scope.Benchmark)
+public class Benchmarks3D {
+
+    private static final long SEED = 12345;
+    private static final int QUERIES = 1024;
+    private static final double MAX_SIDE = 1;
+
+    @Param({ "4", "10", "32" })
+    public int maxChildren;
+
+    @Param({ "quadratic", "rstar" })
+    public String splitter;
+
+    @Param({ "minimalVolumeIncrease", "minimalOverlapVolume", "rstar" })
+    public String selector;
+
+    @Param({ "UNIFORM", "CLUSTERED", "ZIPF", "SLABS" })
+    public String distribution;
+
+    @Param({ "1000", "10000", "100000", "1000000", "10000000" })
+    public int size;
+
+    private RTree<Object, Box> tree;
+    private List<Entry<Object, Box>> entries;
+    // entries not in the tree with the same distribution
+    private List<Entry<Object, Box>> extra;
+    private Box[] queries00001;
+    private Box[] queries0001;
+    private Box[] queries001;
+    private Point[] points;
+    // geometries of entries moved slightly
+    private Box[] moved;
+    private int index;
+
+    @Setup
+    public void setup() {
+        Distribution d = Distribution.valueOf(distribution);
+        entries = SyntheticEntries.boxes(d, size, MAX_SIDE, SEED);
+        extra = SyntheticEntries.boxes(d, QUERIES, MAX_SIDE, SEED + 1);
+        tree = RTree.maxChildren(maxChildren).splitter(splitter()).selector(selector())
+                .<Object, Box> create().add(entries);
+        queries00001 = SyntheticEntries.queries(entries, QUERIES, 0.00001, SEED + 2);
+        queries0001 = SyntheticEntries.queries(entries, QUERIES, 0.0001, SEED + 3);
+        queries001 = SyntheticEntries.queries(entries, QUERIES, 0.001, SEED + 4);
+        moved = moved(MAX_SIDE / 10);
+        points = new Point[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            Box b = entries.get(i * (size / QUERIES + 1) % size).geometry();
+            points[i] = Geometries.point((b.x1() + b.x2()) / 2, (b.y1() + b.y2()) / 2,
+                    (b.z1() + b.z2()) / 2);
+        }
+    }
+
+    private Splitter splitter() {
+        if ("quadratic".equals(splitter))
+            return new SplitterQuadratic();
+        else if ("rstar".equals(splitter))
+            return new SplitterRStar();
+        else
+            throw new RuntimeException("unknown splitter " + splitter);
+    }
+
+    private Selector selector() {
+        if ("minimalVolumeIncrease".equals(selector))
+            return new SelectorMinimalVolumeIncrease();
+        else if ("minimalOverlapVolume".equals(selector))
+            return new SelectorMinimalOverlapVolume();
+        else if ("rstar".equals(selector))
+            return new SelectorRStar();
+        else
+            throw new RuntimeException("unknown selector " + selector);
+    }
+
+    private Box[] moved(double distance) {
+        Box[] boxes = new Box[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            Box b = entries.get(i * (size / QUERIES + 1) % size).geometry();
+            float d = (float) distance;
+            boxes[i] = Geometries.box(b.x1() + d, b.y1() - d, b.z1() + d, b.x2() + d,
+                    b.y2() - d, b.z2() + d);
+        }
+        return boxes;
+    }
+
+    private int next() {
+        index = (index + 1) % QUERIES;
+        return index;
+    }
+
+    @Benchmark
+    public RTree<Object, Box> insert() {
+        return tree.add(extra.get(next()));
+    }
+
+    @Benchmark
+    public RTree<Object, Box> delete() {
+        return tree.delete(entries.get(next() * (size / QUERIES + 1) % size));
+    }
+
+    @Benchmark
+    public RTree<Object, Box> moveSlightly() {
+        int i = next();
+        return tree.move(entries.get(i * (size / QUERIES + 1) % size), moved[i]);
+    }
+
+    @Benchmark
+    public RTree<Object, Box> deleteAndAddSlightlyMoved() {
+        int i = next();
+        Entry<Object, Box> entry = entries.get(i * (size / QUERIES + 1) % size);
+        return tree.delete(entry).add(entry.value(), moved[i]);
+    }
+
+    @Benchmark
+    public int searchSelectivity0_001Percent() {
+        return search(queries00001[next()]);
+    }
+
+    @Benchmark
+    public int searchSelectivity0_01Percent() {
+        return search(queries0001[next()]);
+    }
+
+    @Benchmark
+    public int searchSelectivity0_1Percent() {
+        return search(queries001[next()]);
+    }
+
+    @Benchmark
+    public int searchSelectivity0_01PercentWithBackpressure() {
+        CountingSubscriber subscriber = new CountingSubscriber(1);
+        tree.search(queries0001[next()]).subscribe(subscriber);
+        return subscriber.count;
+    }
+
+    @Benchmark
+    public int searchPoint() {
+        CountingSubscriber subscriber = new CountingSubscriber(Long.MAX_VALUE);
+        tree.search(points[next()]).subscribe(subscriber);
+        return subscriber.count;
+    }
+
+    @Benchmark
+    public int nearest10() {
+        CountingSubscriber subscriber = new CountingSubscriber(Long.MAX_VALUE);
+        tree.nearest(points[next()], Double.POSITIVE_INFINITY, 10).subscribe(subscriber);
+        return subscriber.count;
+    }
+
+    private int search(Box r) {
+        // requests everything up front so the search takes the fast path
+        CountingSubscriber subscriber = new CountingSubscriber(Long.MAX_VALUE);
+        tree.search(r).subscribe(subscriber);
+        return subscriber.count;
+    }
+
+    /**
+     * Counts the emissions requesting <code>batch</code> at a time.
+     */
+    private static final class CountingSubscriber extends Subscriber<Object> {
+
+        private final long batch;
+        int count;
+        private long remaining;
+
+        CountingSubscriber(long batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        public void onStart() {
+            remaining = batch;
+            request(batch);
+        }
+
+        @Override
+        public void onCompleted() {
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            throw new RuntimeException(e);
+        }
+
+        @Override
+        public void onNext(Object t) {
+            count++;
+            if (batch != Long.MAX_VALUE && --remaining == 0) {
+                remaining = batch;
+                request(batch);
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        Benchmarks3D b = new Benchmarks3D();
+        b.maxChildren = 10;
+        b.splitter = "rstar";
+        b.selector = "rstar";
+        b.distribution = "CLUSTERED";
+        b.size = 100000;
+        b.setup();
+        while (true)
+            b.searchSelectivity0_01Percent();
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.github.davidmoten.rtree3d;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import com.github.davidmoten.rtree3d.geometry.Geometries;
+import com.github.davidmoten.rtree3d.geometry.Point;
+
+/**
+ * Compares the write throughput of 16 threads adding to an {@link RTree} held
+ * in an {@link AtomicReference} (compare-and-set retry loop) with adding
+ * through a {@link ConcurrentRTree} (group commit).
+ */
+@State(Scope.Benchmark)
+@Threads(16)
+public class BenchmarksConcurrentRTree {
+
+    private final RTree<Object, Point> initial = RTree.maxChildren(10).create(
+            SyntheticEntries.points(SyntheticEntries.Distribution.UNIFORM, 100000, 1));
+
+    private final AtomicReference<RTree<Object, Point>> ref = new AtomicReference<RTree<Object, Point>>(
+            initial);
+
+    private final ConcurrentRTree<Object, Point> concurrent = ConcurrentRTree.create(initial);
+
+    @Benchmark
+    public RTree<Object, Point> compareAndSetAdd() {
+        Point p = randomPoint();
+        while (true) {
+            RTree<Object, Point> tree = ref.get();
+            RTree<Object, Point> tree2 = tree.add(0, p);
+            if (ref.compareAndSet(tree, tree2))
+                return tree2;
+        }
+    }
+
+    @Benchmark
+    public RTree<Object, Point> groupCommitAdd() throws InterruptedException, ExecutionException {
+        return concurrent.add(0, randomPoint()).get();
+    }
+
+    private static Point randomPoint() {
+        return Geometries.point(Math.random() * 1000, Math.random() * 1000,
+                Math.random() * 1000);
+    }
+
+}
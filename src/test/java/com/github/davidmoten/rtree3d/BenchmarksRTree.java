@@ -2,6 +2,7 @@ package com.github.davidmoten.rtree3d;
 
 import static com.github.davidmoten.rtree3d.Utilities.entries1000;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.openjdk.jmh.annotations.Benchmark;
@@ -15,6 +16,7 @@ import com.github.davidmoten.rtree3d.geometry.Geometries;
 import com.github.davidmoten.rtree3d.geometry.Point;
 
 import rx.Subscriber;
+import rx.schedulers.Schedulers;
 
 @State(Scope.Benchmark)
 public class BenchmarksRTree {
@@ -23,6 +25,8 @@ public class BenchmarksRTree {
 
     private final List<Entry<Object, Box>> some = entries1000();
 
+    private final List<Entry<Object, Point>> nearby = nearbyPoints1000();
+
     private final RTree<Object, Point> defaultTreeM4 = RTree.maxChildren(4)
             .<Object, Point> create().add(entries);
 
@@ -47,6 +51,12 @@ public class BenchmarksRTree {
     private final RTree<Object, Point> starTreeM128 = RTree.maxChildren(128).star()
             .<Object, Point> create().add(entries);
 
+    private final RTree<Object, Point> bulkLoadedTreeM10 = RTree.maxChildren(10)
+            .<Object, Point> create(entries);
+
+    private final RTree<Object, Point> packedStarTreeM10 = RTree.maxChildren(10).star()
+            .packedLeaves().<Object, Point> create().add(entries);
+
     private final RTree<Object, Box> smallDefaultTreeM4 = RTree.maxChildren(4)
             .<Object, Box> create().add(some);
 
@@ -111,6 +121,17 @@ public class BenchmarksRTree {
         searchGreek(starTreeM10);
     }
 
+    @Benchmark
+    public int rStarTreeCountInLargeBoxOfGreekDataPointsMaxChildren010() {
+        return starTreeM10.count(Geometries.box(35, 20, 0, 40, 25, 1));
+    }
+
+    @Benchmark
+    public int rStarTreeSearchCountInLargeBoxOfGreekDataPointsMaxChildren010() {
+        return starTreeM10.search(Geometries.box(35, 20, 0, 40, 25, 1)).count().toBlocking()
+                .single();
+    }
+
     @Benchmark
     public void rStarTreeSearchOfGreekDataPointsMaxChildren010WithBackpressure() {
         searchGreekWithBackpressure(starTreeM10);
@@ -236,6 +257,68 @@ public class BenchmarksRTree {
         search(smallStarTreeM128);
     }
 
+    @Benchmark
+    public RTree<Object, Point> defaultRTreeIncrementalLoadOfGreekDataMaxChildren010() {
+        return addOneAtATime(RTree.maxChildren(10).<Object, Point> create(), entries);
+    }
+
+    @Benchmark
+    public RTree<Object, Point> rStarTreeIncrementalLoadOfGreekDataMaxChildren010() {
+        return addOneAtATime(RTree.maxChildren(10).star().<Object, Point> create(), entries);
+    }
+
+    @Benchmark
+    public RTree<Object, Point> defaultRTreeBatchLoadOfGreekDataMaxChildren010() {
+        return RTree.maxChildren(10).<Object, Point> create().add(entries);
+    }
+
+    @Benchmark
+    public RTree<Object, Point> rStarTreeBatchLoadOfGreekDataMaxChildren010() {
+        return RTree.maxChildren(10).star().<Object, Point> create().add(entries);
+    }
+
+    @Benchmark
+    public RTree<Object, Point> defaultRTreeBatchInsert1000NearbyPointsIntoGreekDataMaxChildren010() {
+        return defaultTreeM10.add(nearby);
+    }
+
+    @Benchmark
+    public RTree<Object, Point> rStarTreeBatchInsert1000NearbyPointsIntoGreekDataMaxChildren010() {
+        return starTreeM10.add(nearby);
+    }
+
+    @Benchmark
+    public RTree<Object, Point> defaultRTreeTransientLoadOfGreekDataMaxChildren010() {
+        return RTree.maxChildren(10).<Object, Point> create().asTransient().add(entries)
+                .persistent();
+    }
+
+    @Benchmark
+    public RTree<Object, Point> rStarTreeTransientLoadOfGreekDataMaxChildren010() {
+        return RTree.maxChildren(10).star().<Object, Point> create().asTransient().add(entries)
+                .persistent();
+    }
+
+    @Benchmark
+    public RTree<Object, Point> bulkLoadOfGreekDataMaxChildren010() {
+        return RTree.maxChildren(10).create(entries);
+    }
+
+    @Benchmark
+    public RTree<Object, Point> parallelBulkLoadOfGreekDataMaxChildren010() {
+        return RTree.maxChildren(10).create(entries, Schedulers.computation());
+    }
+
+    @Benchmark
+    public void bulkLoadedRTreeSearchOfGreekDataPointsMaxChildren010() {
+        searchGreek(bulkLoadedTreeM10);
+    }
+
+    @Benchmark
+    public void packedRStarTreeSearchOfGreekDataPointsMaxChildren010() {
+        searchGreek(packedStarTreeM10);
+    }
+
     @Benchmark
     public void rStarTreeDeleteOneEveryOccurrenceFromGreekDataChildren010() {
         deleteAll(starTreeM10);
@@ -285,6 +368,21 @@ public class BenchmarksRTree {
         tree.add(new Object(), RTreeTest.random());
     }
 
+    private static RTree<Object, Point> addOneAtATime(RTree<Object, Point> tree,
+            List<Entry<Object, Point>> entries) {
+        for (Entry<Object, Point> entry : entries)
+            tree = tree.add(entry);
+        return tree;
+    }
+
+    private static List<Entry<Object, Point>> nearbyPoints1000() {
+        List<Entry<Object, Point>> list = new ArrayList<Entry<Object, Point>>(1000);
+        for (int i = 0; i < 1000; i++)
+            list.add(Entry.<Object, Point> entry(new Object(), Geometries.point(
+                    38 + Math.random() * 0.1, 22 + Math.random() * 0.1, 0)));
+        return list;
+    }
+
     private void insertPoint(RTree<Object, Point> tree) {
         tree.add(new Object(), Geometries.point(Math.random() * 1000, Math.random() * 1000, 0));
     }
@@ -0,0 +1,48 @@
+package com.github.davidmoten.rtree3d;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import com.github.davidmoten.rtree3d.SyntheticEntries.Distribution;
+import com.github.davidmoten.rtree3d.geometry.Box;
+
+import rx.Observable;
+import rx.functions.Func1;
+
+/**
+ * Compares {@link RTree#selfJoin()} with searching the tree for each of its
+ * entries (broad-phase collision detection of 1M small boxes).
+ */
+@State(Scope.Benchmark)
+public class BenchmarksSelfJoin {
+
+    private static final long SEED = 12345;
+
+    // the same boxes in every fork so that results are reproducible
+    private final RTree<Object, Box> tree = RTree.maxChildren(10)
+            .create(SyntheticEntries.boxes(Distribution.UNIFORM, 1000000, 2, SEED));
+
+    @Benchmark
+    public int selfJoinOf1MBoxesMaxChildren010() {
+        return tree.selfJoin().count().toBlocking().single();
+    }
+
+    @Benchmark
+    public int searchPerEntryOf1MBoxesMaxChildren010() {
+        return tree.entries()
+                .flatMap(new Func1<Entry<Object, Box>, Observable<Entry<Object, Box>>>() {
+                    @Override
+                    public Observable<Entry<Object, Box>> call(Entry<Object, Box> entry) {
+                        return tree.search(entry.geometry());
+                    }
+                }).count().toBlocking().single();
+    }
+
+    public static void main(String[] args) {
+        BenchmarksSelfJoin b = new BenchmarksSelfJoin();
+        while (true)
+            b.selfJoinOf1MBoxesMaxChildren010();
+    }
+
+}
@@ -0,0 +1,201 @@
+package com.github.davidmoten.rtree3d;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import com.github.davidmoten.rtree3d.geometry.Box;
+import com.github.davidmoten.rtree3d.geometry.Geometries;
+import com.github.davidmoten.rtree3d.geometry.Geometry;
+
+import rx.schedulers.Schedulers;
+import rx.schedulers.TestScheduler;
+
+public class ConcurrentRTreeTest {
+
+    @Test
+    public void testFutureCompletesWithSnapshotContainingEntry() throws Exception {
+        ConcurrentRTree<Integer, Geometry> c = ConcurrentRTree
+                .create(RTree.maxChildren(4).<Integer, Geometry> create());
+        Entry<Integer, Geometry> entry = Entry.<Integer, Geometry> entry(1,
+                Geometries.point(1, 2, 3));
+        RTree<Integer, Geometry> tree = c.add(entry).get(10, TimeUnit.SECONDS);
+        assertEquals(1, tree.size());
+        assertTrue(c.snapshot().size() >= 1);
+        RTree<Integer, Geometry> tree2 = c.delete(entry).get(10, TimeUnit.SECONDS);
+        assertEquals(0, tree2.size());
+        assertEquals(1, tree.size());
+        assertEquals(0, c.snapshot().size());
+    }
+
+    @Test
+    public void testConcurrentWritersAndReaders() throws Exception {
+        final ConcurrentRTree<Object, Geometry> c = ConcurrentRTree
+                .create(RTree.maxChildren(4).<Object, Geometry> create());
+        final int writers = 8;
+        final int perWriter = 500;
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<List<Future<RTree<Object, Geometry>>>> futures = new ArrayList<List<Future<RTree<Object, Geometry>>>>();
+        final List<List<Entry<Object, Geometry>>> entries = new ArrayList<List<Entry<Object, Geometry>>>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < writers; i++) {
+            final List<Entry<Object, Geometry>> list = RTreeTest.createRandomEntries(perWriter);
+            final List<Future<RTree<Object, Geometry>>> fs = new ArrayList<Future<RTree<Object, Geometry>>>();
+            entries.add(list);
+            futures.add(fs);
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    for (Entry<Object, Geometry> entry : list)
+                        fs.add(c.add(entry));
+                }
+            }));
+        }
+        final AtomicBoolean consistent = new AtomicBoolean(true);
+        final AtomicBoolean finished = new AtomicBoolean(false);
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                int last = 0;
+                while (!finished.get()) {
+                    RTree<Object, Geometry> snapshot = c.snapshot();
+                    int count = snapshot.entries().count().toBlocking().single();
+                    // sizes never go backwards and match the contents
+                    if (count != snapshot.size() || count < last)
+                        consistent.set(false);
+                    last = count;
+                }
+            }
+        });
+        reader.start();
+        for (Thread t : threads)
+            t.start();
+        start.countDown();
+        for (Thread t : threads)
+            t.join();
+        for (int i = 0; i < writers; i++)
+            for (int j = 0; j < perWriter; j++) {
+                RTree<Object, Geometry> snapshot = futures.get(i).get(j).get(10,
+                        TimeUnit.SECONDS);
+                // the entry is visible in the snapshot of its future
+                assertTrue(snapshot.entries().contains(entries.get(i).get(j)).toBlocking()
+                        .single());
+            }
+        finished.set(true);
+        reader.join();
+        assertTrue(consistent.get());
+        assertEquals(writers * perWriter, c.snapshot().size());
+        RTreeTest.checkEntryCounts(c.snapshot().root().get());
+    }
+
+    @Test
+    public void testChangesFromOneThreadAreAppliedInOrder() throws Exception {
+        ConcurrentRTree<Integer, Geometry> c = ConcurrentRTree
+                .create(RTree.<Integer, Geometry> create(), Schedulers.io());
+        Entry<Integer, Geometry> entry = Entry.<Integer, Geometry> entry(1,
+                Geometries.point(1, 2, 3));
+        Future<RTree<Integer, Geometry>> f = null;
+        for (int i = 0; i < 100; i++) {
+            c.add(entry);
+            f = c.delete(entry);
+        }
+        assertEquals(0, f.get(10, TimeUnit.SECONDS).size());
+        assertEquals(0, c.snapshot().size());
+    }
+
+    @Test(expected = ExecutionException.class)
+    public void testFailedBatchCompletesFutureExceptionally() throws Exception {
+        ConcurrentRTree<Integer, Geometry> c = ConcurrentRTree
+                .create(RTree.<Integer, Geometry> create());
+        c.add(Entry.<Integer, Geometry> entry(1, failing(new RuntimeException("boo"))))
+                .get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testFailedChangeDoesNotFailOtherChangesInBatch() throws Exception {
+        TestScheduler scheduler = Schedulers.test();
+        ConcurrentRTree<Integer, Geometry> c = ConcurrentRTree
+                .create(RTree.<Integer, Geometry> create(), scheduler);
+        Entry<Integer, Geometry> a = Entry.<Integer, Geometry> entry(1,
+                Geometries.point(1, 2, 3));
+        Entry<Integer, Geometry> b = Entry.<Integer, Geometry> entry(2,
+                Geometries.point(4, 5, 6));
+        Future<RTree<Integer, Geometry>> fa = c.add(a);
+        Future<RTree<Integer, Geometry>> bad = c
+                .add(Entry.<Integer, Geometry> entry(3, failing(new RuntimeException("boo"))));
+        Future<RTree<Integer, Geometry>> fb = c.add(b);
+        // all three are applied as one batch
+        scheduler.triggerActions();
+        assertTrue(fa.get().entries().contains(a).toBlocking().single());
+        assertTrue(fb.get().entries().contains(a).toBlocking().single());
+        assertTrue(fb.get().entries().contains(b).toBlocking().single());
+        assertEquals(2, c.snapshot().size());
+        try {
+            bad.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals("boo", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void testErrorInBatchDoesNotStopLaterCommits() throws Exception {
+        TestScheduler scheduler = Schedulers.test();
+        ConcurrentRTree<Integer, Geometry> c = ConcurrentRTree
+                .create(RTree.<Integer, Geometry> create(), scheduler);
+        Future<RTree<Integer, Geometry>> bad = c
+                .add(Entry.<Integer, Geometry> entry(1, failing(new AssertionError("boo"))));
+        scheduler.triggerActions();
+        try {
+            bad.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof AssertionError);
+        }
+        Future<RTree<Integer, Geometry>> f = c.add(2, Geometries.point(1, 2, 3));
+        scheduler.triggerActions();
+        assertEquals(1, f.get().size());
+    }
+
+    /**
+     * Returns a geometry without bounds that fails when a change containing it
+     * is applied.
+     */
+    private static Geometry failing(final Throwable t) {
+        return new Geometry() {
+            @Override
+            public double distance(Box r) {
+                return 0;
+            }
+
+            @Override
+            public Box mbb() {
+                if (t instanceof Error)
+                    throw (Error) t;
+                else
+                    throw (RuntimeException) t;
+            }
+
+            @Override
+            public boolean intersects(Box r) {
+                return false;
+            }
+        };
+    }
+
+}
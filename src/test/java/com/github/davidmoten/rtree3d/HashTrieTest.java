@@ -0,0 +1,113 @@
+package com.github.davidmoten.rtree3d;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class HashTrieTest {
+
+    @Test
+    public void testEmpty() {
+        HashTrie<String, Integer> trie = HashTrie.empty();
+        assertTrue(trie.isEmpty());
+        assertNull(trie.get("a"));
+        assertSame(trie, trie.remove("a"));
+    }
+
+    @Test
+    public void testPutGetRemove() {
+        HashTrie<String, Integer> trie = HashTrie.<String, Integer> empty().put("a", 1).put("b",
+                2);
+        assertEquals(2, trie.size());
+        assertEquals(1, (int) trie.get("a"));
+        assertEquals(2, (int) trie.get("b"));
+        HashTrie<String, Integer> trie2 = trie.put("a", 3);
+        assertEquals(2, trie2.size());
+        assertEquals(3, (int) trie2.get("a"));
+        // earlier versions are unchanged
+        assertEquals(1, (int) trie.get("a"));
+        HashTrie<String, Integer> trie3 = trie2.remove("a");
+        assertEquals(1, trie3.size());
+        assertNull(trie3.get("a"));
+        assertEquals(3, (int) trie2.get("a"));
+        assertTrue(trie3.remove("b").isEmpty());
+    }
+
+    @Test
+    public void testPutOfSameValueReturnsSameTrie() {
+        Integer value = 1000;
+        HashTrie<String, Integer> trie = HashTrie.<String, Integer> empty().put("a", value);
+        assertSame(trie, trie.put("a", value));
+    }
+
+    @Test
+    public void testCollidingKeys() {
+        HashTrie<Key, Integer> trie = HashTrie.empty();
+        for (int i = 0; i < 10; i++)
+            trie = trie.put(new Key(i, 7), i);
+        // a key that shares a prefix of the colliding hash
+        trie = trie.put(new Key(10, 7 + (1 << 20)), 10);
+        assertEquals(11, trie.size());
+        for (int i = 0; i < 10; i++)
+            assertEquals(i, (int) trie.get(new Key(i, 7)));
+        assertEquals(10, (int) trie.get(new Key(10, 7 + (1 << 20))));
+        assertNull(trie.get(new Key(11, 7)));
+        for (int i = 0; i < 10; i++) {
+            trie = trie.remove(new Key(i, 7));
+            assertEquals(10 - i, trie.size());
+            assertNull(trie.get(new Key(i, 7)));
+        }
+        assertEquals(10, (int) trie.get(new Key(10, 7 + (1 << 20))));
+    }
+
+    @Test
+    public void testRandomOperationsAgreeWithHashMap() {
+        Random random = new Random(123);
+        Map<Integer, Integer> map = new HashMap<Integer, Integer>();
+        HashTrie<Integer, Integer> trie = HashTrie.empty();
+        for (int i = 0; i < 100000; i++) {
+            int key = random.nextInt(5000) * (random.nextBoolean() ? 1 : 65536);
+            if (random.nextInt(3) == 0) {
+                map.remove(key);
+                trie = trie.remove(key);
+            } else {
+                map.put(key, i);
+                trie = trie.put(key, i);
+            }
+            assertEquals(map.size(), trie.size());
+        }
+        for (Map.Entry<Integer, Integer> entry : map.entrySet())
+            assertEquals(entry.getValue(), trie.get(entry.getKey()));
+        for (Integer key : map.keySet())
+            trie = trie.remove(key);
+        assertTrue(trie.isEmpty());
+    }
+
+    private static final class Key {
+        final int id;
+        final int hash;
+
+        Key(int id, int hash) {
+            this.id = id;
+            this.hash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && ((Key) obj).id == id;
+        }
+    }
+
+}
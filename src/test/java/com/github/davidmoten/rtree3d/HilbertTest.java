@@ -0,0 +1,212 @@
+package com.github.davidmoten.rtree3d;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.github.davidmoten.rtree3d.SyntheticEntries.Distribution;
+import com.github.davidmoten.rtree3d.geometry.Box;
+import com.github.davidmoten.rtree3d.geometry.Geometries;
+import com.github.davidmoten.rtree3d.geometry.Geometry;
+import com.github.davidmoten.rtree3d.geometry.HasGeometry;
+import com.github.davidmoten.rtree3d.geometry.Point;
+
+public class HilbertTest {
+
+    private static final Box BOUNDS = Geometries.box(0, 0, 0, SyntheticEntries.SIDE,
+            SyntheticEntries.SIDE, SyntheticEntries.SIDE);
+
+    @Test
+    public void testIndexVisitsEveryCellOnceMovingToAnAdjacentCell() {
+        int bits = 2;
+        int n = 1 << bits;
+        int[][] cells = new int[n * n * n][];
+        for (int x = 0; x < n; x++)
+            for (int y = 0; y < n; y++)
+                for (int z = 0; z < n; z++) {
+                    int index = (int) Hilbert.index(x, y, z, bits);
+                    assertTrue(cells[index] == null);
+                    cells[index] = new int[] { x, y, z };
+                }
+        for (int i = 1; i < cells.length; i++) {
+            int distance = Math.abs(cells[i][0] - cells[i - 1][0])
+                    + Math.abs(cells[i][1] - cells[i - 1][1])
+                    + Math.abs(cells[i][2] - cells[i - 1][2]);
+            assertEquals(1, distance);
+        }
+    }
+
+    @Test
+    public void testIndexOfBoxIsClampedToBounds() {
+        Hilbert hilbert = new Hilbert(Geometries.box(0, 0, 0, 1, 1, 1));
+        assertEquals(0, hilbert.index(Geometries.box(-2, -2, -2, -1, -1, -1)));
+        assertEquals(hilbert.index(Geometries.box(1, 1, 1, 1, 1, 1)),
+                hilbert.index(Geometries.box(2, 2, 2, 3, 3, 3)));
+    }
+
+    @Test
+    public void testDivide() {
+        List<Integer> list = new ArrayList<Integer>();
+        for (int i = 0; i < 10; i++)
+            list.add(i);
+        List<List<Integer>> groups = Hilbert.divide(list, 3);
+        assertEquals(3, groups.size());
+        assertEquals(3, groups.get(0).size());
+        assertEquals(3, groups.get(1).size());
+        assertEquals(4, groups.get(2).size());
+        assertEquals(9, (int) groups.get(2).get(3));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testHilbertWithoutBoundsThrows() {
+        RTree.hilbert().create();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testHilbertWithMinChildrenMoreThanHalfMaxChildrenThrows() {
+        RTree.hilbert().minChildren(5).maxChildren(8).bounds(BOUNDS).create();
+    }
+
+    @Test
+    public void testAddInSpatialOrder() {
+        // entries arriving in order along a line (for example a track in time
+        // order) is where Hilbert 2-to-3 splitting fills nodes best
+        List<Entry<Object, Point>> entries = new ArrayList<Entry<Object, Point>>();
+        for (int i = 0; i < 2000; i++)
+            entries.add(Entry.<Object, Point> entry(i,
+                    Geometries.point(i * 0.4f, 100 + i * 0.2f, 300 + (i % 10))));
+        RTree<Object, Point> tree = RTree.hilbert().maxChildren(8).bounds(BOUNDS).create();
+        for (Entry<Object, Point> entry : entries)
+            tree = tree.add(entry);
+        check(tree, entries);
+        RTree<Object, Point> quadratic = RTree.maxChildren(8).create();
+        for (Entry<Object, Point> entry : entries)
+            quadratic = quadratic.add(entry);
+        TreeStats stats = tree.stats();
+        TreeStats quadraticStats = quadratic.stats();
+        assertTrue(stats.level(stats.depth() - 1).meanFill() > quadraticStats
+                .level(quadraticStats.depth() - 1).meanFill());
+        assertTrue(stats.level(stats.depth() - 1).meanFill() > 0.75);
+    }
+
+    @Test
+    public void testFullerNodesAndLessOverlapThanQuadratic() {
+        List<Entry<Object, Box>> entries = SyntheticEntries.boxes(Distribution.UNIFORM, 5000, 5,
+                42);
+        RTree<Object, Box> tree = RTree.hilbert().maxChildren(8).bounds(BOUNDS).create();
+        RTree<Object, Box> quadratic = RTree.maxChildren(8).create();
+        for (Entry<Object, Box> entry : entries) {
+            tree = tree.add(entry);
+            quadratic = quadratic.add(entry);
+        }
+        TreeStats stats = tree.stats();
+        TreeStats quadraticStats = quadratic.stats();
+        assertTrue(stats.nodes() < quadraticStats.nodes());
+        assertTrue(stats.overlapVolume() < quadraticStats.overlapVolume());
+    }
+
+    @Test
+    public void testAddDeleteAndTransient() {
+        for (Distribution d : Distribution.values()) {
+            List<Entry<Object, Box>> entries = SyntheticEntries.boxes(d, 3000, 5, 123);
+            RTree<Object, Box> tree = RTree.hilbert().maxChildren(6).bounds(BOUNDS).create();
+            for (Entry<Object, Box> entry : entries)
+                tree = tree.add(entry);
+            check(tree, entries);
+
+            TransientRTree<Object, Box> t = RTree.hilbert().maxChildren(6).bounds(BOUNDS)
+                    .<Object, Box> create().asTransient();
+            for (Entry<Object, Box> entry : entries)
+                t.add(entry);
+            RTree<Object, Box> tree2 = t.persistent();
+            check(tree2, entries);
+            assertEquals(tree.asString(), tree2.asString());
+
+            List<Entry<Object, Box>> remaining = new ArrayList<Entry<Object, Box>>(entries);
+            for (int i = 0; i < entries.size(); i += 3) {
+                tree = tree.delete(entries.get(i));
+                remaining.remove(entries.get(i));
+            }
+            check(tree, remaining);
+
+            tree = RTree.hilbert().maxChildren(6).bounds(BOUNDS).<Object, Box> create()
+                    .add(entries.subList(0, 100)).add(entries.subList(100, entries.size()));
+            check(tree, entries);
+        }
+    }
+
+    @Test
+    public void testBulkLoad() {
+        List<Entry<Object, Box>> entries = SyntheticEntries.boxes(Distribution.CLUSTERED, 5000,
+                5, 321);
+        RTree<Object, Box> tree = RTree.hilbert().maxChildren(10).bounds(BOUNDS)
+                .create(entries);
+        check(tree, entries);
+        assertEquals(1.0, tree.stats().level(tree.calculateDepth() - 1).meanFill(), 0.001);
+        check(tree.add(entries.get(0)), concat(entries, entries.get(0)));
+    }
+
+    private static <T> List<T> concat(List<T> list, T item) {
+        List<T> result = new ArrayList<T>(list);
+        result.add(item);
+        return result;
+    }
+
+    private static <S extends Geometry> void check(
+            RTree<Object, S> tree, List<Entry<Object, S>> entries) {
+        assertEquals(entries.size(), tree.size());
+        Hilbert hilbert = tree.context().hilbert().get();
+        checkNode(tree.root().get(), tree.context(), hilbert, true);
+        assertEquals(values(entries), values(tree.entries().toList().toBlocking().single()));
+        Box r = Geometries.box(200, 200, 200, 600, 600, 600);
+        List<Entry<Object, S>> expected = new ArrayList<Entry<Object, S>>();
+        for (Entry<Object, S> entry : entries)
+            if (entry.geometry().intersects(r))
+                expected.add(entry);
+        assertEquals(values(expected), values(tree.search(r).toList().toBlocking().single()));
+    }
+
+    private static <S extends Geometry> List<Object> values(
+            List<Entry<Object, S>> entries) {
+        List<Object> list = new ArrayList<Object>();
+        for (Entry<Object, S> entry : entries)
+            list.add(entry.value());
+        Collections.sort(list, new Comparator<Object>() {
+            @Override
+            public int compare(Object a, Object b) {
+                return ((Integer) a).compareTo((Integer) b);
+            }
+        });
+        return list;
+    }
+
+    private static <S extends Geometry> void checkNode(
+            Node<Object, S> node, Context context, Hilbert hilbert, boolean isRoot) {
+        assertTrue(node.count() <= context.maxChildren());
+        if (!isRoot)
+            assertTrue(node.count() >= context.minChildren());
+        List<? extends HasGeometry> items;
+        if (node instanceof NonLeaf)
+            items = ((NonLeaf<Object, S>) node).children();
+        else
+            items = ((Leaf<Object, S>) node).entries();
+        for (int i = 1; i < items.size(); i++) {
+            assertTrue(hilbert.key(items.get(i - 1)) <= hilbert.key(items.get(i)));
+        }
+        if (node instanceof NonLeaf) {
+            int count = 0;
+            for (Node<Object, S> child : ((NonLeaf<Object, S>) node).children()) {
+                checkNode(child, context, hilbert, false);
+                count += child.countEntries();
+            }
+            assertEquals(count, node.countEntries());
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+package com.github.davidmoten.rtree3d;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.github.davidmoten.rtree3d.geometry.Geometries;
+import com.github.davidmoten.rtree3d.geometry.Point;
+
+import rx.functions.Func1;
+
+public class IndexedRTreeTest {
+
+    private static final Func1<Integer, Integer> ID = new Func1<Integer, Integer>() {
+        @Override
+        public Integer call(Integer value) {
+            return value;
+        }
+    };
+
+    @Test
+    public void testCreateIndexesExistingEntries() {
+        RTree<Integer, Point> tree = RTree.maxChildren(4).<Integer, Point> create()
+                .add(1, Geometries.point(1, 2, 3)).add(2, Geometries.point(4, 5, 6));
+        IndexedRTree<Integer, Integer, Point> indexed = IndexedRTree.create(tree, ID);
+        assertEquals(2, indexed.size());
+        assertEquals(Geometries.point(4, 5, 6), indexed.get(2).get().geometry());
+        assertFalse(indexed.get(3).isPresent());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testCreateWithDuplicateKeysThrows() {
+        RTree<Integer, Point> tree = RTree.<Integer, Point> create()
+                .add(1, Geometries.point(1, 2, 3)).add(1, Geometries.point(4, 5, 6));
+        IndexedRTree.create(tree, ID);
+    }
+
+    @Test
+    public void testAddReplacesEntryWithSameKey() {
+        IndexedRTree<Integer, Integer, Point> indexed = IndexedRTree
+                .create(RTree.<Integer, Point> create(), ID).add(1, Geometries.point(1, 2, 3))
+                .add(1, Geometries.point(4, 5, 6));
+        assertEquals(1, indexed.size());
+        assertEquals(1, indexed.tree().size());
+        assertEquals(Geometries.point(4, 5, 6), indexed.get(1).get().geometry());
+    }
+
+    @Test
+    public void testDeleteAndUpdateOfMissingKeyReturnsSame() {
+        IndexedRTree<Integer, Integer, Point> indexed = IndexedRTree
+                .create(RTree.<Integer, Point> create(), ID).add(1, Geometries.point(1, 2, 3));
+        assertSame(indexed, indexed.delete(2));
+        assertSame(indexed, indexed.update(2, Geometries.point(1, 1, 1)));
+    }
+
+    @Test
+    public void testStackedPointsMovingAndDeletingAgreeWithMap() {
+        // points stacked in z (the same x and y) such as floors of a building
+        Random random = new Random(1);
+        Map<Integer, Point> map = new HashMap<Integer, Point>();
+        IndexedRTree<Integer, Integer, Point> indexed = IndexedRTree
+                .create(RTree.maxChildren(6).<Integer, Point> create(), ID);
+        IndexedRTree<Integer, Integer, Point> first = null;
+        for (int i = 0; i < 3000; i++) {
+            Point p = Geometries.point(random.nextInt(5), random.nextInt(5), random.nextInt(50));
+            int id = random.nextInt(500);
+            int op = random.nextInt(4);
+            if (op == 0) {
+                indexed = indexed.delete(id);
+                map.remove(id);
+            } else if (op == 1) {
+                indexed = indexed.update(id, p);
+                if (map.containsKey(id))
+                    map.put(id, p);
+            } else {
+                indexed = indexed.add(id, p);
+                map.put(id, p);
+            }
+            if (i == 1000)
+                first = indexed;
+        }
+        assertEquals(map.size(), indexed.size());
+        assertEquals(map.size(), indexed.tree().size());
+        List<Entry<Integer, Point>> entries = indexed.tree().entries().toList().toBlocking()
+                .single();
+        assertEquals(map.size(), entries.size());
+        for (Entry<Integer, Point> entry : entries)
+            assertEquals(map.get(entry.value()), entry.geometry());
+        // earlier versions are unaffected by later changes
+        assertEquals(first.size(), first.tree().size());
+        for (Entry<Integer, Point> entry : first.tree().entries().toBlocking().toIterable())
+            assertEquals(entry, first.get(entry.value()).get());
+    }
+
+}
@@ -1,9 +1,12 @@
 package com.github.davidmoten.rtree3d;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 
 import org.junit.Test;
 
@@ -14,6 +17,8 @@ import com.github.davidmoten.rtree3d.SelectorMinimalVolumeIncrease;
 import com.github.davidmoten.rtree3d.SplitterQuadratic;
 import com.github.davidmoten.rtree3d.geometry.Box;
 import com.github.davidmoten.rtree3d.geometry.Geometries;
+import com.github.davidmoten.rtree3d.geometry.Geometry;
+import com.google.common.base.Optional;
 
 public class LeafTest {
 
@@ -34,4 +39,47 @@ public class LeafTest {
                 Entry.entry(new Object(), r2)), context).geometry().mbb();
         assertEquals(r1.add(r2), r);
     }
+
+    @Test
+    public void testPackedLeafHoldsPackedEntries() {
+        Context packed = new Context(2, 4, new SelectorMinimalVolumeIncrease(),
+                new SplitterQuadratic(), Optional.<Box> absent(), true);
+        Entry<Object, Geometry> e1 = Entry.<Object, Geometry> entry(1,
+                Geometries.box(0, 1, 0, 3, 5, 1));
+        Entry<Object, Geometry> e2 = Entry.<Object, Geometry> entry(2,
+                Geometries.point(1, 2, 3));
+        @SuppressWarnings("unchecked")
+        Leaf<Object, Geometry> leaf = new Leaf<Object, Geometry>(Arrays.asList(e1, e2), packed);
+        assertTrue(leaf.entries() instanceof PackedEntries);
+        assertEquals(Arrays.asList(e1, e2), leaf.entries());
+        assertEquals(1, leaf.entries().indexOf(e2));
+        assertEquals(-1, leaf.entries().indexOf(Entry.entry(3, Geometries.point(1, 2, 3))));
+        assertEquals(1, leaf.delete(e1, false, null).entriesToAdd().size());
+    }
+
+    @Test
+    public void testPackedLeafDoesNotPackOtherGeometries() {
+        Context packed = new Context(2, 4, new SelectorMinimalVolumeIncrease(),
+                new SplitterQuadratic(), Optional.<Box> absent(), true);
+        Geometry g = new Geometry() {
+
+            @Override
+            public double distance(Box r) {
+                return mbb().distance(r);
+            }
+
+            @Override
+            public Box mbb() {
+                return Geometries.box(0, 0, 0, 1, 1, 1);
+            }
+
+            @Override
+            public boolean intersects(Box r) {
+                return mbb().intersects(r);
+            }
+        };
+        Leaf<Object, Geometry> leaf = new Leaf<Object, Geometry>(
+                Collections.singletonList(Entry.<Object, Geometry> entry(1, g)), packed);
+        assertFalse(leaf.entries() instanceof PackedEntries);
+    }
 }
@@ -0,0 +1,170 @@
+package com.github.davidmoten.rtree3d;
+
+import static com.github.davidmoten.rtree3d.SerializationTest.VALUE_DESERIALIZER;
+import static com.github.davidmoten.rtree3d.SerializationTest.VALUE_SERIALIZER;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.github.davidmoten.rtree3d.geometry.Box;
+import com.github.davidmoten.rtree3d.geometry.Geometries;
+import com.github.davidmoten.rtree3d.geometry.Geometry;
+import com.github.davidmoten.rtree3d.geometry.Point;
+
+import rx.observers.TestSubscriber;
+
+public class MappedRTreeTest {
+
+    @Test
+    public void testMappedSearchOfGreekDataMatchesInMemoryTree() throws IOException {
+        RTree<Integer, Point> tree = greekTree();
+        File file = new File("target/greek-mapped.bin");
+        FileOutputStream os = new FileOutputStream(file);
+        try {
+            Serializer.serialize(tree, VALUE_SERIALIZER, os);
+        } finally {
+            os.close();
+        }
+        MappedRTree<Integer, Point> mapped = MappedRTree.open(file, VALUE_DESERIALIZER);
+        assertEquals(tree.size(), mapped.size());
+        assertEquals(tree.mbr(), mapped.mbr());
+        assertEquals(8, mapped.context().maxChildren());
+        assertTrue(mapped.context().splitter() instanceof SplitterRStar);
+        assertEquals(tree.size(), (int) mapped.entries().count().toBlocking().single());
+
+        Box r = Geometries.box(40, 27.0, 0, 40.5, 27.5, 1);
+        assertEquals(22, (int) mapped.search(r).count().toBlocking().single());
+        assertEquals(set(tree.search(r).toList().toBlocking().single()),
+                set(mapped.search(r).toList().toBlocking().single()));
+
+        Point p = Geometries.point(38.0, 22.0, 0);
+        assertEquals(5, (int) mapped.nearest(p, 10, 5).count().toBlocking().single());
+        assertEquals(set(tree.search(p, 0.3).toList().toBlocking().single()),
+                set(mapped.search(p, 0.3).toList().toBlocking().single()));
+
+        assertEquals(distances(tree.nearest(p, 10, 20).toList().toBlocking().single(), p),
+                distances(mapped.nearest(p, 10, 20).toList().toBlocking().single(), p));
+    }
+
+    @Test
+    public void testMappedSearchOfBoxesFromBufferWithBounds() {
+        Box bounds = Geometries.box(0, 0, 0, 100, 100, 100);
+        RTree<Integer, Geometry> tree = RTree.maxChildren(4).bounds(bounds).create();
+        for (int i = 0; i < 100; i++)
+            tree = tree.add(i, Geometries.box(i, i, i, i + 1, i + 2, i + 3));
+        MappedRTree<Integer, Geometry> mapped = map(tree);
+        assertEquals(bounds, mapped.context().bounds().get());
+        Box r = Geometries.box(10, 10, 10, 20, 20, 20);
+        assertEquals(set(tree.search(r).toList().toBlocking().single()),
+                set(mapped.search(r).toList().toBlocking().single()));
+        assertEquals(set(tree.entries().toList().toBlocking().single()),
+                set(mapped.entries().toList().toBlocking().single()));
+    }
+
+    @Test
+    public void testMappedSearchHonoursBackpressure() {
+        MappedRTree<Integer, Point> mapped = map(greekTree());
+        TestSubscriber<Entry<Integer, Point>> ts = new TestSubscriber<Entry<Integer, Point>>(0);
+        mapped.entries().subscribe(ts);
+        ts.assertNoValues();
+        ts.requestMore(3);
+        assertEquals(3, ts.getOnNextEvents().size());
+        ts.assertNoTerminalEvent();
+        ts.requestMore(Long.MAX_VALUE);
+        assertEquals(mapped.size(), ts.getOnNextEvents().size());
+        ts.assertCompleted();
+    }
+
+    @Test
+    public void testMappedNearestHonoursBackpressure() {
+        MappedRTree<Integer, Point> mapped = map(greekTree());
+        TestSubscriber<Entry<Integer, Point>> ts = new TestSubscriber<Entry<Integer, Point>>(0);
+        mapped.nearest(Geometries.point(38.0, 22.0, 0), 10, 5).subscribe(ts);
+        ts.requestMore(2);
+        assertEquals(2, ts.getOnNextEvents().size());
+        ts.requestMore(10);
+        assertEquals(5, ts.getOnNextEvents().size());
+        ts.assertCompleted();
+    }
+
+    @Test
+    public void testMappedEmptyTree() {
+        MappedRTree<Integer, Point> mapped = map(RTree.<Integer, Point> create());
+        assertTrue(mapped.isEmpty());
+        assertFalse(mapped.mbr().isPresent());
+        assertEquals(0, (int) mapped.entries().count().toBlocking().single());
+        assertEquals(0, (int) mapped.nearest(Geometries.point(1, 2, 3), 10, 5).count()
+                .toBlocking().single());
+    }
+
+    @Test
+    public void testMappedSearchAcrossSmallRegionsMatchesInMemoryTree() {
+        // 16 byte regions so that nodes, entries and values span regions as
+        // they would at the 1GB boundaries of a multi-GB file
+        RTree<Integer, Point> tree = greekTree();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Serializer.serialize(tree, VALUE_SERIALIZER, bytes);
+        MappedRTree<Integer, Point> mapped = MappedRTree
+                .create(ByteBuffer.wrap(bytes.toByteArray()), 4, VALUE_DESERIALIZER);
+        assertEquals(tree.size(), mapped.size());
+        assertEquals(tree.mbr(), mapped.mbr());
+        assertEquals(set(tree.entries().toList().toBlocking().single()),
+                set(mapped.entries().toList().toBlocking().single()));
+        Box r = Geometries.box(40, 27.0, 0, 40.5, 27.5, 1);
+        assertEquals(set(tree.search(r).toList().toBlocking().single()),
+                set(mapped.search(r).toList().toBlocking().single()));
+        Point p = Geometries.point(38.0, 22.0, 0);
+        assertEquals(distances(tree.nearest(p, 10, 20).toList().toBlocking().single(), p),
+                distances(mapped.nearest(p, 10, 20).toList().toBlocking().single(), p));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testMappedUnrecognizedBufferThrows() {
+        MappedRTree.create(ByteBuffer.wrap(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 }),
+                VALUE_DESERIALIZER);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testOpenMissingFileThrows() throws FileNotFoundException {
+        MappedRTree.open(new File("target/does-not-exist.bin"), VALUE_DESERIALIZER);
+    }
+
+    private static RTree<Integer, Point> greekTree() {
+        List<Entry<Object, Point>> list = GreekEarthquakes.entriesList();
+        List<Entry<Integer, Point>> entries = new ArrayList<Entry<Integer, Point>>();
+        for (int i = 0; i < list.size(); i++)
+            entries.add(Entry.entry(i, list.get(i).geometry()));
+        return RTree.star().maxChildren(8).<Integer, Point> create().add(entries);
+    }
+
+    private static <S extends Geometry> MappedRTree<Integer, S> map(RTree<Integer, S> tree) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Serializer.serialize(tree, VALUE_SERIALIZER, bytes);
+        return MappedRTree.create(ByteBuffer.wrap(bytes.toByteArray()), VALUE_DESERIALIZER);
+    }
+
+    private static <S extends Geometry> HashSet<Entry<Integer, S>> set(
+            List<Entry<Integer, S>> list) {
+        return new HashSet<Entry<Integer, S>>(list);
+    }
+
+    private static List<Double> distances(List<Entry<Integer, Point>> list, final Point p) {
+        List<Double> result = new ArrayList<Double>();
+        for (Entry<Integer, Point> entry : list)
+            result.add(entry.geometry().distance(p.mbb()));
+        return result;
+    }
+
+}
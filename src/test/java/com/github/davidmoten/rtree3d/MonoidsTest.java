@@ -0,0 +1,46 @@
+package com.github.davidmoten.rtree3d;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.github.davidmoten.junit.Asserts;
+
+import rx.functions.Func1;
+
+public class MonoidsTest {
+
+    private static final Func1<Integer, Double> TO_DOUBLE = new Func1<Integer, Double>() {
+        @Override
+        public Double call(Integer value) {
+            return value.doubleValue();
+        }
+    };
+
+    @Test
+    public void testConstructorIsPrivate() {
+        Asserts.assertIsUtilityClass(Monoids.class);
+    }
+
+    @Test
+    public void testSum() {
+        Monoid<Integer, Double> m = Monoids.sum(TO_DOUBLE);
+        assertEquals(0, m.identity(), 0);
+        assertEquals(5, m.combine(m.lift(2), m.combine(m.identity(), m.lift(3))), 0);
+    }
+
+    @Test
+    public void testMin() {
+        Monoid<Integer, Double> m = Monoids.min(TO_DOUBLE);
+        assertEquals(Double.POSITIVE_INFINITY, m.identity(), 0);
+        assertEquals(2, m.combine(m.lift(2), m.combine(m.identity(), m.lift(3))), 0);
+    }
+
+    @Test
+    public void testMax() {
+        Monoid<Integer, Double> m = Monoids.max(TO_DOUBLE);
+        assertEquals(Double.NEGATIVE_INFINITY, m.identity(), 0);
+        assertEquals(3, m.combine(m.lift(2), m.combine(m.identity(), m.lift(3))), 0);
+    }
+
+}
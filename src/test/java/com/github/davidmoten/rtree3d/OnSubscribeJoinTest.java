@@ -0,0 +1,213 @@
+package com.github.davidmoten.rtree3d;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.github.davidmoten.rtree3d.geometry.Box;
+import com.github.davidmoten.rtree3d.geometry.Geometries;
+import com.github.davidmoten.rtree3d.geometry.Geometry;
+
+import rx.observers.TestSubscriber;
+
+public class OnSubscribeJoinTest {
+
+    @Test
+    public void testJoinGivesSameResultAsSearchPerEntry() {
+        RTree<Object, Geometry> a = RTree.maxChildren(4).<Object, Geometry> create()
+                .add(boxes(1000));
+        RTree<Object, Geometry> b = RTree.star().maxChildren(8).<Object, Geometry> create()
+                .add(boxes(300));
+        Set<EntryPair<Object, Geometry, Object, Geometry>> expected = naiveJoin(a, b, -1);
+        assertFalse(expected.isEmpty());
+        List<EntryPair<Object, Geometry, Object, Geometry>> list = a.join(b).toList()
+                .toBlocking().single();
+        assertEquals(expected.size(), list.size());
+        assertEquals(expected, new HashSet<EntryPair<Object, Geometry, Object, Geometry>>(list));
+    }
+
+    @Test
+    public void testJoinWithinDistanceGivesSameResultAsSearchPerEntry() {
+        RTree<Object, Geometry> a = RTree.maxChildren(4).create(boxes(1000));
+        RTree<Object, Geometry> b = RTree.packedLeaves().maxChildren(10)
+                .<Object, Geometry> create().add(boxes(1000));
+        Set<EntryPair<Object, Geometry, Object, Geometry>> expected = naiveJoin(a, b, 15);
+        List<EntryPair<Object, Geometry, Object, Geometry>> list = a.join(b, 15).toList()
+                .toBlocking().single();
+        assertEquals(expected.size(), list.size());
+        assertEquals(expected, new HashSet<EntryPair<Object, Geometry, Object, Geometry>>(list));
+    }
+
+    @Test
+    public void testJoinOfTreesOfDifferentDepths() {
+        RTree<Object, Geometry> a = RTree.maxChildren(4).create(boxes(3));
+        RTree<Object, Geometry> b = RTree.maxChildren(4).create(boxes(2000));
+        assertEquals(1, a.calculateDepth());
+        assertEquals(naiveJoin(a, b, -1), new HashSet<EntryPair<Object, Geometry, Object, Geometry>>(
+                a.join(b).toList().toBlocking().single()));
+        assertEquals(naiveJoin(b, a, -1), new HashSet<EntryPair<Object, Geometry, Object, Geometry>>(
+                b.join(a).toList().toBlocking().single()));
+    }
+
+    @Test
+    public void testJoinWithEmptyTreeIsEmpty() {
+        RTree<Object, Geometry> a = RTree.maxChildren(4).create(boxes(10));
+        RTree<Object, Geometry> empty = RTree.create();
+        assertTrue(a.join(empty).isEmpty().toBlocking().single());
+        assertTrue(empty.join(a, 10).isEmpty().toBlocking().single());
+    }
+
+    @Test
+    public void testJoinOfTouchingPoints() {
+        RTree<Integer, Geometry> a = RTree.<Integer, Geometry> create().add(1,
+                Geometries.point(1, 2, 3));
+        RTree<String, Geometry> b = RTree.<String, Geometry> create()
+                .add("a", Geometries.point(1, 2, 3)).add("b", Geometries.point(1, 2, 4));
+        assertEquals(1, (int) a.join(b).count().toBlocking().single());
+        assertEquals("a", a.join(b).toBlocking().single().right().value());
+        assertEquals(2, (int) a.join(b, 1.01).count().toBlocking().single());
+    }
+
+    @Test
+    public void testJoinHonoursBackpressure() {
+        RTree<Object, Geometry> a = RTree.maxChildren(4).create(boxes(1000));
+        RTree<Object, Geometry> b = RTree.maxChildren(4).create(boxes(1000));
+        int total = a.join(b).count().toBlocking().single();
+        assertTrue(total > 10);
+        TestSubscriber<EntryPair<Object, Geometry, Object, Geometry>> ts = new TestSubscriber<EntryPair<Object, Geometry, Object, Geometry>>(
+                0);
+        a.join(b).subscribe(ts);
+        ts.assertNoValues();
+        ts.requestMore(1);
+        ts.assertValueCount(1);
+        ts.requestMore(9);
+        ts.assertValueCount(10);
+        ts.assertNotCompleted();
+        ts.requestMore(Long.MAX_VALUE);
+        ts.assertValueCount(total);
+        ts.assertCompleted();
+    }
+
+    @Test
+    public void testJoinCompletesWhenExactlyAllPairsRequested() {
+        RTree<Object, Geometry> a = RTree.maxChildren(4).create(boxes(1000));
+        RTree<Object, Geometry> b = RTree.maxChildren(4).create(boxes(1000));
+        int total = a.join(b).count().toBlocking().single();
+        TestSubscriber<EntryPair<Object, Geometry, Object, Geometry>> ts = new TestSubscriber<EntryPair<Object, Geometry, Object, Geometry>>(
+                0);
+        a.join(b).subscribe(ts);
+        ts.requestMore(total);
+        ts.assertValueCount(total);
+        ts.assertCompleted();
+    }
+
+    @Test
+    public void testEntryPairEquality() {
+        Entry<Integer, Geometry> e1 = Entry.<Integer, Geometry> entry(1,
+                Geometries.point(0, 0, 0));
+        Entry<Integer, Geometry> e2 = Entry.<Integer, Geometry> entry(2,
+                Geometries.point(0, 0, 0));
+        assertEquals(new EntryPair<Integer, Geometry, Integer, Geometry>(e1, e2),
+                new EntryPair<Integer, Geometry, Integer, Geometry>(e1, e2));
+        assertEquals(new EntryPair<Integer, Geometry, Integer, Geometry>(e1, e2).hashCode(),
+                new EntryPair<Integer, Geometry, Integer, Geometry>(e1, e2).hashCode());
+        assertNotEquals(new EntryPair<Integer, Geometry, Integer, Geometry>(e1, e2),
+                new EntryPair<Integer, Geometry, Integer, Geometry>(e2, e1));
+        assertFalse(new EntryPair<Integer, Geometry, Integer, Geometry>(e1, e2).equals(null));
+        assertTrue(new EntryPair<Integer, Geometry, Integer, Geometry>(e1, e2).toString()
+                .startsWith("EntryPair [left=Entry [value=1"));
+    }
+
+    @Test
+    public void testSelfJoinEmitsEachUnorderedPairOnce() {
+        for (RTree<Object, Geometry> tree : Arrays.asList(
+                RTree.maxChildren(4).<Object, Geometry> create().add(boxes(1000)),
+                RTree.star().maxChildren(10).create(boxes(1000)))) {
+            checkSelfJoin(tree, tree.selfJoin(), -1);
+            checkSelfJoin(tree, tree.selfJoin(15), 15);
+        }
+    }
+
+    @Test
+    public void testSelfJoinOfLeafRoot() {
+        RTree<Integer, Geometry> tree = RTree.<Integer, Geometry> create()
+                .add(1, Geometries.point(1, 2, 3)).add(2, Geometries.point(1, 2, 3))
+                .add(3, Geometries.point(1, 2, 5));
+        List<EntryPair<Integer, Geometry, Integer, Geometry>> list = tree.selfJoin().toList()
+                .toBlocking().single();
+        assertEquals(1, list.size());
+        assertEquals(3, list.get(0).left().value() + list.get(0).right().value());
+        assertEquals(3, (int) tree.selfJoin(2.5).count().toBlocking().single());
+    }
+
+    @Test
+    public void testSelfJoinOfEmptyOrSingletonTreeIsEmpty() {
+        assertTrue(RTree.create().selfJoin().isEmpty().toBlocking().single());
+        assertTrue(RTree.create().add(1, Geometries.point(1, 2, 3)).selfJoin(10).isEmpty()
+                .toBlocking().single());
+    }
+
+    private static void checkSelfJoin(RTree<Object, Geometry> tree,
+            rx.Observable<EntryPair<Object, Geometry, Object, Geometry>> join,
+            double maxDistance) {
+        // the naive join gives each pair both ways round and each entry with
+        // itself
+        Set<Set<Entry<Object, Geometry>>> expected = new HashSet<Set<Entry<Object, Geometry>>>();
+        for (EntryPair<Object, Geometry, Object, Geometry> pair : naiveJoin(tree, tree,
+                maxDistance))
+            if (pair.left() != pair.right())
+                expected.add(unordered(pair));
+        assertFalse(expected.isEmpty());
+        List<EntryPair<Object, Geometry, Object, Geometry>> list = join.toList().toBlocking()
+                .single();
+        assertEquals(expected.size(), list.size());
+        Set<Set<Entry<Object, Geometry>>> set = new HashSet<Set<Entry<Object, Geometry>>>();
+        for (EntryPair<Object, Geometry, Object, Geometry> pair : list)
+            set.add(unordered(pair));
+        assertEquals(expected, set);
+    }
+
+    private static Set<Entry<Object, Geometry>> unordered(
+            EntryPair<Object, Geometry, Object, Geometry> pair) {
+        Set<Entry<Object, Geometry>> set = new HashSet<Entry<Object, Geometry>>();
+        set.add(pair.left());
+        set.add(pair.right());
+        return set;
+    }
+
+    private static Set<EntryPair<Object, Geometry, Object, Geometry>> naiveJoin(
+            RTree<Object, Geometry> a, RTree<Object, Geometry> b, double maxDistance) {
+        Set<EntryPair<Object, Geometry, Object, Geometry>> set = new HashSet<EntryPair<Object, Geometry, Object, Geometry>>();
+        for (Entry<Object, Geometry> ea : a.entries().toBlocking().toIterable()) {
+            Box r = ea.geometry().mbb();
+            Iterable<Entry<Object, Geometry>> found = maxDistance < 0
+                    ? b.search(r).toBlocking().toIterable()
+                    : b.search(r, maxDistance).toBlocking().toIterable();
+            for (Entry<Object, Geometry> eb : found)
+                set.add(new EntryPair<Object, Geometry, Object, Geometry>(ea, eb));
+        }
+        return set;
+    }
+
+    static List<Entry<Object, Geometry>> boxes(int n) {
+        List<Entry<Object, Geometry>> list = new ArrayList<Entry<Object, Geometry>>();
+        for (int i = 0; i < n; i++) {
+            double x = Math.random() * 1000;
+            double y = Math.random() * 1000;
+            double z = Math.random() * 1000;
+            list.add(Entry.<Object, Geometry> entry(new Object(), Geometries.box(x, y, z,
+                    x + Math.random() * 50, y + Math.random() * 50, z + Math.random() * 50)));
+        }
+        return list;
+    }
+
+}
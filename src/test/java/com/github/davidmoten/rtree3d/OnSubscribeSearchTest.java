@@ -23,12 +23,12 @@ public class OnSubscribeSearchTest {
     @Test
     public void testSearchProducerThrowsExceptionFromRequestAll() {
         Node<Integer, Geometry> node = Mockito.mock(Node.class);
-        Func1<Geometry, Boolean> condition = Mockito.mock(Func1.class);
+        SearchCondition condition = SearchCondition.from(Mockito.mock(Func1.class));
         Subscriber<Entry<Integer, Geometry>> subscriber = Mockito.mock(Subscriber.class);
         RuntimeException error = new RuntimeException();
         Mockito.doThrow(error).when(node).search(condition, subscriber);
         SearchProducer<Integer, Geometry> p = new OnSubscribeSearch.SearchProducer<Integer, Geometry>(
-                node, condition, subscriber);
+                node, condition, null, subscriber);
         p.request(Long.MAX_VALUE);
         Mockito.verify(subscriber).onError(error);
     }
@@ -39,7 +39,7 @@ public class OnSubscribeSearchTest {
         Node<Integer, Point> node = new Leaf<Integer, Point>(Collections.singletonList(Entry.entry(
                 1, Geometries.point(1, 1, 0))), null);
 
-        Func1<Geometry, Boolean> condition = Mockito.mock(Func1.class);
+        SearchCondition condition = SearchCondition.from(Mockito.mock(Func1.class));
         Subscriber<Entry<Integer, Point>> subscriber = new Subscriber<Entry<Integer, Point>>() {
 
             @Override
@@ -58,7 +58,7 @@ public class OnSubscribeSearchTest {
             }
         };
         SearchProducer<Integer, Point> p = new OnSubscribeSearch.SearchProducer<Integer, Point>(
-                node, condition, subscriber);
+                node, condition, null, subscriber);
         p.request(1);
     }
 
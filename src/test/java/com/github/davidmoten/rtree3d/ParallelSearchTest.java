@@ -0,0 +1,100 @@
+package com.github.davidmoten.rtree3d;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.github.davidmoten.junit.Asserts;
+import com.github.davidmoten.rtree3d.geometry.Box;
+import com.github.davidmoten.rtree3d.geometry.Geometries;
+import com.github.davidmoten.rtree3d.geometry.Geometry;
+
+import rx.schedulers.Schedulers;
+
+public class ParallelSearchTest {
+
+    @Test
+    public void testConstructorIsPrivate() {
+        Asserts.assertIsUtilityClass(ParallelSearch.class);
+    }
+
+    @Test
+    public void testPartitionGivesAtLeastRequestedSubtreesCoveringAllResults() {
+        RTree<Object, Geometry> tree = RTree.maxChildren(4)
+                .create(RTreeTest.createRandomEntries(10000));
+        SearchCondition condition = SearchCondition.intersects(Geometries.box(0, 0, 0, 500, 500, 0));
+        List<Node<Object, Geometry>> nodes = ParallelSearch.partition(tree.root().get(),
+                condition, 16);
+        assertTrue(nodes.size() >= 16);
+        HashSet<Entry<Object, Geometry>> found = new HashSet<Entry<Object, Geometry>>();
+        for (Node<Object, Geometry> node : nodes) {
+            assertTrue(condition.test(node.geometry()));
+            found.addAll(RTree.create(node, tree.context()).search(condition).toList()
+                    .toBlocking().single());
+        }
+        assertEquals(new HashSet<Entry<Object, Geometry>>(
+                tree.search(condition).toList().toBlocking().single()), found);
+    }
+
+    @Test
+    public void testPartitionOfLeafRootReturnsRoot() {
+        RTree<Object, Geometry> tree = RTree.maxChildren(4)
+                .create(RTreeTest.createRandomEntries(3));
+        assertEquals(1, ParallelSearch.partition(tree.root().get(), SearchCondition.ALWAYS_TRUE, 16)
+                .size());
+    }
+
+    @Test
+    public void testPartitionWhenRootDoesNotSatisfyConditionIsEmpty() {
+        RTree<Object, Geometry> tree = RTree.maxChildren(4)
+                .create(RTreeTest.createRandomEntries(100));
+        Box far = Geometries.box(2000, 2000, 2000, 3000, 3000, 3000);
+        assertTrue(ParallelSearch
+                .partition(tree.root().get(), SearchCondition.intersects(far), 16).isEmpty());
+    }
+
+    @Test
+    public void testSearchParallelReturnsSameEntriesAsSearch() {
+        RTree<Object, Geometry> tree = RTree.maxChildren(8)
+                .create(RTreeTest.createRandomEntries(ParallelSearch.MIN_ENTRIES * 3));
+        Box r = Geometries.box(100, 100, 0, 800, 800, 0);
+        List<Entry<Object, Geometry>> expected = tree.search(r).toList().toBlocking().single();
+        List<Entry<Object, Geometry>> list = tree.searchParallel(r, Schedulers.computation())
+                .toList().toBlocking().single();
+        assertEquals(expected.size(), list.size());
+        assertEquals(new HashSet<Entry<Object, Geometry>>(expected),
+                new HashSet<Entry<Object, Geometry>>(list));
+    }
+
+    @Test
+    public void testSearchParallelWithBackpressure() {
+        RTree<Object, Geometry> tree = RTree.maxChildren(8)
+                .create(RTreeTest.createRandomEntries(ParallelSearch.MIN_ENTRIES * 3));
+        Box r = Geometries.box(0, 0, 0, 1000, 1000, 0);
+        assertEquals(tree.size(), (int) tree.searchParallel(r, Schedulers.computation())
+                .observeOn(Schedulers.io()).count().toBlocking().single());
+        assertEquals(10, (int) tree.searchParallel(r, Schedulers.computation()).take(10).count()
+                .toBlocking().single());
+    }
+
+    @Test
+    public void testSearchParallelOfSmallTreeIsSequential() {
+        RTree<Object, Geometry> tree = RTree.maxChildren(4)
+                .create(RTreeTest.createRandomEntries(100));
+        Box r = Geometries.box(0, 0, 0, 1000, 1000, 0);
+        assertEquals(tree.search(r).toList().toBlocking().single(),
+                tree.searchParallel(r, Schedulers.computation()).toList().toBlocking().single());
+    }
+
+    @Test
+    public void testSearchParallelOfEmptyTree() {
+        RTree<Object, Geometry> tree = RTree.create();
+        assertTrue(tree.searchParallel(Geometries.box(0, 0, 0, 1, 1, 1), Schedulers.computation())
+                .isEmpty().toBlocking().single());
+    }
+
+}
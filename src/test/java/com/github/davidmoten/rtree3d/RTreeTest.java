@@ -36,7 +36,9 @@ import rx.Observable;
 import rx.Subscriber;
 import rx.functions.Action1;
 import rx.functions.Func1;
+import rx.functions.Func2;
 import rx.observables.GroupedObservable;
+import rx.schedulers.Schedulers;
 
 public class RTreeTest {
 
@@ -501,6 +503,139 @@ public class RTreeTest {
         assertFalse(completeCalled.get());
     }
 
+    @Test
+    public void testNearestReturnsSameAsExhaustiveSearch() {
+        RTree<Object, Geometry> tree = RTree.maxChildren(4).create(createRandomEntries(1000));
+        final Box r = box(400, 400, 401, 401);
+        List<Entry<Object, Geometry>> all = tree.search(r, 200).toSortedList(
+                new Func2<Entry<Object, Geometry>, Entry<Object, Geometry>, Integer>() {
+                    @Override
+                    public Integer call(Entry<Object, Geometry> e1, Entry<Object, Geometry> e2) {
+                        return Comparators.<Object, Geometry> ascendingDistance(r).compare(e1,
+                                e2);
+                    }
+                }).toBlocking().single();
+        List<Entry<Object, Geometry>> nearest = tree.nearest(r, 200, 20).toList().toBlocking()
+                .single();
+        assertEquals(Math.min(20, all.size()), nearest.size());
+        for (int i = 0; i < nearest.size(); i++)
+            assertEquals(all.get(i).geometry().distance(r), nearest.get(i).geometry().distance(r),
+                    PRECISION);
+    }
+
+    @Test
+    public void testNearestHonoursBackpressure() {
+        RTree<Object, Box> tree = create(4, 100);
+        final List<Entry<Object, Box>> list = new ArrayList<Entry<Object, Box>>();
+        tree.nearest(r(50), 1000, 10).subscribe(new Subscriber<Entry<Object, Box>>() {
+
+            @Override
+            public void onStart() {
+                request(3);
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+
+            @Override
+            public void onError(Throwable e) {
+            }
+
+            @Override
+            public void onNext(Entry<Object, Box> t) {
+                list.add(t);
+            }
+        });
+        assertEquals(3, list.size());
+        assertEquals(0, list.get(0).geometry().distance(r(50)), PRECISION);
+    }
+
+    @Test
+    public void testNearestWithRequestOneAtATime() {
+        RTree<Object, Box> tree = create(4, 100);
+        List<Entry<Object, Box>> list = new ArrayList<Entry<Object, Box>>();
+        tree.nearest(r(50), 1000, 10).subscribe(createBackpressureSubscriber(list));
+        assertEquals(10, list.size());
+        assertEquals(tree.nearest(r(50), 1000, 10).toList().toBlocking().single(), list);
+    }
+
+    @Test
+    public void testNearestCompletesWhenMaxCountRequested() {
+        RTree<Object, Box> tree = create(4, 100);
+        final AtomicInteger count = new AtomicInteger();
+        final AtomicBoolean completed = new AtomicBoolean();
+        tree.nearest(r(50), 1000, 10).subscribe(new Subscriber<Entry<Object, Box>>() {
+
+            @Override
+            public void onStart() {
+                request(10);
+            }
+
+            @Override
+            public void onCompleted() {
+                completed.set(true);
+            }
+
+            @Override
+            public void onError(Throwable e) {
+            }
+
+            @Override
+            public void onNext(Entry<Object, Box> t) {
+                count.incrementAndGet();
+            }
+        });
+        assertEquals(10, count.get());
+        assertTrue(completed.get());
+    }
+
+    @Test
+    public void testNearestCompletesWhenAllEntriesRequested() {
+        RTree<Object, Box> tree = create(4, 5);
+        final AtomicInteger count = new AtomicInteger();
+        final AtomicBoolean completed = new AtomicBoolean();
+        tree.nearest(r(50), 1000, 10).subscribe(new Subscriber<Entry<Object, Box>>() {
+
+            @Override
+            public void onStart() {
+                request(5);
+            }
+
+            @Override
+            public void onCompleted() {
+                completed.set(true);
+            }
+
+            @Override
+            public void onError(Throwable e) {
+            }
+
+            @Override
+            public void onNext(Entry<Object, Box> t) {
+                count.incrementAndGet();
+            }
+        });
+        assertEquals(5, count.get());
+        assertTrue(completed.get());
+    }
+
+    @Test
+    public void testNearestWithZeroMaxCountIsEmpty() {
+        assertTrue(create(4, 100).nearest(r(50), 1000, 0).isEmpty().toBlocking().single());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNearestWithNegativeMaxCountThrows() {
+        create(4, 100).nearest(r(50), 1000, -1);
+    }
+
+    @Test
+    public void testNearestOnEmptyTree() {
+        RTree<Object, Box> tree = RTree.create();
+        assertTrue(tree.nearest(r(1), 10, 10).isEmpty().toBlocking().single());
+    }
+
     @Test
     public void testVisualizer() {
         List<Entry<Object, Geometry>> entries = createRandomEntries(1000);
@@ -866,6 +1001,550 @@ public class RTreeTest {
 
     }
 
+    @Test
+    public void testBulkLoadOfEmptyListGivesEmptyTree() {
+        RTree<Object, Geometry> tree = RTree.maxChildren(4)
+                .create(new ArrayList<Entry<Object, Geometry>>());
+        assertTrue(tree.isEmpty());
+        assertFalse(tree.root().isPresent());
+    }
+
+    @Test
+    public void testBulkLoadReturnsSameSearchResultsAsIncrementalAdd() {
+        List<Entry<Object, Geometry>> entries = createRandomEntries(1000);
+        RTree<Object, Geometry> tree1 = RTree.maxChildren(4).<Object, Geometry> create()
+                .add(entries);
+        RTree<Object, Geometry> tree2 = RTree.maxChildren(4).create(entries);
+        assertEquals(1000, tree2.size());
+        assertEquals(1000, tree2.countEntries());
+        Box r = box(200, 300, 600, 700);
+        assertEquals(
+                new HashSet<Entry<Object, Geometry>>(tree1.search(r).toList().toBlocking()
+                        .single()),
+                new HashSet<Entry<Object, Geometry>>(tree2.search(r).toList().toBlocking()
+                        .single()));
+    }
+
+    @Test
+    public void testParallelBulkLoadGivesSameTreeAsBulkLoad() {
+        List<Entry<Object, Geometry>> entries = createRandomEntries(50000);
+        RTree<Object, Geometry> tree = RTree.star().maxChildren(8).minChildren(3)
+                .create(entries, Schedulers.computation());
+        assertEquals(50000, tree.size());
+        assertTrue(tree.context().selector() instanceof SelectorRStar);
+        assertEquals(RTree.star().maxChildren(8).minChildren(3).create(entries).asString(),
+                tree.asString());
+        assertTrue(RTree.maxChildren(4).create(new ArrayList<Entry<Object, Geometry>>(),
+                Schedulers.computation()).isEmpty());
+    }
+
+    @Test
+    public void testBulkLoadHonoursMinAndMaxChildren() {
+        RTree<Object, Geometry> tree = RTree.maxChildren(8).minChildren(3)
+                .create(createRandomEntries(2345));
+        checkNodeSizes(tree.root().get(), tree.context(), true);
+        assertEquals(4, tree.calculateDepth());
+    }
+
+    @Test
+    public void testBulkLoadedTreeCanBeAddedToAndDeletedFrom() {
+        List<Entry<Object, Geometry>> entries = createRandomEntries(100);
+        RTree<Object, Geometry> tree = RTree.maxChildren(4).create(entries);
+        tree = tree.add(randomEntry()).delete(entries);
+        assertEquals(1, tree.size());
+        assertEquals(1, (int) tree.entries().count().toBlocking().single());
+    }
+
+    @Test
+    public void testPackedLeavesReturnSameResultsAsUnpacked() {
+        List<Entry<Object, Geometry>> entries = createRandomEntries(1000);
+        RTree<Object, Geometry> tree1 = RTree.maxChildren(4).<Object, Geometry> create()
+                .add(entries);
+        RTree<Object, Geometry> tree2 = RTree.packedLeaves().maxChildren(4)
+                .<Object, Geometry> create().add(entries);
+        assertTrue(tree2.context().packedLeaves());
+        assertEquals(tree1.asString(), tree2.asString());
+        Box r = box(200, 300, 600, 700);
+        assertEquals(
+                new HashSet<Entry<Object, Geometry>>(tree1.search(r).toList().toBlocking()
+                        .single()),
+                new HashSet<Entry<Object, Geometry>>(tree2.search(r).toList().toBlocking()
+                        .single()));
+        assertEquals(tree1.nearest(r, 100, 10).toList().toBlocking().single(),
+                tree2.nearest(r, 100, 10).toList().toBlocking().single());
+        assertEquals(tree1.delete(entries.subList(0, 500)).asString(),
+                tree2.delete(entries.subList(0, 500)).asString());
+        assertTrue(tree2.delete(entries).isEmpty());
+    }
+
+    @Test
+    public void testPackedLeavesWithBulkLoad() {
+        List<Entry<Object, Geometry>> entries = createRandomEntries(1000);
+        RTree<Object, Geometry> tree = RTree.packedLeaves().maxChildren(8).create(entries);
+        assertEquals(new HashSet<Entry<Object, Geometry>>(entries),
+                new HashSet<Entry<Object, Geometry>>(tree.entries().toList().toBlocking()
+                        .single()));
+    }
+
+    @Test
+    public void testFunc1SearchOfPackedLeafSeesPoints() {
+        List<Entry<Object, Geometry>> entries = new ArrayList<Entry<Object, Geometry>>();
+        for (int i = 0; i < 100; i++)
+            entries.add(Entry.<Object, Geometry> entry(i, Geometries.point(i, i, i)));
+        // true for the bounds of every node but only for some points
+        Func1<Geometry, Boolean> condition = new Func1<Geometry, Boolean>() {
+            @Override
+            public Boolean call(Geometry g) {
+                return !(g instanceof Point) || ((Point) g).x() < 50;
+            }
+        };
+        for (RTree<Object, Geometry> tree : Arrays.asList(
+                RTree.maxChildren(4).<Object, Geometry> create().add(entries),
+                RTree.packedLeaves().maxChildren(4).<Object, Geometry> create().add(entries),
+                RTree.packedLeaves().maxChildren(8).create(entries))) {
+            assertEquals(new HashSet<Entry<Object, Geometry>>(entries.subList(0, 50)),
+                    new HashSet<Entry<Object, Geometry>>(
+                            tree.search(condition).toList().toBlocking().single()));
+        }
+    }
+
+    @Test
+    public void testBatchAddGivesSameEntriesAsAddingOneAtATime() {
+        List<Entry<Object, Geometry>> entries = createRandomEntries(1000);
+        RTree<Object, Geometry> tree1 = RTree.maxChildren(4).create();
+        for (Entry<Object, Geometry> entry : entries)
+            tree1 = tree1.add(entry);
+        RTree<Object, Geometry> tree2 = RTree.maxChildren(4).<Object, Geometry> create()
+                .add(entries);
+        assertEquals(1000, tree2.size());
+        assertEquals(1000, tree2.countEntries());
+        assertEquals(
+                new HashSet<Entry<Object, Geometry>>(tree1.entries().toList().toBlocking()
+                        .single()),
+                new HashSet<Entry<Object, Geometry>>(tree2.entries().toList().toBlocking()
+                        .single()));
+    }
+
+    @Test
+    public void testBatchAddToEmptyTreeHonoursMinAndMaxChildren() {
+        RTree<Object, Geometry> tree = RTree.maxChildren(8).minChildren(3)
+                .<Object, Geometry> create().add(createRandomEntries(2345));
+        checkNodeSizes(tree.root().get(), tree.context(), true);
+        assertEquals(1, leafDepths(tree.root().get(), 1).size());
+    }
+
+    @Test
+    public void testBatchAddToExistingTreeHonoursMinAndMaxChildren() {
+        List<Entry<Object, Geometry>> entries = createRandomEntries(1000);
+        for (RTree<Object, Geometry> tree : Arrays.asList(
+                RTree.maxChildren(4).<Object, Geometry> create(),
+                RTree.star().maxChildren(6).<Object, Geometry> create())) {
+            tree = tree.add(entries.subList(0, 300));
+            for (int i = 300; i < 1000; i += 100)
+                tree = tree.add(entries.subList(i, i + 100));
+            assertEquals(1000, tree.size());
+            assertEquals(1000, tree.countEntries());
+            checkNodeSizes(tree.root().get(), tree.context(), true);
+            assertEquals(1, leafDepths(tree.root().get(), 1).size());
+            for (Entry<Object, Geometry> entry : entries)
+                assertEquals(1, (int) tree.search(entry.geometry().mbb()).filter(equalTo(entry))
+                        .count().toBlocking().single());
+        }
+    }
+
+    @Test
+    public void testBatchAddToEmptyTreeIsSameAsAddingOneAtATime() {
+        List<Entry<Object, Geometry>> entries = createRandomEntries(1000);
+        for (RTree<Object, Geometry> empty : Arrays.asList(
+                RTree.maxChildren(4).<Object, Geometry> create(),
+                RTree.star().maxChildren(6).<Object, Geometry> create())) {
+            RTree<Object, Geometry> tree = empty;
+            for (Entry<Object, Geometry> entry : entries)
+                tree = tree.add(entry);
+            assertEquals(tree.asString(), empty.add(entries).asString());
+        }
+    }
+
+    @Test
+    public void testLargeBatchAddToOneLeafHonoursMinAndMaxChildren() {
+        List<Entry<Object, Geometry>> entries = createRandomEntries(1000);
+        for (RTree<Object, Geometry> tree : Arrays.asList(
+                RTree.maxChildren(4).<Object, Geometry> create(),
+                RTree.star().maxChildren(6).<Object, Geometry> create())) {
+            tree = tree.add(entries.subList(0, 500));
+            // nearby entries all routed to the same leaf
+            List<Entry<Object, Geometry>> nearby = new ArrayList<Entry<Object, Geometry>>();
+            for (int i = 0; i < 200; i++)
+                nearby.add(Entry.<Object, Geometry> entry(i,
+                        Geometries.point(500 + i / 100.0, 500, 500)));
+            tree = tree.add(nearby);
+            assertEquals(700, tree.size());
+            assertEquals(700, tree.countEntries());
+            checkNodeSizes(tree.root().get(), tree.context(), true);
+            assertEquals(1, leafDepths(tree.root().get(), 1).size());
+        }
+    }
+
+    @Test
+    public void testBatchAddOfOneEntryToSmallTreeIsSameAsAdd() {
+        Entry<Object, Box> e1 = e(1);
+        Entry<Object, Box> e2 = e(2);
+        RTree<Object, Box> tree = RTree.maxChildren(4).<Object, Box> create().add(e1);
+        assertEquals(tree.add(e2).asString(), tree.add(Collections.singletonList(e2)).asString());
+    }
+
+    @Test
+    public void testDeleteRegionGivesSameTreeEntriesAsSearchThenDelete() {
+        List<Entry<Object, Geometry>> entries = createRandomEntries(1000);
+        for (RTree<Object, Geometry> tree : Arrays.asList(
+                RTree.maxChildren(4).<Object, Geometry> create().add(entries),
+                RTree.star().maxChildren(6).<Object, Geometry> create().add(entries),
+                RTree.packedLeaves().maxChildren(8).<Object, Geometry> create(entries))) {
+            Box r = box(200, 300, 600, 700);
+            List<Entry<Object, Geometry>> found = tree.search(r).toList().toBlocking().single();
+            RTree<Object, Geometry> tree2 = tree.delete(r);
+            assertEquals(1000 - found.size(), tree2.size());
+            assertEquals(tree2.size(), tree2.countEntries());
+            assertTrue(tree2.search(r).isEmpty().toBlocking().single());
+            HashSet<Entry<Object, Geometry>> expected = new HashSet<Entry<Object, Geometry>>(
+                    entries);
+            expected.removeAll(found);
+            assertEquals(expected, new HashSet<Entry<Object, Geometry>>(
+                    tree2.entries().toList().toBlocking().single()));
+            checkNodeSizes(tree2.root().get(), tree2.context(), true);
+            assertEquals(1, leafDepths(tree2.root().get(), 1).size());
+        }
+    }
+
+    @Test
+    public void testDeleteRegionReinsertsSubtreesOfDissolvedNodesWhole() {
+        List<Entry<Object, Geometry>> entries = createRandomEntries(3000);
+        for (RTree<Object, Geometry> tree : Arrays.asList(
+                RTree.maxChildren(4).<Object, Geometry> create().add(entries),
+                RTree.star().maxChildren(6).<Object, Geometry> create().add(entries))) {
+            Box r = box(100, 100, 900, 900);
+            NodeAndEntries<Object, Geometry> result = ((NonLeaf<Object, Geometry>) tree.root()
+                    .get()).delete(r, null, 1);
+            assertFalse(result.nodesToAdd().isEmpty());
+            // only the entries of leaves that intersect the region are added
+            // back one at a time, other leaves are kept whole
+            Set<Entry<Object, Geometry>> touched = new HashSet<Entry<Object, Geometry>>();
+            addEntriesOfLeavesIntersecting(tree.root().get(), r, touched);
+            assertTrue(touched.containsAll(result.entriesToAdd()));
+            RTree<Object, Geometry> tree2 = tree.delete(r);
+            assertEquals(tree2.size(), tree2.countEntries());
+            assertTrue(tree2.search(r).isEmpty().toBlocking().single());
+            checkNodeSizes(tree2.root().get(), tree2.context(), true);
+            assertEquals(1, leafDepths(tree2.root().get(), 1).size());
+        }
+    }
+
+    private static void addEntriesOfLeavesIntersecting(Node<Object, Geometry> node, Box r,
+            Set<Entry<Object, Geometry>> entries) {
+        if (!node.geometry().mbb().intersects(r))
+            return;
+        else if (node instanceof Leaf)
+            entries.addAll(((Leaf<Object, Geometry>) node).entries());
+        else
+            for (Node<Object, Geometry> child : ((NonLeaf<Object, Geometry>) node).children())
+                addEntriesOfLeavesIntersecting(child, r, entries);
+    }
+
+    @Test
+    public void testDeleteRegionContainingEverythingGivesEmptyTree() {
+        RTree<Object, Geometry> tree = RTree.maxChildren(4).<Object, Geometry> create()
+                .add(createRandomEntries(1000));
+        RTree<Object, Geometry> tree2 = tree.delete(box(-1, -1, 1001, 1001));
+        assertTrue(tree2.isEmpty());
+        assertFalse(tree2.root().isPresent());
+    }
+
+    @Test
+    public void testDeleteRegionWithNoEntriesReturnsSameTree() {
+        RTree<Object, Geometry> tree = RTree.maxChildren(4).<Object, Geometry> create()
+                .add(createRandomEntries(100));
+        assertTrue(tree == tree.delete(box(2000, 2000, 3000, 3000)));
+        RTree<Object, Geometry> empty = RTree.create();
+        assertTrue(empty == empty.delete(box(0, 0, 1, 1)));
+    }
+
+    @Test
+    public void testDeleteRegionWithPredicateOnlyDeletesMatchingEntries() {
+        List<Entry<Object, Geometry>> entries = new ArrayList<Entry<Object, Geometry>>();
+        for (int i = 0; i < 1000; i++)
+            entries.add(Entry.<Object, Geometry> entry(i, Geometries.point(i, i, 0)));
+        RTree<Object, Geometry> tree = RTree.maxChildren(4).<Object, Geometry> create()
+                .add(entries).delete(box(-1, -1, 499.5, 499.5),
+                        new Func1<Entry<Object, Geometry>, Boolean>() {
+                            @Override
+                            public Boolean call(Entry<Object, Geometry> entry) {
+                                return (Integer) entry.value() % 2 == 0;
+                            }
+                        });
+        assertEquals(750, tree.size());
+        assertEquals(750, tree.countEntries());
+        for (Entry<Object, Geometry> entry : tree.entries().toBlocking().toIterable()) {
+            int value = (Integer) entry.value();
+            assertTrue(value >= 500 || value % 2 == 1);
+        }
+        checkNodeSizes(tree.root().get(), tree.context(), true);
+    }
+
+    @Test
+    public void testCountInBoxIsSameAsSearchCount() {
+        List<Entry<Object, Geometry>> entries = createRandomEntries(2000);
+        for (RTree<Object, Geometry> tree : Arrays.asList(
+                RTree.maxChildren(4).<Object, Geometry> create().add(entries),
+                RTree.star().maxChildren(6).<Object, Geometry> create().add(entries),
+                RTree.packedLeaves().maxChildren(8).create(entries))) {
+            checkEntryCounts(tree.root().get());
+            for (Box r : Arrays.asList(box(200, 300, 600, 700), box(-1, -1, 1001, 1001),
+                    box(2000, 2000, 3000, 3000), box(500, 500, 500, 500)))
+                assertEquals((int) tree.search(r).count().toBlocking().single(), tree.count(r));
+        }
+    }
+
+    @Test
+    public void testEntryCountsAreMaintainedByDelete() {
+        List<Entry<Object, Geometry>> entries = createRandomEntries(1000);
+        RTree<Object, Geometry> tree = RTree.maxChildren(4).<Object, Geometry> create()
+                .add(entries).delete(entries.subList(0, 300)).delete(box(0, 0, 400, 400));
+        checkEntryCounts(tree.root().get());
+        assertEquals(tree.size(), tree.countEntries());
+        assertEquals(0, tree.count(box(0, 0, 400, 400)));
+        Box r = box(300, 300, 900, 900);
+        assertEquals((int) tree.search(r).count().toBlocking().single(), tree.count(r));
+    }
+
+    @Test
+    public void testCountOfEmptyTreeIsZero() {
+        assertEquals(0, RTree.create().count(box(0, 0, 1, 1)));
+    }
+
+    @Test
+    public void testAggregateInBoxIsSameAsFoldOfSearch() {
+        List<Entry<Object, Geometry>> entries = createValuedEntries(2000);
+        for (Monoid<Object, Double> monoid : Arrays.asList(Monoids.sum(VALUE),
+                Monoids.min(VALUE), Monoids.max(VALUE))) {
+            RTree<Object, Geometry> incremental = RTree.monoid(monoid).maxChildren(4).create();
+            TransientRTree<Object, Geometry> tr = incremental.asTransient();
+            for (Entry<Object, Geometry> entry : entries) {
+                incremental = incremental.add(entry);
+                tr.add(entry);
+            }
+            for (RTree<Object, Geometry> tree : Arrays.asList(incremental,
+                    RTree.monoid(monoid).star().maxChildren(6).<Object, Geometry> create()
+                            .add(entries),
+                    RTree.monoid(monoid).packedLeaves().maxChildren(8).create(entries),
+                    tr.persistent())) {
+                checkAggregates(tree.root().get(), monoid);
+                assertEquals(fold(monoid, tree.entries()), tree.aggregate(Double.class), 0);
+                for (Box r : Arrays.asList(box(200, 300, 600, 700), box(-1, -1, 1001, 1001),
+                        box(2000, 2000, 3000, 3000), box(500, 500, 500, 500)))
+                    assertEquals(fold(monoid, tree.search(r)), tree.aggregate(r, Double.class), 0);
+            }
+        }
+    }
+
+    @Test
+    public void testAggregatesAreMaintainedByDeleteAndOlderVersionsAreUnchanged() {
+        List<Entry<Object, Geometry>> entries = createValuedEntries(1000);
+        Monoid<Object, Double> sum = Monoids.sum(VALUE);
+        RTree<Object, Geometry> tree = RTree.monoid(sum).maxChildren(4).create(entries);
+        double total = tree.aggregate(Double.class);
+        assertEquals(999 * 1000 / 2, total, 0);
+        RTree<Object, Geometry> tree2 = tree.delete(entries.subList(0, 300))
+                .delete(box(0, 0, 400, 400)).add(entries.get(0));
+        checkAggregates(tree2.root().get(), sum);
+        assertEquals(fold(sum, tree2.entries()), tree2.aggregate(Double.class), 0);
+        Box r = box(300, 300, 900, 900);
+        assertEquals(fold(sum, tree2.search(r)), tree2.aggregate(r, Double.class), 0);
+        assertEquals(total, tree.aggregate(Double.class), 0);
+        assertEquals(fold(sum, tree.search(r)), tree.aggregate(r, Double.class), 0);
+    }
+
+    @Test
+    public void testAggregateOfEmptyTreeIsIdentity() {
+        RTree<Object, Geometry> tree = RTree.monoid(Monoids.min(VALUE)).create();
+        assertEquals(Double.POSITIVE_INFINITY, tree.aggregate(Double.class), 0);
+        assertEquals(Double.POSITIVE_INFINITY, tree.aggregate(box(0, 0, 1, 1), Double.class), 0);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testAggregateWithoutMonoidThrows() {
+        RTree.create().add(1, point(1, 1)).aggregate(box(0, 0, 1, 1), Double.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAggregateOfWrongTypeThrows() {
+        RTree.monoid(Monoids.min(VALUE)).create().add(1, point(1, 1)).aggregate(Integer.class);
+    }
+
+    @Test
+    public void testMoveWithinLeafCopiesOnlyThePathToTheLeaf() {
+        List<Entry<Object, Geometry>> entries = createValuedEntries(1000);
+        RTree<Object, Geometry> tree = RTree.maxChildren(4).create(entries);
+        Entry<Object, Geometry> entry = entries.get(500);
+        Box b = entry.geometry().mbb();
+        Geometry moved = Geometries.box(b.x1(), b.y1(), b.z1(), b.x2(), b.y2(), b.z2());
+        RTree<Object, Geometry> tree2 = tree.move(entry, moved);
+        assertEquals(tree.size(), tree2.size());
+        // every child of the root except the one holding the entry is shared
+        List<? extends Node<Object, Geometry>> children = ((NonLeaf<Object, Geometry>) tree
+                .root().get()).children();
+        List<? extends Node<Object, Geometry>> children2 = ((NonLeaf<Object, Geometry>) tree2
+                .root().get()).children();
+        assertEquals(children.size(), children2.size());
+        int shared = 0;
+        for (int i = 0; i < children.size(); i++)
+            if (children.get(i) == children2.get(i))
+                shared++;
+        assertEquals(children.size() - 1, shared);
+    }
+
+    @Test
+    public void testMoveOfMissingEntryReturnsSameTree() {
+        RTree<Object, Geometry> tree = RTree.maxChildren(4).create(createValuedEntries(100));
+        assertTrue(tree == tree.move(entry((Object) 1000, (Geometry) point(1, 1)),
+                point(2, 2)));
+        RTree<Object, Geometry> empty = RTree.create();
+        assertTrue(empty == empty.move(entry((Object) 1, (Geometry) point(1, 1)), point(2, 2)));
+    }
+
+    @Test
+    public void testRandomMovesAgreeWithDeleteAndAdd() {
+        java.util.Random random = new java.util.Random(123);
+        List<Entry<Object, Geometry>> entries = createValuedEntries(1000);
+        Monoid<Object, Double> sum = Monoids.sum(VALUE);
+        RTree<Object, Geometry> tree = RTree.monoid(sum).maxChildren(5).create(entries);
+        RTree<Object, Geometry> original = tree;
+        String before = tree.asString();
+        TransientRTree<Object, Geometry> t = RTree.monoid(sum).packedLeaves().maxChildren(5)
+                .<Object, Geometry> create(entries).asTransient();
+        List<Entry<Object, Geometry>> current = new ArrayList<Entry<Object, Geometry>>(entries);
+        for (int i = 0; i < 5000; i++) {
+            int index = random.nextInt(current.size());
+            Entry<Object, Geometry> entry = current.get(index);
+            Box b = entry.geometry().mbb();
+            // mostly small movements with some jumps
+            double d = random.nextInt(10) == 0 ? 500 : 2;
+            float dx = (float) ((random.nextDouble() - 0.5) * d);
+            float dy = (float) ((random.nextDouble() - 0.5) * d);
+            Geometry q = Geometries.box(b.x1() + dx, b.y1() + dy, b.z1(), b.x2() + dx,
+                    b.y2() + dy, b.z2());
+            tree = tree.move(entry, q);
+            t.move(entry, q);
+            current.set(index, entry(entry.value(), q));
+        }
+        for (RTree<Object, Geometry> tr : Arrays.asList(tree, t.persistent())) {
+            assertEquals(current.size(), tr.size());
+            assertEquals(new HashSet<Entry<Object, Geometry>>(current),
+                    new HashSet<Entry<Object, Geometry>>(
+                            tr.entries().toList().toBlocking().single()));
+            checkBounds(tr.root().get());
+            checkEntryCounts(tr.root().get());
+            checkAggregates(tr.root().get(), sum);
+            Box r = box(200, 200, 600, 600);
+            Set<Entry<Object, Geometry>> expected = new HashSet<Entry<Object, Geometry>>();
+            for (Entry<Object, Geometry> entry : current)
+                if (entry.geometry().intersects(r))
+                    expected.add(entry);
+            assertEquals(expected, new HashSet<Entry<Object, Geometry>>(
+                    tr.search(r).toList().toBlocking().single()));
+        }
+        assertEquals(before, original.asString());
+    }
+
+    private static void checkBounds(Node<Object, Geometry> node) {
+        if (node instanceof NonLeaf) {
+            List<? extends Node<Object, Geometry>> children = ((NonLeaf<Object, Geometry>) node)
+                    .children();
+            assertEquals(Util.mbr(children), node.geometry().mbb());
+            for (Node<Object, Geometry> child : children)
+                checkBounds(child);
+        } else
+            assertEquals(Util.mbr(((Leaf<Object, Geometry>) node).entries()),
+                    node.geometry().mbb());
+    }
+
+    private static final Func1<Object, Double> VALUE = new Func1<Object, Double>() {
+        @Override
+        public Double call(Object value) {
+            return ((Integer) value).doubleValue();
+        }
+    };
+
+    private static List<Entry<Object, Geometry>> createValuedEntries(int n) {
+        List<Entry<Object, Geometry>> list = new ArrayList<Entry<Object, Geometry>>();
+        for (int i = 0; i < n; i++)
+            list.add(entry((Object) i, randomEntry().geometry()));
+        return list;
+    }
+
+    private static double fold(Monoid<Object, Double> monoid,
+            Observable<Entry<Object, Geometry>> entries) {
+        double a = monoid.identity();
+        for (Entry<Object, Geometry> entry : entries.toBlocking().toIterable())
+            a = monoid.combine(a, monoid.lift(entry.value()));
+        return a;
+    }
+
+    private static void checkAggregates(Node<Object, Geometry> node,
+            Monoid<Object, Double> monoid) {
+        double a = monoid.identity();
+        if (node instanceof NonLeaf) {
+            for (Node<Object, Geometry> child : ((NonLeaf<Object, Geometry>) node).children()) {
+                checkAggregates(child, monoid);
+                a = monoid.combine(a, (Double) child.aggregate());
+            }
+        } else
+            for (Entry<Object, Geometry> entry : ((Leaf<Object, Geometry>) node).entries())
+                a = monoid.combine(a, monoid.lift(entry.value()));
+        assertEquals(a, (Double) node.aggregate(), 0);
+    }
+
+    static void checkEntryCounts(Node<Object, Geometry> node) {
+        if (node instanceof NonLeaf) {
+            int count = 0;
+            for (Node<Object, Geometry> child : ((NonLeaf<Object, Geometry>) node).children()) {
+                checkEntryCounts(child);
+                count += child.countEntries();
+            }
+            assertEquals(count, node.countEntries());
+        } else
+            assertEquals(node.count(), node.countEntries());
+    }
+
+    private static HashSet<Integer> leafDepths(Node<Object, Geometry> node, int depth) {
+        HashSet<Integer> set = new HashSet<Integer>();
+        if (node instanceof Leaf)
+            set.add(depth);
+        else
+            for (Node<Object, Geometry> child : ((NonLeaf<Object, Geometry>) node).children())
+                set.addAll(leafDepths(child, depth + 1));
+        return set;
+    }
+
+    private static Func1<Entry<Object, Geometry>, Boolean> equalTo(
+            final Entry<Object, Geometry> entry) {
+        return new Func1<Entry<Object, Geometry>, Boolean>() {
+            @Override
+            public Boolean call(Entry<Object, Geometry> e) {
+                return e.equals(entry);
+            }
+        };
+    }
+
+    private static void checkNodeSizes(Node<Object, Geometry> node, Context context,
+            boolean isRoot) {
+        assertTrue(node.count() <= context.maxChildren());
+        if (!isRoot)
+            assertTrue(node.count() >= context.minChildren());
+        if (node instanceof NonLeaf)
+            for (Node<Object, Geometry> child : ((NonLeaf<Object, Geometry>) node).children())
+                checkNodeSizes(child, context, false);
+    }
+
     private static Point point(double x, double y) {
         return Point.create(x, y, 0);
     }
@@ -0,0 +1,180 @@
+package com.github.davidmoten.rtree3d;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.github.davidmoten.rtree3d.geometry.Box;
+import com.github.davidmoten.rtree3d.geometry.Geometries;
+import com.github.davidmoten.rtree3d.geometry.Point;
+
+import rx.functions.Func1;
+import rx.observers.TestSubscriber;
+
+public class RaycastTest {
+
+    private static final double PRECISION = 0.0001;
+
+    @Test
+    public void testRayHit() {
+        Box b = Geometries.box(10, 0, 0, 20, 1, 1);
+        Ray ray = new Ray(Geometries.point(0, 0.5, 0.5), Geometries.point(2, 0, 0), 100);
+        assertEquals(10, ray.hit(b), PRECISION);
+        assertEquals(0, new Ray(Geometries.point(15, 0.5, 0.5), Geometries.point(1, 0, 0), 100)
+                .hit(b), PRECISION);
+        // too short
+        assertEquals(-1, new Ray(Geometries.point(0, 0.5, 0.5), Geometries.point(1, 0, 0), 9)
+                .hit(b), PRECISION);
+        // pointing away
+        assertEquals(-1, new Ray(Geometries.point(0, 0.5, 0.5), Geometries.point(-1, 0, 0), 100)
+                .hit(b), PRECISION);
+        // parallel to the x slabs and outside them
+        assertEquals(-1, new Ray(Geometries.point(0, 2, 0.5), Geometries.point(1, 0, 0), 100)
+                .hit(b), PRECISION);
+        // diagonal through a corner region
+        Ray diagonal = new Ray(Geometries.point(0, 0, 0), Geometries.point(1, 1, 1), 100);
+        assertEquals(Math.sqrt(3), diagonal.hit(Geometries.box(1, 1, 1, 2, 2, 2)), PRECISION);
+        assertEquals(-1, diagonal.hit(Geometries.box(1, 2.5f, 1, 2, 3, 2)), PRECISION);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroDirectionThrows() {
+        RTree.create().raycast(Geometries.point(0, 0, 0), Geometries.point(0, 0, 0), 1);
+    }
+
+    @Test
+    public void testRaycastOfEmptyTreeIsEmpty() {
+        assertEquals(0, (int) RTree.create()
+                .raycast(Geometries.point(0, 0, 0), Geometries.point(1, 0, 0), 1).count()
+                .toBlocking().single());
+    }
+
+    @Test
+    public void testAllHitsInRayOrderMatchBruteForce() {
+        RTree<Integer, Box> tree = RTree.maxChildren(6).create(boxes(5000, 1));
+        Random random = new Random(2);
+        for (int i = 0; i < 50; i++) {
+            Point origin = randomPoint(random, 1000);
+            Point direction = randomPoint(random, 2);
+            direction = Geometries.point(direction.x() - 1, direction.y() - 1,
+                    direction.z() - 1);
+            Ray ray = new Ray(origin, direction, 800);
+            List<Double> expected = new ArrayList<Double>();
+            for (Entry<Integer, Box> entry : tree.entries().toBlocking().toIterable()) {
+                double d = ray.hit(entry.geometry());
+                if (d >= 0)
+                    expected.add(d);
+            }
+            Collections.sort(expected);
+            List<Double> actual = new ArrayList<Double>();
+            for (Entry<Integer, Box> entry : tree.raycast(origin, direction, 800).toBlocking()
+                    .toIterable())
+                actual.add(ray.hit(entry.geometry()));
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testRaycastCompletesWhenExactlyAllHitsRequested() {
+        RTree<Integer, Box> tree = RTree.maxChildren(6).create(boxes(5000, 1));
+        Point origin = Geometries.point(0, 0, 0);
+        Point direction = Geometries.point(1, 1, 1);
+        int total = tree.raycast(origin, direction, 2000).count().toBlocking().single();
+        assertTrue(total > 0);
+        TestSubscriber<Entry<Integer, Box>> ts = new TestSubscriber<Entry<Integer, Box>>(0);
+        tree.raycast(origin, direction, 2000).subscribe(ts);
+        ts.assertNoValues();
+        ts.requestMore(total);
+        ts.assertValueCount(total);
+        ts.assertCompleted();
+    }
+
+    @Test
+    public void testFirstHitWithRefinementRefinesFewEntries() {
+        // entries are spheres of radius 5 centred in their boxes
+        final List<Entry<Integer, Box>> entries = boxes(10000, 3);
+        RTree<Integer, Box> tree = RTree.star().maxChildren(8).create(entries);
+        Random random = new Random(4);
+        for (int i = 0; i < 20; i++) {
+            final Point origin = randomPoint(random, 1000);
+            final Point direction = Geometries.point(random.nextFloat() - 0.5f,
+                    random.nextFloat() - 0.5f, random.nextFloat() - 0.5f);
+            final AtomicInteger refined = new AtomicInteger();
+            Func1<Entry<Integer, Box>, Double> sphere = new Func1<Entry<Integer, Box>, Double>() {
+                @Override
+                public Double call(Entry<Integer, Box> entry) {
+                    refined.incrementAndGet();
+                    return sphereHit(origin, direction, entry.geometry());
+                }
+            };
+            List<Double> expected = new ArrayList<Double>();
+            for (Entry<Integer, Box> entry : entries) {
+                Double d = sphereHit(origin, direction, entry.geometry());
+                if (d != null && d <= 2000)
+                    expected.add(d);
+            }
+            Collections.sort(expected);
+            refined.set(0);
+            List<Double> actual = new ArrayList<Double>();
+            for (Entry<Integer, Box> entry : tree.raycast(origin, direction, 2000, sphere)
+                    .toBlocking().toIterable())
+                actual.add(sphereHit(origin, direction, entry.geometry()));
+            assertEquals(expected, actual);
+            if (!expected.isEmpty()) {
+                refined.set(0);
+                Entry<Integer, Box> first = tree.raycast(origin, direction, 2000, sphere)
+                        .first().toBlocking().single();
+                assertEquals(expected.get(0), sphereHit(origin, direction, first.geometry()));
+                assertTrue(refined.get() < actual.size() + 20);
+            }
+        }
+    }
+
+    private static Double sphereHit(Point origin, Point direction, Box b) {
+        double length = Math.sqrt(direction.x() * direction.x()
+                + direction.y() * direction.y() + direction.z() * direction.z());
+        double dx = direction.x() / length;
+        double dy = direction.y() / length;
+        double dz = direction.z() / length;
+        double cx = (b.x1() + b.x2()) / 2.0 - origin.x();
+        double cy = (b.y1() + b.y2()) / 2.0 - origin.y();
+        double cz = (b.z1() + b.z2()) / 2.0 - origin.z();
+        double radius = (b.x2() - b.x1()) / 2.0;
+        double along = cx * dx + cy * dy + cz * dz;
+        double d2 = cx * cx + cy * cy + cz * cz - along * along;
+        if (d2 > radius * radius)
+            return null;
+        double t = along - Math.sqrt(radius * radius - d2);
+        if (t < 0) {
+            if (along + Math.sqrt(radius * radius - d2) < 0)
+                return null;
+            // origin inside the sphere
+            return 0.0;
+        }
+        return t;
+    }
+
+    private static List<Entry<Integer, Box>> boxes(int n, long seed) {
+        Random random = new Random(seed);
+        List<Entry<Integer, Box>> list = new ArrayList<Entry<Integer, Box>>();
+        for (int i = 0; i < n; i++) {
+            Point p = randomPoint(random, 1000);
+            list.add(Entry.entry(i,
+                    Geometries.box(p.x(), p.y(), p.z(), p.x() + 10, p.y() + 10, p.z() + 10)));
+        }
+        return list;
+    }
+
+    private static Point randomPoint(Random random, float size) {
+        return Geometries.point(random.nextFloat() * size, random.nextFloat() * size,
+                random.nextFloat() * size);
+    }
+
+}
@@ -0,0 +1,67 @@
+package com.github.davidmoten.rtree3d;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.github.davidmoten.rtree3d.geometry.Box;
+import com.github.davidmoten.rtree3d.geometry.Geometries;
+import com.github.davidmoten.rtree3d.geometry.Geometry;
+
+import rx.functions.Func1;
+
+public class SearchConditionTest {
+
+    private static final Box r = Geometries.box(0, 0, 0, 10, 10, 10);
+
+    @Test
+    public void testIntersects() {
+        SearchCondition c = SearchCondition.intersects(r);
+        assertTrue(c.test(5, 5, 5, 20, 20, 20));
+        assertFalse(c.test(11, 5, 5, 20, 20, 20));
+        assertTrue(c.test(Geometries.point(10, 10, 10)));
+        assertFalse(c.test(Geometries.point(10, 10, 10.1)));
+    }
+
+    @Test
+    public void testDistanceLessThan() {
+        SearchCondition c = SearchCondition.distanceLessThan(r, 2);
+        assertTrue(c.test(11, 0, 0, 12, 0, 0));
+        assertFalse(c.test(12, 0, 0, 13, 0, 0));
+        assertTrue(c.test(Geometries.box(11, 0, 0, 12, 0, 0)));
+        assertFalse(c.test(Geometries.point(12, 0, 0)));
+    }
+
+    @Test
+    public void testAdapterPassesGeometryUnchanged() {
+        final List<Geometry> list = new ArrayList<Geometry>();
+        SearchCondition c = SearchCondition.from(new Func1<Geometry, Boolean>() {
+            @Override
+            public Boolean call(Geometry g) {
+                list.add(g);
+                return true;
+            }
+        });
+        Geometry p = Geometries.point(1, 2, 3);
+        assertTrue(c.test(p));
+        assertTrue(c.test(1, 2, 3, 4, 5, 6));
+        assertTrue(list.get(0) == p);
+        assertEquals(Geometries.box(1, 2, 3, 4, 5, 6), list.get(1));
+    }
+
+    @Test
+    public void testSearchWithFunctionMatchesSearchWithCondition() {
+        RTree<Object, Box> tree = RTree.maxChildren(4).<Object, Box> create();
+        for (int i = 0; i < 100; i++)
+            tree = tree.add(RTreeTest.e(i));
+        Box b = Geometries.box(20, 20, 0, 40, 40, 1);
+        assertEquals(tree.search(RTree.intersects(b)).toList().toBlocking().single(),
+                tree.search(b).toList().toBlocking().single());
+    }
+
+}
@@ -0,0 +1,157 @@
+package com.github.davidmoten.rtree3d;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.github.davidmoten.rtree3d.geometry.Box;
+import com.github.davidmoten.rtree3d.geometry.Geometries;
+import com.github.davidmoten.rtree3d.geometry.Geometry;
+
+import rx.Subscriber;
+
+public class SearchStatsTest {
+
+    private static final Box R = Geometries.box(200, 300, 0, 600, 700, 0);
+
+    @Test
+    public void testFastPathStats() {
+        for (RTree<Object, Geometry> tree : trees()) {
+            SearchStats stats = new SearchStats();
+            int count = tree.search(R, stats).count().toBlocking().single();
+            assertTrue(count > 0);
+            assertEquals(count, stats.entriesEmitted());
+            assertEquals(tree.calculateDepth(), stats.levels());
+            assertEquals(1, stats.nodesVisited(0));
+            assertEquals(0, stats.nodesVisited(stats.levels()));
+            assertTrue(stats.entriesTested() >= count);
+            assertTrue(stats.mbrTests() >= stats.nodesVisited());
+            assertTrue(stats.nodesVisited() < tree.size() / 4);
+            assertTrue(stats.wallTimeNanos() > 0);
+        }
+    }
+
+    @Test
+    public void testBackpressurePathGivesSameStatsAsFastPath() {
+        for (RTree<Object, Geometry> tree : trees()) {
+            SearchStats fast = new SearchStats();
+            tree.search(R, fast).subscribe();
+            SearchStats slow = new SearchStats();
+            tree.search(R, slow).subscribe(new Subscriber<Object>() {
+
+                @Override
+                public void onStart() {
+                    request(1);
+                }
+
+                @Override
+                public void onCompleted() {
+                }
+
+                @Override
+                public void onError(Throwable e) {
+                }
+
+                @Override
+                public void onNext(Object t) {
+                    request(1);
+                }
+            });
+            assertEquals(fast.levels(), slow.levels());
+            for (int i = 0; i < fast.levels(); i++)
+                assertEquals(fast.nodesVisited(i), slow.nodesVisited(i));
+            assertEquals(fast.mbrTests(), slow.mbrTests());
+            assertEquals(fast.entriesTested(), slow.entriesTested());
+            assertEquals(fast.entriesEmitted(), slow.entriesEmitted());
+            assertTrue(slow.wallTimeNanos() > 0);
+        }
+    }
+
+    @Test
+    public void testStatsAccumulateAndStopOnUnsubscribe() {
+        RTree<Object, Geometry> tree = trees().get(0);
+        SearchStats stats = new SearchStats();
+        assertEquals(3, (int) tree.search(R, stats).take(3).count().toBlocking().single());
+        assertEquals(3, stats.entriesEmitted());
+        tree.search(R, stats).take(2).subscribe();
+        assertEquals(5, stats.entriesEmitted());
+        assertEquals(2, stats.nodesVisited(0));
+    }
+
+    @Test
+    public void testBackpressuredSearchUnsubscribedBetweenRequestsFinishesStats() {
+        RTree<Object, Geometry> tree = trees().get(0);
+        SearchStats stats = new SearchStats();
+        final List<Object> received = new ArrayList<Object>();
+        Subscriber<Object> subscriber = new Subscriber<Object>() {
+
+            @Override
+            public void onStart() {
+                request(3);
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+
+            @Override
+            public void onError(Throwable e) {
+            }
+
+            @Override
+            public void onNext(Object t) {
+                received.add(t);
+            }
+        };
+        tree.search(R, stats).subscribe(subscriber);
+        assertEquals(3, received.size());
+        assertEquals(0, stats.wallTimeNanos());
+        subscriber.unsubscribe();
+        long wallTime = stats.wallTimeNanos();
+        assertTrue(wallTime > 0);
+
+        // the instance is released so a second search is timed as well
+        tree.search(R, stats).subscribe();
+        assertTrue(stats.wallTimeNanos() > wallTime);
+        assertEquals(3 + tree.search(R).count().toBlocking().single(),
+                stats.entriesEmitted());
+    }
+
+    @Test
+    public void testStatsWhenRootDoesNotMatch() {
+        RTree<Object, Geometry> tree = trees().get(0);
+        SearchStats stats = new SearchStats();
+        Box far = Geometries.box(2000, 2000, 2000, 3000, 3000, 3000);
+        assertTrue(tree.search(far, stats).isEmpty().toBlocking().single());
+        assertEquals(1, stats.mbrTests());
+        assertEquals(0, stats.levels());
+        assertEquals(0, stats.nodesVisited());
+        assertEquals(0, stats.entriesTested());
+    }
+
+    @Test
+    public void testStatsOfEmptyTree() {
+        SearchStats stats = new SearchStats();
+        assertTrue(RTree.create().search(R, stats).isEmpty().toBlocking().single());
+        assertEquals(0, stats.mbrTests());
+        assertEquals("SearchStats [nodesVisited=[], mbrTests=0, entriesTested=0, "
+                + "entriesEmitted=0, wallTimeNanos=0]", stats.toString());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullStatsThrows() {
+        RTree.create().search(R, (SearchStats) null);
+    }
+
+    private static List<RTree<Object, Geometry>> trees() {
+        List<Entry<Object, Geometry>> entries = RTreeTest.createRandomEntries(2000);
+        return Arrays.asList(RTree.maxChildren(4).<Object, Geometry> create().add(entries),
+                RTree.packedLeaves().maxChildren(8).create(entries));
+    }
+
+}
@@ -1,12 +1,25 @@
 package com.github.davidmoten.rtree3d;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Ignore;
 import org.junit.Test;
@@ -17,8 +30,14 @@ import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 import com.github.davidmoten.rtree3d.Entry;
 import com.github.davidmoten.rtree3d.RTree;
+import com.github.davidmoten.rtree3d.geometry.Box;
+import com.github.davidmoten.rtree3d.geometry.Geometries;
+import com.github.davidmoten.rtree3d.geometry.Geometry;
 import com.github.davidmoten.rtree3d.geometry.Point;
 
+import rx.functions.Action2;
+import rx.functions.Func1;
+
 public class SerializationTest {
 
     @Test
@@ -46,4 +65,136 @@ public class SerializationTest {
 
     }
 
+    @Test
+    public void testSerializerRoundTripOfGreekData() {
+        List<Entry<Object, Point>> list = GreekEarthquakes.entriesList();
+        List<Entry<Integer, Point>> entries = new ArrayList<Entry<Integer, Point>>();
+        for (int i = 0; i < list.size(); i++)
+            entries.add(Entry.entry(i, list.get(i).geometry()));
+        RTree<Integer, Point> tree = RTree.star().maxChildren(8).<Integer, Point> create()
+                .add(entries);
+
+        RTree<Integer, Point> tree2 = roundTrip(tree);
+
+        assertEquals(tree.size(), tree2.size());
+        assertEquals(tree.calculateDepth(), tree2.calculateDepth());
+        assertEquals(tree.mbr(), tree2.mbr());
+        assertEquals(tree.asString(), tree2.asString());
+        assertEquals(8, tree2.context().maxChildren());
+        assertEquals(tree.context().minChildren(), tree2.context().minChildren());
+        assertTrue(tree2.context().splitter() instanceof SplitterRStar);
+        Box r = Geometries.box(40, 27.0, 0, 40.5, 27.5, 1);
+        assertEquals(22, (int) tree2.search(r).count().toBlocking().single());
+        assertEquals(new HashSet<Entry<Integer, Point>>(tree.search(r).toList().toBlocking()
+                .single()),
+                new HashSet<Entry<Integer, Point>>(tree2.search(r).toList().toBlocking()
+                        .single()));
+        // the deserialized tree is fully functional
+        assertEquals(tree.size() - 1, tree2.delete(entries.get(10)).size());
+    }
+
+    @Test
+    public void testSerializerRoundTripOfBoxesWithBounds() {
+        Box bounds = Geometries.box(0, 0, 0, 100, 100, 100);
+        RTree<Integer, Geometry> tree = RTree.maxChildren(4).bounds(bounds).create();
+        for (int i = 0; i < 100; i++)
+            tree = tree.add(i, Geometries.box(i, i, i, i + 1, i + 2, i + 3));
+        RTree<Integer, Geometry> tree2 = roundTrip(tree);
+        assertEquals(tree.asString(), tree2.asString());
+        assertEquals(bounds, tree2.context().bounds().get());
+        assertTrue(tree2.context().splitter() instanceof SplitterQuadratic);
+    }
+
+    @Test
+    public void testSerializerRoundTripOfHilbertTree() {
+        Box bounds = Geometries.box(0, 0, 0, 100, 100, 100);
+        RTree<Integer, Geometry> tree = RTree.hilbert().maxChildren(4).bounds(bounds).create();
+        for (int i = 0; i < 100; i++)
+            tree = tree.add(i, Geometries.box(i, i, i, i + 1, i + 2, i + 3));
+        RTree<Integer, Geometry> tree2 = roundTrip(tree);
+        assertEquals(tree.asString(), tree2.asString());
+        assertTrue(tree2.context().selector() instanceof SelectorHilbert);
+        assertTrue(tree2.context().splitter() instanceof SplitterHilbert);
+        // entries added to the deserialized tree keep Hilbert order
+        tree2 = tree2.add(100, Geometries.box(50, 50, 50, 51, 51, 51));
+        assertEquals(101, (int) tree2.entries().count().toBlocking().single());
+    }
+
+    @Test
+    public void testSerializerRoundTripOfPackedLeaves() {
+        RTree<Integer, Point> tree = RTree.packedLeaves().maxChildren(4).create();
+        for (int i = 0; i < 100; i++)
+            tree = tree.add(i, Geometries.point(i, i, i));
+        RTree<Integer, Point> tree2 = roundTrip(tree);
+        assertEquals(tree.asString(), tree2.asString());
+        assertTrue(tree2.context().packedLeaves());
+        Node<Integer, Point> node = tree2.root().get();
+        while (node instanceof NonLeaf)
+            node = ((NonLeaf<Integer, Point>) node).children().get(0);
+        assertTrue(((Leaf<Integer, Point>) node).entries() instanceof PackedEntries);
+    }
+
+    @Test
+    public void testSerializerRoundTripOfEmptyTree() {
+        RTree<Integer, Point> tree = roundTrip(RTree.<Integer, Point> create());
+        assertTrue(tree.isEmpty());
+        assertFalse(tree.root().isPresent());
+    }
+
+    @Test
+    public void testSerializerWritesEachValueOnce() {
+        RTree<Integer, Point> tree = RTree.maxChildren(4).create();
+        for (int i = 0; i < 100; i++)
+            tree = tree.add(i, Geometries.point(i, i, i));
+        final AtomicInteger count = new AtomicInteger();
+        Action2<Integer, OutputStream> serializer = new Action2<Integer, OutputStream>() {
+            @Override
+            public void call(Integer value, OutputStream os) {
+                count.incrementAndGet();
+                VALUE_SERIALIZER.call(value, os);
+            }
+        };
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Serializer.serialize(tree, serializer, bytes);
+        assertEquals(100, count.get());
+        RTree<Integer, Point> tree2 = Serializer
+                .deserialize(new ByteArrayInputStream(bytes.toByteArray()), VALUE_DESERIALIZER);
+        assertEquals(tree.asString(), tree2.asString());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testDeserializeOfUnrecognizedStreamThrows() {
+        Serializer.deserialize(new ByteArrayInputStream(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 }),
+                VALUE_DESERIALIZER);
+    }
+
+    private static <S extends Geometry> RTree<Integer, S> roundTrip(RTree<Integer, S> tree) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Serializer.serialize(tree, VALUE_SERIALIZER, bytes);
+        return Serializer.deserialize(new ByteArrayInputStream(bytes.toByteArray()),
+                VALUE_DESERIALIZER);
+    }
+
+    static final Action2<Integer, OutputStream> VALUE_SERIALIZER = new Action2<Integer, OutputStream>() {
+        @Override
+        public void call(Integer value, OutputStream os) {
+            try {
+                new DataOutputStream(os).writeInt(value);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    };
+
+    static final Func1<InputStream, Integer> VALUE_DESERIALIZER = new Func1<InputStream, Integer>() {
+        @Override
+        public Integer call(InputStream is) {
+            try {
+                return new DataInputStream(is).readInt();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    };
+
 }
@@ -0,0 +1,133 @@
+package com.github.davidmoten.rtree3d;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.github.davidmoten.junit.Asserts;
+import com.github.davidmoten.rtree3d.geometry.Box;
+import com.github.davidmoten.rtree3d.geometry.Geometries;
+
+import rx.schedulers.Schedulers;
+
+public class SortTileRecursiveTest {
+
+    private static final Context context = new Context(2, 4, new SelectorMinimalVolumeIncrease(),
+            new SplitterQuadratic());
+
+    @Test
+    public void testConstructorIsPrivate() {
+        Asserts.assertIsUtilityClass(SortTileRecursive.class);
+    }
+
+    @Test
+    public void testPackFewerThanMaxChildrenGivesOneGroup() {
+        List<List<Entry<Object, Box>>> groups = SortTileRecursive.pack(entries(3), 4, 2);
+        assertEquals(1, groups.size());
+        assertEquals(3, groups.get(0).size());
+    }
+
+    @Test
+    public void testPackHonoursMaxAndMinChildren() {
+        for (int n = 5; n < 200; n++) {
+            List<Entry<Object, Box>> entries = entries(n);
+            List<List<Entry<Object, Box>>> groups = SortTileRecursive.pack(entries, 4, 2);
+            assertEquals((n + 3) / 4, groups.size());
+            HashSet<Entry<Object, Box>> set = new HashSet<Entry<Object, Box>>();
+            for (List<Entry<Object, Box>> group : groups) {
+                assertTrue(group.size() <= 4);
+                assertTrue(group.size() >= 2);
+                set.addAll(group);
+            }
+            assertEquals(n, set.size());
+        }
+    }
+
+    @Test
+    public void testPackFullyPacksSlabsAlongX() {
+        // 64 points on a line along x should pack into 16 leaves each spanning
+        // 4 consecutive points
+        List<Entry<Object, Box>> entries = new ArrayList<Entry<Object, Box>>();
+        for (int i = 63; i >= 0; i--)
+            entries.add(Entry.<Object, Box> entry(i, Geometries.box(i, 0, 0, i, 0, 0)));
+        List<List<Entry<Object, Box>>> groups = SortTileRecursive.pack(entries, 4, 2);
+        assertEquals(16, groups.size());
+        for (List<Entry<Object, Box>> group : groups) {
+            Box mbr = Util.mbr(group);
+            assertEquals(3, mbr.x2() - mbr.x1(), 0.00001);
+        }
+    }
+
+    @Test
+    public void testCreateRootHasAllLeavesAtSameDepth() {
+        Node<Object, Box> root = SortTileRecursive.createRoot(entries(1000), context);
+        assertEquals(1000, RTree.create(root, context).size());
+        assertEquals(1, leafDepths(root, 1).size());
+    }
+
+    @Test
+    public void testParallelSortIsStableAndSameAsCollectionsSort() {
+        List<Integer> list = new ArrayList<Integer>();
+        for (int i = 0; i < 10007; i++)
+            list.add(i);
+        Collections.shuffle(list);
+        // compare on the last digit only so that there are many ties
+        Comparator<Integer> comparator = new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return a % 10 - b % 10;
+            }
+        };
+        List<Integer> expected = new ArrayList<Integer>(list);
+        Collections.sort(expected, comparator);
+        for (int runs : new int[] { 1, 2, 3, 7, 64 })
+            assertEquals(expected,
+                    SortTileRecursive.sort(list, comparator, Schedulers.computation(), runs));
+    }
+
+    @Test
+    public void testParallelPackGivesSameGroupsAsPack() {
+        List<Entry<Object, Box>> entries = entries(SortTileRecursive.PARALLEL_MIN_ITEMS * 3);
+        assertEquals(SortTileRecursive.pack(entries, 4, 2),
+                SortTileRecursive.pack(entries, 4, 2, Schedulers.computation()));
+    }
+
+    @Test
+    public void testParallelCreateRootGivesSameTreeAsCreateRoot() {
+        List<Entry<Object, Box>> entries = entries(SortTileRecursive.PARALLEL_MIN_ITEMS * 5);
+        Node<Object, Box> root = SortTileRecursive.createRoot(entries, context,
+                Schedulers.computation());
+        assertEquals(RTree.create(SortTileRecursive.createRoot(entries, context), context)
+                .asString(), RTree.create(root, context).asString());
+        assertEquals(1, leafDepths(root, 1).size());
+    }
+
+    private static HashSet<Integer> leafDepths(Node<Object, Box> node, int depth) {
+        HashSet<Integer> set = new HashSet<Integer>();
+        if (node instanceof Leaf)
+            set.add(depth);
+        else
+            for (Node<Object, Box> child : ((NonLeaf<Object, Box>) node).children())
+                set.addAll(leafDepths(child, depth + 1));
+        return set;
+    }
+
+    private static List<Entry<Object, Box>> entries(int n) {
+        List<Entry<Object, Box>> list = new ArrayList<Entry<Object, Box>>();
+        for (int i = 0; i < n; i++) {
+            double x = Math.random() * 100;
+            double y = Math.random() * 100;
+            double z = Math.random() * 100;
+            list.add(Entry.<Object, Box> entry(i, Geometries.box(x, y, z, x + 1, y + 1, z + 1)));
+        }
+        return list;
+    }
+
+}
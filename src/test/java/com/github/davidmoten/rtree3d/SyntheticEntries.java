@@ -0,0 +1,201 @@
+package com.github.davidmoten.rtree3d;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import com.github.davidmoten.rtree3d.geometry.Box;
+import com.github.davidmoten.rtree3d.geometry.Geometries;
+import com.github.davidmoten.rtree3d.geometry.Point;
+
+/**
+ * Reproducible synthetic 3D datasets for benchmarks. All geometries lie in the
+ * cube [0, {@link #SIDE}]^3 and the same seed always gives the same entries.
+ */
+final class SyntheticEntries {
+
+    static final double SIDE = 1000;
+
+    private static final int CLUSTERS = 20;
+    private static final double CLUSTER_SIGMA = 20;
+    private static final int HOTSPOTS = 1000;
+    private static final double HOTSPOT_SIDE = 5;
+    private static final int SLABS = 10;
+    private static final double SLAB_THICKNESS = 0.5;
+
+    private SyntheticEntries() {
+        // prevent instantiation
+    }
+
+    enum Distribution {
+        /**
+         * Uniform over the cube.
+         */
+        UNIFORM,
+        /**
+         * Gaussian clusters around {@value SyntheticEntries#CLUSTERS} centres
+         * with standard deviation {@value SyntheticEntries#CLUSTER_SIGMA} in
+         * each dimension.
+         */
+        CLUSTERED,
+        /**
+         * Uniform within small cubes around {@value SyntheticEntries#HOTSPOTS}
+         * hotspots where the hotspot of rank k is chosen with probability
+         * proportional to 1/k (Zipf with exponent 1).
+         */
+        ZIPF,
+        /**
+         * Uniform in x and y but z confined to
+         * {@value SyntheticEntries#SLABS} thin slabs (for example the floors
+         * of buildings or layers of a chip).
+         */
+        SLABS;
+    }
+
+    /**
+     * Returns n point entries with values 0 to n-1.
+     *
+     * @param distribution
+     *            where the points lie
+     * @param n
+     *            number of entries
+     * @param seed
+     *            random seed
+     * @return entries
+     */
+    static List<Entry<Object, Point>> points(Distribution distribution, int n, long seed) {
+        Generator g = new Generator(distribution, seed);
+        List<Entry<Object, Point>> list = new ArrayList<Entry<Object, Point>>(n);
+        for (int i = 0; i < n; i++) {
+            g.next();
+            list.add(Entry.<Object, Point> entry(i, Geometries.point(g.x, g.y, g.z)));
+        }
+        return list;
+    }
+
+    /**
+     * Returns n box entries with values 0 to n-1 whose minimum corners follow
+     * the distribution and whose sides are uniform in [0, maxSide).
+     *
+     * @param distribution
+     *            where the boxes lie
+     * @param n
+     *            number of entries
+     * @param maxSide
+     *            maximum length of a side of a box
+     * @param seed
+     *            random seed
+     * @return entries
+     */
+    static List<Entry<Object, Box>> boxes(Distribution distribution, int n, double maxSide,
+            long seed) {
+        Generator g = new Generator(distribution, seed);
+        List<Entry<Object, Box>> list = new ArrayList<Entry<Object, Box>>(n);
+        for (int i = 0; i < n; i++) {
+            g.next();
+            list.add(Entry.<Object, Box> entry(i,
+                    Geometries.box(g.x, g.y, g.z, g.x + g.random.nextDouble() * maxSide,
+                            g.y + g.random.nextDouble() * maxSide,
+                            g.z + g.random.nextDouble() * maxSide)));
+        }
+        return list;
+    }
+
+    /**
+     * Returns n cubic query boxes each enclosing the given fraction of the
+     * volume of the cube and centred on a randomly chosen geometry of the
+     * entries (so that queries follow the data when it is skewed).
+     *
+     * @param entries
+     *            entries to centre the queries on
+     * @param n
+     *            number of queries
+     * @param fraction
+     *            fraction of the volume of the cube covered by each query
+     * @param seed
+     *            random seed
+     * @return query boxes
+     */
+    static Box[] queries(List<? extends Entry<Object, ?>> entries, int n, double fraction,
+            long seed) {
+        Random random = new Random(seed);
+        double half = SIDE * Math.cbrt(fraction) / 2;
+        Box[] queries = new Box[n];
+        for (int i = 0; i < n; i++) {
+            Box b = entries.get(random.nextInt(entries.size())).geometry().mbb();
+            double x = (b.x1() + b.x2()) / 2;
+            double y = (b.y1() + b.y2()) / 2;
+            double z = (b.z1() + b.z2()) / 2;
+            queries[i] = Geometries.box(x - half, y - half, z - half, x + half, y + half,
+                    z + half);
+        }
+        return queries;
+    }
+
+    private static final class Generator {
+
+        private final Distribution distribution;
+        private final Random random;
+        private final double[][] centres;
+        // cumulative probabilities of the hotspots for ZIPF
+        private final double[] cumulative;
+        double x;
+        double y;
+        double z;
+
+        Generator(Distribution distribution, long seed) {
+            this.distribution = distribution;
+            this.random = new Random(seed);
+            int numCentres = distribution == Distribution.CLUSTERED ? CLUSTERS
+                    : distribution == Distribution.ZIPF ? HOTSPOTS : 0;
+            this.centres = new double[numCentres][];
+            for (int i = 0; i < numCentres; i++)
+                centres[i] = new double[] { uniform(), uniform(), uniform() };
+            if (distribution == Distribution.ZIPF) {
+                cumulative = new double[HOTSPOTS];
+                double sum = 0;
+                for (int k = 0; k < HOTSPOTS; k++) {
+                    sum += 1.0 / (k + 1);
+                    cumulative[k] = sum;
+                }
+                for (int k = 0; k < HOTSPOTS; k++)
+                    cumulative[k] /= sum;
+            } else
+                cumulative = null;
+        }
+
+        void next() {
+            if (distribution == Distribution.UNIFORM) {
+                x = uniform();
+                y = uniform();
+                z = uniform();
+            } else if (distribution == Distribution.CLUSTERED) {
+                double[] c = centres[random.nextInt(CLUSTERS)];
+                x = clamp(c[0] + random.nextGaussian() * CLUSTER_SIGMA);
+                y = clamp(c[1] + random.nextGaussian() * CLUSTER_SIGMA);
+                z = clamp(c[2] + random.nextGaussian() * CLUSTER_SIGMA);
+            } else if (distribution == Distribution.ZIPF) {
+                int k = Arrays.binarySearch(cumulative, random.nextDouble());
+                double[] c = centres[k >= 0 ? k : Math.min(-k - 1, HOTSPOTS - 1)];
+                x = clamp(c[0] + random.nextDouble() * HOTSPOT_SIDE);
+                y = clamp(c[1] + random.nextDouble() * HOTSPOT_SIDE);
+                z = clamp(c[2] + random.nextDouble() * HOTSPOT_SIDE);
+            } else {
+                x = uniform();
+                y = uniform();
+                z = (random.nextInt(SLABS) + 0.5) * SIDE / SLABS
+                        + random.nextDouble() * SLAB_THICKNESS;
+            }
+        }
+
+        private double uniform() {
+            return random.nextDouble() * SIDE;
+        }
+
+        private static double clamp(double d) {
+            return Math.max(0, Math.min(SIDE, d));
+        }
+    }
+
+}
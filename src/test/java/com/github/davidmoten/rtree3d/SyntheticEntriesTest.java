@@ -0,0 +1,74 @@
+package com.github.davidmoten.rtree3d;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.github.davidmoten.junit.Asserts;
+import com.github.davidmoten.rtree3d.SyntheticEntries.Distribution;
+import com.github.davidmoten.rtree3d.geometry.Box;
+import com.github.davidmoten.rtree3d.geometry.Geometries;
+import com.github.davidmoten.rtree3d.geometry.Point;
+
+public class SyntheticEntriesTest {
+
+    private static final Box CUBE = Geometries.box(0, 0, 0, SyntheticEntries.SIDE,
+            SyntheticEntries.SIDE, SyntheticEntries.SIDE);
+
+    @Test
+    public void testConstructorIsPrivate() {
+        Asserts.assertIsUtilityClass(SyntheticEntries.class);
+    }
+
+    @Test
+    public void testPointsAreReproducibleAndInsideCube() {
+        for (Distribution d : Distribution.values()) {
+            List<Entry<Object, Point>> list = SyntheticEntries.points(d, 1000, 1);
+            assertEquals(list, SyntheticEntries.points(d, 1000, 1));
+            assertEquals(999, list.get(999).value());
+            for (Entry<Object, Point> entry : list)
+                assertTrue(CUBE.contains(entry.geometry().mbb()));
+        }
+    }
+
+    @Test
+    public void testBoxesAreReproducible() {
+        for (Distribution d : Distribution.values())
+            assertEquals(SyntheticEntries.boxes(d, 1000, 2, 1),
+                    SyntheticEntries.boxes(d, 1000, 2, 1));
+    }
+
+    @Test
+    public void testSlabsAreThin() {
+        for (Entry<Object, Point> entry : SyntheticEntries.points(Distribution.SLABS, 1000, 1)) {
+            double z = entry.geometry().z() % 100;
+            assertTrue(z >= 50 && z <= 50.5);
+        }
+    }
+
+    @Test
+    public void testZipfIsSkewed() {
+        // the most popular hotspot of 1000 gets about 13% of the entries
+        List<Entry<Object, Point>> list = SyntheticEntries.points(Distribution.ZIPF, 10000, 1);
+        int max = 0;
+        for (Entry<Object, Point> e : list.subList(0, 50)) {
+            int count = 0;
+            for (Entry<Object, Point> entry : list)
+                if (entry.geometry().distance(e.geometry().mbb()) < 10)
+                    count++;
+            max = Math.max(max, count);
+        }
+        assertTrue(max > 1000);
+    }
+
+    @Test
+    public void testQueriesHaveRequestedVolume() {
+        List<Entry<Object, Box>> list = SyntheticEntries.boxes(Distribution.CLUSTERED, 100, 1, 1);
+        for (Box b : SyntheticEntries.queries(list, 10, 0.001, 2))
+            assertEquals(0.001 * CUBE.volume(), b.volume(), 1);
+    }
+
+}
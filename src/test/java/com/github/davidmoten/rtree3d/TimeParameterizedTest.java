@@ -0,0 +1,197 @@
+package com.github.davidmoten.rtree3d;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.github.davidmoten.rtree3d.geometry.Box;
+import com.github.davidmoten.rtree3d.geometry.Geometries;
+import com.github.davidmoten.rtree3d.geometry.Geometry;
+import com.github.davidmoten.rtree3d.geometry.MovingBox;
+import com.github.davidmoten.rtree3d.geometry.Point;
+
+public class TimeParameterizedTest {
+
+    private static final double REFERENCE_TIME = 10;
+    private static final double[] TIMES = { REFERENCE_TIME, 12, 40, 100, 3, -5 };
+
+    @Test
+    public void testSearchAtMatchesBruteForce() {
+        List<Entry<Integer, Geometry>> entries = entries(3000, 1);
+        RTree<Integer, Geometry> tree = RTree.timeParameterized(REFERENCE_TIME).maxChildren(8)
+                .create();
+        for (Entry<Integer, Geometry> entry : entries)
+            tree = tree.add(entry);
+        check(tree, entries);
+    }
+
+    @Test
+    public void testBulkLoadAndTransient() {
+        List<Entry<Integer, Geometry>> entries = entries(3000, 2);
+        check(RTree.timeParameterized(REFERENCE_TIME).maxChildren(8)
+                .<Integer, Geometry> create(entries), entries);
+        check(RTree.timeParameterized(REFERENCE_TIME).star().maxChildren(8)
+                .<Integer, Geometry> create().add(entries), entries);
+        TransientRTree<Integer, Geometry> t = RTree.timeParameterized(REFERENCE_TIME)
+                .maxChildren(8).<Integer, Geometry> create().asTransient();
+        for (Entry<Integer, Geometry> entry : entries)
+            t.add(entry);
+        check(t.persistent(), entries);
+    }
+
+    @Test
+    public void testDeleteAndMoveByEntryAsAdded() {
+        List<Entry<Integer, Geometry>> entries = entries(2000, 3);
+        RTree<Integer, Geometry> tree = RTree.timeParameterized(REFERENCE_TIME).maxChildren(8)
+                .create();
+        for (Entry<Integer, Geometry> entry : entries)
+            tree = tree.add(entry);
+        List<Entry<Integer, Geometry>> remaining = new ArrayList<Entry<Integer, Geometry>>();
+        Random r = new Random(4);
+        for (int i = 0; i < entries.size(); i++) {
+            Entry<Integer, Geometry> entry = entries.get(i);
+            if (i % 3 == 0)
+                tree = tree.delete(entry);
+            else if (i % 3 == 1) {
+                // the object changes velocity
+                Geometry g = randomMovingBox(r, i);
+                tree = tree.move(entry, g);
+                remaining.add(Entry.entry(entry.value(), g));
+            } else
+                remaining.add(entry);
+        }
+        check(tree, remaining);
+    }
+
+    @Test
+    public void testNearestAtMatchesBruteForce() {
+        List<Entry<Integer, Geometry>> entries = entries(3000, 5);
+        RTree<Integer, Geometry> tree = RTree.timeParameterized(REFERENCE_TIME).maxChildren(8)
+                .create(entries);
+        Point p = Geometries.point(500, 500, 500);
+        for (final double t : TIMES) {
+            List<Double> expected = new ArrayList<Double>();
+            for (Entry<Integer, Geometry> entry : tree.entries().toBlocking().toIterable())
+                expected.add(distance(entry.geometry(), p.mbb(), t));
+            Collections.sort(expected);
+            List<Double> actual = new ArrayList<Double>();
+            for (Entry<Integer, Geometry> entry : tree.nearestAt(p, t, Double.MAX_VALUE, 20)
+                    .toBlocking().toIterable())
+                actual.add(distance(entry.geometry(), p.mbb(), t));
+            assertEquals(expected.subList(0, 20), actual);
+        }
+    }
+
+    @Test
+    public void testStationaryEntriesAreSearchedAsIs() {
+        RTree<Integer, Geometry> tree = RTree.timeParameterized(0).<Integer, Geometry> create()
+                .add(1, Geometries.point(5, 5, 5)).add(2, MovingBox
+                        .create(Geometries.box(0, 0, 0, 1, 1, 1), 0, 1, 1, 1));
+        Box r = Geometries.box(4, 4, 4, 6, 6, 6);
+        assertEquals(1, (int) tree.searchAt(r, 0).count().toBlocking().single());
+        assertEquals(2, (int) tree.searchAt(r, 4).count().toBlocking().single());
+        assertEquals(1, (int) tree.searchAt(r, 10).count().toBlocking().single());
+    }
+
+    @Test
+    public void testSerializerRoundTripKeepsReferenceTime() {
+        List<Entry<Integer, Geometry>> entries = entries(2000, 6);
+        RTree<Integer, Geometry> tree = RTree.timeParameterized(REFERENCE_TIME).maxChildren(8)
+                .create(entries);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Serializer.serialize(tree, SerializationTest.VALUE_SERIALIZER, bytes);
+        RTree<Integer, Geometry> tree2 = Serializer.deserialize(
+                new ByteArrayInputStream(bytes.toByteArray()),
+                SerializationTest.VALUE_DESERIALIZER);
+        assertEquals(REFERENCE_TIME, tree2.context().referenceTime().get(), 0);
+        check(tree2, entries);
+        MappedRTree<Integer, Geometry> mapped = MappedRTree.create(
+                ByteBuffer.wrap(bytes.toByteArray()), SerializationTest.VALUE_DESERIALIZER);
+        assertEquals(REFERENCE_TIME, mapped.context().referenceTime().get(), 0);
+        assertEquals(new HashSet<Entry<Integer, Geometry>>(
+                tree.entries().toList().toBlocking().single()),
+                new HashSet<Entry<Integer, Geometry>>(
+                        mapped.entries().toList().toBlocking().single()));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testSearchAtOnTreeThatIsNotTimeParameterizedThrows() {
+        RTree.create().searchAt(Geometries.box(0, 0, 0, 1, 1, 1), 0);
+    }
+
+    private static void check(RTree<Integer, Geometry> tree,
+            List<Entry<Integer, Geometry>> entries) {
+        assertEquals(entries.size(), tree.size());
+        for (double t : TIMES) {
+            checkBounds(tree.root().get(), t);
+            Random random = new Random(t > 0 ? (long) t : 1);
+            for (int i = 0; i < 10; i++) {
+                float x = random.nextFloat() * 900;
+                float y = random.nextFloat() * 900;
+                float z = random.nextFloat() * 900;
+                Box r = Geometries.box(x, y, z, x + 100, y + 100, z + 100);
+                List<Integer> expected = new ArrayList<Integer>();
+                for (Entry<Integer, Geometry> entry : entries)
+                    if (((MovingBox) entry.geometry()).intersects(r, t))
+                        expected.add(entry.value());
+                List<Integer> actual = new ArrayList<Integer>();
+                for (Entry<Integer, Geometry> entry : tree.searchAt(r, t).toBlocking()
+                        .toIterable())
+                    actual.add(entry.value());
+                Collections.sort(expected);
+                Collections.sort(actual);
+                assertEquals(expected, actual);
+            }
+        }
+    }
+
+    private static void checkBounds(Node<Integer, Geometry> node, double t) {
+        Box b = ((MovingBox) node.geometry()).at(t);
+        if (node instanceof NonLeaf) {
+            for (Node<Integer, Geometry> child : ((NonLeaf<Integer, Geometry>) node).children()) {
+                assertTrue(b.contains(((MovingBox) child.geometry()).at(t)));
+                checkBounds(child, t);
+            }
+        } else {
+            for (Entry<Integer, Geometry> entry : ((Leaf<Integer, Geometry>) node).entries()) {
+                assertEquals(REFERENCE_TIME, ((MovingBox) entry.geometry()).time(), 0);
+                assertTrue(b.contains(((MovingBox) entry.geometry()).at(t)));
+            }
+        }
+    }
+
+    private static double distance(Geometry g, Box r, double t) {
+        return ((MovingBox) g).distance(r, t);
+    }
+
+    private static List<Entry<Integer, Geometry>> entries(int n, long seed) {
+        Random r = new Random(seed);
+        List<Entry<Integer, Geometry>> list = new ArrayList<Entry<Integer, Geometry>>();
+        for (int i = 0; i < n; i++)
+            list.add(Entry.<Integer, Geometry> entry(i, randomMovingBox(r, i)));
+        return list;
+    }
+
+    private static MovingBox randomMovingBox(Random r, int i) {
+        float x = r.nextFloat() * 1000;
+        float y = r.nextFloat() * 1000;
+        float z = r.nextFloat() * 1000;
+        // observed at different times, faster objects are rarer
+        double time = r.nextInt(20);
+        double speed = i % 10 == 0 ? 20 : 2;
+        return MovingBox.create(Geometries.box(x, y, z, x + 2, y + 2, z + 2), time,
+                (r.nextDouble() - 0.5) * speed, (r.nextDouble() - 0.5) * speed,
+                (r.nextDouble() - 0.5) * speed);
+    }
+
+}
@@ -0,0 +1,140 @@
+package com.github.davidmoten.rtree3d;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.github.davidmoten.rtree3d.geometry.Geometry;
+
+public class TransientRTreeTest {
+
+    @Test
+    public void testTransientAddGivesSameTreeAsPersistentAdd() {
+        List<Entry<Object, Geometry>> entries = RTreeTest.createRandomEntries(1000);
+        RTree<Object, Geometry> tree1 = addOneAtATime(
+                RTree.maxChildren(4).<Object, Geometry> create(), entries);
+        RTree<Object, Geometry> tree2 = RTree.maxChildren(4).<Object, Geometry> create()
+                .asTransient().add(entries).persistent();
+        assertEquals(1000, tree2.size());
+        assertEquals(tree1.asString(), tree2.asString());
+        RTreeTest.checkEntryCounts(tree2.root().get());
+    }
+
+    @Test
+    public void testTransientAddGivesSameTreeAsPersistentAddUsingStar() {
+        List<Entry<Object, Geometry>> entries = RTreeTest.createRandomEntries(1000);
+        RTree<Object, Geometry> tree1 = addOneAtATime(
+                RTree.star().maxChildren(6).<Object, Geometry> create(), entries);
+        RTree<Object, Geometry> tree2 = RTree.star().maxChildren(6).<Object, Geometry> create()
+                .asTransient().add(entries).persistent();
+        assertEquals(tree1.asString(), tree2.asString());
+    }
+
+    @Test
+    public void testTransientDoesNotChangeOriginalTree() {
+        List<Entry<Object, Geometry>> entries = RTreeTest.createRandomEntries(1000);
+        RTree<Object, Geometry> tree = RTree.maxChildren(4).<Object, Geometry> create()
+                .add(entries.subList(0, 500));
+        String before = tree.asString();
+        RTree<Object, Geometry> tree2 = tree.asTransient().add(entries.subList(500, 1000))
+                .delete(entries.get(0)).persistent();
+        assertEquals(before, tree.asString());
+        assertEquals(500, tree.size());
+        assertEquals(999, tree2.size());
+        assertEquals(999, tree2.countEntries());
+        RTreeTest.checkEntryCounts(tree2.root().get());
+    }
+
+    @Test
+    public void testPersistedTreeIsNotChangedByLaterTransient() {
+        List<Entry<Object, Geometry>> entries = RTreeTest.createRandomEntries(1000);
+        RTree<Object, Geometry> tree = RTree.maxChildren(4).<Object, Geometry> create()
+                .asTransient().add(entries.subList(0, 500)).persistent();
+        String before = tree.asString();
+        tree.asTransient().add(entries.subList(500, 1000)).persistent();
+        assertEquals(before, tree.asString());
+    }
+
+    @Test
+    public void testTransientSharesUntouchedSubtrees() {
+        List<Entry<Object, Geometry>> entries = RTreeTest.createRandomEntries(1000);
+        RTree<Object, Geometry> tree = addOneAtATime(
+                RTree.maxChildren(4).<Object, Geometry> create(), entries);
+        RTree<Object, Geometry> tree2 = tree.asTransient().add(RTreeTest.randomEntry())
+                .persistent();
+        HashSet<Node<Object, Geometry>> before = new HashSet<Node<Object, Geometry>>(
+                ((NonLeaf<Object, Geometry>) tree.root().get()).children());
+        int shared = 0;
+        for (Node<Object, Geometry> child : ((NonLeaf<Object, Geometry>) tree2.root().get())
+                .children())
+            if (before.contains(child))
+                shared++;
+        assertTrue(shared >= before.size() - 1);
+    }
+
+    @Test
+    public void testTransientDeleteGivesSameEntriesAsPersistentDelete() {
+        List<Entry<Object, Geometry>> entries = RTreeTest.createRandomEntries(1000);
+        RTree<Object, Geometry> tree = RTree.maxChildren(4).<Object, Geometry> create()
+                .add(entries);
+        TransientRTree<Object, Geometry> t = tree.asTransient();
+        for (Entry<Object, Geometry> entry : entries.subList(0, 700))
+            t.delete(entry);
+        RTree<Object, Geometry> tree2 = t.persistent();
+        assertEquals(300, tree2.size());
+        assertEquals(new HashSet<Entry<Object, Geometry>>(entries.subList(700, 1000)),
+                new HashSet<Entry<Object, Geometry>>(tree2.entries().toList().toBlocking()
+                        .single()));
+    }
+
+    @Test
+    public void testTransientWithPackedLeavesPacksOnPersistent() {
+        List<Entry<Object, Geometry>> entries = RTreeTest.createRandomEntries(100);
+        RTree<Object, Geometry> tree = RTree.packedLeaves().maxChildren(4)
+                .<Object, Geometry> create().asTransient().add(entries).persistent();
+        Node<Object, Geometry> node = tree.root().get();
+        while (node instanceof NonLeaf)
+            node = ((NonLeaf<Object, Geometry>) node).children().get(0);
+        assertTrue(((Leaf<Object, Geometry>) node).entries() instanceof PackedEntries);
+        assertEquals(new HashSet<Entry<Object, Geometry>>(entries),
+                new HashSet<Entry<Object, Geometry>>(tree.entries().toList().toBlocking()
+                        .single()));
+    }
+
+    @Test
+    public void testTransientWithPackedLeavesAddAfterDelete() {
+        List<Entry<Object, Geometry>> entries = RTreeTest.createRandomEntries(200);
+        RTree<Object, Geometry> tree = RTree.packedLeaves().maxChildren(4)
+                .<Object, Geometry> create().asTransient().add(entries.subList(0, 100))
+                .delete(entries.get(0)).add(entries.subList(100, 200)).persistent();
+        assertEquals(199, tree.size());
+        assertLeavesPacked(tree.root().get());
+    }
+
+    private static RTree<Object, Geometry> addOneAtATime(RTree<Object, Geometry> tree,
+            List<Entry<Object, Geometry>> entries) {
+        for (Entry<Object, Geometry> entry : entries)
+            tree = tree.add(entry);
+        return tree;
+    }
+
+    private static void assertLeavesPacked(Node<Object, Geometry> node) {
+        if (node instanceof Leaf)
+            assertTrue(((Leaf<Object, Geometry>) node).entries() instanceof PackedEntries);
+        else
+            for (Node<Object, Geometry> child : ((NonLeaf<Object, Geometry>) node).children())
+                assertLeavesPacked(child);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testTransientCannotBeUsedAfterPersistent() {
+        TransientRTree<Object, Geometry> t = RTree.<Object, Geometry> create().asTransient();
+        t.persistent();
+        t.add(RTreeTest.randomEntry());
+    }
+
+}
@@ -0,0 +1,88 @@
+package com.github.davidmoten.rtree3d;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.github.davidmoten.rtree3d.geometry.Geometries;
+import com.github.davidmoten.rtree3d.geometry.Geometry;
+
+import rx.schedulers.Schedulers;
+
+public class TreeStatsTest {
+
+    @Test
+    public void testStatsOfSingleLeaf() {
+        RTree<Integer, Geometry> tree = RTree.maxChildren(4).<Integer, Geometry> create()
+                .add(1, Geometries.box(0, 0, 0, 1, 1, 1)).add(2, Geometries.box(1, 1, 1, 2, 2, 2));
+        TreeStats stats = tree.stats();
+        assertEquals(1, stats.depth());
+        assertEquals(1, stats.nodes());
+        TreeStats.Level leaf = stats.level(0);
+        assertEquals(2, leaf.children());
+        assertArrayEquals(new long[] { 0, 0, 1, 0, 0 }, leaf.fillHistogram());
+        assertEquals(0.5, leaf.meanFill(), 0.0001);
+        assertEquals(0.5, leaf.minFill(), 0.0001);
+        assertEquals(0.5, leaf.maxFill(), 0.0001);
+        assertEquals(8, leaf.volume(), 0.0001);
+        assertEquals(24, stats.surfaceArea(), 0.0001);
+        assertEquals(6, stats.deadSpace(), 0.0001);
+        assertEquals(0, stats.overlapVolume(), 0.0001);
+    }
+
+    @Test
+    public void testLevelsAreConsistentWithTree() {
+        List<Entry<Object, Geometry>> entries = RTreeTest.createRandomEntries(3000);
+        for (RTree<Object, Geometry> tree : Arrays.asList(
+                RTree.maxChildren(4).<Object, Geometry> create().add(entries),
+                RTree.star().maxChildren(8).create(entries))) {
+            TreeStats stats = tree.stats();
+            assertEquals(tree.calculateDepth(), stats.depth());
+            assertEquals(1, stats.level(0).nodes());
+            for (int i = 0; i < stats.depth() - 1; i++) {
+                assertEquals(stats.level(i).children(), stats.level(i + 1).nodes());
+                assertTrue(stats.level(i).volume() > 0);
+            }
+            TreeStats.Level leaves = stats.level(stats.depth() - 1);
+            assertEquals(tree.size(), leaves.children());
+            assertEquals(0, leaves.overlapVolume(), 0);
+            assertTrue(leaves.minFill() >= 0.25 && leaves.maxFill() <= 1);
+            assertTrue(stats.overlapVolume() >= 0);
+            assertTrue(stats.deadSpace() > 0);
+            assertTrue(stats.toString().startsWith("TreeStats [depth=" + stats.depth()));
+        }
+    }
+
+    @Test
+    public void testParallelStatsSameAsSequential() {
+        RTree<Object, Geometry> tree = RTree.maxChildren(4)
+                .create(RTreeTest.createRandomEntries(TreeStats.PARALLEL_MIN_ENTRIES * 2));
+        TreeStats a = tree.stats();
+        TreeStats b = tree.stats(Schedulers.computation());
+        assertEquals(a.depth(), b.depth());
+        for (int i = 0; i < a.depth(); i++) {
+            assertArrayEquals(a.level(i).fillHistogram(), b.level(i).fillHistogram());
+            assertEquals(a.level(i).volume(), b.level(i).volume(), a.level(i).volume() * 1e-9);
+            assertEquals(a.level(i).deadSpace(), b.level(i).deadSpace(),
+                    a.level(i).deadSpace() * 1e-9);
+            assertEquals(a.level(i).overlapVolume(), b.level(i).overlapVolume(),
+                    a.level(i).overlapVolume() * 1e-9);
+            assertEquals(a.level(i).surfaceArea(), b.level(i).surfaceArea(),
+                    a.level(i).surfaceArea() * 1e-9);
+        }
+    }
+
+    @Test
+    public void testStatsOfEmptyTree() {
+        TreeStats stats = RTree.create().stats(Schedulers.computation());
+        assertEquals(0, stats.depth());
+        assertEquals(0, stats.nodes());
+        assertEquals(0, RTree.create().stats().deadSpace(), 0);
+    }
+
+}
@@ -0,0 +1,76 @@
+package com.github.davidmoten.rtree3d.geometry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class MovingBoxTest {
+
+    private static final double PRECISION = 0.00001;
+
+    @Test
+    public void testAtTranslatesBox() {
+        MovingBox m = MovingBox.create(Box.create(0, 0, 0, 1, 1, 1), 10, 1, 2, -1);
+        assertEquals(Box.create(0, 0, 0, 1, 1, 1), m.at(10));
+        assertEquals(Box.create(5, 10, -5, 6, 11, -4), m.at(15));
+        assertEquals(Box.create(-2, -4, 2, -1, -3, 3), m.at(8));
+    }
+
+    @Test
+    public void testBoundsExpandAfterAndBeforeReferenceTime() {
+        MovingBox m = MovingBox.create(Box.create(0, 0, 0, 1, 1, 1), 0,
+                Box.create(-1, 0, 0, 2, 0, 0));
+        assertEquals(Box.create(-10, 0, 0, 21, 1, 1), m.at(10));
+        assertEquals(Box.create(-20, 0, 0, 11, 1, 1), m.at(-10));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMinimumVelocityGreaterThanMaximumThrows() {
+        MovingBox.create(Box.create(0, 0, 0, 1, 1, 1), 0, Box.create(1, 0, 0, 0, 0, 0));
+    }
+
+    @Test
+    public void testRebaseKeepsMotion() {
+        MovingBox m = MovingBox.create(Box.create(0, 0, 0, 1, 1, 1), 10, 1, 0, 0);
+        MovingBox m2 = m.rebase(20);
+        assertEquals(20, m2.time(), PRECISION);
+        assertEquals(Box.create(10, 0, 0, 11, 1, 1), m2.box());
+        assertEquals(m.at(35), m2.at(35));
+        assertEquals(m.velocity(), m2.velocity());
+        assertTrue(m == m.rebase(10));
+    }
+
+    @Test
+    public void testIntersectsAndDistanceAtTime() {
+        MovingBox m = MovingBox.create(Box.create(0, 0, 0, 1, 1, 1), 0, 1, 0, 0);
+        Box r = Box.create(10, 0, 0, 11, 1, 1);
+        assertFalse(m.intersects(r));
+        assertFalse(m.intersects(r, 5));
+        assertTrue(m.intersects(r, 10));
+        assertEquals(9, m.distance(r), PRECISION);
+        assertEquals(4, m.distance(r, 5), PRECISION);
+        assertEquals(0, m.distance(r, 10), PRECISION);
+    }
+
+    @Test
+    public void testMbbIsBoxAtReferenceTime() {
+        Box b = Box.create(0, 0, 0, 1, 1, 1);
+        MovingBox m = MovingBox.create(b, 3, 1, 1, 1);
+        assertEquals(b, m.mbb());
+        assertTrue(m.geometry() == m);
+    }
+
+    @Test
+    public void testEqualsAndHashCode() {
+        Box b = Box.create(0, 0, 0, 1, 1, 1);
+        MovingBox m = MovingBox.create(b, 3, 1, 2, 3);
+        assertEquals(m, MovingBox.create(b, 3, 1, 2, 3));
+        assertEquals(m.hashCode(), MovingBox.create(b, 3, 1, 2, 3).hashCode());
+        assertFalse(m.equals(MovingBox.create(b, 4, 1, 2, 3)));
+        assertFalse(m.equals(MovingBox.create(b, 3, 1, 2, 4)));
+        assertFalse(m.equals(b));
+    }
+
+}
@@ -26,6 +26,16 @@ public class RectangleTest {
         box(0, 2, 1, 1);
     }
 
+    @Test
+    public void testContains() {
+        Box r = Box.create(0, 0, 0, 2, 2, 2);
+        assertTrue(r.contains(r));
+        assertTrue(r.contains(Box.create(1, 1, 1, 2, 2, 2)));
+        assertFalse(r.contains(Box.create(1, 1, 1, 3, 2, 2)));
+        assertFalse(r.contains(Box.create(1, 1, -1, 2, 2, 2)));
+        assertFalse(Box.create(1, 1, 1, 2, 2, 2).contains(r));
+    }
+
     @Test
     public void testDistanceToOverlapIsZero() {
         Box r = box(0, 0, 2, 2);
@@ -137,6 +147,15 @@ public class RectangleTest {
         assertTrue(b.intersects(a));
     }
     
+    @Test
+    public void testHashCodeDependsOnZ() {
+        // stacked boxes differ only in z
+        assertNotEquals(Box.create(0, 0, 0, 1, 1, 1).hashCode(),
+                Box.create(0, 0, 1, 1, 1, 2).hashCode());
+        assertEquals(Box.create(0, 0, 1, 1, 1, 2).hashCode(),
+                Box.create(0, 0, 1, 1, 1, 2).hashCode());
+    }
+
     private static Box box(double x1, double y1, double x2, double y2) {
         return Box.create(x1, y1, 0, x2, y2, 1);
     }